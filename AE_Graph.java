@@ -1,8 +1,10 @@
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Hashtable;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.PriorityQueue;
 import java.util.Set;
@@ -15,30 +17,63 @@ public class AE_Graph<NodeType,EdgeType extends Number> implements GraphADT<Node
          */
         protected class Vertex {
                 public NodeType data; // vertex label or application specific data
-                public LinkedList<Edge> edgesLeaving;
+                public ArrayList<Edge> edgesLeaving;
+                public ArrayList<Edge> edgesEntering; // reverse adjacency, same Edge objects as in the sources' edgesLeaving
+                public HashMap<Vertex, Edge> edgeTo; // target to edge, only for hubs with more than HUB_DEGREE edges leaving
+                public double[] fromLandmarks; // distance from each landmark to this vertex, null until computed
+                public double[] toLandmarks; // distance from this vertex to each landmark, null until computed
 
                 public Vertex(NodeType data) {
                         this.data = data;
-                        this.edgesLeaving = new LinkedList<>();
+                        this.edgesLeaving = new ArrayList<>();
+                        this.edgesEntering = new ArrayList<>();
+                }
+
+                /**
+                 * Returns the edge from this vertex to target, or null if there is none. Looks it up
+                 * in edgeTo for hubs and scans the few edges leaving any other vertex.
+                 */
+                public Edge edgeTo(Vertex target) {
+                        if(edgeTo != null) return edgeTo.get(target);
+                        for(int i = 0; i < edgesLeaving.size(); i++) {
+                                Edge e = edgesLeaving.get(i);
+                                if(e.target == target) return e;
+                        }
+                        return null;
                 }
         }
 
         /**
          * Edge objects are stored within their source vertex, and group together
-         * their target destination vertex, along with an integer weight.
+         * their target destination vertex, along with an integer weight. The same
+         * object is also listed in the target vertex's edgesEntering. Each edge knows
+         * its position in both lists, so it can be removed from them in constant time.
          */
         protected class Edge {
+                public Vertex source;
                 public Vertex target;
                 public EdgeType weight;
+                public int leavingIndex; // position in source.edgesLeaving
+                public int enteringIndex; // position in target.edgesEntering
 
-                public Edge(Vertex target, EdgeType weight) {
+                public Edge(Vertex source, Vertex target, EdgeType weight) {
+                        this.source = source;
                         this.target = target;
                         this.weight = weight;
                 }
         }
 
-        protected Hashtable<NodeType, Vertex> vertices; // holds graph verticies, key=data
-        public AE_Graph() { vertices = new Hashtable<>(); }
+        // out-degree above which a vertex also indexes its edges by target; below it a scan of
+        // the edge list is faster than hashing
+        protected static final int HUB_DEGREE = 16;
+
+        // holds graph verticies, key=data. Not synchronized: an AE_Graph is confined to one thread or guarded
+        // by its owner, and concurrent readers should search an immutable CSRGraph built from it instead
+        protected HashMap<NodeType, Vertex> vertices;
+        protected List<Vertex> landmarks = new ArrayList<>(); // landmarks used by the A* lower bounds
+        protected boolean landmarksStale = false; // an edge was added or got cheaper since the landmark distances were computed
+        protected int edgeCount = 0;
+        public AE_Graph() { vertices = new HashMap<>(); }
 
         /**
          * Insert a new vertex into the graph.
@@ -70,17 +105,47 @@ public class AE_Graph<NodeType,EdgeType extends Number> implements GraphADT<Node
             if(data == null) throw new NullPointerException("Cannot remove null vertex");
             Vertex removeVertex = vertices.get(data);
             if(removeVertex == null) return false; // vertex not found within graph
-            // search all vertices for edges targeting removeVertex 
-            for(Vertex v : vertices.values()) {
-                    Edge removeEdge = null;
+            // the edges targeting removeVertex are exactly its entering edges, so no other vertex is searched
+            while(!removeVertex.edgesEntering.isEmpty())
+                    detach(removeVertex.edgesEntering.get(removeVertex.edgesEntering.size() - 1));
+            while(!removeVertex.edgesLeaving.isEmpty())
+                    detach(removeVertex.edgesLeaving.get(removeVertex.edgesLeaving.size() - 1));
+            // a removed landmark can no longer be searched from, so stop using it
+            if(landmarks.remove(removeVertex)) landmarksStale = true;
+            // finally remove the vertex itself
+            return vertices.remove(data) != null;
+    }
+
+    /**
+     * Remove many vertices and all of their edges in one pass, for example every station
+     * on a closed line. Edges between two removed vertices are dropped with them instead
+     * of being taken out of their lists one at a time.
+     *
+     * @param data the data items stored in the vertices to remove
+     * @return the number of vertices that were removed
+     * @throws NullPointerException if data or any of its elements is null
+     */
+    public int removeVertices(Set<NodeType> data) {
+            List<Vertex> removed = new ArrayList<>();
+            for(NodeType item : data) {
+                    if(item == null) throw new NullPointerException("Cannot remove null vertex");
+                    Vertex v = vertices.remove(item);
+                    if(v != null) removed.add(v);
+            }
+            for(Vertex v : removed) {
+                    // only the lists of vertices that stay in the graph need to be fixed
+                    for(Edge e : v.edgesEntering)
+                            if(vertices.get(e.source.data) == e.source) {
+                                    removeLeaving(e);
+                                    edgeCount--;
+                            }
                     for(Edge e : v.edgesLeaving)
-                            if(e.target == removeVertex)
-                                    removeEdge = e;
-                    // and remove any such edges that are found
-                    if(removeEdge != null) v.edgesLeaving.remove(removeEdge);
+                            if(vertices.get(e.target.data) == e.target)
+                                    removeEntering(e);
+                    edgeCount -= v.edgesLeaving.size();
             }
-            // finally remove the vertex and all edges contained within it
-            return vertices.remove(data) != null;
+            if(landmarks.removeAll(removed)) landmarksStale = true;
+            return removed.size();
     }
 
     /**
@@ -105,16 +170,97 @@ public class AE_Graph<NodeType,EdgeType extends Number> implements GraphADT<Node
             if(weight.doubleValue() < 0) 
                     throw new IllegalArgumentException("Cannot add edge with negative weight");
             // handle cases where edge already exists between these verticies
-            for(Edge e : sourceVertex.edgesLeaving)
-                if(e.target == targetVertex) {
-                        if(e.weight.doubleValue() == weight.doubleValue()) return false; // edge already exists
-                        else e.weight = weight; // otherwise update weight of existing edge
-                        return true;
-                }
+            Edge e = sourceVertex.edgeTo(targetVertex);
+            if(e != null) {
+                    if(e.weight.doubleValue() == weight.doubleValue()) return false; // edge already exists
+                    if(weight.doubleValue() < e.weight.doubleValue()) landmarksStale = true; // lower bounds may now be too high
+                    e.weight = weight; // otherwise update weight of existing edge
+                    return true;
+            }
         // otherwise add new edge to sourceVertex
-        sourceVertex.edgesLeaving.add(new Edge(targetVertex,weight));
+        landmarksStale = true; // a new edge can make some lower bounds too high
+        attach(new Edge(sourceVertex,targetVertex,weight));
         return true;
-}    
+}
+
+/**
+ * Adds edge to the end of its source's edgesLeaving and its target's edgesEntering.
+ */
+private void attach(Edge edge) {
+        Vertex source = edge.source;
+        edge.leavingIndex = source.edgesLeaving.size();
+        source.edgesLeaving.add(edge);
+        edge.enteringIndex = edge.target.edgesEntering.size();
+        edge.target.edgesEntering.add(edge);
+        if(source.edgeTo != null) {
+                source.edgeTo.put(edge.target, edge);
+        } else if(source.edgesLeaving.size() > HUB_DEGREE) { // the vertex just became a hub
+                source.edgeTo = new HashMap<>();
+                for(Edge e : source.edgesLeaving)
+                        source.edgeTo.put(e.target, e);
+        }
+        edgeCount++;
+}
+
+/**
+ * Removes edge from the graph in constant time.
+ */
+private void detach(Edge edge) {
+        removeLeaving(edge);
+        removeEntering(edge);
+        edgeCount--;
+}
+
+/**
+ * Removes edge from its source's edgesLeaving by moving the last edge into its place.
+ */
+private void removeLeaving(Edge edge) {
+        ArrayList<Edge> list = edge.source.edgesLeaving;
+        Edge last = list.remove(list.size() - 1);
+        if(last != edge) {
+                list.set(edge.leavingIndex, last);
+                last.leavingIndex = edge.leavingIndex;
+        }
+        if(edge.source.edgeTo != null) edge.source.edgeTo.remove(edge.target);
+}
+
+/**
+ * Removes edge from its target's edgesEntering by moving the last edge into its place.
+ */
+private void removeEntering(Edge edge) {
+        ArrayList<Edge> list = edge.target.edgesEntering;
+        Edge last = list.remove(list.size() - 1);
+        if(last != edge) {
+                list.set(edge.enteringIndex, last);
+                last.enteringIndex = edge.enteringIndex;
+        }
+}
+
+/**
+ * Change the weights of many existing edges at once, for example to apply a batch of delays.
+ * Unlike insertEdge this never adds an edge: updates of edges that are not in the graph are
+ * skipped, so a feed can name segments that have since been removed.
+ *
+ * @param updates the new weights, applied in order
+ * @return the number of edges whose weight changed
+ * @throws NullPointerException if updates is null
+ */
+public int updateWeights(Collection<? extends EdgeUpdate<NodeType, ? extends EdgeType>> updates) {
+        int changed = 0;
+        for(EdgeUpdate<NodeType, ? extends EdgeType> update : updates) {
+                Vertex sourceVertex = vertices.get(update.getSource());
+                Vertex targetVertex = vertices.get(update.getTarget());
+                if(sourceVertex == null || targetVertex == null) continue;
+                Edge e = sourceVertex.edgeTo(targetVertex);
+                double weight = update.getWeight().doubleValue();
+                if(e != null && e.weight.doubleValue() != weight) {
+                        if(weight < e.weight.doubleValue()) landmarksStale = true; // lower bounds may now be too high
+                        e.weight = update.getWeight();
+                        changed++;
+                }
+        }
+        return changed;
+}
 
 /**
  * Remove an edge from the graph.
@@ -131,12 +277,9 @@ public boolean removeEdge(NodeType source, NodeType target) {
         Vertex targetVertex = this.vertices.get(target);
         if(sourceVertex == null || targetVertex == null) throw new IllegalArgumentException("Cannot remove edge with vertices that do not exist");
         // find edge to remove
-        Edge removeEdge = null;
-        for(Edge e : sourceVertex.edgesLeaving)
-                if(e.target == targetVertex) 
-                        removeEdge = e;
-        if(removeEdge != null) { // remove edge that is successfully found                
-                sourceVertex.edgesLeaving.remove(removeEdge);
+        Edge removeEdge = sourceVertex.edgeTo(targetVertex);
+        if(removeEdge != null) { // remove edge that is successfully found
+                detach(removeEdge);
                 return true;
         }
         return false; // otherwise return false to indicate failure to find
@@ -164,11 +307,8 @@ public boolean containsEdge(NodeType source, NodeType target) {
         if(source == null || target == null) throw new NullPointerException("Cannot contain edge adjacent to null data"); 
         Vertex sourceVertex = vertices.get(source);
         Vertex targetVertex = vertices.get(target);
-        if(sourceVertex == null) return false;
-        for(Edge e : sourceVertex.edgesLeaving)
-                if(e.target == targetVertex)
-                        return true;
-        return false;
+        if(sourceVertex == null || targetVertex == null) return false;
+        return sourceVertex.edgeTo(targetVertex) != null;
 }
 
 /**
@@ -186,9 +326,8 @@ public EdgeType getWeight(NodeType source, NodeType target) {
         Vertex sourceVertex = vertices.get(source);
         Vertex targetVertex = vertices.get(target);
         if(sourceVertex == null || targetVertex == null) throw new IllegalArgumentException("Cannot retrieve weight of edge between vertices that do not exist");
-        for(Edge e : sourceVertex.edgesLeaving)
-                if(e.target == targetVertex)
-                        return e.weight;
+        Edge e = sourceVertex.edgeTo(targetVertex);
+        if(e != null) return e.weight;
         throw new NoSuchElementException("No directed edge found between these vertices");
 }
 
@@ -198,9 +337,6 @@ public EdgeType getWeight(NodeType source, NodeType target) {
  * @return the number of edges in the graph
  */
 public int getEdgeCount() {
-        int edgeCount = 0;
-        for(Vertex v : vertices.values())
-                edgeCount += v.edgesLeaving.size();
         return edgeCount;
 }
 
@@ -234,6 +370,7 @@ protected class Path implements Comparable<Path> {
         public double distance; // sumed weight of all edges in path
         public List<NodeType> dataSequence; // ordered sequence of data from vertices in path
         public Vertex end; // last vertex within path
+        public int settledCount; // vertices settled by the search that returned this path
 
         /**
          * Creates a new path containing a single vertex.  Since this vertex is both
@@ -325,22 +462,30 @@ protected Path dijkstrasShortestPath(NodeType start, NodeType end) {
             throw new NoSuchElementException("The graph does not contain the end vertex");          //if end vertex is not in the graph, throw exception
 
     else {
+            int pushes = 1, pops = 0, relaxed = 0;          //search work, reported to RoutingMetrics
             pq.add(new Path(vertices.get(start)));          //add start vertex into pq
 
             while(!pq.isEmpty()) {          //loop if pq still have path need to be checked
 
                     Path minPath = pq.remove();             //remove the shortest path from the queue
+                    pops++;
 
                     if(!visitedVertices.contains(minPath.end)) {    //if the end vertex of the path haven't been visited
 
                             shortestPath.put(minPath.end.data, minPath);    //store shortest path for end vertex
                             visitedVertices.add(minPath.end);                               //mark end vertex as visited
 
+                            if(minPath.end.data.equals(end))                                //stop once end vertex is settled, its path is final
+                                    break;
+
                             //extend the current path with end vertex's neighbour that is not visited and queue them up in pq
+                            relaxed += minPath.end.edgesLeaving.size();
                             for(Edge edge: minPath.end.edgesLeaving) {                      
                                     if(edge != null) {                                                              //check if end vertex still have any neighbour or doesn't have a neighbou>
-                                            if(!visitedVertices.contains(edge.target))      //check if end vertex's neighbour is not visited
+                                            if(!visitedVertices.contains(edge.target)) {    //check if end vertex's neighbour is not visited
                                                     pq.add(new Path(minPath, edge));                //queue the extended path with end vertex's neighbour in pq
+                                                    pushes++;
+                                            }
                                     }
                                     else {  
                                             break;
@@ -349,10 +494,13 @@ protected Path dijkstrasShortestPath(NodeType start, NodeType end) {
                     }
             }               
 
+            RoutingMetrics.countSearch(visitedVertices.size(), pushes, pops, relaxed);
             Path shortestPath2 = shortestPath.get(end);     //get the shortest path for end vertex (parameter) from the HashMap                     
 
-            if(shortestPath2 != null)                                       
+            if(shortestPath2 != null) {
+                    shortestPath2.settledCount = visitedVertices.size();
                     return shortestPath2;   //return the path if it's not null
+            }
 
             throw new NoSuchElementException("No shortest path found for the vertices.");   //throw exception if the path is null to indicate that 
             //there is no path from start vertex(parameter) to end vertex(parameter)
@@ -390,49 +538,354 @@ public double getPathCost(NodeType start, NodeType end) {
 }       
 
 /**
- * Uses Prim's algorithm to find the minimum spanning tree for the whole graph.
- * Returns the total cost of the minimum spanning tree found by using Prim's algorithm.
- * 
- * @param the data item in the starting vertex for finding the MST
- * @return the total cost of the minimum spanning tree
- * @throws NullPointerException when data passing in is a null
- * @throws NoSuchElementException if the data passing is not in the graph
+ * Returns the shortest path between start and end together with the weight of each edge on it,
+ * its cost, and how many vertices Dijkstra's algorithm settled to find it. This answers both
+ * shortestPath and getPathCost with a single search.
+ *
+ * @param start the data item in the starting vertex for the path
+ * @param end the data item in the destination vertex for the path
+ * @return the route from the vertex with data item start to the vertex with data item end
+ * @throws NoSuchElementException when no path from start to end can be found
+ *     including when no vertex containing start or end can be found
  */
-public double primsMinimumSpanningTree(NodeType node) {
-        Set<Vertex> visitedVertices = new HashSet<Vertex>();    //keep track the visited vertices
-        PriorityQueue<Path> pq = new PriorityQueue<Path>();             //choose the least weighted path for each vertex
-        Set<Path> mst = new HashSet<Path>();                                    //keep track of the least weighted path found
-        double timeSpent = 0;
+public RouteResult<NodeType> route(NodeType start, NodeType end) {
+        long began = System.nanoTime();
+        Path path = dijkstrasShortestPath(start, end);
+        long elapsed = System.nanoTime() - began;
+        List<NodeType> stations = new ArrayList<>(path.dataSequence);  //dataSequence is a LinkedList
+        double[] legs = new double[stations.size() - 1];
+        Vertex previous = path.start;
+        for(int leg = 0; leg < legs.length; leg++) {
+                Edge edge = previous.edgeTo(vertices.get(stations.get(leg + 1)));  //the edge this leg of the path used
+                legs[leg] = edge.weight.doubleValue();
+                previous = edge.target;
+        }
+        return new RouteResult<>(stations, legs, path.distance, path.settledCount, elapsed);
+}
 
-        if(node == null)
-                throw new NullPointerException("Cannot find path for null start");                      //if start vertex is null, throw exception
+/**
+ * Returns up to k loopless paths between start and end, cheapest first, using Yen's algorithm
+ * on a CSRGraph built from this graph. The first one is the shortest path, and each following
+ * one is the cheapest path that differs from all paths before it. Fewer than k are returned if
+ * there are no more loopless paths.
+ *
+ * @param start the data item in the starting vertex for the paths
+ * @param end the data item in the destination vertex for the paths
+ * @param k the number of paths to find
+ * @return the routes from the vertex with data item start to the vertex with data item end
+ * @throws IllegalArgumentException if k is not positive
+ * @throws NoSuchElementException when no path from start to end can be found
+ *     including when no vertex containing start or end can be found
+ */
+public List<RouteResult<NodeType>> kShortestPaths(NodeType start, NodeType end, int k) {
+        if(start == null || end == null)
+                throw new NullPointerException("Cannot find path for null start and end");
+        if(!vertices.containsKey(start))
+                throw new NoSuchElementException("The graph does not contain the start vertex");
+        if(!vertices.containsKey(end))
+                throw new NoSuchElementException("The graph does not contain the end vertex");
+        return CSRGraphBuilder.fromGraph(this).kShortestPaths(start, end, k);
+}
 
-        else if(!vertices.containsKey(node))
-                throw new NoSuchElementException("The graph does not contain the start vertex");        //if start vertex is not in the graph, throw exception
+/**
+ * Uses a bidirectional version of Dijkstra's algorithm to find the shortest path between
+ * start and end. One search runs forward from start over edgesLeaving and one runs backward
+ * from end over edgesEntering, always advancing the side whose next vertex is closer. Every
+ * edge scanned between a vertex reached by one side and a vertex reached by the other gives a
+ * candidate path, and the search stops as soon as the two smallest queued distances add up to
+ * at least the best candidate: no path through an unsettled vertex can be shorter after that.
+ * On road and rail networks this settles about half as many vertices as dijkstrasShortestPath.
+ * @param start data item within first node in path
+ * @param end data item within last node in path
+ * @return the shortest path from start to end
+ * @throws NoSuchElementException when no path from start to end can be found,
+ *     including when no vertex containing start or end can be found
+ */
+protected Path bidirectionalShortestPath(NodeType start, NodeType end) {
+        if(start == null || end == null)
+                throw new NullPointerException("Cannot find path for null start and end");
+        Vertex startVertex = vertices.get(start);
+        Vertex endVertex = vertices.get(end);
+        if(startVertex == null)
+                throw new NoSuchElementException("The graph does not contain the start vertex");
+        if(endVertex == null)
+                throw new NoSuchElementException("The graph does not contain the end vertex");
+
+        HashMap<Vertex, Double> forwardDist = new HashMap<>();          //tentative distances from start
+        HashMap<Vertex, Double> backwardDist = new HashMap<>();         //tentative distances to end
+        HashMap<Vertex, Edge> forwardEdge = new HashMap<>();            //edge used to reach each vertex from start
+        HashMap<Vertex, Edge> backwardEdge = new HashMap<>();           //edge used to reach end from each vertex
+        Set<Vertex> forwardSettled = new HashSet<>();
+        Set<Vertex> backwardSettled = new HashSet<>();
+        PriorityQueue<SearchEntry> forwardQueue = new PriorityQueue<>();
+        PriorityQueue<SearchEntry> backwardQueue = new PriorityQueue<>();
+        forwardDist.put(startVertex, 0.0D);
+        backwardDist.put(endVertex, 0.0D);
+        forwardQueue.add(new SearchEntry(startVertex, 0.0D));
+        backwardQueue.add(new SearchEntry(endVertex, 0.0D));
+        double best = start.equals(end) ? 0.0D : Double.POSITIVE_INFINITY;
+        Vertex meet = start.equals(end) ? startVertex : null;
+
+        while(!forwardQueue.isEmpty() && !backwardQueue.isEmpty()) {
+                if(forwardQueue.peek().distance + backwardQueue.peek().distance >= best)
+                        break;          //meet-in-the-middle stopping criterion
+                boolean forward = forwardQueue.peek().distance <= backwardQueue.peek().distance;
+                PriorityQueue<SearchEntry> queue = forward ? forwardQueue : backwardQueue;
+                HashMap<Vertex, Double> dist = forward ? forwardDist : backwardDist;
+                HashMap<Vertex, Double> otherDist = forward ? backwardDist : forwardDist;
+                HashMap<Vertex, Edge> parentEdge = forward ? forwardEdge : backwardEdge;
+                Set<Vertex> settled = forward ? forwardSettled : backwardSettled;
+
+                SearchEntry entry = queue.remove();
+                if(!settled.add(entry.vertex)) continue;        //stale queue entry
+                for(Edge edge : forward ? entry.vertex.edgesLeaving : entry.vertex.edgesEntering) {
+                        Vertex next = forward ? edge.target : edge.source;
+                        if(settled.contains(next)) continue;
+                        double distance = entry.distance + edge.weight.doubleValue();
+                        Double known = dist.get(next);
+                        if(known == null || distance < known) {
+                                dist.put(next, distance);
+                                parentEdge.put(next, edge);
+                                queue.add(new SearchEntry(next, distance));
+                        }
+                        Double other = otherDist.get(next);
+                        if(other != null && dist.get(next) + other < best) {    //both sides reached next
+                                best = dist.get(next) + other;
+                                meet = next;
+                        }
+                }
+        }
+        if(meet == null)
+                throw new NoSuchElementException("No shortest path found for the vertices.");
+
+        //walk back from the meeting vertex to start, then forward from it to end
+        LinkedList<NodeType> sequence = new LinkedList<>();
+        for(Vertex v = meet; v != startVertex; v = forwardEdge.get(v).source)
+                sequence.addFirst(v.data);
+        sequence.addFirst(startVertex.data);
+        for(Vertex v = meet; v != endVertex; ) {
+                v = backwardEdge.get(v).target;
+                sequence.addLast(v.data);
+        }
+        Path path = new Path(startVertex);
+        path.dataSequence = sequence;
+        path.distance = best;
+        path.end = endVertex;
+        return path;
+}
 
-        else {
-                do {
-                        for(Edge edge: vertices.get(node).edgesLeaving) {               //queue path of unvisited vertex to pq
-                                if(!visitedVertices.contains(edge.target))
-                                        pq.add(new Path(vertices.get(node), edge));                             
+/**
+ * Picks count landmark vertices with the farthest-point heuristic and computes the distance
+ * from every landmark to every vertex and from every vertex to every landmark, using one
+ * one-to-all search on the graph and one on the reverse graph per landmark. The first landmark
+ * is the vertex farthest from an arbitrary vertex, and each further landmark is the vertex
+ * whose distance to the closest landmark chosen so far is largest. Vertices no landmark can
+ * reach are preferred, so every component of the graph gets a landmark.
+ * @param count the number of landmarks to pick
+ * @throws IllegalArgumentException if count is negative
+ */
+public void precomputeLandmarks(int count) {
+        if(count < 0)
+                throw new IllegalArgumentException("Cannot pick a negative number of landmarks");
+        landmarks = new ArrayList<>();
+        if(vertices.isEmpty() || count == 0) {
+                updateLandmarks();
+                return;
+        }
+        HashMap<Vertex, Double> closest = oneToAll(vertices.values().iterator().next(), false);
+        HashMap<Vertex, Double> nearestLandmark = new HashMap<>();      //distance from the closest landmark so far
+        while(landmarks.size() < count && landmarks.size() < vertices.size()) {
+                Vertex farthest = null;
+                double farthestDistance = -1;
+                for(Vertex v : vertices.values()) {
+                        if(landmarks.contains(v)) continue;
+                        Double d = landmarks.isEmpty() ? closest.get(v) : nearestLandmark.get(v);
+                        double distance = d == null ? Double.POSITIVE_INFINITY : d;
+                        if(distance > farthestDistance) {
+                                farthest = v;
+                                farthestDistance = distance;
                         }
+                }
+                landmarks.add(farthest);
+                for(Map.Entry<Vertex, Double> entry : oneToAll(farthest, false).entrySet())
+                        nearestLandmark.merge(entry.getKey(), entry.getValue(), Math::min);
+        }
+        updateLandmarks();
+}
+
+/**
+ * Recomputes the landmark distances for the landmarks that are already picked. Use this after
+ * edges were added or made cheaper; it costs two one-to-all searches per landmark, which is
+ * far less than picking the landmarks again. aStarShortestPath calls it automatically when
+ * the stored distances could overestimate.
+ */
+public void updateLandmarks() {
+        for(Vertex v : vertices.values()) {
+                v.fromLandmarks = new double[landmarks.size()];
+                v.toLandmarks = new double[landmarks.size()];
+        }
+        for(int i = 0; i < landmarks.size(); i++) {
+                HashMap<Vertex, Double> from = oneToAll(landmarks.get(i), false);
+                HashMap<Vertex, Double> to = oneToAll(landmarks.get(i), true);
+                for(Vertex v : vertices.values()) {
+                        v.fromLandmarks[i] = from.getOrDefault(v, Double.POSITIVE_INFINITY);
+                        v.toLandmarks[i] = to.getOrDefault(v, Double.POSITIVE_INFINITY);
+                }
+        }
+        landmarksStale = false;
+}
+
+/**
+ * Runs Dijkstra's algorithm from source over the whole graph, following edgesEntering
+ * instead of edgesLeaving when reverse is true.
+ * @return the distance of every vertex reachable from (or, when reverse, reaching) source
+ */
+protected HashMap<Vertex, Double> oneToAll(Vertex source, boolean reverse) {
+        HashMap<Vertex, Double> settled = new HashMap<>();
+        PriorityQueue<SearchEntry> pq = new PriorityQueue<>();
+        pq.add(new SearchEntry(source, 0.0D));
+        while(!pq.isEmpty()) {
+                SearchEntry entry = pq.remove();
+                if(settled.containsKey(entry.vertex)) continue;
+                settled.put(entry.vertex, entry.distance);
+                for(Edge edge : reverse ? entry.vertex.edgesEntering : entry.vertex.edgesLeaving) {
+                        Vertex next = reverse ? edge.source : edge.target;
+                        if(!settled.containsKey(next))
+                                pq.add(new SearchEntry(next, entry.distance + edge.weight.doubleValue()));
+                }
+        }
+        return settled;
+}
+
+/**
+ * Lower bound on the distance from v to target from the triangle inequality: for every
+ * landmark L, d(v,target) >= d(L,target) - d(L,v) and d(v,target) >= d(v,L) - d(target,L).
+ * Vertices inserted after the landmark distances were computed get a bound of 0.
+ */
+protected double landmarkBound(Vertex v, Vertex target) {
+        if(v.fromLandmarks == null || target.fromLandmarks == null) return 0.0D;
+        double bound = 0.0D;
+        for(int i = 0; i < v.fromLandmarks.length; i++) {
+                double forward = target.fromLandmarks[i] - v.fromLandmarks[i];
+                double backward = v.toLandmarks[i] - target.toLandmarks[i];
+                // infinite differences carry no information, and inf - inf is NaN
+                if(forward > bound && forward != Double.POSITIVE_INFINITY) bound = forward;
+                if(backward > bound && backward != Double.POSITIVE_INFINITY) bound = backward;
+        }
+        return bound;
+}
 
-                        visitedVertices.add(vertices.get(node));        //mark the vertex as visited
-                        
-                        Path leastWeightEdge = pq.remove();             //remove the shortest path from queue
-                        
-                        if(!visitedVertices.contains(leastWeightEdge.end)) {    //if the end vertex is not visited, add to mst
-                                mst.add(leastWeightEdge);
-                                visitedVertices.add(leastWeightEdge.end);               //mark the vertex as visited
+/**
+ * Uses A* search with landmark (ALT) lower bounds to find the shortest path between start and
+ * end. Vertices are expanded in order of their distance from start plus the landmarkBound to
+ * end, which steers the search towards end and settles far fewer vertices than
+ * dijkstrasShortestPath. Call precomputeLandmarks first; without landmarks every bound is 0 and
+ * this behaves like Dijkstra's algorithm.
+ * @param start data item within first node in path
+ * @param end data item within last node in path
+ * @return the shortest path from start to end
+ * @throws NoSuchElementException when no path from start to end can be found,
+ *     including when no vertex containing start or end can be found
+ */
+protected Path aStarShortestPath(NodeType start, NodeType end) {
+        if(start == null || end == null)
+                throw new NullPointerException("Cannot find path for null start and end");
+        Vertex startVertex = vertices.get(start);
+        Vertex endVertex = vertices.get(end);
+        if(startVertex == null)
+                throw new NoSuchElementException("The graph does not contain the start vertex");
+        if(endVertex == null)
+                throw new NoSuchElementException("The graph does not contain the end vertex");
+        if(landmarksStale)
+                updateLandmarks();
+
+        HashMap<Vertex, Double> dist = new HashMap<>();         //tentative distances from start
+        HashMap<Vertex, Edge> parentEdge = new HashMap<>();     //edge used to reach each vertex
+        Set<Vertex> settled = new HashSet<>();
+        PriorityQueue<SearchEntry> pq = new PriorityQueue<>();  //keyed by distance plus lower bound
+        dist.put(startVertex, 0.0D);
+        pq.add(new SearchEntry(startVertex, landmarkBound(startVertex, endVertex)));
+        while(!pq.isEmpty()) {
+                Vertex u = pq.remove().vertex;
+                if(!settled.add(u)) continue;           //stale queue entry
+                if(u == endVertex) break;
+                double du = dist.get(u);
+                for(Edge edge : u.edgesLeaving) {
+                        if(settled.contains(edge.target)) continue;
+                        double distance = du + edge.weight.doubleValue();
+                        Double known = dist.get(edge.target);
+                        if(known == null || distance < known) {
+                                dist.put(edge.target, distance);
+                                parentEdge.put(edge.target, edge);
+                                pq.add(new SearchEntry(edge.target, distance + landmarkBound(edge.target, endVertex)));
                         }
-                        node = leastWeightEdge.end.data;        
-                        
-                }while(mst.size() != vertices.size()-1);        //loop if the size of MST is not total no. of vertices-1
+                }
+        }
+        if(!settled.contains(endVertex))
+                throw new NoSuchElementException("No shortest path found for the vertices.");
+
+        LinkedList<NodeType> sequence = new LinkedList<>();
+        for(Vertex v = endVertex; v != startVertex; v = parentEdge.get(v).source)
+                sequence.addFirst(v.data);
+        sequence.addFirst(startVertex.data);
+        Path path = new Path(startVertex);
+        path.dataSequence = sequence;
+        path.distance = dist.get(endVertex);
+        path.end = endVertex;
+        return path;
+}
+
+/**
+ * Queue entry for searches that keep their distances in a map instead of in Path objects.
+ * Entries are never updated; a vertex is queued again when its distance improves, and the
+ * stale entries are skipped when they are removed.
+ */
+protected class SearchEntry implements Comparable<SearchEntry> {
+        public Vertex vertex;
+        public double distance;
+
+        public SearchEntry(Vertex vertex, double distance) {
+                this.vertex = vertex;
+                this.distance = distance;
         }
 
-        for(Path path: mst)
-                timeSpent += path.distance;             //calculate the total cost of mst
-        return timeSpent;       //return the total cost of mst
+        public int compareTo(SearchEntry other) {
+                return Double.compare(this.distance, other.distance);
+        }
+}
+
+/**
+ * Uses Prim's algorithm to find the minimum spanning tree of the part of the graph that
+ * contains node. Edges are treated as undirected, so vertices that can only reach node or
+ * only be reached from it are spanned too; vertices in other parts of a disconnected graph
+ * are not. Use minimumSpanningForest to span every part.
+ * 
+ * @param node the data item in the starting vertex for finding the MST
+ * @return the total cost of the minimum spanning tree
+ * @throws NullPointerException when data passing in is a null
+ * @throws NoSuchElementException if the data passing is not in the graph
+ */
+public double primsMinimumSpanningTree(NodeType node) {
+        if(node == null)
+                throw new NullPointerException("Cannot find path for null start");
+        if(!vertices.containsKey(node))
+                throw new NoSuchElementException("The graph does not contain the start vertex");
+        CSRGraph<NodeType> graph = CSRGraphBuilder.fromGraph(this);
+        return MinimumSpanningForest.prim(graph, graph.indexOf(node)).getTotalWeight();
+}
+
+/**
+ * Finds a minimum spanning tree for every connected part of the graph, treating edges as
+ * undirected. The forest is computed on a CSRGraph built from this graph.
+ *
+ * @param algorithm the algorithm to compute the forest with
+ * @return the minimum spanning forest
+ * @throws NullPointerException if algorithm is null
+ */
+public MinimumSpanningForest<NodeType> minimumSpanningForest(MinimumSpanningForest.Algorithm algorithm) {
+        if(algorithm == null)
+                throw new NullPointerException("Cannot compute spanning forest with null algorithm");
+        return CSRGraphBuilder.fromGraph(this).minimumSpanningForest(algorithm);
 }
 
 
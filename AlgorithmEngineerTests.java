@@ -0,0 +1,997 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+
+class AlgorithmEngineerTests {
+
+	/**
+	 * Builds a random graph with n vertices and about degree*n edges. The weights are random
+	 * doubles, so shortest paths are unique and every search should return the same path.
+	 */
+	private static AE_Graph<Integer, Double> randomGraph(Random random, int n, int degree) {
+		AE_Graph<Integer, Double> graph = new AE_Graph<>();
+		for (int i = 0; i < n; i++)
+			graph.insertVertex(i);
+		for (int i = 0; i < n * degree; i++)
+			graph.insertEdge(random.nextInt(n), random.nextInt(n), random.nextDouble() * 10);
+		return graph;
+	}
+
+	/**
+	 * This tests that the bidirectional search in AE_Graph returns the same cost and path as
+	 * dijkstrasShortestPath on random graphs, and fails the same way when there is no path
+	 */
+	@Test
+	public void AETest1() {
+		Random random = new Random(400);
+		int compared = 0;
+		for (int round = 0; round < 50; round++) {
+			AE_Graph<Integer, Double> graph = randomGraph(random, 2 + random.nextInt(80), 2);
+			int n = graph.getVertexCount();
+			for (int query = 0; query < 40; query++) {
+				int start = random.nextInt(n);
+				int end = random.nextInt(n);
+				AE_Graph<Integer, Double>.Path expected = null;
+				try {
+					expected = graph.dijkstrasShortestPath(start, end);
+				} catch (NoSuchElementException e) {
+				}
+				try {
+					AE_Graph<Integer, Double>.Path actual = graph.bidirectionalShortestPath(start, end);
+					assertTrue(expected != null);
+					assertEquals(expected.distance, actual.distance, 1e-9);
+					assertEquals(expected.dataSequence, actual.dataSequence);
+					compared++;
+				} catch (NoSuchElementException e) {
+					assertTrue(expected == null);
+				}
+			}
+		}
+		assertTrue(compared > 0);
+	}
+
+	/**
+	 * This tests that the bidirectional search over a CSRGraph returns the same cost and path as
+	 * the AE_Graph it was built from
+	 */
+	@Test
+	public void AETest2() {
+		Random random = new Random(401);
+		for (int round = 0; round < 30; round++) {
+			AE_Graph<Integer, Double> graph = randomGraph(random, 2 + random.nextInt(200), 3);
+			CSRGraph<Integer> csr = CSRGraphBuilder.fromGraph(graph);
+			int n = graph.getVertexCount();
+			for (int query = 0; query < 40; query++) {
+				int start = random.nextInt(n);
+				int end = random.nextInt(n);
+				List<Integer> expected = null;
+				double expectedCost = 0;
+				try {
+					expected = graph.shortestPath(start, end);
+					expectedCost = graph.getPathCost(start, end);
+				} catch (NoSuchElementException e) {
+				}
+				try {
+					List<Integer> actual = BidirectionalDijkstra.shortestPath(csr, start, end);
+					assertEquals(expected, actual);
+					assertEquals(expectedCost, BidirectionalDijkstra.getPathCost(csr, start, end), 1e-9);
+				} catch (NoSuchElementException e) {
+					assertTrue(expected == null);
+				}
+			}
+		}
+	}
+
+	/**
+	 * This tests that removing edges and vertices keeps the reverse adjacency used by the
+	 * backward search in sync with the forward adjacency
+	 */
+	@Test
+	public void AETest3() {
+		AE_Graph<String, Integer> graph = new AE_Graph<>();
+		graph.insertVertex("A");
+		graph.insertVertex("B");
+		graph.insertVertex("C");
+		graph.insertEdge("A", "B", 1);
+		graph.insertEdge("B", "C", 1);
+		graph.insertEdge("A", "C", 5);
+		assertEquals(2.0, graph.bidirectionalShortestPath("A", "C").distance, 1e-9);
+
+		graph.removeEdge("B", "C");
+		assertEquals(5.0, graph.bidirectionalShortestPath("A", "C").distance, 1e-9);
+
+		graph.insertEdge("B", "C", 1);
+		graph.removeVertex("B");
+		assertEquals("[A, C]", graph.bidirectionalShortestPath("A", "C").dataSequence.toString());
+	}
+
+	/**
+	 * This tests that A* with landmark bounds returns the same cost and path as
+	 * dijkstrasShortestPath, also after edges are added or made cheaper and the landmark
+	 * distances have to be updated
+	 */
+	@Test
+	public void AETest4() {
+		Random random = new Random(402);
+		for (int round = 0; round < 30; round++) {
+			AE_Graph<Integer, Double> graph = randomGraph(random, 2 + random.nextInt(120), 2);
+			int n = graph.getVertexCount();
+			graph.precomputeLandmarks(1 + random.nextInt(6));
+			for (int query = 0; query < 60; query++) {
+				if (query % 20 == 19) // change the graph so some bounds would overestimate
+					graph.insertEdge(random.nextInt(n), random.nextInt(n), random.nextDouble());
+				int start = random.nextInt(n);
+				int end = random.nextInt(n);
+				AE_Graph<Integer, Double>.Path expected = null;
+				try {
+					expected = graph.dijkstrasShortestPath(start, end);
+				} catch (NoSuchElementException e) {
+				}
+				try {
+					AE_Graph<Integer, Double>.Path actual = graph.aStarShortestPath(start, end);
+					assertTrue(expected != null);
+					assertEquals(expected.distance, actual.distance, 1e-9);
+					assertEquals(expected.dataSequence, actual.dataSequence);
+				} catch (NoSuchElementException e) {
+					assertTrue(expected == null);
+				}
+			}
+		}
+	}
+
+	/**
+	 * This tests that route() on AE_Graph, CSRGraph and the bidirectional search returns the same
+	 * path and cost as shortestPath and getPathCost, with leg weights that add up to the cost
+	 */
+	@Test
+	public void AETest5() {
+		Random random = new Random(403);
+		AE_Graph<Integer, Double> graph = randomGraph(random, 150, 3);
+		CSRGraph<Integer> csr = CSRGraphBuilder.fromGraph(graph);
+		int compared = 0;
+		for (int query = 0; query < 200; query++) {
+			int start = random.nextInt(150);
+			int end = random.nextInt(150);
+			List<Integer> expected;
+			try {
+				expected = graph.shortestPath(start, end);
+			} catch (NoSuchElementException e) {
+				continue;
+			}
+			double expectedCost = graph.getPathCost(start, end);
+			List<RouteResult<Integer>> routes = List.of(graph.route(start, end), csr.route(start, end),
+					BidirectionalDijkstra.route(csr, start, end));
+			for (RouteResult<Integer> route : routes) {
+				assertEquals(expected, route.getStations());
+				assertEquals(expectedCost, route.getTotalCost(), 1e-9);
+				double sum = 0;
+				for (double leg : route.getLegWeights())
+					sum += leg;
+				assertEquals(route.getTotalCost(), sum, 1e-9);
+				assertTrue(route.getSettledCount() > 0 || start == end);
+			}
+			compared++;
+		}
+		assertTrue(compared > 0);
+	}
+
+	/**
+	 * This tests that a DynamicShortestPathTree repaired after random batches of longer and
+	 * shorter edges has the same distances as a tree computed from scratch, and that
+	 * AE_Graph.updateWeights changes the same edges as CSRGraph.withUpdatedWeights
+	 */
+	@Test
+	public void AETest6() {
+		Random random = new Random(815);
+		AE_Graph<Integer, Double> graph = randomGraph(random, 200, 3);
+		CSRGraph<Integer> csr = CSRGraphBuilder.fromGraph(graph);
+		DynamicShortestPathTree<Integer> tree = csr.dynamicShortestPathTree(0);
+		for (int batch = 0; batch < 30; batch++) {
+			List<EdgeUpdate<Integer, Double>> updates = new ArrayList<>();
+			for (int i = 0; i < 10; i++) {
+				int vertex = random.nextInt(200);
+				// half of them edges of the current tree, so the repair has subtrees to cut off
+				if (i % 2 == 0 && tree.parent(vertex) >= 0)
+					updates.add(new EdgeUpdate<>(csr.vertexData(tree.parent(vertex)), csr.vertexData(vertex),
+							random.nextDouble() * 10));
+				else
+					updates.add(new EdgeUpdate<>(vertex, random.nextInt(200), random.nextDouble() * 10));
+			}
+			updates.add(new EdgeUpdate<>(-1, 0, 1.0)); // not in the graph, skipped
+			tree.update(updates);
+			graph.updateWeights(updates);
+			csr = csr.withUpdatedWeights(updates);
+
+			CSRGraph<Integer> rebuilt = CSRGraphBuilder.fromGraph(graph);
+			ShortestPathTree<Integer> expected = rebuilt.shortestPathTree(0);
+			ShortestPathTree<Integer> fromUpdated = csr.shortestPathTree(0);
+			for (int v = 0; v < 200; v++) {
+				double distance = expected.distance(rebuilt.indexOf(v)); // infinity if unreachable
+				assertEquals(distance, tree.distance(csr.indexOf(v)), 1e-9);
+				assertEquals(distance, fromUpdated.distance(csr.indexOf(v)), 1e-9);
+			}
+		}
+		assertEquals(graph.getEdgeCount(), csr.getEdgeCount());
+	}
+
+	/**
+	 * This tests insertEdge, removeEdge, removeVertex and removeVertices against a map of maps
+	 * on a graph with hubs, checking the edges, weights, edge count and reverse adjacency
+	 */
+	@Test
+	public void AETest7() {
+		Random random = new Random(77);
+		AE_Graph<Integer, Integer> graph = new AE_Graph<>();
+		Map<Integer, Map<Integer, Integer>> expected = new HashMap<>();
+		for (int i = 0; i < 60; i++) {
+			graph.insertVertex(i);
+			expected.put(i, new HashMap<>());
+		}
+		for (int step = 0; step < 4000; step++) {
+			int source = random.nextInt(60);
+			int target = random.nextInt(step % 3 == 0 ? 60 : 5); // a few hubs with many edges entering
+			if (step % 3 == 1)
+				target = random.nextInt(60);
+			if (!expected.containsKey(source) || !expected.containsKey(target))
+				continue;
+			if (random.nextInt(3) > 0) {
+				int weight = random.nextInt(10);
+				Integer old = expected.get(source).put(target, weight);
+				assertEquals(old == null || old != weight, graph.insertEdge(source, target, weight));
+			} else {
+				assertEquals(expected.get(source).remove(target) != null, graph.removeEdge(source, target));
+			}
+			if (step % 500 == 499) {
+				Set<Integer> closed = new HashSet<>(List.of(random.nextInt(60), random.nextInt(60), random.nextInt(60)));
+				int present = 0;
+				for (int v : closed)
+					if (expected.remove(v) != null)
+						present++;
+				for (Map<Integer, Integer> edges : expected.values())
+					edges.keySet().removeAll(closed);
+				assertEquals(present, graph.removeVertices(closed));
+			} else if (step % 500 == 249) {
+				int v = random.nextInt(60);
+				boolean present = expected.remove(v) != null;
+				for (Map<Integer, Integer> edges : expected.values())
+					edges.remove(v);
+				assertEquals(present, graph.removeVertex(v));
+			}
+		}
+
+		int edgeCount = 0;
+		for (int source = 0; source < 60; source++) {
+			assertEquals(expected.containsKey(source), graph.containsVertex(source));
+			for (int target = 0; target < 60; target++) {
+				Integer weight = expected.containsKey(source) ? expected.get(source).get(target) : null;
+				assertEquals(weight != null, graph.containsEdge(source, target));
+				if (weight != null) {
+					assertEquals(weight, graph.getWeight(source, target));
+					edgeCount++;
+				}
+			}
+		}
+		assertEquals(edgeCount, graph.getEdgeCount());
+		int entering = 0;
+		for (AE_Graph<Integer, Integer>.Vertex vertex : graph.vertices.values())
+			for (AE_Graph<Integer, Integer>.Edge edge : vertex.edgesEntering) {
+				assertTrue(edge.target == vertex && graph.vertices.get(edge.source.data) == edge.source);
+				entering++;
+			}
+		assertEquals(edgeCount, entering);
+	}
+
+	/**
+	 * This tests the Connection Scan earliest arrival query against a brute force search on random
+	 * timetables with multi-stop trips, and checks that the profile query returns Pareto optimal
+	 * journeys that answer the earliest arrival for every departure time
+	 */
+	@Test
+	public void AETest8() {
+		Random random = new Random(1017);
+		for (int round = 0; round < 5; round++) {
+			Timetable timetable = randomTimetable(random);
+
+			for (int query = 0; query < 40; query++) {
+				int start = random.nextInt(20);
+				int end = random.nextInt(20);
+				int departure = random.nextInt(20 * 60) * 60;
+				int expected = bruteForceArrival(timetable, start, end, departure);
+				try {
+					Journey journey = timetable.earliestArrival("S" + start, "S" + end, departure);
+					assertEquals(expected, journey.getArrivalTime());
+					assertEquals("S" + end, journey.getStations().get(journey.getStations().size() - 1));
+					for (int leg = 1; leg < journey.getLegCount(); leg++)
+						assertTrue(journey.getLegArrival(leg - 1) <= journey.getLegDeparture(leg));
+				} catch (NoSuchElementException e) {
+					assertEquals(Integer.MAX_VALUE, expected);
+				}
+
+				if (start == end)
+					continue;
+				List<Journey> profile = timetable.profile("S" + start, "S" + end);
+				for (int i = 1; i < profile.size(); i++) {
+					assertTrue(profile.get(i - 1).getDepartureTime() < profile.get(i).getDepartureTime());
+					assertTrue(profile.get(i - 1).getArrivalTime() < profile.get(i).getArrivalTime());
+				}
+				int best = Integer.MAX_VALUE; // earliest arrival leaving at or after departure, read off the profile
+				for (Journey journey : profile)
+					if (journey.getDepartureTime() >= departure)
+						best = Math.min(best, journey.getArrivalTime());
+				assertEquals(expected, best);
+			}
+		}
+	}
+
+	/**
+	 * Earliest arrival by relaxing every connection until nothing changes. A connection can be
+	 * taken from its station once the station is reached in time, or from an earlier connection
+	 * of the same trip that was taken.
+	 */
+	private static int bruteForceArrival(Timetable timetable, int start, int end, int departure) {
+		int[] arrival = new int[timetable.getStationCount()];
+		java.util.Arrays.fill(arrival, Integer.MAX_VALUE);
+		arrival[start] = departure;
+		boolean[] taken = new boolean[timetable.getConnectionCount()];
+		for (boolean changed = true; changed; ) {
+			changed = false;
+			for (int c = 0; c < taken.length; c++) {
+				if (taken[c] || timetable.departureTime(c) < departure)
+					continue;
+				boolean onBoard = false;
+				for (int other = 0; other < taken.length && !onBoard; other++)
+					onBoard = taken[other] && timetable.trip(other) == timetable.trip(c)
+							&& timetable.arrivalTime(other) <= timetable.departureTime(c) && other < c;
+				if (onBoard || arrival[timetable.departureStop(c)] <= timetable.departureTime(c)) {
+					taken[c] = true;
+					changed = true;
+					int stop = timetable.arrivalStop(c);
+					arrival[stop] = Math.min(arrival[stop], timetable.arrivalTime(c));
+				}
+			}
+		}
+		return arrival[end];
+	}
+
+	/**
+	 * This tests the Raptor Pareto queries: on a small timetable where an express is slower than
+	 * two local trains, and on random timetables against a brute force search that rides at most a
+	 * given number of trips; the range query has to agree between its sequential and parallel
+	 * modes and cover the journeys found for every single departure time in the window
+	 */
+	@Test
+	public void AETest9() {
+		TimetableBuilder builder = new TimetableBuilder();
+		builder.addConnection("A", "B", 8 * 3600, 9 * 3600, "express");
+		builder.addConnection("B", "C", 9 * 3600, 10 * 3600, "express");
+		builder.addConnection("C", "D", 10 * 3600, 11 * 3600, "express");
+		builder.addConnection("A", "B", 8 * 3600, 8 * 3600 + 1800, "local1");
+		builder.addConnection("B", "D", 8 * 3600 + 2400, 9 * 3600 + 1800, "local2");
+		Timetable small = builder.build();
+		List<Journey> choices = small.paretoJourneys("A", "D", 7 * 3600, Raptor.DEFAULT_MAX_TRANSFERS);
+		assertEquals(2, choices.size());
+		assertEquals(0, choices.get(0).getTransferCount());
+		assertEquals(List.of("A", "B", "C", "D"), choices.get(0).getStations());
+		assertEquals(11 * 3600, choices.get(0).getArrivalTime());
+		assertEquals(1, choices.get(1).getTransferCount());
+		assertEquals(9 * 3600 + 1800, choices.get(1).getArrivalTime());
+		assertEquals(1, small.paretoJourneys("A", "D", 7 * 3600, 0).size()); // no transfers allowed
+
+		Random random = new Random(1018);
+		for (int round = 0; round < 5; round++) {
+			Timetable timetable = randomTimetable(random);
+			for (int query = 0; query < 40; query++) {
+				int start = random.nextInt(20);
+				int end = random.nextInt(20);
+				if (start == end)
+					continue;
+				int departure = random.nextInt(20 * 60) * 60;
+				List<Journey> journeys = timetable.paretoJourneys("S" + start, "S" + end, departure, 6);
+				int previous = Integer.MAX_VALUE;
+				int i = 0;
+				for (int trips = 1; trips <= 7; trips++) {
+					int expected = bruteForceArrival(timetable, start, end, departure, trips);
+					if (expected >= previous)
+						continue;
+					previous = expected;
+					Journey journey = journeys.get(i++);
+					assertEquals(trips - 1, journey.getTransferCount());
+					assertEquals(expected, journey.getArrivalTime());
+					assertTrue(journey.getDepartureTime() >= departure);
+					for (int leg = 1; leg < journey.getLegCount(); leg++)
+						assertTrue(journey.getLegArrival(leg - 1) <= journey.getLegDeparture(leg));
+				}
+				assertEquals(i, journeys.size());
+				if (!journeys.isEmpty())
+					assertEquals(bruteForceArrival(timetable, start, end, departure),
+							journeys.get(journeys.size() - 1).getArrivalTime());
+
+				int until = departure + 3 * 3600;
+				List<Journey> range = timetable.paretoRange("S" + start, "S" + end, departure, until, 6, false);
+				List<Journey> parallel = timetable.paretoRange("S" + start, "S" + end, departure, until, 6, true);
+				assertEquals(range.toString(), parallel.toString());
+				for (int sample = departure; sample <= until; sample += 1800)
+					for (Journey journey : timetable.paretoJourneys("S" + start, "S" + end, sample, 6)) {
+						if (journey.getDepartureTime() > until)
+							continue;
+						boolean covered = false;
+						for (Journey other : range)
+							covered |= other.getDepartureTime() >= journey.getDepartureTime()
+									&& other.getArrivalTime() <= journey.getArrivalTime()
+									&& other.getTransferCount() <= journey.getTransferCount();
+						assertTrue(covered);
+					}
+			}
+		}
+	}
+
+	/**
+	 * Builds a timetable of 20 stations and 150 trips of up to five connections each
+	 */
+	private static Timetable randomTimetable(Random random) {
+		TimetableBuilder builder = new TimetableBuilder();
+		for (int stop = 0; stop < 20; stop++)
+			builder.addStation("S" + stop);
+		for (int trip = 0; trip < 150; trip++) {
+			int stop = random.nextInt(20);
+			int time = random.nextInt(20 * 60) * 60;
+			for (int leg = random.nextInt(5); leg >= 0; leg--) {
+				int next = random.nextInt(20);
+				int departure = time + random.nextInt(3) * 60; // stays at a station for up to 2 minutes
+				time = departure + (1 + random.nextInt(30)) * 60;
+				builder.addConnection("S" + stop, "S" + next, departure, time, "T" + trip);
+				stop = next;
+			}
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Earliest arrival riding at most the given number of trips, adding one trip per pass: a trip
+	 * can be boarded at any of its connections whose station was reached in time on the previous pass
+	 */
+	private static int bruteForceArrival(Timetable timetable, int start, int end, int departure, int trips) {
+		int[] arrival = new int[timetable.getStationCount()];
+		java.util.Arrays.fill(arrival, Integer.MAX_VALUE);
+		arrival[start] = departure;
+		for (int pass = 0; pass < trips; pass++) {
+			int[] next = arrival.clone();
+			boolean[] onBoard = new boolean[timetable.getTripCount()];
+			for (int c = 0; c < timetable.getConnectionCount(); c++) { // a trip's connections are in order
+				int trip = timetable.trip(c);
+				onBoard[trip] |= arrival[timetable.departureStop(c)] <= timetable.departureTime(c);
+				if (onBoard[trip])
+					next[timetable.arrivalStop(c)] = Math.min(next[timetable.arrivalStop(c)], timetable.arrivalTime(c));
+			}
+			arrival = next;
+		}
+		return arrival[end];
+	}
+
+	/**
+	 * This tests kShortestPaths against every loopless path enumerated on small random graphs:
+	 * the costs have to be the smallest k in order, and every path has to be loopless, distinct
+	 * and made of edges of the graph
+	 */
+	@Test
+	public void AETest10() {
+		Random random = new Random(1019);
+		for (int round = 0; round < 40; round++) {
+			AE_Graph<Integer, Integer> graph = new AE_Graph<>();
+			int n = 4 + random.nextInt(5);
+			for (int v = 0; v < n; v++)
+				graph.insertVertex(v);
+			for (int e = random.nextInt(3 * n); e >= 0; e--)
+				graph.insertEdge(random.nextInt(n), random.nextInt(n), 1 + random.nextInt(5));
+
+			int start = random.nextInt(n);
+			int end = random.nextInt(n);
+			List<Double> costs = new ArrayList<>();
+			allPaths(graph, end, new ArrayList<>(List.of(start)), 0.0, costs);
+			costs.sort(null);
+			int k = 1 + random.nextInt(8);
+			try {
+				List<RouteResult<Integer>> routes = graph.kShortestPaths(start, end, k);
+				assertEquals(Math.min(k, costs.size()), routes.size());
+				Set<List<Integer>> distinct = new HashSet<>();
+				for (int i = 0; i < routes.size(); i++) {
+					RouteResult<Integer> route = routes.get(i);
+					List<Integer> stations = route.getStations();
+					assertEquals(costs.get(i), route.getTotalCost(), 1e-9);
+					assertEquals(stations.size(), new HashSet<>(stations).size());
+					assertTrue(distinct.add(stations));
+					double total = 0;
+					for (int leg = 0; leg + 1 < stations.size(); leg++) {
+						assertEquals(graph.getWeight(stations.get(leg), stations.get(leg + 1)).doubleValue(),
+								route.getLegWeights()[leg], 0.0);
+						total += route.getLegWeights()[leg];
+					}
+					assertEquals(route.getTotalCost(), total, 1e-9);
+				}
+			} catch (NoSuchElementException e) {
+				assertTrue(costs.isEmpty());
+			}
+		}
+	}
+
+	/**
+	 * Adds the cost of every loopless path from the end of prefix to end
+	 */
+	private static void allPaths(AE_Graph<Integer, Integer> graph, int end, List<Integer> prefix, double cost,
+			List<Double> costs) {
+		int last = prefix.get(prefix.size() - 1);
+		if (last == end) {
+			costs.add(cost);
+			return;
+		}
+		for (int next = 0; next < graph.getVertexCount(); next++)
+			if (!prefix.contains(next) && graph.containsEdge(last, next)) {
+				prefix.add(next);
+				allPaths(graph, end, prefix, cost + graph.getWeight(last, next), costs);
+				prefix.remove(prefix.size() - 1);
+			}
+	}
+
+	/**
+	 * This tests the three minimum spanning forest algorithms against a simple O(n^2) Prim on
+	 * small random graphs that are often disconnected: all of them have to find the same total
+	 * weight and one tree per connected part, and primsMinimumSpanningTree has to span only the
+	 * part of its start vertex
+	 */
+	@Test
+	public void AETest11() {
+		Random random = new Random(1020);
+		for (int round = 0; round < 60; round++) {
+			AE_Graph<Integer, Integer> graph = new AE_Graph<>();
+			int n = 1 + random.nextInt(12);
+			for (int v = 0; v < n; v++)
+				graph.insertVertex(v);
+			for (int e = random.nextInt(2 * n); e >= 0; e--)
+				graph.insertEdge(random.nextInt(n), random.nextInt(n), 1 + random.nextInt(4));
+
+			int[] part = new int[n];
+			double[] partWeight = new double[n + 1];
+			int parts = simplePrim(graph, part, partWeight);
+			double total = 0;
+			for (int p = 1; p <= parts; p++)
+				total += partWeight[p];
+			for (MinimumSpanningForest.Algorithm algorithm : MinimumSpanningForest.Algorithm.values()) {
+				MinimumSpanningForest<Integer> forest = graph.minimumSpanningForest(algorithm);
+				assertEquals(total, forest.getTotalWeight(), 1e-9);
+				assertEquals(parts, forest.getTreeCount());
+				assertEquals(n - parts, forest.getEdgeCount());
+				for (int i = 0; i < forest.getEdgeCount(); i++) {
+					assertEquals(graph.getWeight(forest.getSource(i), forest.getTarget(i)).doubleValue(),
+							forest.getWeight(i), 0.0);
+					assertEquals(part[forest.getSource(i)], part[forest.getTarget(i)]);
+				}
+			}
+			int node = random.nextInt(n);
+			assertEquals(partWeight[part[node]], graph.primsMinimumSpanningTree(node), 1e-9);
+		}
+	}
+
+	/**
+	 * Runs Prim's algorithm without a heap on the undirected version of graph, numbering the
+	 * connected parts from 1 in part and adding up the weight of each part's tree in partWeight
+	 *
+	 * @return the number of connected parts
+	 */
+	private static int simplePrim(AE_Graph<Integer, Integer> graph, int[] part, double[] partWeight) {
+		int n = part.length;
+		double[] best = new double[n];
+		int parts = 0;
+		for (int root = 0; root < n; root++) {
+			if (part[root] != 0)
+				continue;
+			parts++;
+			java.util.Arrays.fill(best, Double.POSITIVE_INFINITY);
+			best[root] = 0;
+			while (true) {
+				int u = -1;
+				for (int v = 0; v < n; v++)
+					if (part[v] == 0 && best[v] < Double.POSITIVE_INFINITY && (u < 0 || best[v] < best[u]))
+						u = v;
+				if (u < 0)
+					break;
+				part[u] = parts;
+				partWeight[parts] += best[u];
+				for (int v = 0; v < n; v++) {
+					if (graph.containsEdge(u, v))
+						best[v] = Math.min(best[v], graph.getWeight(u, v));
+					if (graph.containsEdge(v, u))
+						best[v] = Math.min(best[v], graph.getWeight(v, u));
+				}
+			}
+		}
+		return parts;
+	}
+
+	/**
+	 * This tests the contraction hierarchy against DijkstraSearch on random graphs: the same cost
+	 * for every pair, a path made of real edges that adds up to that cost, and no path where
+	 * Dijkstra finds none. A saved hierarchy loads and answers the same, and loading it for a
+	 * graph with a different weight fails
+	 */
+	@Test
+	public void AETest12() throws java.io.IOException {
+		Random random = new Random(1021);
+		java.nio.file.Path file = java.nio.file.Files.createTempFile("hierarchy", ".ch");
+		try {
+			for (int round = 0; round < 30; round++) {
+				int n = 2 + random.nextInt(60);
+				CSRGraph<Integer> graph = CSRGraphBuilder.fromGraph(randomGraph(random, n, 1 + random.nextInt(3)));
+				ContractionHierarchy<Integer> hierarchy = ContractionHierarchy.build(graph);
+				hierarchy.save(file);
+				ContractionHierarchy<Integer> loaded = ContractionHierarchy.load(file, graph);
+				DijkstraSearch search = new DijkstraSearch(n);
+				for (int query = 0; query < 40; query++) {
+					int start = random.nextInt(n);
+					int end = random.nextInt(n);
+					boolean reached = search.run(graph, start, end);
+					Integer from = graph.vertexData(start);
+					Integer to = graph.vertexData(end);
+					for (ContractionHierarchy<Integer> tested : List.of(hierarchy, loaded)) {
+						try {
+							double cost = tested.getPathCost(from, to);
+							assertTrue(reached);
+							assertEquals(search.distance(end), cost, 1e-9);
+							List<Integer> path = tested.shortestPath(from, to);
+							assertEquals(from, path.get(0));
+							assertEquals(to, path.get(path.size() - 1));
+							double total = 0;
+							for (int leg = 0; leg + 1 < path.size(); leg++) {
+								int edge = graph.findEdge(graph.indexOf(path.get(leg)), graph.indexOf(path.get(leg + 1)));
+								assertTrue(edge >= 0);
+								total += graph.edgeWeight(edge);
+							}
+							assertEquals(cost, total, 1e-9);
+						} catch (NoSuchElementException e) {
+							assertTrue(!reached);
+						}
+					}
+				}
+
+				for (int v = 0; v < n; v++) {
+					if (graph.firstEdge(v) < graph.endEdge(v)) {
+						Integer target = graph.vertexData(graph.edgeTarget(graph.firstEdge(v)));
+						CSRGraph<Integer> delayed = graph.withUpdatedWeights(List.of(
+								new EdgeUpdate<>(graph.vertexData(v), target, graph.edgeWeight(graph.firstEdge(v)) + 1)));
+						try {
+							ContractionHierarchy.load(file, delayed);
+							assertTrue(false);
+						} catch (java.io.IOException e) {
+							// the hierarchy was built for the old weight
+						}
+						break;
+					}
+				}
+			}
+		} finally {
+			java.nio.file.Files.delete(file);
+		}
+	}
+
+	/**
+	 * This tests the travel time matrix against a shortestPathTree per source on sparse random
+	 * graphs with unreachable pairs, including the predecessors. A matrix written with writeTo
+	 * reads back row by row with infinity for unreachable pairs, and readRow rejects rows out of
+	 * range and files that are not matrix files
+	 */
+	@Test
+	public void AETest13() throws java.io.IOException {
+		Random random = new Random(13);
+		for (int round = 0; round < 20; round++) {
+			AE_Graph<Integer, Double> graph = randomGraph(random, 1 + random.nextInt(60), 1);
+			CSRGraph<Integer> csr = CSRGraphBuilder.fromGraph(graph);
+			int n = csr.getVertexCount();
+			TravelTimeMatrix matrix = csr.allPairsMatrix(true);
+			TravelTimeMatrix costsOnly = TravelTimeMatrix.compute(csr);
+			assertEquals(n, matrix.size());
+			assertTrue(matrix.hasPredecessors());
+			assertTrue(!costsOnly.hasPredecessors());
+			for (int source = 0; source < n; source++) {
+				ShortestPathTree<Integer> tree = csr.shortestPathTree(csr.vertexData(source));
+				float[] row = matrix.row(source);
+				for (int target = 0; target < n; target++) {
+					float expected = (float) tree.distance(target);
+					assertEquals(expected, matrix.get(source, target), 0f);
+					assertEquals(expected, costsOnly.get(source, target), 0f);
+					assertEquals(expected, row[target], 0f);
+					assertEquals(tree.parent(target), matrix.predecessor(source, target));
+				}
+			}
+			try {
+				costsOnly.predecessor(0, 0);
+				assertTrue(false);
+			} catch (IllegalStateException e) {
+			}
+
+			java.nio.file.Path file = java.nio.file.Files.createTempFile("matrix", ".ttm");
+			try {
+				TravelTimeMatrix.writeTo(csr, file);
+				assertEquals(8 + 4L * n * n, java.nio.file.Files.size(file));
+				for (int source = 0; source < n; source++)
+					assertTrue(java.util.Arrays.equals(matrix.row(source), TravelTimeMatrix.readRow(file, source)));
+				for (int source : new int[] {-1, n}) {
+					try {
+						TravelTimeMatrix.readRow(file, source);
+						assertTrue(false);
+					} catch (IndexOutOfBoundsException e) {
+					}
+				}
+			} finally {
+				java.nio.file.Files.delete(file);
+			}
+		}
+
+		// a sink that nothing leaves has infinity to every other station, in memory and on file
+		AE_Graph<Integer, Double> chain = new AE_Graph<>();
+		for (int i = 0; i < 3; i++)
+			chain.insertVertex(i);
+		chain.insertEdge(0, 1, 2.5);
+		chain.insertEdge(1, 2, 1.0);
+		CSRGraph<Integer> csr = CSRGraphBuilder.fromGraph(chain);
+		java.nio.file.Path file = java.nio.file.Files.createTempFile("matrix", ".ttm");
+		try {
+			TravelTimeMatrix.writeTo(csr, file);
+			float[] fromFirst = TravelTimeMatrix.readRow(file, csr.indexOf(0));
+			float[] fromLast = TravelTimeMatrix.readRow(file, csr.indexOf(2));
+			assertEquals(3.5f, fromFirst[csr.indexOf(2)], 0f);
+			assertEquals(Float.POSITIVE_INFINITY, fromLast[csr.indexOf(0)], 0f);
+			assertEquals(Float.POSITIVE_INFINITY, fromLast[csr.indexOf(1)], 0f);
+			assertEquals(0f, fromLast[csr.indexOf(2)], 0f);
+
+			java.nio.file.Files.write(file, new byte[] {'n', 'o', 't', ' ', 'a', ' ', 'm', 'a', 't', 'r', 'i', 'x'});
+			try {
+				TravelTimeMatrix.readRow(file, 0);
+				assertTrue(false);
+			} catch (java.io.UncheckedIOException e) {
+				assertTrue(e.getMessage().contains("Not a travel time matrix file"));
+			}
+			java.nio.file.Files.write(file, new byte[] {1, 2});
+			try {
+				TravelTimeMatrix.readRow(file, 0);
+				assertTrue(false);
+			} catch (java.io.UncheckedIOException e) {
+			}
+		} finally {
+			java.nio.file.Files.delete(file);
+		}
+	}
+
+	/**
+	 * Sets a private int field, used to move generation counters close to their wraparound
+	 */
+	private static void setIntField(Object target, String name, int value) throws ReflectiveOperationException {
+		java.lang.reflect.Field field = target.getClass().getDeclaredField(name);
+		field.setAccessible(true);
+		field.setInt(target, value);
+	}
+
+	/**
+	 * This tests IndexedMinHeap against a java.util.PriorityQueue with random inserts, decreased
+	 * and increased keys, pops and clears, and that ids from before a generation wraparound are
+	 * not in the heap after it
+	 */
+	@Test
+	public void AETest14() throws ReflectiveOperationException {
+		Random random = new Random(14);
+		int capacity = 300;
+		IndexedMinHeap heap = new IndexedMinHeap(capacity);
+		Map<Integer, Double> keys = new HashMap<>();
+		java.util.PriorityQueue<Integer> expected = new java.util.PriorityQueue<>(
+				(a, b) -> Double.compare(keys.get(a), keys.get(b)));
+		for (int step = 0; step < 100000; step++) {
+			int action = random.nextInt(100);
+			if (action < 55) {
+				int id = random.nextInt(capacity);
+				double key = random.nextDouble() * 1000;
+				Double old = keys.get(id);
+				boolean lowered = old == null || key < old;
+				assertEquals(lowered, heap.pushOrDecrease(id, key));
+				if (lowered) {
+					expected.remove(id);
+					keys.put(id, key);
+					expected.add(id);
+				}
+			} else if (action < 99) {
+				if (expected.isEmpty()) {
+					assertTrue(heap.isEmpty());
+					continue;
+				}
+				int id = expected.poll();
+				assertEquals(keys.get(id), heap.minKey(), 0.0);
+				assertEquals(id, heap.peek());
+				assertEquals(id, heap.pop());
+				keys.remove(id);
+			} else {
+				heap.clear();
+				expected.clear();
+				keys.clear();
+				assertEquals(0, heap.getPushCount());
+				assertEquals(0, heap.getPopCount());
+			}
+			assertEquals(expected.size(), heap.size());
+			int probe = random.nextInt(capacity);
+			assertEquals(keys.containsKey(probe), heap.contains(probe));
+		}
+		while (!expected.isEmpty())
+			assertEquals((int) expected.poll(), heap.pop());
+		try {
+			heap.pop();
+			assertTrue(false);
+		} catch (NoSuchElementException e) {
+		}
+
+		// the stamps written in generation 1 must not look current when the counter wraps back to 1
+		heap = new IndexedMinHeap(10);
+		for (int id = 0; id < 10; id++)
+			heap.pushOrDecrease(id, id);
+		setIntField(heap, "generation", -1);
+		heap.clear();
+		for (int id = 0; id < 10; id++)
+			assertTrue(!heap.contains(id));
+		assertTrue(heap.pushOrDecrease(5, 7.0));
+		assertTrue(heap.pushOrDecrease(3, 9.0));
+		assertEquals(5, heap.pop());
+		assertEquals(3, heap.pop());
+		assertTrue(heap.isEmpty());
+	}
+
+	/**
+	 * This tests DijkstraSearch: a search for one target stops once it is settled, a search for
+	 * several targets stops once the last distinct one is settled, one search reused for many
+	 * queries answers each like a fresh shortestPathTree, and nothing reached before a
+	 * generation wraparound looks reached after it
+	 */
+	@Test
+	public void AETest15() throws ReflectiveOperationException {
+		CSRGraphBuilder<Integer> builder = new CSRGraphBuilder<>();
+		for (int i = 0; i < 10; i++)
+			builder.addVertex(i);
+		for (int i = 0; i < 9; i++)
+			builder.addEdge(i, i + 1, 1.0);
+		CSRGraph<Integer> line = builder.build();
+		DijkstraSearch search = new DijkstraSearch(0); // grows on first use
+		assertTrue(search.run(line, 0, 3));
+		assertEquals(4, search.getSettledCount());
+		assertEquals(3.0, search.distance(3), 0.0);
+		assertEquals(List.of(0, 1, 2, 3), search.pathTo(line, 3));
+		assertTrue(!search.isReached(4)); // the search stops before relaxing the edges of the target
+		assertEquals(Double.POSITIVE_INFINITY, search.distance(4), 0.0);
+		assertEquals(-1, search.parent(4));
+		assertEquals(2, search.run(line, 2, new int[] {9, 4, 6, 4, 6}, 1, 5));
+		assertEquals(5, search.getSettledCount()); // vertices 2 to 6
+		assertEquals(4.0, search.distance(6), 0.0);
+		assertTrue(!search.isReached(8));
+		assertEquals(1, search.run(line, 5, new int[] {1, 7}, 0, 2));
+		assertTrue(search.isSettled(9)); // vertex 1 is unreachable, so the whole graph is searched
+		assertTrue(!search.isReached(1));
+		assertEquals(0, search.run(line, 5, new int[] {1}, 0, 0));
+		assertEquals(0, search.getSettledCount()); // no targets, no search
+		assertTrue(!search.run(line, 9, 0));
+
+		Random random = new Random(15);
+		for (int round = 0; round < 20; round++) {
+			CSRGraph<Integer> csr = CSRGraphBuilder.fromGraph(randomGraph(random, 1 + random.nextInt(150), 2));
+			int n = csr.getVertexCount();
+			for (int query = 0; query < 30; query++) {
+				int source = random.nextInt(n);
+				int target = random.nextInt(n);
+				ShortestPathTree<Integer> tree = csr.shortestPathTree(csr.vertexData(source));
+				assertEquals(tree.distance(target) < Double.POSITIVE_INFINITY, search.run(csr, source, target));
+				assertEquals(tree.distance(target), search.distance(target), 1e-9);
+				if (search.isReached(target))
+					assertEquals(tree.shortestPath(csr.vertexData(target)), search.pathTo(csr, target));
+				search.run(csr, source, -1);
+				for (int v = 0; v < n; v++) {
+					assertEquals(tree.distance(v), search.distance(v), 1e-9);
+					assertEquals(tree.parent(v), search.parent(v));
+				}
+			}
+		}
+
+		// everything reached in generation 1 must not look reached when the counter wraps back to 1
+		search = new DijkstraSearch(10);
+		search.run(line, 0, -1);
+		assertTrue(search.isSettled(9));
+		setIntField(search, "generation", -1);
+		assertEquals(0, search.run(line, 9, new int[] {0, 5}, 0, 2));
+		for (int v = 0; v < 9; v++) {
+			assertTrue(!search.isReached(v));
+			assertTrue(!search.isSettled(v));
+		}
+		assertEquals(0.0, search.distance(9), 0.0);
+		assertTrue(search.run(line, 4, 7));
+		assertEquals(4, search.getSettledCount());
+	}
+
+	/**
+	 * This tests CSRGraphBuilder and CSRGraph against a map of maps: findEdge finds exactly the
+	 * added edges with the weight added last when an edge repeats, reverse() has every edge
+	 * turned around with the same weight, and fromGraph keeps the vertices, edges and weights of
+	 * the AE_Graph it converts
+	 */
+	@Test
+	public void AETest16() {
+		Random random = new Random(16);
+		for (int round = 0; round < 30; round++) {
+			int n = 4 + random.nextInt(60);
+			CSRGraphBuilder<Integer> builder = new CSRGraphBuilder<>();
+			for (int i = 0; i < n; i++)
+				assertEquals(i, builder.addVertex(i * 7));
+			assertEquals(3, builder.addVertex(21)); // adding a vertex again returns its id
+			Map<Integer, Map<Integer, Double>> expected = new HashMap<>();
+			for (int i = 0; i < n * 4; i++) {
+				int source = random.nextInt(n);
+				int target = random.nextInt(random.nextBoolean() ? n : 3); // repeats
+				double weight = random.nextInt(20);
+				builder.addEdge(source, target, weight);
+				expected.computeIfAbsent(source, v -> new HashMap<>()).put(target, weight);
+			}
+			CSRGraph<Integer> csr = builder.build();
+			CSRGraph<Integer> reversed = csr.reverse();
+			assertTrue(reversed == csr.reverse());
+			assertTrue(reversed.reverse() == csr);
+			assertEquals(n, csr.getVertexCount());
+			assertEquals(n, reversed.getVertexCount());
+			int edges = 0;
+			for (int source = 0; source < n; source++) {
+				assertEquals(source * 7, (int) csr.vertexData(source));
+				assertEquals(source, csr.indexOf(source * 7));
+				assertEquals(source, reversed.indexOf(source * 7));
+				Map<Integer, Double> row = expected.getOrDefault(source, new HashMap<>());
+				edges += row.size();
+				assertEquals(row.size(), csr.endEdge(source) - csr.firstEdge(source));
+				for (int target = 0; target < n; target++) {
+					int edge = csr.findEdge(source, target);
+					int back = reversed.findEdge(target, source);
+					if (row.containsKey(target)) {
+						assertEquals(target, csr.edgeTarget(edge));
+						assertEquals(row.get(target), csr.edgeWeight(edge), 0.0);
+						assertEquals(source, reversed.edgeTarget(back));
+						assertEquals(row.get(target), reversed.edgeWeight(back), 0.0);
+						assertEquals(row.get(target), csr.getWeight(source * 7, target * 7), 0.0);
+					} else {
+						assertEquals(-1, edge);
+						assertEquals(-1, back);
+						assertTrue(!csr.containsEdge(source * 7, target * 7));
+					}
+				}
+			}
+			assertEquals(edges, csr.getEdgeCount());
+			assertEquals(edges, reversed.getEdgeCount());
+			assertEquals(-1, csr.indexOf(-1));
+		}
+
+		for (int round = 0; round < 20; round++) {
+			AE_Graph<Integer, Double> graph = randomGraph(random, 1 + random.nextInt(80), 3);
+			CSRGraph<Integer> csr = CSRGraphBuilder.fromGraph(graph);
+			int n = graph.getVertexCount();
+			assertEquals(n, csr.getVertexCount());
+			assertEquals(graph.getEdgeCount(), csr.getEdgeCount());
+			for (int id = 0; id < n; id++)
+				assertEquals(id, csr.indexOf(csr.vertexData(id)));
+			for (int source = 0; source < n; source++) {
+				assertTrue(csr.containsVertex(source));
+				for (int target = 0; target < n; target++) {
+					assertEquals(graph.containsEdge(source, target), csr.containsEdge(source, target));
+					if (graph.containsEdge(source, target))
+						assertEquals(graph.getWeight(source, target), csr.getWeight(source, target), 0.0);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,629 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.jupiter.api.Test;
+
+
+class BackendDeveloperTests {
+
+	/**
+	 * This tests that asking for the path and then the length of the same route only computes the
+	 * route once, and that the cached answer is the same as the computed one
+	 */
+	@Test
+	public void BDTest1() {
+		TrainBackend tempBackend = new TrainBackend();
+		RouteCache<?> cache = tempBackend.getRouteCache();
+
+		List<String> path = tempBackend.getShortestPath("Milwaukee", "LA");
+		double length = tempBackend.getShortestPathLength("Milwaukee", "LA");
+
+		assertEquals("[Milwaukee, Chicago, Atlanta, Dallas, Denver, LA]", path.toString());
+		assertEquals(62.0, length, 0.0);
+		assertEquals(1, cache.getMissCount());
+		assertEquals(1, cache.getHitCount());
+		assertEquals(path, tempBackend.getShortestPath("Milwaukee", "LA"));
+		assertEquals(2, cache.getHitCount());
+	}
+
+	/**
+	 * This tests that changing the network through insertEdge, removeEdge and removeVertex drops cached
+	 * routes, so the next query sees the change
+	 */
+	@Test
+	public void BDTest2() {
+		TrainBackend tempBackend = new TrainBackend();
+		assertEquals(62.0, tempBackend.getShortestPathLength("Milwaukee", "LA"), 0.0);
+
+		assertTrue(tempBackend.insertEdge("Chicago", "Denver", 5));
+		assertEquals("[Milwaukee, Chicago, Denver, LA]", tempBackend.getShortestPath("Milwaukee", "LA").toString());
+		assertEquals(27.0, tempBackend.getShortestPathLength("Milwaukee", "LA"), 0.0);
+
+		assertTrue(tempBackend.removeEdge("Chicago", "Denver"));
+		assertEquals(62.0, tempBackend.getShortestPathLength("Milwaukee", "LA"), 0.0);
+
+		assertTrue(tempBackend.removeVertex("Minneapolis"));
+		assertEquals(7, tempBackend.getStations().length);
+		assertEquals(62.0, tempBackend.getShortestPathLength("Milwaukee", "LA"), 0.0);
+
+		assertTrue(tempBackend.removeVertices(Set.of("Albany", "Atlanta", "Boston")));
+		assertFalse(tempBackend.removeVertices(Set.of("Albany")));
+		assertEquals(5, tempBackend.getStations().length);
+		try {
+			tempBackend.getShortestPath("Milwaukee", "LA");
+			assertTrue(false); // Atlanta was the only way south
+		} catch (NoSuchElementException e) {
+		}
+	}
+
+	/**
+	 * This tests that many threads can query one backend while another thread keeps adding and
+	 * removing a connection. Every answer has to be the right one for one of the two networks.
+	 */
+	@Test
+	public void BDTest3() throws InterruptedException {
+		TrainBackend tempBackend = new TrainBackend();
+		String[] stations = tempBackend.getStations();
+		Map<String, Double> without = allCosts(tempBackend.getNetwork(), stations);
+		tempBackend.insertEdge("Chicago", "Denver", 5);
+		Map<String, Double> with = allCosts(tempBackend.getNetwork(), stations);
+		tempBackend.removeEdge("Chicago", "Denver");
+
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		List<Thread> readers = new ArrayList<>();
+		for (int t = 0; t < Math.max(4, Runtime.getRuntime().availableProcessors()); t++) {
+			Random random = new Random(t);
+			readers.add(new Thread(() -> {
+				try {
+					for (int query = 0; query < 5000; query++) {
+						String origin = stations[random.nextInt(stations.length)];
+						String destination = stations[random.nextInt(stations.length)];
+						Double cost;
+						try {
+							cost = tempBackend.route(origin, destination).getTotalCost();
+						} catch (NoSuchElementException e) {
+							cost = null;
+						}
+						String key = origin + "->" + destination;
+						assertTrue(key + " cost " + cost, equal(cost, without.get(key)) || equal(cost, with.get(key)));
+					}
+				} catch (Throwable e) {
+					failure.compareAndSet(null, e);
+				}
+			}));
+		}
+		Thread writer = new Thread(() -> {
+			while (!Thread.currentThread().isInterrupted()) {
+				tempBackend.insertEdge("Chicago", "Denver", 5);
+				tempBackend.removeEdge("Chicago", "Denver");
+			}
+		});
+		writer.start();
+		for (Thread reader : readers)
+			reader.start();
+		for (Thread reader : readers)
+			reader.join();
+		writer.interrupt();
+		writer.join();
+		if (failure.get() != null)
+			throw new AssertionError(failure.get());
+	}
+
+	/**
+	 * This tests the station index: exact names are accepted, prefixes complete to stations in
+	 * alphabetical order ignoring case, and mistyped names suggest the closest stations
+	 */
+	@Test
+	public void BDTest4() {
+		TrainBackend tempBackend = new TrainBackend();
+
+		assertTrue(tempBackend.isStation("Milwaukee"));
+		assertFalse(tempBackend.isStation("milwaukee"));
+		assertFalse(tempBackend.isStation("Boston"));
+
+		assertEquals(List.of("Milwaukee", "Minneapolis"), tempBackend.completeStation("m", 10));
+		assertEquals(List.of("Milwaukee"), tempBackend.completeStation("Mi", 1));
+		assertEquals(List.of(), tempBackend.completeStation("Boston", 10));
+
+		assertEquals(List.of("Milwaukee"), tempBackend.suggestStations("milwaukee", 3)); // case only
+		assertEquals(List.of("Chicago"), tempBackend.suggestStations("Chicgao", 3)); // swapped
+		assertEquals(List.of("Denver"), tempBackend.suggestStations("Denvr", 3)); // missing
+		assertEquals(List.of("Dallas"), tempBackend.suggestStations("Dalas", 3));
+		assertEquals(List.of("Atlanta"), tempBackend.suggestStations("Atlantaa", 3)); // extra
+		assertEquals(List.of(), tempBackend.suggestStations("Boston", 3));
+
+		// the index follows changes to the stations
+		assertTrue(tempBackend.removeVertex("Minneapolis"));
+		assertFalse(tempBackend.isStation("Minneapolis"));
+		assertEquals(List.of("Milwaukee"), tempBackend.completeStation("m", 10));
+	}
+
+	/**
+	 * This tests replaying a delay feed: the new travel time is used right away, cached routes
+	 * that do not use the delayed connection are kept, and a shorter travel time drops them all
+	 */
+	@Test
+	public void BDTest5() throws IOException {
+		TrainBackend tempBackend = new TrainBackend();
+		RouteCache<?> cache = tempBackend.getRouteCache();
+		assertEquals(62.0, tempBackend.getShortestPathLength("Milwaukee", "LA"), 0.0);
+		assertEquals(15.0, tempBackend.getShortestPathLength("Albany", "Chicago"), 0.0);
+		long version = tempBackend.getNetwork().getVersion();
+
+		Path feed = Files.createTempFile("delays", ".gv");
+		try {
+			Files.write(feed, "digraph delays {\n  Dallas -> Denver [weight=30]\n  Boston -> Denver [weight=1]\n}\n"
+					.getBytes(StandardCharsets.UTF_8));
+			assertTrue(tempBackend.replayDelays(feed));
+			assertFalse(tempBackend.replayDelays(feed)); // nothing changes the second time
+		} finally {
+			Files.delete(feed);
+		}
+		assertEquals(version + 1, tempBackend.getNetwork().getVersion());
+		assertEquals(1, cache.size());
+		long hits = cache.getHitCount();
+		assertEquals(15.0, tempBackend.getShortestPathLength("Albany", "Chicago"), 0.0);
+		assertEquals(hits + 1, cache.getHitCount());
+		assertEquals(82.0, tempBackend.getShortestPathLength("Milwaukee", "LA"), 0.0);
+		assertEquals(10.0, tempBackend.getShortestPathLength("Denver", "Dallas"), 0.0); // only one direction
+
+		assertTrue(tempBackend.updateWeights(List.of(new EdgeUpdate<>("Dallas", "Denver", 5.0))));
+		assertEquals(0, cache.size());
+		assertEquals(57.0, tempBackend.getShortestPathLength("Milwaukee", "LA"), 0.0);
+
+		// edits made afterwards start from the updated travel times
+		assertTrue(tempBackend.insertEdge("Albany", "Milwaukee", 1));
+		assertEquals(57.0, tempBackend.getShortestPathLength("Milwaukee", "LA"), 0.0);
+	}
+
+	/**
+	 * This tests routing on the timetable derived from the network, which runs an hourly train on
+	 * every connection: leaving on the hour takes as long as the shortest path, leaving half past
+	 * waits for the next train, the profile has a journey for every hour, and the Pareto queries
+	 * count the transfers
+	 */
+	@Test
+	public void BDTest6() {
+		TrainBackend tempBackend = new TrainBackend();
+		tempBackend.setRoutingMode(RoutingMode.TIMETABLE);
+		assertEquals(RoutingMode.TIMETABLE, tempBackend.getRoutingMode());
+		assertEquals(62.0, tempBackend.getShortestPathLength("Milwaukee", "LA"), 0.0);
+		assertEquals(List.of("Milwaukee", "Chicago", "Atlanta", "Dallas", "Denver", "LA"),
+				tempBackend.getShortestPath("Milwaukee", "LA"));
+
+		RouteResult<String> late = tempBackend.route("Milwaukee", "LA", 1800);
+		assertEquals(62.5, late.getTotalCost(), 0.0);
+		List<Journey> profile = tempBackend.profile("Milwaukee", "LA");
+		assertFalse(profile.isEmpty());
+		assertEquals(0, profile.get(0).getDepartureTime());
+		assertEquals(62 * Timetable.SECONDS_PER_HOUR, profile.get(0).getArrivalTime());
+		for (int i = 1; i < profile.size(); i++)
+			assertEquals(Timetable.SECONDS_PER_HOUR, profile.get(i).getDepartureTime() - profile.get(i - 1).getDepartureTime());
+
+		try {
+			tempBackend.route("Milwaukee", "LA", 80 * Timetable.SECONDS_PER_HOUR); // after the last train
+			assertTrue(false);
+		} catch (NoSuchElementException e) {
+			// expected
+		}
+
+		// every derived train runs a single connection, so the only route to LA changes trains four times
+		List<Journey> choices = tempBackend.paretoJourneys("Milwaukee", "LA", 1800);
+		assertEquals(1, choices.size());
+		assertEquals(4, choices.get(0).getTransferCount());
+		assertEquals(63 * Timetable.SECONDS_PER_HOUR, choices.get(0).getArrivalTime());
+		List<Journey> window = tempBackend.paretoJourneys("Milwaukee", "LA", 0, 5 * Timetable.SECONDS_PER_HOUR, true);
+		assertEquals(6, window.size());
+		assertEquals(5 * Timetable.SECONDS_PER_HOUR, window.get(5).getDepartureTime());
+
+		tempBackend.setRoutingMode(RoutingMode.DIJKSTRA);
+		assertEquals(62.0, tempBackend.getShortestPathLength("Milwaukee", "LA"), 0.0);
+	}
+
+	/**
+	 * This tests the alternative routes: from Chicago to Milwaukee there is the direct train and
+	 * the detour through Minneapolis, and no third route that does not visit a station twice
+	 */
+	@Test
+	public void BDTest7() {
+		TrainBackend tempBackend = new TrainBackend();
+		List<RouteResult<String>> routes = tempBackend.alternativeRoutes("Chicago", "Milwaukee", 3);
+		assertEquals(2, routes.size());
+		assertEquals(List.of("Chicago", "Milwaukee"), routes.get(0).getStations());
+		assertEquals(2.0, routes.get(0).getTotalCost(), 0.0);
+		assertEquals(List.of("Chicago", "Minneapolis", "Milwaukee"), routes.get(1).getStations());
+		assertEquals(10.0, routes.get(1).getTotalCost(), 0.0);
+		assertEquals(1, tempBackend.alternativeRoutes("Minneapolis", "LA", 5).size());
+		assertEquals(List.of("LA"), tempBackend.alternativeRoutes("LA", "LA", 5).get(0).getStations());
+	}
+
+	/**
+	 * This tests the query metrics: a searched query counts its settled vertices, heap operations
+	 * and relaxed edges, a repeated one is a cache hit and a failed one is counted, the JMX view
+	 * reports the same numbers, and latency percentiles are within the histogram's precision
+	 */
+	@Test
+	public void BDTest8() throws Exception {
+		TrainBackend tempBackend = new TrainBackend();
+		RoutingMetrics metrics = tempBackend.getMetrics();
+		long queries = metrics.getQueryCount();
+		long hits = metrics.getCacheHitCount();
+		long misses = metrics.getCacheMissCount();
+		long failures = metrics.getFailedQueryCount();
+		long settled = metrics.getSettledVertexCount();
+		long pops = metrics.getHeapPopCount();
+		long relaxed = metrics.getRelaxedEdgeCount();
+
+		RouteResult<String> route = tempBackend.route("Milwaukee", "LA");
+		tempBackend.route("Milwaukee", "LA");
+		try {
+			tempBackend.route("Milwaukee", "Nowhere");
+			assertTrue(false);
+		} catch (NoSuchElementException e) {
+			// counted as a failed query
+		}
+		assertEquals(queries + 3, metrics.getQueryCount());
+		assertEquals(hits + 1, metrics.getCacheHitCount());
+		assertEquals(misses + 2, metrics.getCacheMissCount());
+		assertEquals(failures + 1, metrics.getFailedQueryCount());
+		assertEquals(settled + route.getSettledCount(), metrics.getSettledVertexCount());
+		assertEquals(pops + route.getSettledCount(), metrics.getHeapPopCount());
+		assertTrue(metrics.getRelaxedEdgeCount() > relaxed);
+		assertTrue(metrics.getLatencyP50Micros() <= metrics.getLatencyP99Micros());
+		assertTrue(metrics.getLatencyP99Micros() <= metrics.getMaxLatencyMicros());
+		assertTrue(metrics.dump().contains("cache hits " + metrics.getCacheHitCount()));
+
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		assertEquals(metrics.getQueryCount(), server.getAttribute(new ObjectName(RoutingMetrics.OBJECT_NAME), "QueryCount"));
+
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int micros = 1; micros <= 1000; micros++)
+			histogram.record(micros * 1000L);
+		assertEquals(500_000, histogram.getPercentile(50), 500_000 / 32.0);
+		assertEquals(990_000, histogram.getPercentile(99), 990_000 / 32.0);
+		assertEquals(1_000_000, histogram.getPercentile(100));
+		assertEquals(500_500, histogram.getMean(), 1e-6);
+	}
+
+	/**
+	 * Returns the shortest path cost between every pair of stations, null where there is no path
+	 */
+	private static Map<String, Double> allCosts(NetworkSnapshot network, String[] stations) {
+		Map<String, Double> costs = new HashMap<>();
+		for (String origin : stations) {
+			for (String destination : stations) {
+				try {
+					RouteResult<String> route = network.route(origin, destination, RoutingMode.DIJKSTRA);
+					costs.put(origin + "->" + destination, route.getTotalCost());
+				} catch (NoSuchElementException e) {
+					costs.put(origin + "->" + destination, null);
+				}
+			}
+		}
+		return costs;
+	}
+
+	private static boolean equal(Double a, Double b) {
+		return a == null ? b == null : a.equals(b);
+	}
+
+	/**
+	 * This tests the batch queries: every pair of stations in random order plus pairs with an
+	 * unknown station come back in input order with the same routes as single queries, or null
+	 * where there is none, also when the batch is answered in several small windows. Every query
+	 * of the batch is counted in the metrics, together with the work of the group searches
+	 */
+	@Test
+	public void BDTest9() {
+		TrainBackend tempBackend = new TrainBackend();
+		List<OriginDestination<String>> queries = new ArrayList<>();
+		for (String origin : tempBackend.getStations())
+			for (String destination : tempBackend.getStations())
+				queries.add(new OriginDestination<>(origin, destination));
+		queries.add(new OriginDestination<>("Nowhere", "LA"));
+		queries.add(new OriginDestination<>("LA", "Nowhere"));
+		java.util.Collections.shuffle(queries, new Random(3));
+
+		RoutingMetrics metrics = tempBackend.getMetrics();
+		long recorded = metrics.getQueryCount();
+		long failed = metrics.getFailedQueryCount();
+		long settled = metrics.getSettledVertexCount();
+		List<OriginDestination<String>> seen = new ArrayList<>();
+		List<RouteResult<String>> routes = new ArrayList<>();
+		tempBackend.routeBatch(queries, (query, route) -> {
+			seen.add(query);
+			routes.add(route);
+		});
+		assertEquals(queries, seen);
+		assertEquals(recorded + queries.size(), metrics.getQueryCount());
+		assertEquals(failed + routes.stream().filter(route -> route == null).count(), metrics.getFailedQueryCount());
+		assertTrue(metrics.getSettledVertexCount() > settled); // the work of the group searches is flushed
+		BatchRouter<String> windowed = new BatchRouter<>(tempBackend.getNetwork().getGraph(), queries.iterator(), 3);
+		for (int i = 0; i < queries.size(); i++) {
+			OriginDestination<String> query = queries.get(i);
+			RouteResult<String> expected = null;
+			try {
+				expected = tempBackend.route(query.getOrigin(), query.getDestination());
+			} catch (NoSuchElementException e) {
+				// no route, the batch answers null
+			}
+			RouteResult<String> small = windowed.next();
+			assertEquals(query, windowed.lastQuery());
+			if (expected == null) {
+				assertEquals(null, routes.get(i));
+				assertEquals(null, small);
+			} else {
+				assertEquals(expected.getStations(), routes.get(i).getStations());
+				assertEquals(expected.getTotalCost(), routes.get(i).getTotalCost(), 1e-9);
+				assertEquals(expected.getTotalCost(), small.getTotalCost(), 1e-9);
+			}
+		}
+		assertFalse(windowed.hasNext());
+	}
+
+	/**
+	 * This tests the route server on localhost: a route comes back as JSON, an unknown station
+	 * is a 404 and a missing parameter a 400, and a batch streams one line per query in order.
+	 * A malformed line after the first window of a batch ends the stream with an error line
+	 */
+	@Test
+	public void BDTest10() throws Exception {
+		RouteServer server = new RouteServer(new TrainBackend(), 0, 2, 4);
+		server.start();
+		try {
+			String base = "http://localhost:" + server.getPort();
+			HttpClient client = HttpClient.newHttpClient();
+			HttpResponse<String> route = client.send(HttpRequest.newBuilder(
+					URI.create(base + "/route?from=Chicago&to=LA")).build(),
+					HttpResponse.BodyHandlers.ofString());
+			assertEquals(200, route.statusCode());
+			assertTrue(route.body().contains("\"stations\":[\"Chicago\",\"Atlanta\",\"Dallas\",\"Denver\",\"LA\"]"));
+			assertTrue(route.body().contains("\"totalCost\":60.0"));
+			assertEquals(404, client.send(HttpRequest.newBuilder(
+					URI.create(base + "/route?from=Chicago&to=Nowhere")).build(),
+					HttpResponse.BodyHandlers.discarding()).statusCode());
+			assertEquals(400, client.send(HttpRequest.newBuilder(
+					URI.create(base + "/route?from=Chicago")).build(),
+					HttpResponse.BodyHandlers.discarding()).statusCode());
+
+			HttpResponse<String> batch = client.send(HttpRequest.newBuilder(
+					URI.create(base + "/batch")).POST(HttpRequest.BodyPublishers.ofString(
+					"Chicago\tLA\nFoo\tLA\nLA\tChicago\n")).build(), HttpResponse.BodyHandlers.ofString());
+			assertEquals(200, batch.statusCode());
+			List<String> lines = batch.body().lines().collect(Collectors.toList());
+			assertEquals(3, lines.size());
+			assertTrue(lines.get(0).startsWith("{\"from\":\"Chicago\",\"to\":\"LA\",\"stations\""));
+			assertEquals("{\"from\":\"Foo\",\"to\":\"LA\",\"error\":\"no route\"}", lines.get(1));
+			assertTrue(lines.get(2).startsWith("{\"from\":\"LA\",\"to\":\"Chicago\",\"stations\""));
+
+			String body = "Chicago\tLA\n".repeat(BatchRouter.DEFAULT_WINDOW) + "bad line\n" + "LA\tChicago\n";
+			batch = client.send(HttpRequest.newBuilder(URI.create(base + "/batch"))
+					.POST(HttpRequest.BodyPublishers.ofString(body)).build(), HttpResponse.BodyHandlers.ofString());
+			assertEquals(200, batch.statusCode());
+			lines = batch.body().lines().collect(Collectors.toList());
+			assertEquals(BatchRouter.DEFAULT_WINDOW + 1, lines.size());
+			assertTrue(lines.get(BatchRouter.DEFAULT_WINDOW - 1).startsWith("{\"from\":\"Chicago\",\"to\":\"LA\""));
+			assertEquals("{\"error\":\"Batch lines must be origin TAB destination: bad line\"}",
+					lines.get(BatchRouter.DEFAULT_WINDOW));
+			assertEquals(0, server.getRejectedCount());
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	/**
+	 * This tests a batch of delays in the CONTRACTION_HIERARCHY mode: it is applied without
+	 * waiting for a new hierarchy, routes use bidirectional search on the new travel times and are
+	 * counted as fallback queries until the hierarchy rebuilt in the background is swapped in, and
+	 * the hierarchy saved next to the data file is not replaced by one for the delayed weights
+	 */
+	@Test
+	public void BDTest11() throws IOException, InterruptedException {
+		Path directory = Files.createTempDirectory("delays");
+		Path dataFile = directory.resolve("TrainData.gv");
+		Path hierarchyFile = directory.resolve("TrainData.gv.ch");
+		try {
+			Files.copy(Path.of("TrainData.gv"), dataFile);
+			TrainBackend tempBackend = new TrainBackend(dataFile);
+			tempBackend.setRoutingMode(RoutingMode.CONTRACTION_HIERARCHY);
+			assertEquals(60.0, tempBackend.getShortestPathLength("Chicago", "LA"), 0.0);
+			byte[] saved = Files.readAllBytes(hierarchyFile);
+
+			RoutingMetrics metrics = tempBackend.getMetrics();
+			long fallbacks = metrics.getFallbackQueryCount();
+			synchronized (tempBackend) { // the rebuilt hierarchy cannot be swapped in while this holds the lock
+				assertTrue(tempBackend.updateWeights(List.of(new EdgeUpdate<>("Dallas", "Denver", 5.0))));
+				assertEquals(null, tempBackend.getNetwork().getHierarchy());
+				assertEquals(RoutingMode.CONTRACTION_HIERARCHY, tempBackend.getRoutingMode());
+				assertEquals(RoutingMode.BIDIRECTIONAL, tempBackend.getActiveRoutingMode());
+				assertEquals(55.0, tempBackend.getShortestPathLength("Chicago", "LA"), 0.0);
+				assertEquals(List.of("Chicago", "Atlanta", "Dallas", "Denver", "LA"),
+						tempBackend.getShortestPath("Chicago", "LA"));
+			}
+			assertEquals(fallbacks + 2, metrics.getFallbackQueryCount());
+			assertTrue(metrics.dump().contains("fallback "));
+
+			// the hierarchy for the delayed weights is built in the background, but not saved
+			for (int attempt = 0; attempt < 200 && tempBackend.getNetwork().getHierarchy() == null; attempt++) {
+				Thread.sleep(50);
+			}
+			assertTrue(tempBackend.getNetwork().getHierarchy() != null);
+			assertEquals(RoutingMode.CONTRACTION_HIERARCHY, tempBackend.getActiveRoutingMode());
+			assertEquals(55.0, tempBackend.getShortestPathLength("Chicago", "LA"), 0.0);
+			assertEquals(fallbacks + 2, metrics.getFallbackQueryCount());
+			assertTrue(java.util.Arrays.equals(saved, Files.readAllBytes(hierarchyFile)));
+
+			// a restart on the unchanged data file still finds its hierarchy
+			TrainBackend restarted = new TrainBackend(dataFile);
+			restarted.setRoutingMode(RoutingMode.CONTRACTION_HIERARCHY);
+			assertEquals(60.0, restarted.getShortestPathLength("Chicago", "LA"), 0.0);
+		} finally {
+			Files.deleteIfExists(hierarchyFile);
+			Files.deleteIfExists(dataFile);
+			Files.delete(directory);
+		}
+	}
+
+	/**
+	 * This tests the route cache: a full cache evicts an entry that was not used since the last
+	 * eviction pass rather than one that was, and results are kept apart by routing mode, so
+	 * switching the mode never serves a route computed with the previous algorithm
+	 */
+	@Test
+	public void BDTest12() {
+		RouteCache<String> small = new RouteCache<>(2, 0);
+		small.put("A", "B", RoutingMode.DIJKSTRA, 1, "ab");
+		small.put("B", "C", RoutingMode.DIJKSTRA, 1, "bc");
+		assertEquals("ab", small.get("A", "B", RoutingMode.DIJKSTRA, 1));
+		small.put("C", "D", RoutingMode.DIJKSTRA, 1, "cd");
+		assertEquals(2, small.size());
+		assertEquals(1, small.getEvictionCount());
+		assertEquals("ab", small.get("A", "B", RoutingMode.DIJKSTRA, 1));
+		assertEquals("cd", small.get("C", "D", RoutingMode.DIJKSTRA, 1));
+		assertEquals(null, small.get("B", "C", RoutingMode.DIJKSTRA, 1));
+		assertEquals(null, small.get("A", "B", RoutingMode.BIDIRECTIONAL, 1));
+		assertEquals(null, small.get("A", "B", RoutingMode.DIJKSTRA, 2)); // computed on an older network
+
+		TrainBackend tempBackend = new TrainBackend();
+		RouteCache<?> cache = tempBackend.getRouteCache();
+		RouteResult<String> dijkstra = tempBackend.route("Milwaukee", "LA");
+		assertTrue(dijkstra == tempBackend.route("Milwaukee", "LA"));
+		tempBackend.setRoutingMode(RoutingMode.BIDIRECTIONAL);
+		long misses = cache.getMissCount();
+		RouteResult<String> bidirectional = tempBackend.route("Milwaukee", "LA");
+		assertEquals(misses + 1, cache.getMissCount());
+		assertTrue(dijkstra != bidirectional);
+		assertEquals(dijkstra.getTotalCost(), bidirectional.getTotalCost(), 0.0);
+	}
+
+	/**
+	 * This tests the route server's backpressure: with room for one request, a batch whose body
+	 * never arrives holds the only slot and every other request gets a 429 with Retry-After.
+	 * Once the held connection closes, /stations and /metrics answer again and the metrics
+	 * report the rejected requests
+	 */
+	@Test
+	public void BDTest13() throws Exception {
+		RouteServer server = new RouteServer(new TrainBackend(), 0, 1, 0);
+		server.start();
+		try {
+			String base = "http://localhost:" + server.getPort();
+			HttpClient client = HttpClient.newHttpClient();
+			HttpRequest stations = HttpRequest.newBuilder(URI.create(base + "/stations")).build();
+			HttpResponse<String> response;
+			try (java.net.Socket held = new java.net.Socket(java.net.InetAddress.getLoopbackAddress(), server.getPort())) {
+				held.getOutputStream().write(("POST /batch HTTP/1.1\r\nHost: localhost\r\nContent-Length: 1000\r\n\r\n"
+						+ "Chicago\tLA\n").getBytes(StandardCharsets.UTF_8));
+				held.getOutputStream().flush();
+				response = client.send(stations, HttpResponse.BodyHandlers.ofString());
+				for (int attempt = 0; attempt < 100 && response.statusCode() != 429; attempt++) {
+					Thread.sleep(50); // the batch may not have been admitted yet
+					response = client.send(stations, HttpResponse.BodyHandlers.ofString());
+				}
+				assertEquals(429, response.statusCode());
+				assertEquals("1", response.headers().firstValue("Retry-After").orElse(null));
+				assertEquals(429, client.send(HttpRequest.newBuilder(URI.create(base + "/metrics")).build(),
+						HttpResponse.BodyHandlers.discarding()).statusCode());
+			}
+			long rejected = server.getRejectedCount();
+			assertTrue(rejected >= 2);
+
+			response = client.send(stations, HttpResponse.BodyHandlers.ofString());
+			for (int attempt = 0; attempt < 100 && response.statusCode() != 200; attempt++) {
+				Thread.sleep(50); // the held request is still failing
+				response = client.send(stations, HttpResponse.BodyHandlers.ofString());
+			}
+			assertEquals(200, response.statusCode());
+			assertEquals("[\"Albany\",\"Chicago\",\"Milwaukee\",\"Dallas\",\"LA\",\"Atlanta\",\"Denver\",\"Minneapolis\"]",
+					response.body().trim());
+			assertEquals("[\"Milwaukee\",\"Minneapolis\"]", client.send(HttpRequest.newBuilder(
+					URI.create(base + "/stations?prefix=Mi&limit=5")).build(), HttpResponse.BodyHandlers.ofString())
+					.body().trim());
+			HttpResponse<String> metrics = client.send(HttpRequest.newBuilder(URI.create(base + "/metrics")).build(),
+					HttpResponse.BodyHandlers.ofString());
+			assertEquals(200, metrics.statusCode());
+			assertTrue(metrics.body().startsWith("queries"));
+			assertTrue(metrics.body().contains("rejected " + server.getRejectedCount()));
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	/**
+	 * This tests a batch of delays in the TIMETABLE mode: a timetable derived from the network is
+	 * derived again from the delayed travel times, so the timetable queries keep working and use
+	 * them, and a timetable read from the file next to the data file is kept as it is. A corrupt
+	 * timetable file makes selecting the mode fail with an UncheckedIOException
+	 */
+	@Test
+	public void BDTest14() throws IOException {
+		Path directory = Files.createTempDirectory("delays");
+		Path dataFile = directory.resolve("TrainData.gv");
+		Path timetableFile = directory.resolve("TrainData.gv.timetable");
+		try {
+			Files.copy(Path.of("TrainData.gv"), dataFile);
+			TrainBackend derived = new TrainBackend(dataFile);
+			derived.setRoutingMode(RoutingMode.TIMETABLE);
+			assertEquals(60 * Timetable.SECONDS_PER_HOUR, derived.profile("Chicago", "LA").get(0).getArrivalTime());
+
+			assertTrue(derived.updateWeights(List.of(new EdgeUpdate<>("Dallas", "Denver", 5.0))));
+			assertEquals(RoutingMode.TIMETABLE, derived.getRoutingMode());
+			assertTrue(derived.getNetwork().isTimetableDerived());
+			List<Journey> profile = derived.profile("Chicago", "LA");
+			assertFalse(profile.isEmpty());
+			assertEquals(55 * Timetable.SECONDS_PER_HOUR, profile.get(0).getArrivalTime());
+			assertEquals(55.0, derived.route("Chicago", "LA", 0).getTotalCost(), 0.0);
+			assertEquals(55.0, derived.getShortestPathLength("Chicago", "LA"), 0.0);
+			assertEquals(1, derived.paretoJourneys("Chicago", "LA", 0).size());
+			assertFalse(derived.paretoJourneys("Chicago", "LA", 0, Timetable.SECONDS_PER_HOUR, false).isEmpty());
+
+			Files.write(timetableFile, List.of("Chicago,LA,1:00,3:00,express"));
+			TrainBackend loaded = new TrainBackend(dataFile);
+			loaded.setRoutingMode(RoutingMode.TIMETABLE);
+			Timetable timetable = loaded.getNetwork().getTimetable();
+			assertFalse(loaded.getNetwork().isTimetableDerived());
+			assertTrue(loaded.updateWeights(List.of(new EdgeUpdate<>("Dallas", "Denver", 5.0))));
+			assertTrue(timetable == loaded.getNetwork().getTimetable());
+			assertEquals(1, loaded.profile("Chicago", "LA").size());
+			assertEquals(3.0, loaded.route("Chicago", "LA", 0).getTotalCost(), 0.0);
+
+			Files.write(timetableFile, List.of("Chicago,LA,soon"));
+			TrainBackend corrupt = new TrainBackend(dataFile);
+			try {
+				corrupt.setRoutingMode(RoutingMode.TIMETABLE);
+				assertTrue(false);
+			} catch (java.io.UncheckedIOException e) {
+				assertTrue(e.getMessage().contains("TrainData.gv.timetable"));
+			}
+			assertEquals(RoutingMode.DIJKSTRA, corrupt.getRoutingMode());
+			assertEquals(60.0, corrupt.getShortestPathLength("Chicago", "LA"), 0.0);
+		} finally {
+			Files.deleteIfExists(timetableFile);
+			Files.deleteIfExists(dataFile);
+			Files.delete(directory);
+		}
+	}
+}
@@ -0,0 +1,164 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.BiConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Answers a batch of origin-destination queries on a CSRGraph with one search per origin
+ * instead of one per query. Queries are read in windows of a fixed size; the queries of a
+ * window are grouped by origin, and each group is answered by a single one-to-many Dijkstra
+ * search that stops as soon as the last of its destinations is settled. The groups of a window
+ * are spread over the common ForkJoinPool, and each worker thread reuses its own DijkstraSearch.
+ *
+ * Results come back in the order of the queries, one window at a time, so only one window of
+ * queries and routes is held in memory however long the batch is. A query whose origin or
+ * destination is not in the graph, or whose destination cannot be reached, gets null instead of
+ * a route. The routes of one group share their search, so they report the settled count and
+ * the compute time of the whole group search.
+ *
+ * Every query is recorded in the global RoutingMetrics as soon as its group is answered, on the
+ * thread that searched for it, with the compute time of its group as its latency. The search
+ * work of a group is added once, with its first query.
+ */
+public final class BatchRouter<NodeType> implements Iterator<RouteResult<NodeType>> {
+
+	/** Number of queries read and answered together unless a window size is given. */
+	public static final int DEFAULT_WINDOW = 1 << 16;
+
+	private final RoutingMetrics metrics = RoutingMetrics.global();
+	private final CSRGraph<NodeType> graph;
+	private final Iterator<? extends OriginDestination<NodeType>> queries;
+	private final OriginDestination<NodeType>[] window;
+	private final RouteResult<NodeType>[] routes;
+	private final int[] origins; // vertex id of the origin of each query in the window, -1 if unknown
+	private final int[] destinations; // vertex id of the destination, -1 if unknown
+	private final long[] order; // origin << 32 | position of the known queries, sorted into groups
+	private final int[] targets; // destinations in group order
+	private int size = 0; // queries in the window
+	private int position = 0; // next result to return
+	private OriginDestination<NodeType> last = null;
+
+	/**
+	 * Creates a router that answers queries on graph as they are requested with next().
+	 *
+	 * @param graph the graph to route on
+	 * @param queries the queries, read one window at a time
+	 * @param windowSize the number of queries read and answered together
+	 * @throws IllegalArgumentException if windowSize is not positive
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public BatchRouter(CSRGraph<NodeType> graph, Iterator<? extends OriginDestination<NodeType>> queries, int windowSize) {
+		if(windowSize <= 0)
+			throw new IllegalArgumentException("Window size must be positive");
+		this.graph = graph;
+		this.queries = queries;
+		this.window = new OriginDestination[windowSize];
+		this.routes = new RouteResult[windowSize];
+		this.origins = new int[windowSize];
+		this.destinations = new int[windowSize];
+		this.order = new long[windowSize];
+		this.targets = new int[windowSize];
+	}
+
+	/**
+	 * Answers every query in order and hands each query with its route, or null if it has none,
+	 * to consumer on the calling thread.
+	 *
+	 * @param graph the graph to route on
+	 * @param queries the queries to answer
+	 * @param consumer receives every query with its route, in the order of queries
+	 */
+	public static <NodeType> void route(CSRGraph<NodeType> graph, Iterable<? extends OriginDestination<NodeType>> queries,
+			BiConsumer<? super OriginDestination<NodeType>, ? super RouteResult<NodeType>> consumer) {
+		BatchRouter<NodeType> router = new BatchRouter<>(graph, queries.iterator(), DEFAULT_WINDOW);
+		while(router.hasNext()) {
+			RouteResult<NodeType> route = router.next();
+			consumer.accept(router.lastQuery(), route);
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		if(position < size) return true;
+		if(!queries.hasNext()) return false;
+		answerWindow();
+		return true;
+	}
+
+	/**
+	 * Returns the route of the next query, or null if that query has no route.
+	 *
+	 * @throws NoSuchElementException if every query has been answered
+	 */
+	@Override
+	public RouteResult<NodeType> next() {
+		if(!hasNext())
+			throw new NoSuchElementException("Every query of the batch has been answered");
+		last = window[position];
+		RouteResult<NodeType> route = routes[position];
+		window[position] = null;
+		routes[position++] = null;
+		return route;
+	}
+
+	/**
+	 * Returns the query whose route was last returned by next(), or null before the first one.
+	 */
+	public OriginDestination<NodeType> lastQuery() {
+		return last;
+	}
+
+	/**
+	 * Reads the next window of queries and answers it, one search per origin.
+	 */
+	private void answerWindow() {
+		size = 0;
+		position = 0;
+		int known = 0;
+		while(size < window.length && queries.hasNext()) {
+			OriginDestination<NodeType> query = queries.next();
+			window[size] = query;
+			origins[size] = graph.indexOf(query.getOrigin());
+			destinations[size] = graph.indexOf(query.getDestination());
+			if(origins[size] >= 0 && destinations[size] >= 0) {
+				order[known++] = ((long) origins[size] << 32) | size;
+			} else {
+				RoutingMetrics.startQuery();
+				metrics.recordQuery(0, false, false);
+			}
+			size++;
+		}
+		Arrays.sort(order, 0, known);
+		int groupCount = 0;
+		int[] groupStart = new int[known + 1];
+		for(int i = 0; i < known; i++) {
+			targets[i] = destinations[(int) order[i]];
+			if(i == 0 || (order[i] >>> 32) != (order[i - 1] >>> 32))
+				groupStart[groupCount++] = i;
+		}
+		groupStart[groupCount] = known;
+		IntStream.range(0, groupCount).parallel().forEach(g -> answerGroup(groupStart[g], groupStart[g + 1]));
+	}
+
+	/**
+	 * Answers the queries order[from] to order[to - 1], which share their origin, with one search.
+	 */
+	private void answerGroup(int from, int to) {
+		long began = System.nanoTime();
+		int source = (int) (order[from] >>> 32);
+		DijkstraSearch search = DijkstraSearch.forThread(graph.getVertexCount());
+		RoutingMetrics.startQuery();
+		search.run(graph, source, targets, from, to);
+		long elapsed = System.nanoTime() - began;
+		for(int i = from; i < to; i++) {
+			int query = (int) order[i];
+			int target = targets[i];
+			boolean reached = search.isReached(target);
+			if(reached)
+				routes[query] = RouteResult.of(graph, search.pathTo(graph, target), search.distance(target),
+						search.getSettledCount(), elapsed);
+			metrics.recordQuery(elapsed, false, reached); // only the first query carries the search work
+		}
+	}
+}
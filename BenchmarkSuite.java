@@ -0,0 +1,318 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * This program benchmarks the operations that performance changes usually touch: loading a DOT file
+ * with TrainDataLoader.loadData, building an AE_Graph with insertVertex and insertEdge, shortestPath
+ * and getPathCost queries, and primsMinimumSpanningTree. Every benchmark runs on synthetic networks
+ * of each requested size and shape:
+ *
+ *   grid      a square grid with connections to the four neighbours of every station
+ *   hub       a scale-free network grown by preferential attachment, with a few large hubs
+ *   corridor  long lines of 1000 stations that branch off each other at junctions
+ *   rail      hub cities with regional lines, from SyntheticNetwork
+ *
+ * Each benchmark runs warm-up iterations and then measured iterations of a fixed length, like JMH in
+ * throughput mode, and reports operations per second with the spread over the measured iterations.
+ * Like the JMH gc profiler it also reports the bytes allocated per operation and the allocation rate,
+ * read from the benchmark thread's allocation counter; allocations on other threads, such as the
+ * parser threads of loadData, are not included.
+ *
+ * Usage: java BenchmarkSuite [sizes] [shapes] [benchmarks] [seconds per iteration]
+ *   for example: java BenchmarkSuite 1000,100000,1000000 grid,hub load,build,path,cost,mst 1
+ */
+public class BenchmarkSuite {
+
+    private static final int WARMUP_ITERATIONS = 2;
+    private static final int MEASURED_ITERATIONS = 3;
+    private static final int CORRIDOR_LENGTH = 1000;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static volatile Object sink; // keeps results alive so the JIT cannot drop the work
+
+    /**
+     * A benchmarked operation on one network, prepared once before its iterations run
+     */
+    private interface Operation {
+        Object run(Random random) throws IOException;
+    }
+
+    /**
+     * A synthetic network: station names and directed connections as parallel arrays
+     */
+    private static final class Network {
+        final String[] stations;
+        int[] sources = new int[16];
+        int[] targets = new int[16];
+        int[] weights = new int[16];
+        int connections = 0;
+
+        Network(int size) {
+            stations = new String[size];
+            for (int i = 0; i < size; i++) {
+                stations[i] = "Station " + i;
+            }
+        }
+
+        /**
+         * Adds connections in both directions with the same travel time
+         */
+        void connect(int a, int b, int weight) {
+            if (connections + 2 > sources.length) {
+                sources = java.util.Arrays.copyOf(sources, sources.length * 2);
+                targets = java.util.Arrays.copyOf(targets, targets.length * 2);
+                weights = java.util.Arrays.copyOf(weights, weights.length * 2);
+            }
+            sources[connections] = a;
+            targets[connections] = b;
+            weights[connections++] = weight;
+            sources[connections] = b;
+            targets[connections] = a;
+            weights[connections++] = weight;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int[] sizes = parseSizes(args.length > 0 ? args[0] : "1000,10000,100000");
+        String[] shapes = (args.length > 1 ? args[1] : "grid,hub,corridor,rail").split(",");
+        String[] benchmarks = (args.length > 2 ? args[2] : "load,build,path,cost,mst").split(",");
+        double seconds = args.length > 3 ? Double.parseDouble(args[3]) : 1.0;
+        if (!THREADS.isThreadAllocatedMemorySupported()) {
+            System.out.println("Allocation counters are not supported by this JVM, B/op is reported as 0");
+        } else {
+            THREADS.setThreadAllocatedMemoryEnabled(true);
+        }
+
+        System.out.println("benchmark  shape      vertices       ops/s   +-error        B/op  alloc MB/s");
+        for (String shape : shapes) {
+            for (int size : sizes) {
+                Network network = generate(shape, size, new Random(42));
+                for (String benchmark : benchmarks) {
+                    run(benchmark, shape, network, seconds);
+                }
+            }
+        }
+    }
+
+    /**
+     * Prepares one benchmark on network, runs its iterations and prints one result line
+     */
+    private static void run(String benchmark, String shape, Network network, double seconds) throws IOException {
+        Path file = null;
+        Operation operation;
+        switch (benchmark) {
+            case "load":
+                Path dotFile = writeDot(network);
+                file = dotFile;
+                operation = random -> {
+                    TrainDataLoader loader = new TrainDataLoader();
+                    loader.loadData(dotFile.toString());
+                    return loader;
+                };
+                break;
+            case "build":
+                operation = random -> build(network);
+                break;
+            case "path": {
+                AE_Graph<String, Integer> graph = build(network);
+                operation = random -> graph.shortestPath(randomStation(network, random), randomStation(network, random));
+                break;
+            }
+            case "cost": {
+                AE_Graph<String, Integer> graph = build(network);
+                operation = random -> graph.getPathCost(randomStation(network, random), randomStation(network, random));
+                break;
+            }
+            case "mst": {
+                AE_Graph<String, Integer> graph = build(network);
+                operation = random -> graph.primsMinimumSpanningTree(network.stations[0]);
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown benchmark " + benchmark);
+        }
+
+        try {
+            Random random = new Random(7);
+            for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+                iteration(operation, random, seconds);
+            }
+            double[] throughput = new double[MEASURED_ITERATIONS];
+            long operations = 0;
+            long allocated = 0;
+            long nanos = 0;
+            for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+                long[] result = iteration(operation, random, seconds);
+                throughput[i] = result[0] * 1e9 / result[1];
+                operations += result[0];
+                nanos += result[1];
+                allocated += result[2];
+            }
+            double mean = 0;
+            for (double value : throughput) {
+                mean += value / MEASURED_ITERATIONS;
+            }
+            double variance = 0;
+            for (double value : throughput) {
+                variance += (value - mean) * (value - mean) / Math.max(MEASURED_ITERATIONS - 1, 1);
+            }
+            System.out.printf("%-9s  %-8s  %9d  %10.2f  %8.2f  %10.0f  %10.1f%n", benchmark, shape,
+                    network.stations.length, mean, Math.sqrt(variance), allocated / (double) operations,
+                    allocated / 1e6 / (nanos / 1e9));
+        } finally {
+            if (file != null) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    /**
+     * Runs the operation until the iteration time is used up, at least once
+     *
+     * @return the number of operations, the elapsed nanoseconds and the bytes allocated by this thread
+     */
+    private static long[] iteration(Operation operation, Random random, double seconds) throws IOException {
+        long thread = Thread.currentThread().getId();
+        long allocatedBefore = THREADS.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        long deadline = start + (long) (seconds * 1e9);
+        long operations = 0;
+        long now;
+        do {
+            sink = operation.run(random);
+            operations++;
+            now = System.nanoTime();
+        } while (now < deadline);
+        long allocated = Math.max(THREADS.getThreadAllocatedBytes(thread) - allocatedBefore, 0);
+        return new long[] {operations, now - start, allocated};
+    }
+
+    private static AE_Graph<String, Integer> build(Network network) {
+        AE_Graph<String, Integer> graph = new AE_Graph<>();
+        for (String station : network.stations) {
+            graph.insertVertex(station);
+        }
+        for (int i = 0; i < network.connections; i++) {
+            graph.insertEdge(network.stations[network.sources[i]], network.stations[network.targets[i]],
+                    network.weights[i]);
+        }
+        return graph;
+    }
+
+    private static String randomStation(Network network, Random random) {
+        return network.stations[random.nextInt(network.stations.length)];
+    }
+
+    /**
+     * Generates a connected network of the given shape with about size stations
+     */
+    private static Network generate(String shape, int size, Random random) {
+        switch (shape) {
+            case "grid": {
+                int side = (int) Math.ceil(Math.sqrt(size));
+                Network network = new Network(side * side);
+                for (int row = 0; row < side; row++) {
+                    for (int column = 0; column < side; column++) {
+                        int station = row * side + column;
+                        if (column + 1 < side) {
+                            network.connect(station, station + 1, 1 + random.nextInt(9));
+                        }
+                        if (row + 1 < side) {
+                            network.connect(station, station + side, 1 + random.nextInt(9));
+                        }
+                    }
+                }
+                return network;
+            }
+            case "hub": {
+                // preferential attachment: every new station links to two stations picked with
+                // probability proportional to their number of links
+                Network network = new Network(size);
+                int[] ends = new int[4 * size];
+                int endCount = 0;
+                for (int station = 1; station < size; station++) {
+                    int links = Math.min(2, station);
+                    int previous = -1;
+                    for (int link = 0; link < links; link++) {
+                        int other = endCount == 0 ? 0 : ends[random.nextInt(endCount)];
+                        if (other == previous) {
+                            continue;
+                        }
+                        network.connect(station, other, 1 + random.nextInt(60));
+                        ends[endCount++] = station;
+                        ends[endCount++] = other;
+                        previous = other;
+                    }
+                }
+                return network;
+            }
+            case "corridor": {
+                // the first line starts at station 0, every further line starts at a junction on an earlier one
+                Network network = new Network(size);
+                for (int station = 1; station < size; station++) {
+                    boolean lineStart = station % CORRIDOR_LENGTH == 0;
+                    int previous = lineStart ? random.nextInt(station) : station - 1;
+                    network.connect(previous, station, 5 + random.nextInt(30));
+                }
+                return network;
+            }
+            case "rail": {
+                SyntheticNetwork synthetic = new SyntheticNetwork(size, random.nextLong());
+                Network network = new Network(size);
+                int[] targets = new int[16];
+                double[] weights = new double[16];
+                for (int station = 0; station < size; station++) {
+                    network.stations[station] = synthetic.name(station);
+                    int degree = synthetic.degree(station);
+                    if (degree > targets.length) {
+                        targets = new int[degree];
+                        weights = new double[degree];
+                    }
+                    synthetic.edges(station, targets, weights);
+                    for (int i = 0; i < degree; i++) {
+                        if (targets[i] > station) {
+                            network.connect(station, targets[i], (int) weights[i]);
+                        }
+                    }
+                }
+                return network;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown shape " + shape);
+        }
+    }
+
+    /**
+     * Writes network to a temporary DOT file in the format TrainDataLoader reads
+     */
+    private static Path writeDot(Network network) throws IOException {
+        Path file = Files.createTempFile("benchmark", ".gv");
+        try (BufferedWriter out = Files.newBufferedWriter(file)) {
+            out.write("digraph Network {\n");
+            for (String station : network.stations) {
+                out.write("\"" + station + "\"\n");
+            }
+            for (int i = 0; i < network.connections; i++) {
+                out.write("\"" + network.stations[network.sources[i]] + "\" -> \""
+                        + network.stations[network.targets[i]] + "\" [weight=" + network.weights[i] + "]\n");
+            }
+            out.write("}\n");
+        }
+        return file;
+    }
+
+    private static int[] parseSizes(String list) {
+        String[] parts = list.split(",");
+        int[] sizes = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            sizes[i] = Integer.parseInt(parts[i].trim());
+        }
+        return sizes;
+    }
+}
@@ -0,0 +1,134 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Bidirectional Dijkstra search over a CSRGraph: one SearchFrontier runs forward from the start
+ * over the graph and one runs backward from the end over CSRGraph.reverse(). The side with the
+ * closer next vertex advances, and the search stops once the two smallest queued distances add
+ * up to at least the best path found through a vertex reached by both sides.
+ *
+ * Each thread reuses its own pair of frontiers, so a query does not allocate per relaxation.
+ */
+public final class BidirectionalDijkstra {
+
+	private static final ThreadLocal<SearchFrontier[]> SCRATCH =
+			ThreadLocal.withInitial(() -> new SearchFrontier[] {new SearchFrontier(), new SearchFrontier()});
+
+	private BidirectionalDijkstra() {
+	}
+
+	/**
+	 * Returns the shortest path between start and end.
+	 *
+	 * @param graph the graph to search
+	 * @param start the data item in the starting vertex for the path
+	 * @param end the data item in the destination vertex for the path
+	 * @return list of data item in vertices in order on the shortest path between vertex
+	 * with data item start and vertex with data item end, including both start and end
+	 * @throws NoSuchElementException when no path from start to end can be found
+	 *     including when no vertex containing start or end can be found
+	 */
+	public static <NodeType> List<NodeType> shortestPath(CSRGraph<NodeType> graph, NodeType start, NodeType end) {
+		SearchFrontier[] frontiers = SCRATCH.get();
+		return pathThrough(graph, frontiers, search(graph, frontiers, start, end));
+	}
+
+	/**
+	 * Returns the cost of the path (sum over edge weights) between start and end.
+	 *
+	 * @param graph the graph to search
+	 * @param start the data item in the starting vertex for the path
+	 * @param end the data item in the end vertex for the path
+	 * @return the cost of the shortest path between vertex with data item start
+	 * and vertex with data item end, including all edges between start and end
+	 * @throws NoSuchElementException when no path from start to end can be found
+	 *     including when no vertex containing start or end can be found
+	 */
+	public static <NodeType> double getPathCost(CSRGraph<NodeType> graph, NodeType start, NodeType end) {
+		SearchFrontier[] frontiers = SCRATCH.get();
+		int meet = search(graph, frontiers, start, end);
+		return frontiers[0].distance(meet) + frontiers[1].distance(meet);
+	}
+
+	/**
+	 * Returns the shortest path between start and end together with its leg weights, its cost and
+	 * the number of vertices both sides settled, from a single search.
+	 *
+	 * @param graph the graph to search
+	 * @param start the data item in the starting vertex for the path
+	 * @param end the data item in the destination vertex for the path
+	 * @return the route from the vertex with data item start to the vertex with data item end
+	 * @throws NoSuchElementException when no path from start to end can be found
+	 *     including when no vertex containing start or end can be found
+	 */
+	public static <NodeType> RouteResult<NodeType> route(CSRGraph<NodeType> graph, NodeType start, NodeType end) {
+		long began = System.nanoTime();
+		SearchFrontier[] frontiers = SCRATCH.get();
+		int meet = search(graph, frontiers, start, end);
+		List<NodeType> path = pathThrough(graph, frontiers, meet);
+		long elapsed = System.nanoTime() - began;
+		return RouteResult.of(graph, path, frontiers[0].distance(meet) + frontiers[1].distance(meet),
+				frontiers[0].getSettledCount() + frontiers[1].getSettledCount(), elapsed);
+	}
+
+	/**
+	 * Joins the forward path to meet with the backward path from meet.
+	 */
+	private static <NodeType> List<NodeType> pathThrough(CSRGraph<NodeType> graph, SearchFrontier[] frontiers, int meet) {
+		List<NodeType> path = new ArrayList<>();
+		for(int v = meet; v >= 0; v = frontiers[0].parent(v))
+			path.add(graph.vertexData(v));
+		Collections.reverse(path);
+		for(int v = frontiers[1].parent(meet); v >= 0; v = frontiers[1].parent(v))
+			path.add(graph.vertexData(v));
+		return path;
+	}
+
+	/**
+	 * Runs both searches until the meet-in-the-middle criterion holds.
+	 *
+	 * @return the vertex on the shortest path where the two searches meet
+	 */
+	private static <NodeType> int search(CSRGraph<NodeType> graph, SearchFrontier[] frontiers, NodeType start, NodeType end) {
+		if(start == null || end == null)
+			throw new NullPointerException("Cannot find path for null start and end");
+		int s = graph.indexOf(start);
+		int t = graph.indexOf(end);
+		if(s < 0)
+			throw new NoSuchElementException("The graph does not contain the start vertex");
+		if(t < 0)
+			throw new NoSuchElementException("The graph does not contain the end vertex");
+
+		CSRGraph<NodeType> reverse = graph.reverse();
+		SearchFrontier forward = frontiers[0];
+		SearchFrontier backward = frontiers[1];
+		int n = graph.getVertexCount();
+		forward.reset(n, s);
+		backward.reset(n, t);
+		double best = s == t ? 0.0D : Double.POSITIVE_INFINITY;
+		int meet = s == t ? s : -1;
+		while(!forward.isEmpty() && !backward.isEmpty() && forward.minKey() + backward.minKey() < best) {
+			boolean stepForward = forward.minKey() <= backward.minKey();
+			SearchFrontier side = stepForward ? forward : backward;
+			SearchFrontier other = stepForward ? backward : forward;
+			CSRGraph<NodeType> edges = stepForward ? graph : reverse;
+			int u = side.pop();
+			double du = side.distance(u);
+			for(int e = edges.firstEdge(u), last = edges.endEdge(u); e < last; e++) {
+				int v = edges.edgeTarget(e);
+				side.relax(u, v, du + edges.edgeWeight(e), e);
+				if(other.isReached(v) && side.distance(v) + other.distance(v) < best) {
+					best = side.distance(v) + other.distance(v);
+					meet = v;
+				}
+			}
+		}
+		forward.countWork();
+		backward.countWork();
+		if(meet < 0)
+			throw new NoSuchElementException("No shortest path found for the vertices.");
+		return meet;
+	}
+}
@@ -0,0 +1,479 @@
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Frozen graph stored in compressed sparse row (CSR) form. Vertices are numbered 0..n-1 and
+ * the edges leaving vertex v are stored in the index range [offsets[v], offsets[v+1]) of the
+ * targets and weights arrays, sorted by target. Scanning the neighbours of a vertex therefore
+ * walks two primitive arrays in order and does not allocate or unbox anything.
+ *
+ * The graph cannot be modified once it is built; use CSRGraphBuilder to create one, either
+ * from scratch or from a mutable AE_Graph.
+ */
+public class CSRGraph<NodeType> implements GraphADT<NodeType, Double> {
+
+	protected final NodeType[] vertexData; // vertex data indexed by vertex id
+	protected final HashMap<NodeType, Integer> vertexIds; // vertex data to vertex id
+	protected final int[] offsets; // first edge of each vertex, plus one trailing entry
+	protected final int[] targets; // target vertex id of each edge
+	protected final double[] weights; // weight of each edge
+	private volatile CSRGraph<NodeType> reverse; // transposed graph, built on first use
+
+	/**
+	 * Creates a graph over arrays that are already in CSR form. The arrays are used as they
+	 * are and must not be modified afterwards.
+	 *
+	 * @param vertexData data of each vertex, indexed by vertex id
+	 * @param offsets array of length vertexData.length+1 with the first edge of each vertex
+	 * @param targets target vertex id of each edge, sorted by target within each vertex
+	 * @param weights weight of each edge
+	 */
+	protected CSRGraph(NodeType[] vertexData, int[] offsets, int[] targets, double[] weights) {
+		this(vertexData, indexVertices(vertexData), offsets, targets, weights);
+	}
+
+	/**
+	 * Creates a graph over arrays that are already in CSR form, sharing the vertex index of
+	 * another graph with the same vertices.
+	 */
+	protected CSRGraph(NodeType[] vertexData, HashMap<NodeType, Integer> vertexIds, int[] offsets, int[] targets, double[] weights) {
+		this.vertexData = vertexData;
+		this.vertexIds = vertexIds;
+		this.offsets = offsets;
+		this.targets = targets;
+		this.weights = weights;
+	}
+
+	private static <NodeType> HashMap<NodeType, Integer> indexVertices(NodeType[] vertexData) {
+		HashMap<NodeType, Integer> vertexIds = new HashMap<>(vertexData.length * 2);
+		for(int i = 0; i < vertexData.length; i++)
+			vertexIds.put(vertexData[i], i);
+		return vertexIds;
+	}
+
+	/**
+	 * Returns the id of the vertex containing data, or -1 if there is no such vertex.
+	 *
+	 * @param data the data item to look up
+	 * @return the vertex id of data, or -1 if it is not in the graph
+	 * @throws NullPointerException if data is null
+	 */
+	public int indexOf(NodeType data) {
+		if(data == null) throw new NullPointerException("Cannot look up null vertex");
+		Integer id = vertexIds.get(data);
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * Returns the data item stored in the vertex with the given id.
+	 */
+	public NodeType vertexData(int vertex) {
+		return vertexData[vertex];
+	}
+
+	/**
+	 * Returns the index of the first edge leaving vertex.
+	 */
+	public int firstEdge(int vertex) {
+		return offsets[vertex];
+	}
+
+	/**
+	 * Returns the index one past the last edge leaving vertex.
+	 */
+	public int endEdge(int vertex) {
+		return offsets[vertex + 1];
+	}
+
+	/**
+	 * Returns the target vertex id of the edge with the given index.
+	 */
+	public int edgeTarget(int edge) {
+		return targets[edge];
+	}
+
+	/**
+	 * Returns the weight of the edge with the given index.
+	 */
+	public double edgeWeight(int edge) {
+		return weights[edge];
+	}
+
+	/**
+	 * Returns the index of the edge from source to target, or -1 if there is no such edge.
+	 * Edges are sorted by target within each vertex, so this is a binary search.
+	 *
+	 * @param source id of the source vertex
+	 * @param target id of the target vertex
+	 * @return the edge index, or -1 if the edge is not in the graph
+	 */
+	public int findEdge(int source, int target) {
+		int low = firstEdge(source);
+		int high = endEdge(source) - 1;
+		while(low <= high) {
+			int mid = (low + high) >>> 1;
+			int t = edgeTarget(mid);
+			if(t < target) low = mid + 1;
+			else if(t > target) high = mid - 1;
+			else return mid;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the transposed graph, which has an edge v->u with the same weight for every edge
+	 * u->v of this graph and the same vertex ids. It is built on first use and then shared.
+	 */
+	public CSRGraph<NodeType> reverse() {
+		CSRGraph<NodeType> result = reverse;
+		if(result == null) {
+			int n = vertexData.length;
+			int m = getEdgeCount();
+			int[] reverseOffsets = new int[n + 1];
+			for(int e = 0; e < m; e++)
+				reverseOffsets[edgeTarget(e) + 1]++;
+			for(int v = 0; v < n; v++)
+				reverseOffsets[v + 1] += reverseOffsets[v];
+			int[] next = Arrays.copyOf(reverseOffsets, n);
+			int[] reverseTargets = new int[m];
+			double[] reverseWeights = new double[m];
+			// sources are visited in increasing order, so every reversed row comes out sorted
+			for(int u = 0; u < n; u++)
+				for(int e = firstEdge(u); e < endEdge(u); e++) {
+					int slot = next[edgeTarget(e)]++;
+					reverseTargets[slot] = u;
+					reverseWeights[slot] = edgeWeight(e);
+				}
+			result = new CSRGraph<>(vertexData, vertexIds, reverseOffsets, reverseTargets, reverseWeights);
+			result.reverse = this;
+			reverse = result;
+		}
+		return result;
+	}
+
+	/**
+	 * Returns a copy of this graph with new weights for some of its edges. The copy shares the
+	 * vertices, offsets and targets with this graph and only copies the weights, so applying a
+	 * batch of delays costs one array copy and a binary search per update instead of rebuilding
+	 * the graph. If the reverse graph was already built, the copy's reverse is updated the same
+	 * way. Updates of edges that are not in the graph are skipped.
+	 *
+	 * @param updates the new weights, applied in order
+	 * @return the updated graph, or this graph if no weight changed
+	 * @throws NullPointerException if updates is null
+	 */
+	public CSRGraph<NodeType> withUpdatedWeights(Collection<? extends EdgeUpdate<NodeType, ? extends Number>> updates) {
+		double[] updated = null;
+		double[] updatedReverse = null;
+		CSRGraph<NodeType> reverse = this.reverse;
+		for(EdgeUpdate<NodeType, ? extends Number> update : updates) {
+			int source = indexOf(update.getSource());
+			int target = indexOf(update.getTarget());
+			int edge = source < 0 || target < 0 ? -1 : findEdge(source, target);
+			double weight = update.getWeight().doubleValue();
+			if(edge < 0 || (updated == null ? edgeWeight(edge) : updated[edge]) == weight) continue;
+			if(updated == null) {
+				updated = copyWeights(this);
+				if(reverse != null) updatedReverse = copyWeights(reverse);
+			}
+			updated[edge] = weight;
+			if(reverse != null) updatedReverse[reverse.findEdge(target, source)] = weight;
+		}
+		if(updated == null) return this;
+		CSRGraph<NodeType> result = withWeights(updated);
+		if(reverse != null) {
+			CSRGraph<NodeType> resultReverse = reverse.withWeights(updatedReverse);
+			resultReverse.reverse = result;
+			result.reverse = resultReverse;
+		}
+		return result;
+	}
+
+	/**
+	 * Returns a graph with the same vertices and edges as this one and the given edge weights.
+	 *
+	 * @param weights weight of each edge, used as it is
+	 */
+	protected CSRGraph<NodeType> withWeights(double[] weights) {
+		return new CSRGraph<>(vertexData, vertexIds, offsets, targets, weights);
+	}
+
+	private static double[] copyWeights(CSRGraph<?> graph) {
+		double[] copy = new double[graph.getEdgeCount()];
+		for(int e = 0; e < copy.length; e++)
+			copy[e] = graph.edgeWeight(e);
+		return copy;
+	}
+
+	/**
+	 * The graph is frozen, so this always throws.
+	 * @throws UnsupportedOperationException always
+	 */
+	public boolean insertVertex(NodeType data) {
+		throw new UnsupportedOperationException("CSRGraph cannot be modified");
+	}
+
+	/**
+	 * The graph is frozen, so this always throws.
+	 * @throws UnsupportedOperationException always
+	 */
+	public boolean removeVertex(NodeType data) {
+		throw new UnsupportedOperationException("CSRGraph cannot be modified");
+	}
+
+	/**
+	 * The graph is frozen, so this always throws.
+	 * @throws UnsupportedOperationException always
+	 */
+	public boolean insertEdge(NodeType source, NodeType target, Double weight) {
+		throw new UnsupportedOperationException("CSRGraph cannot be modified");
+	}
+
+	/**
+	 * The graph is frozen, so this always throws.
+	 * @throws UnsupportedOperationException always
+	 */
+	public boolean removeEdge(NodeType source, NodeType target) {
+		throw new UnsupportedOperationException("CSRGraph cannot be modified");
+	}
+
+	/**
+	 * Check if the graph contains a vertex with data item *data*.
+	 *
+	 * @param data the data item to check for
+	 * @return true if data item is stored in a vertex of the graph, false otherwise
+	 * @throws NullPointerException if *data* is null
+	 */
+	public boolean containsVertex(NodeType data) {
+		if(data == null) throw new NullPointerException("Cannot contain null data vertex");
+		return vertexIds.containsKey(data);
+	}
+
+	/**
+	 * Check if edge is in the graph.
+	 *
+	 * @param source the data item contained in the source vertex for the edge
+	 * @param target the data item contained in the target vertex for the edge
+	 */
+	public boolean containsEdge(NodeType source, NodeType target) {
+		if(source == null || target == null) throw new NullPointerException("Cannot contain edge adjacent to null data");
+		int sourceId = indexOf(source);
+		int targetId = indexOf(target);
+		return sourceId >= 0 && targetId >= 0 && findEdge(sourceId, targetId) >= 0;
+	}
+
+	/**
+	 * Return the weight of an edge.
+	 *
+	 * @param source the data item contained in the source vertex for the edge
+	 * @param target the data item contained in the target vertex for the edge
+	 * @return the weight of the edge
+	 * @throws IllegalArgumentException if either sourceVertex or targetVertex or both are not in the graph
+	 * @throws NullPointerException if either sourceVertex or targetVertex or both are null
+	 * @throws NoSuchElementException if edge is not in the graph
+	 */
+	public Double getWeight(NodeType source, NodeType target) {
+		if(source == null || target == null) throw new NullPointerException("Cannot contain weighted edge adjacent to null data");
+		int sourceId = indexOf(source);
+		int targetId = indexOf(target);
+		if(sourceId < 0 || targetId < 0) throw new IllegalArgumentException("Cannot retrieve weight of edge between vertices that do not exist");
+		int edge = findEdge(sourceId, targetId);
+		if(edge < 0) throw new NoSuchElementException("No directed edge found between these vertices");
+		return edgeWeight(edge);
+	}
+
+	/**
+	 * Return the number of edges in the graph.
+	 *
+	 * @return the number of edges in the graph
+	 */
+	public int getEdgeCount() {
+		return offsets[vertexData.length];
+	}
+
+	/**
+	 * Return the number of vertices in the graph
+	 *
+	 * @return the number of vertices in the graph
+	 */
+	public int getVertexCount() {
+		return vertexData.length;
+	}
+
+	/**
+	 * Check if the graph is empty (does not contain any vertices or edges).
+	 *
+	 * @return true if the graph does not contain any vertices or edges, false otherwise
+	 */
+	public boolean isEmpty() {
+		return vertexData.length == 0;
+	}
+
+	/**
+	 * Returns the shortest path between start and end.
+	 * Uses Dijkstra's shortest path algorithm to find the shortest path.
+	 *
+	 * @param start the data item in the starting vertex for the path
+	 * @param end the data item in the destination vertex for the path
+	 * @return list of data item in vertices in order on the shortest path between vertex
+	 * with data item start and vertex with data item end, including both start and end
+	 * @throws NoSuchElementException when no path from start to end can be found
+	 *     including when no vertex containing start or end can be found
+	 */
+	public List<NodeType> shortestPath(NodeType start, NodeType end) {
+		DijkstraSearch search = DijkstraSearch.forThread(vertexData.length);
+		return search.pathTo(this, search(search, start, end));
+	}
+
+	/**
+	 * Returns the cost of the path (sum over edge weights) between start and end.
+	 * Uses Dijkstra's shortest path algorithm to find the shortest path.
+	 *
+	 * @param start the data item in the starting vertex for the path
+	 * @param end the data item in the end vertex for the path
+	 * @return the cost of the shortest path between vertex with data item start
+	 * and vertex with data item end, including all edges between start and end
+	 * @throws NoSuchElementException when no path from start to end can be found
+	 *     including when no vertex containing start or end can be found
+	 */
+	public double getPathCost(NodeType start, NodeType end) {
+		DijkstraSearch search = DijkstraSearch.forThread(vertexData.length);
+		return search.distance(search(search, start, end));
+	}
+
+	/**
+	 * Returns the shortest path between start and end together with its leg weights, its cost and
+	 * the work the search did, from a single Dijkstra search.
+	 *
+	 * @param start the data item in the starting vertex for the path
+	 * @param end the data item in the destination vertex for the path
+	 * @return the route from the vertex with data item start to the vertex with data item end
+	 * @throws NoSuchElementException when no path from start to end can be found
+	 *     including when no vertex containing start or end can be found
+	 */
+	public RouteResult<NodeType> route(NodeType start, NodeType end) {
+		long began = System.nanoTime();
+		DijkstraSearch search = DijkstraSearch.forThread(vertexData.length);
+		int endId = search(search, start, end);
+		List<NodeType> path = search.pathTo(this, endId);
+		long elapsed = System.nanoTime() - began;
+		return RouteResult.of(this, path, search.distance(endId), search.getSettledCount(), elapsed);
+	}
+
+	/**
+	 * Returns up to k loopless paths between start and end, cheapest first, found with Yen's
+	 * algorithm. The first one is the shortest path; fewer than k are returned if there are no
+	 * more loopless paths.
+	 *
+	 * @param start the data item in the starting vertex for the paths
+	 * @param end the data item in the destination vertex for the paths
+	 * @param k the number of paths to find
+	 * @return the routes from the vertex with data item start to the vertex with data item end
+	 * @throws IllegalArgumentException if k is not positive
+	 * @throws NoSuchElementException when no path from start to end can be found
+	 *     including when no vertex containing start or end can be found
+	 */
+	public List<RouteResult<NodeType>> kShortestPaths(NodeType start, NodeType end, int k) {
+		if(start == null || end == null)
+			throw new NullPointerException("Cannot find path for null start and end");
+		int startId = indexOf(start);
+		int endId = indexOf(end);
+		if(startId < 0)
+			throw new NoSuchElementException("The graph does not contain the start vertex");
+		if(endId < 0)
+			throw new NoSuchElementException("The graph does not contain the end vertex");
+		return KShortestPaths.find(this, startId, endId, k);
+	}
+
+	/**
+	 * Runs one Dijkstra search from start that settles the whole graph and returns the
+	 * distance to and predecessor of every vertex.
+	 *
+	 * @param start the data item in the starting vertex
+	 * @return the shortest path tree rooted at start
+	 * @throws NoSuchElementException if no vertex containing start can be found
+	 */
+	public ShortestPathTree<NodeType> shortestPathTree(NodeType start) {
+		return new ShortestPathTree<>(this, startId(start));
+	}
+
+	/**
+	 * Runs one Dijkstra search from start like shortestPathTree, but returns a tree that can be
+	 * repaired after edge weights change instead of being computed again.
+	 *
+	 * @param start the data item in the starting vertex
+	 * @return the shortest path tree rooted at start
+	 * @throws NoSuchElementException if no vertex containing start can be found
+	 */
+	public DynamicShortestPathTree<NodeType> dynamicShortestPathTree(NodeType start) {
+		return new DynamicShortestPathTree<>(this, startId(start));
+	}
+
+	/**
+	 * Computes the shortest path cost between every pair of vertices, running the one-to-all
+	 * searches in parallel.
+	 *
+	 * @return the travel time matrix, indexed by vertex id
+	 * @throws IllegalArgumentException if the graph is too large for an in-memory matrix
+	 */
+	public TravelTimeMatrix allPairsMatrix() {
+		return TravelTimeMatrix.compute(this);
+	}
+
+	/**
+	 * Computes the shortest path cost between every pair of vertices like allPairsMatrix(), and
+	 * if withPredecessors is set also the predecessor of every vertex on each shortest path.
+	 *
+	 * @param withPredecessors whether to keep the predecessor matrix
+	 * @return the travel time matrix, indexed by vertex id
+	 * @throws IllegalArgumentException if the graph is too large for an in-memory matrix
+	 */
+	public TravelTimeMatrix allPairsMatrix(boolean withPredecessors) {
+		return TravelTimeMatrix.compute(this, withPredecessors);
+	}
+
+	/**
+	 * Finds a minimum spanning tree for every connected part of the graph, treating edges as
+	 * undirected.
+	 *
+	 * @param algorithm the algorithm to compute the forest with
+	 * @return the minimum spanning forest
+	 * @throws NullPointerException if algorithm is null
+	 */
+	public MinimumSpanningForest<NodeType> minimumSpanningForest(MinimumSpanningForest.Algorithm algorithm) {
+		if(algorithm == null)
+			throw new NullPointerException("Cannot compute spanning forest with null algorithm");
+		return MinimumSpanningForest.compute(this, algorithm);
+	}
+
+	private int startId(NodeType start) {
+		if(start == null)
+			throw new NullPointerException("Cannot find path for null start");
+		int startId = indexOf(start);
+		if(startId < 0)
+			throw new NoSuchElementException("The graph does not contain the start vertex");
+		return startId;
+	}
+
+	/**
+	 * Runs the calling thread's DijkstraSearch from start until end is settled.
+	 *
+	 * @return the vertex id of end
+	 */
+	private int search(DijkstraSearch search, NodeType start, NodeType end) {
+		if(start == null || end == null)
+			throw new NullPointerException("Cannot find path for null start and end");
+		int startId = indexOf(start);
+		int endId = indexOf(end);
+		if(startId < 0)
+			throw new NoSuchElementException("The graph does not contain the start vertex");
+		if(endId < 0)
+			throw new NoSuchElementException("The graph does not contain the end vertex");
+		if(!search.run(this, startId, endId))
+			throw new NoSuchElementException("No shortest path found for the vertices.");
+		return endId;
+	}
+}
@@ -0,0 +1,183 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Collects vertices and weighted directed edges into growable primitive buffers and then
+ * freezes them into a CSRGraph. Adding an edge that already exists replaces its weight, the
+ * same way AE_Graph.insertEdge does, so building from a list of connections gives the same
+ * graph as inserting them one by one into an AE_Graph.
+ */
+public class CSRGraphBuilder<NodeType> {
+
+	private final HashMap<NodeType, Integer> vertexIds = new HashMap<>();
+	private Object[] vertexData = new Object[16];
+	private int vertexCount = 0;
+
+	private int[] sources = new int[16];
+	private int[] targets = new int[16];
+	private double[] weights = new double[16];
+	private int edgeCount = 0;
+
+	/**
+	 * Adds a vertex to the graph being built.
+	 *
+	 * @param data the data item stored in the vertex
+	 * @return the id of the vertex, which is the existing id if data was added before
+	 * @throws NullPointerException if data is null
+	 */
+	public int addVertex(NodeType data) {
+		if(data == null) throw new NullPointerException("Cannot add null vertex");
+		Integer id = vertexIds.get(data);
+		if(id != null) return id;
+		if(vertexCount == vertexData.length)
+			vertexData = Arrays.copyOf(vertexData, vertexCount * 2);
+		vertexData[vertexCount] = data;
+		vertexIds.put(data, vertexCount);
+		return vertexCount++;
+	}
+
+	/**
+	 * Adds a directed edge between two vertices that were already added.
+	 *
+	 * @param source id of the source vertex
+	 * @param target id of the target vertex
+	 * @param weight the weight of the edge
+	 * @throws IllegalArgumentException if either vertex id is unknown or the weight is negative
+	 */
+	public void addEdge(int source, int target, double weight) {
+		if(source < 0 || source >= vertexCount || target < 0 || target >= vertexCount)
+			throw new IllegalArgumentException("Cannot add edge with vertices that do not exist");
+		if(weight < 0)
+			throw new IllegalArgumentException("Cannot add edge with negative weight");
+		if(edgeCount == sources.length) {
+			sources = Arrays.copyOf(sources, edgeCount * 2);
+			targets = Arrays.copyOf(targets, edgeCount * 2);
+			weights = Arrays.copyOf(weights, edgeCount * 2);
+		}
+		sources[edgeCount] = source;
+		targets[edgeCount] = target;
+		weights[edgeCount] = weight;
+		edgeCount++;
+	}
+
+	/**
+	 * Adds a directed edge, adding its end points as vertices if they are not in the graph yet.
+	 *
+	 * @param source the data item contained in the source vertex for the edge
+	 * @param target the data item contained in the target vertex for the edge
+	 * @param weight the weight of the edge
+	 */
+	public void addEdge(NodeType source, NodeType target, double weight) {
+		addEdge(addVertex(source), addVertex(target), weight);
+	}
+
+	/**
+	 * Returns the number of vertices added so far.
+	 */
+	public int getVertexCount() {
+		return vertexCount;
+	}
+
+	/**
+	 * Freezes the vertices and edges added so far into a CSRGraph. The edges are bucketed by
+	 * source with a counting sort and then sorted by target within each vertex; when the same
+	 * edge was added more than once, the weight added last is kept.
+	 *
+	 * @return a new CSRGraph containing the added vertices and edges
+	 */
+	@SuppressWarnings("unchecked")
+	public CSRGraph<NodeType> build() {
+		int n = vertexCount;
+		int[] offsets = new int[n + 1];
+		for(int i = 0; i < edgeCount; i++)
+			offsets[sources[i] + 1]++;
+		for(int v = 0; v < n; v++)
+			offsets[v + 1] += offsets[v];
+
+		// stable bucket of edge positions by source, so insertion order is kept within a vertex
+		int[] next = Arrays.copyOf(offsets, n);
+		int[] order = new int[edgeCount];
+		for(int i = 0; i < edgeCount; i++)
+			order[next[sources[i]]++] = i;
+
+		int[] csrTargets = new int[edgeCount];
+		double[] csrWeights = new double[edgeCount];
+		int[] csrOffsets = new int[n + 1];
+		long[] row = new long[0];
+		int written = 0;
+		for(int v = 0; v < n; v++) {
+			csrOffsets[v] = written;
+			int degree = offsets[v + 1] - offsets[v];
+			if(row.length < degree) row = new long[Math.max(degree, row.length * 2)];
+			// sort by target first and insertion order second
+			for(int j = 0; j < degree; j++)
+				row[j] = ((long) targets[order[offsets[v] + j]] << 32) | j;
+			Arrays.sort(row, 0, degree);
+			for(int j = 0; j < degree; j++) {
+				int target = (int) (row[j] >>> 32);
+				if(j + 1 < degree && (int) (row[j + 1] >>> 32) == target)
+					continue; // a later insertion of the same edge wins
+				csrTargets[written] = target;
+				csrWeights[written] = weights[order[offsets[v] + (int) row[j]]];
+				written++;
+			}
+		}
+		csrOffsets[n] = written;
+
+		return new CSRGraph<>((NodeType[]) Arrays.copyOf(vertexData, n),
+				csrOffsets, Arrays.copyOf(csrTargets, written), Arrays.copyOf(csrWeights, written));
+	}
+
+	/**
+	 * Builds a CSRGraph from the vertices and connections read by the data loader.
+	 *
+	 * @param vertices the station names read from the data file
+	 * @param edges the connections read from the data file
+	 * @return a new CSRGraph containing the network
+	 */
+	public static CSRGraph<String> fromNodes(List<String> vertices, List<Node> edges) {
+		CSRGraphBuilder<String> builder = new CSRGraphBuilder<>();
+		for(String vertex : vertices)
+			builder.addVertex(vertex.trim());
+		for(Node edge : edges)
+			builder.addEdge(edge.getStartLocation().trim(), edge.getEndLocation().trim(), edge.getTime());
+		return builder.build();
+	}
+
+	/**
+	 * Builds a CSRGraph from the stations and edges read by DotParser. Vertex ids are the
+	 * station ids of the table, so stations keep the order they first appeared in.
+	 *
+	 * @param stations the interned station names
+	 * @param edges the edges between station ids
+	 * @return a new CSRGraph containing the network
+	 */
+	public static CSRGraph<String> fromParsed(StationTable stations, EdgeBuffer edges) {
+		CSRGraphBuilder<String> builder = new CSRGraphBuilder<>();
+		for(int id = 0; id < stations.size(); id++)
+			builder.addVertex(stations.name(id));
+		for(int i = 0; i < edges.size(); i++)
+			builder.addEdge(edges.source(i), edges.target(i), edges.weight(i));
+		return builder.build();
+	}
+
+	/**
+	 * Converts a mutable AE_Graph into a frozen CSRGraph with the same vertices, edges and
+	 * weights. Later changes to the AE_Graph are not reflected in the returned graph.
+	 *
+	 * @param graph the graph to convert
+	 * @return a new CSRGraph containing the same vertices and edges
+	 */
+	public static <NodeType> CSRGraph<NodeType> fromGraph(AE_Graph<NodeType, ? extends Number> graph) {
+		CSRGraphBuilder<NodeType> builder = new CSRGraphBuilder<>();
+		for(NodeType data : graph.vertices.keySet())
+			builder.addVertex(data);
+		for(AE_Graph<NodeType, ? extends Number>.Vertex vertex : graph.vertices.values()) {
+			int source = builder.addVertex(vertex.data);
+			for(AE_Graph<NodeType, ? extends Number>.Edge edge : vertex.edgesLeaving)
+				builder.addEdge(source, builder.addVertex(edge.target.data), edge.weight.doubleValue());
+		}
+		return builder.build();
+	}
+}
@@ -0,0 +1,194 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Connection Scan Algorithm over a Timetable. An earliest arrival query walks the connections in
+ * departure order from the requested time, takes every connection whose station has been
+ * reached in time or whose trip the passenger is already on, and stops once the remaining
+ * connections leave after the best known arrival at the destination. There is no priority
+ * queue: the work is one sequential pass over parallel int arrays.
+ *
+ * A profile query walks the connections backwards and keeps, for every station, the departure
+ * times from which the destination can be reached and how early, dropping every pair that is
+ * beaten by a later departure arriving no later.
+ *
+ * Like DijkstraSearch, the scratch arrays are stamped with a generation so a new query does not
+ * have to clear them. A scan object is not thread safe; use forThread() to get the one owned by
+ * the current thread.
+ */
+public final class ConnectionScan {
+
+	private static final int UNREACHED = Integer.MAX_VALUE;
+	private static final ThreadLocal<ConnectionScan> SCRATCH = ThreadLocal.withInitial(ConnectionScan::new);
+
+	private int[] arrival = new int[0]; // earliest arrival at each station, valid while stationStamp is current
+	private int[] inConnection = new int[0]; // connection that arrives at each station that early
+	private int[] stationStamp = new int[0];
+	private int[] tripLast = new int[0]; // last connection taken on each trip, or the trip's best arrival in a profile
+	private int[] tripStamp = new int[0];
+	private int[] previous = new int[0]; // connection taken before each taken connection on the same trip, -1 if boarded there
+	private int generation = 0;
+
+	// profile entries of all stations, linked from the earliest departure at each station
+	private int[] profileHead = new int[0];
+	private int[] entryDeparture = new int[16];
+	private int[] entryArrival = new int[16];
+	private int[] entryNext = new int[16];
+
+	/**
+	 * Returns the scan owned by the calling thread, with room for the given timetable.
+	 */
+	public static ConnectionScan forThread(Timetable timetable) {
+		ConnectionScan scan = SCRATCH.get();
+		scan.ensureCapacity(timetable);
+		return scan;
+	}
+
+	private void ensureCapacity(Timetable timetable) {
+		int stations = timetable.getStationCount();
+		if(stations > arrival.length) {
+			arrival = new int[stations];
+			inConnection = new int[stations];
+			stationStamp = Arrays.copyOf(stationStamp, stations);
+			profileHead = new int[stations];
+		}
+		if(timetable.getTripCount() > tripLast.length) {
+			tripLast = new int[timetable.getTripCount()];
+			tripStamp = Arrays.copyOf(tripStamp, timetable.getTripCount());
+		}
+		if(timetable.getConnectionCount() > previous.length)
+			previous = new int[timetable.getConnectionCount()];
+	}
+
+	private void nextGeneration() {
+		if(++generation == 0) { // stamps wrapped around, so old stamps could look current
+			Arrays.fill(stationStamp, 0);
+			Arrays.fill(tripStamp, 0);
+			generation = 1;
+		}
+	}
+
+	private int arrivalAt(int station) {
+		return stationStamp[station] == generation ? arrival[station] : UNREACHED;
+	}
+
+	/**
+	 * Returns the journey from start to end with the earliest arrival, leaving no earlier than
+	 * departureTime.
+	 *
+	 * @param timetable the timetable to search
+	 * @param start id of the station to leave from
+	 * @param end id of the station to arrive at
+	 * @param departureTime the earliest time to leave
+	 * @return the journey with the earliest arrival
+	 * @throws NoSuchElementException if end cannot be reached
+	 */
+	public Journey earliestArrival(Timetable timetable, int start, int end, int departureTime) {
+		nextGeneration();
+		stationStamp[start] = generation;
+		arrival[start] = departureTime;
+		inConnection[start] = -1;
+		int scanned = 0;
+		for(int c = timetable.firstDepartureAfter(departureTime), m = timetable.getConnectionCount(); c < m; c++) {
+			int leaves = timetable.departureTime(c);
+			if(leaves >= arrivalAt(end)) break; // no later connection can arrive earlier
+			scanned++;
+			int trip = timetable.trip(c);
+			boolean onBoard = tripStamp[trip] == generation;
+			if(!onBoard && arrivalAt(timetable.departureStop(c)) > leaves) continue;
+			previous[c] = onBoard ? tripLast[trip] : -1;
+			tripStamp[trip] = generation;
+			tripLast[trip] = c;
+			int stop = timetable.arrivalStop(c);
+			if(timetable.arrivalTime(c) < arrivalAt(stop)) {
+				stationStamp[stop] = generation;
+				arrival[stop] = timetable.arrivalTime(c);
+				inConnection[stop] = c;
+			}
+		}
+		if(arrivalAt(end) == UNREACHED)
+			throw new NoSuchElementException("No journey found between the stations after this time.");
+
+		// walk back from the destination, along each trip to where it was boarded
+		List<Integer> legs = new ArrayList<>();
+		for(int c = inConnection[end]; c >= 0; ) {
+			legs.add(c);
+			c = previous[c] >= 0 ? previous[c] : inConnection[timetable.departureStop(c)];
+		}
+		int n = legs.size();
+		List<String> stations = new ArrayList<>(n + 1);
+		int[] departures = new int[n];
+		int[] arrivals = new int[n];
+		int[] trips = new int[n];
+		stations.add(timetable.station(start));
+		for(int i = 0; i < n; i++) {
+			int c = legs.get(n - 1 - i);
+			stations.add(timetable.station(timetable.arrivalStop(c)));
+			departures[i] = timetable.departureTime(c);
+			arrivals[i] = timetable.arrivalTime(c);
+			trips[i] = timetable.trip(c);
+		}
+		return new Journey(stations, departures, arrivals, trips, departureTime, scanned);
+	}
+
+	/**
+	 * Returns the departure times from start of the Pareto optimal journeys to end, earliest first.
+	 *
+	 * @param timetable the timetable to search
+	 * @param start id of the station to leave from
+	 * @param end id of the station to arrive at
+	 * @return the departure times, each one a journey that arrives earlier than any journey
+	 *     leaving before it
+	 */
+	public int[] profile(Timetable timetable, int start, int end) {
+		nextGeneration();
+		int entries = 0;
+		for(int c = timetable.getConnectionCount() - 1; c >= 0; c--) {
+			int stop = timetable.arrivalStop(c);
+			int arrives = timetable.arrivalTime(c);
+			int best = stop == end ? arrives : UNREACHED; // get off here
+			int trip = timetable.trip(c);
+			if(tripStamp[trip] == generation && tripLast[trip] < best) best = tripLast[trip]; // stay on board
+			if(stop != end && stationStamp[stop] == generation) { // change trains at the arrival station
+				int entry = profileHead[stop];
+				while(entry >= 0 && entryDeparture[entry] < arrives) entry = entryNext[entry];
+				if(entry >= 0 && entryArrival[entry] < best) best = entryArrival[entry];
+			}
+			if(best == UNREACHED) continue;
+			tripStamp[trip] = generation;
+			tripLast[trip] = best;
+
+			// a later departure from the same station arriving no later dominates this one
+			int from = timetable.departureStop(c);
+			int leaves = timetable.departureTime(c);
+			int head = stationStamp[from] == generation ? profileHead[from] : -1;
+			if(head >= 0 && entryArrival[head] <= best) continue;
+			if(head >= 0 && entryDeparture[head] == leaves) {
+				entryArrival[head] = best;
+				continue;
+			}
+			if(entries == entryNext.length) {
+				entryDeparture = Arrays.copyOf(entryDeparture, entries * 2);
+				entryArrival = Arrays.copyOf(entryArrival, entries * 2);
+				entryNext = Arrays.copyOf(entryNext, entries * 2);
+			}
+			entryDeparture[entries] = leaves;
+			entryArrival[entries] = best;
+			entryNext[entries] = head;
+			stationStamp[from] = generation;
+			profileHead[from] = entries++;
+		}
+
+		int count = 0;
+		int head = stationStamp[start] == generation ? profileHead[start] : -1;
+		for(int entry = head; entry >= 0; entry = entryNext[entry])
+			count++;
+		int[] departures = new int[count];
+		count = 0;
+		for(int entry = head; entry >= 0; entry = entryNext[entry])
+			departures[count++] = entryDeparture[entry];
+		return departures;
+	}
+}
@@ -0,0 +1,599 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.stream.IntStream;
+
+/**
+ * Contraction Hierarchy over a CSRGraph. Preprocessing contracts the vertices one by one in order
+ * of importance, adding a shortcut edge u->w whenever removing v would destroy the only shortest
+ * path u->v->w. The vertex order (rank) and the resulting edges are split into an upward graph
+ * (edges towards higher ranked vertices) and a downward graph (edges from higher ranked vertices),
+ * and a query is a bidirectional Dijkstra that only ever moves up in rank from both ends. That
+ * search settles a few hundred vertices even on national networks.
+ *
+ * Preprocessing contracts an independent set of vertices per round, so the witness searches of
+ * a round run in parallel on the common ForkJoinPool. The finished hierarchy can be saved and
+ * loaded again, so a restart does not pay for preprocessing.
+ */
+public class ContractionHierarchy<NodeType> {
+
+	private static final int FILE_MAGIC = 0x43483031; // "CH01"
+	private static final int WITNESS_SETTLE_LIMIT = 500; // give up and add the shortcut after this many vertices
+
+	private static final ThreadLocal<QueryScratch> SCRATCH = ThreadLocal.withInitial(QueryScratch::new);
+
+	private final CSRGraph<NodeType> graph;
+	private final int[] rank; // contraction order of each vertex
+
+	// edges u->v with rank[u] < rank[v], grouped by u and sorted by v
+	private final int[] upOffsets;
+	private final int[] upTargets;
+	private final double[] upWeights;
+	private final int[] upMiddle; // contracted vertex a shortcut bypasses, -1 for original edges
+
+	// edges u->v with rank[u] > rank[v], grouped by v and sorted by u
+	private final int[] downOffsets;
+	private final int[] downSources;
+	private final double[] downWeights;
+	private final int[] downMiddle;
+
+	private ContractionHierarchy(CSRGraph<NodeType> graph, int[] rank, int[] upOffsets, int[] upTargets,
+			double[] upWeights, int[] upMiddle, int[] downOffsets, int[] downSources, double[] downWeights,
+			int[] downMiddle) {
+		this.graph = graph;
+		this.rank = rank;
+		this.upOffsets = upOffsets;
+		this.upTargets = upTargets;
+		this.upWeights = upWeights;
+		this.upMiddle = upMiddle;
+		this.downOffsets = downOffsets;
+		this.downSources = downSources;
+		this.downWeights = downWeights;
+		this.downMiddle = downMiddle;
+	}
+
+	/**
+	 * Runs the preprocessing for graph.
+	 *
+	 * @param graph the graph to build the hierarchy for
+	 * @return the contraction hierarchy of graph
+	 */
+	public static <NodeType> ContractionHierarchy<NodeType> build(CSRGraph<NodeType> graph) {
+		return new Contractor<>(graph).contract();
+	}
+
+	/**
+	 * Returns the graph this hierarchy was built for.
+	 */
+	public CSRGraph<NodeType> getGraph() {
+		return graph;
+	}
+
+	/**
+	 * Returns the number of edges in the hierarchy, original edges and shortcuts together.
+	 */
+	public int getEdgeCount() {
+		return upTargets.length + downSources.length;
+	}
+
+	/**
+	 * Returns the shortest path between start and end.
+	 *
+	 * @param start the data item in the starting vertex for the path
+	 * @param end the data item in the destination vertex for the path
+	 * @return list of data item in vertices in order on the shortest path between vertex
+	 * with data item start and vertex with data item end, including both start and end
+	 * @throws NoSuchElementException when no path from start to end can be found
+	 *     including when no vertex containing start or end can be found
+	 */
+	public List<NodeType> shortestPath(NodeType start, NodeType end) {
+		QueryScratch scratch = SCRATCH.get();
+		query(scratch, start, end);
+		return unpackPath(scratch);
+	}
+
+	/**
+	 * Returns the shortest path between start and end together with its leg weights, its cost and
+	 * the number of vertices both upward searches settled, from a single query.
+	 *
+	 * @param start the data item in the starting vertex for the path
+	 * @param end the data item in the destination vertex for the path
+	 * @return the route from the vertex with data item start to the vertex with data item end
+	 * @throws NoSuchElementException when no path from start to end can be found
+	 *     including when no vertex containing start or end can be found
+	 */
+	public RouteResult<NodeType> route(NodeType start, NodeType end) {
+		long began = System.nanoTime();
+		QueryScratch scratch = SCRATCH.get();
+		double cost = query(scratch, start, end);
+		List<NodeType> path = unpackPath(scratch);
+		long elapsed = System.nanoTime() - began;
+		return RouteResult.of(graph, path, cost,
+				scratch.forward.getSettledCount() + scratch.backward.getSettledCount(), elapsed);
+	}
+
+	/**
+	 * Expands the shortcuts on both halves of the path found by the last query into original vertices.
+	 */
+	private List<NodeType> unpackPath(QueryScratch scratch) {
+		List<NodeType> path = new ArrayList<>();
+		int meet = scratch.meet;
+		// forward half, collected backwards from the meeting vertex
+		List<NodeType> forward = new ArrayList<>();
+		for(int v = meet; scratch.forward.parentEdge(v) >= 0; v = scratch.forward.parent(v))
+			unpackUp(scratch.forward.parent(v), scratch.forward.parentEdge(v), forward, true);
+		Collections.reverse(forward);
+		path.add(graph.vertexData(scratch.forward.source()));
+		path.addAll(forward);
+		// backward half, walked from the meeting vertex towards the end
+		for(int v = meet; scratch.backward.parentEdge(v) >= 0; v = scratch.backward.parent(v))
+			unpackDown(v, scratch.backward.parent(v), scratch.backward.parentEdge(v), path);
+		return path;
+	}
+
+	/**
+	 * Returns the cost of the path (sum over edge weights) between start and end.
+	 *
+	 * @param start the data item in the starting vertex for the path
+	 * @param end the data item in the end vertex for the path
+	 * @return the cost of the shortest path between vertex with data item start
+	 * and vertex with data item end, including all edges between start and end
+	 * @throws NoSuchElementException when no path from start to end can be found
+	 *     including when no vertex containing start or end can be found
+	 */
+	public double getPathCost(NodeType start, NodeType end) {
+		QueryScratch scratch = SCRATCH.get();
+		return query(scratch, start, end);
+	}
+
+	/**
+	 * Bidirectional upward search: forward from start over upward edges and backward from end over
+	 * downward edges, until neither side can improve on the best meeting point found so far.
+	 */
+	private double query(QueryScratch scratch, NodeType start, NodeType end) {
+		if(start == null || end == null)
+			throw new NullPointerException("Cannot find path for null start and end");
+		int s = graph.indexOf(start);
+		int t = graph.indexOf(end);
+		if(s < 0)
+			throw new NoSuchElementException("The graph does not contain the start vertex");
+		if(t < 0)
+			throw new NoSuchElementException("The graph does not contain the end vertex");
+
+		int n = rank.length;
+		SearchFrontier forward = scratch.forward;
+		SearchFrontier backward = scratch.backward;
+		forward.reset(n, s);
+		backward.reset(n, t);
+		double best = Double.POSITIVE_INFINITY;
+		int meet = -1;
+		if(s == t) {
+			best = 0.0D;
+			meet = s;
+		}
+		while(true) {
+			boolean forwardDone = forward.isEmpty() || forward.minKey() >= best;
+			boolean backwardDone = backward.isEmpty() || backward.minKey() >= best;
+			if(forwardDone && backwardDone) break;
+			boolean stepForward = !forwardDone && (backwardDone || forward.minKey() <= backward.minKey());
+			SearchFrontier side = stepForward ? forward : backward;
+			SearchFrontier other = stepForward ? backward : forward;
+			int u = side.pop();
+			double du = side.distance(u);
+			if(other.isReached(u) && du + other.distance(u) < best) {
+				best = du + other.distance(u);
+				meet = u;
+			}
+			int[] offsets = stepForward ? upOffsets : downOffsets;
+			int[] heads = stepForward ? upTargets : downSources;
+			double[] weights = stepForward ? upWeights : downWeights;
+			for(int e = offsets[u]; e < offsets[u + 1]; e++)
+				side.relax(u, heads[e], du + weights[e], e);
+		}
+		forward.countWork();
+		backward.countWork();
+		if(meet < 0)
+			throw new NoSuchElementException("No shortest path found for the vertices.");
+		scratch.meet = meet;
+		return best;
+	}
+
+	/**
+	 * Appends the vertices of upward edge e (from u) to out, excluding u. When reversed is true
+	 * the vertices are appended last to first, for callers that collect a path backwards.
+	 */
+	private void unpackUp(int u, int e, List<NodeType> out, boolean reversed) {
+		unpack(u, upTargets[e], upMiddle[e], out, reversed);
+	}
+
+	/**
+	 * Appends the vertices of downward edge e, which leads from v to p, to out, excluding v.
+	 */
+	private void unpackDown(int v, int p, int e, List<NodeType> out) {
+		unpack(v, p, downMiddle[e], out, false);
+	}
+
+	/**
+	 * Appends the original vertices of the edge from u to v, excluding u, to out.
+	 */
+	private void unpack(int u, int v, int middle, List<NodeType> out, boolean reversed) {
+		if(middle < 0) {
+			out.add(graph.vertexData(v));
+			return;
+		}
+		// both halves of a shortcut end in the bypassed vertex, which is ranked below u and v:
+		// u->middle is a downward edge stored at middle, middle->v an upward edge from middle
+		int first = findEdge(downOffsets, downSources, middle, u);
+		int second = findEdge(upOffsets, upTargets, middle, v);
+		if(reversed) {
+			unpack(middle, v, upMiddle[second], out, true);
+			unpack(u, middle, downMiddle[first], out, true);
+		} else {
+			unpack(u, middle, downMiddle[first], out, false);
+			unpack(middle, v, upMiddle[second], out, false);
+		}
+	}
+
+	private static int findEdge(int[] offsets, int[] heads, int vertex, int head) {
+		int e = Arrays.binarySearch(heads, offsets[vertex], offsets[vertex + 1], head);
+		if(e < 0) throw new IllegalStateException("Contraction hierarchy is missing a shortcut half");
+		return e;
+	}
+
+	/**
+	 * Writes the hierarchy to file so it can be loaded again with load().
+	 *
+	 * @param file the file to write, replaced if it exists
+	 * @throws IOException if the file cannot be written
+	 */
+	public void save(Path file) throws IOException {
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+			out.writeInt(FILE_MAGIC);
+			out.writeInt(rank.length);
+			out.writeLong(fingerprint(graph));
+			writeInts(out, rank);
+			writeInts(out, upOffsets);
+			writeInts(out, upTargets);
+			writeDoubles(out, upWeights);
+			writeInts(out, upMiddle);
+			writeInts(out, downOffsets);
+			writeInts(out, downSources);
+			writeDoubles(out, downWeights);
+			writeInts(out, downMiddle);
+		}
+	}
+
+	/**
+	 * Loads a hierarchy written by save() for the given graph.
+	 *
+	 * @param file the file to read
+	 * @param graph the graph the hierarchy was built for
+	 * @return the loaded hierarchy
+	 * @throws IOException if the file cannot be read, is not a hierarchy file, or was built for
+	 *     a different graph
+	 */
+	public static <NodeType> ContractionHierarchy<NodeType> load(Path file, CSRGraph<NodeType> graph) throws IOException {
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+			if(in.readInt() != FILE_MAGIC)
+				throw new IOException("Not a contraction hierarchy file: " + file);
+			if(in.readInt() != graph.getVertexCount() || in.readLong() != fingerprint(graph))
+				throw new IOException("Contraction hierarchy " + file + " was built for a different graph");
+			int[] rank = readInts(in);
+			int[] upOffsets = readInts(in);
+			int[] upTargets = readInts(in);
+			double[] upWeights = readDoubles(in);
+			int[] upMiddle = readInts(in);
+			int[] downOffsets = readInts(in);
+			int[] downSources = readInts(in);
+			double[] downWeights = readDoubles(in);
+			int[] downMiddle = readInts(in);
+			return new ContractionHierarchy<>(graph, rank, upOffsets, upTargets, upWeights, upMiddle,
+					downOffsets, downSources, downWeights, downMiddle);
+		}
+	}
+
+	/**
+	 * Hash of the vertices, edges and weights of graph, used to detect a saved hierarchy that no
+	 * longer matches the graph it is loaded for.
+	 */
+	private static long fingerprint(CSRGraph<?> graph) {
+		long hash = graph.getVertexCount();
+		for(int v = 0; v < graph.getVertexCount(); v++) {
+			hash = hash * 31 + graph.vertexData(v).hashCode();
+			for(int e = graph.firstEdge(v); e < graph.endEdge(v); e++)
+				hash = (hash * 31 + graph.edgeTarget(e)) * 31 + Double.doubleToLongBits(graph.edgeWeight(e));
+		}
+		return hash;
+	}
+
+	private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+		out.writeInt(values.length);
+		for(int value : values)
+			out.writeInt(value);
+	}
+
+	private static void writeDoubles(DataOutputStream out, double[] values) throws IOException {
+		out.writeInt(values.length);
+		for(double value : values)
+			out.writeDouble(value);
+	}
+
+	private static int[] readInts(DataInputStream in) throws IOException {
+		int[] values = new int[in.readInt()];
+		for(int i = 0; i < values.length; i++)
+			values[i] = in.readInt();
+		return values;
+	}
+
+	private static double[] readDoubles(DataInputStream in) throws IOException {
+		double[] values = new double[in.readInt()];
+		for(int i = 0; i < values.length; i++)
+			values[i] = in.readDouble();
+		return values;
+	}
+
+	private static final class QueryScratch {
+		final SearchFrontier forward = new SearchFrontier();
+		final SearchFrontier backward = new SearchFrontier();
+		int meet;
+	}
+
+	/**
+	 * Growable list of weighted edges to or from one vertex during preprocessing.
+	 */
+	private static final class EdgeList {
+		int[] heads = new int[4];
+		double[] weights = new double[4];
+		int[] middle = new int[4];
+		int size = 0;
+
+		int indexOf(int head) {
+			for(int i = 0; i < size; i++)
+				if(heads[i] == head) return i;
+			return -1;
+		}
+
+		/** Adds the edge, or lowers the weight of an existing edge to the same head. */
+		boolean addOrDecrease(int head, double weight, int via) {
+			int i = indexOf(head);
+			if(i >= 0) {
+				if(weights[i] <= weight) return false;
+				weights[i] = weight;
+				middle[i] = via;
+				return true;
+			}
+			if(size == heads.length) {
+				heads = Arrays.copyOf(heads, size * 2);
+				weights = Arrays.copyOf(weights, size * 2);
+				middle = Arrays.copyOf(middle, size * 2);
+			}
+			heads[size] = head;
+			weights[size] = weight;
+			middle[size] = via;
+			size++;
+			return true;
+		}
+
+		void remove(int head) {
+			int i = indexOf(head);
+			if(i < 0) return;
+			size--;
+			heads[i] = heads[size];
+			weights[i] = weights[size];
+			middle[i] = middle[size];
+		}
+	}
+
+	/**
+	 * Preprocessing state: the overlay graph of vertices that are not contracted yet.
+	 */
+	private static final class Contractor<NodeType> {
+		private static final byte REMAINING = 0, IN_BATCH = 1, CONTRACTED = 2;
+		private static final ThreadLocal<SearchFrontier> WITNESS = ThreadLocal.withInitial(SearchFrontier::new);
+
+		final CSRGraph<NodeType> graph;
+		final int n;
+		final EdgeList[] out;
+		final EdgeList[] in;
+		final byte[] state;
+		final int[] priority;
+		final int[] contractedNeighbours;
+		// final edges of each contracted vertex: upward edges leaving it, downward edges entering it
+		final EdgeList[] up;
+		final EdgeList[] down;
+
+		Contractor(CSRGraph<NodeType> graph) {
+			this.graph = graph;
+			this.n = graph.getVertexCount();
+			out = new EdgeList[n];
+			in = new EdgeList[n];
+			for(int v = 0; v < n; v++) {
+				out[v] = new EdgeList();
+				in[v] = new EdgeList();
+			}
+			for(int u = 0; u < n; u++)
+				for(int e = graph.firstEdge(u); e < graph.endEdge(u); e++) {
+					int v = graph.edgeTarget(e);
+					if(u == v) continue; // self loops are never on a shortest path
+					out[u].addOrDecrease(v, graph.edgeWeight(e), -1);
+					in[v].addOrDecrease(u, graph.edgeWeight(e), -1);
+				}
+			state = new byte[n];
+			priority = new int[n];
+			contractedNeighbours = new int[n];
+			up = new EdgeList[n];
+			down = new EdgeList[n];
+		}
+
+		ContractionHierarchy<NodeType> contract() {
+			int[] rank = new int[n];
+			int nextRank = 0;
+			IntStream.range(0, n).parallel().forEach(v -> priority[v] = computePriority(v));
+			int[] remaining = IntStream.range(0, n).toArray();
+			int remainingCount = n;
+			while(remainingCount > 0) {
+				// vertices whose priority is smaller than that of all their remaining neighbours
+				int[] batch = Arrays.stream(remaining, 0, remainingCount).parallel().filter(this::isLocalMinimum).toArray();
+				for(int v : batch)
+					state[v] = IN_BATCH;
+				@SuppressWarnings({"unchecked", "rawtypes"})
+				List<double[]>[] shortcuts = new List[batch.length];
+				IntStream.range(0, batch.length).parallel().forEach(i -> shortcuts[i] = findShortcuts(batch[i], true));
+
+				// apply the batch one vertex at a time, the overlay graph is only modified here
+				boolean[] touched = new boolean[n];
+				for(int i = 0; i < batch.length; i++) {
+					int v = batch[i];
+					rank[v] = nextRank++;
+					up[v] = out[v];
+					down[v] = in[v];
+					state[v] = CONTRACTED;
+					for(int j = 0; j < out[v].size; j++) {
+						int w = out[v].heads[j];
+						in[w].remove(v);
+						contractedNeighbours[w]++;
+						touched[w] = true;
+					}
+					for(int j = 0; j < in[v].size; j++) {
+						int u = in[v].heads[j];
+						out[u].remove(v);
+						contractedNeighbours[u]++;
+						touched[u] = true;
+					}
+					for(double[] shortcut : shortcuts[i]) {
+						int u = (int) shortcut[0];
+						int w = (int) shortcut[1];
+						if(out[u].addOrDecrease(w, shortcut[2], v))
+							in[w].addOrDecrease(u, shortcut[2], v);
+					}
+				}
+
+				int kept = 0;
+				for(int i = 0; i < remainingCount; i++)
+					if(state[remaining[i]] == REMAINING)
+						remaining[kept++] = remaining[i];
+				remainingCount = kept;
+				int[] update = Arrays.stream(remaining, 0, remainingCount).filter(v -> touched[v]).toArray();
+				Arrays.stream(update).parallel().forEach(v -> priority[v] = computePriority(v));
+			}
+			return freeze(rank);
+		}
+
+		boolean isLocalMinimum(int v) {
+			for(int j = 0; j < out[v].size; j++)
+				if(before(out[v].heads[j], v)) return false;
+			for(int j = 0; j < in[v].size; j++)
+				if(before(in[v].heads[j], v)) return false;
+			return true;
+		}
+
+		boolean before(int a, int b) {
+			return priority[a] < priority[b] || (priority[a] == priority[b] && a < b);
+		}
+
+		/**
+		 * Edge difference plus the number of contracted neighbours, which keeps the contraction
+		 * spread evenly over the graph.
+		 */
+		int computePriority(int v) {
+			int shortcuts = findShortcuts(v, false).size();
+			return shortcuts - out[v].size - in[v].size + contractedNeighbours[v];
+		}
+
+		/**
+		 * Finds the shortcuts needed to contract v: for each remaining in-neighbour u and
+		 * out-neighbour w, a shortcut u->w unless a witness path from u to w avoiding v is at least
+		 * as short. While a batch is contracted (inBatch) the witness searches also avoid the
+		 * other vertices of the batch, since those disappear at the same time.
+		 *
+		 * @return the shortcuts as {source, target, weight}
+		 */
+		List<double[]> findShortcuts(int v, boolean inBatch) {
+			List<double[]> shortcuts = new ArrayList<>();
+			EdgeList incoming = in[v];
+			EdgeList outgoing = out[v];
+			if(outgoing.size == 0) return shortcuts;
+			double maxOut = 0;
+			for(int j = 0; j < outgoing.size; j++)
+				maxOut = Math.max(maxOut, outgoing.weights[j]);
+			SearchFrontier witness = WITNESS.get();
+			for(int i = 0; i < incoming.size; i++) {
+				int u = incoming.heads[i];
+				double viaWeight = incoming.weights[i];
+				witnessSearch(witness, u, v, viaWeight + maxOut, inBatch);
+				for(int j = 0; j < outgoing.size; j++) {
+					int w = outgoing.heads[j];
+					if(w == u) continue;
+					double shortcut = viaWeight + outgoing.weights[j];
+					if(!witness.isReached(w) || witness.distance(w) > shortcut)
+						shortcuts.add(new double[] {u, w, shortcut});
+				}
+			}
+			return shortcuts;
+		}
+
+		/**
+		 * Dijkstra from u over the remaining vertices, skipping v, until the distance limit or the
+		 * settle limit is reached.
+		 */
+		void witnessSearch(SearchFrontier search, int u, int v, double limit, boolean inBatch) {
+			search.reset(n, u);
+			int settled = 0;
+			while(!search.isEmpty() && settled++ < WITNESS_SETTLE_LIMIT) {
+				if(search.minKey() > limit) break;
+				int x = search.pop();
+				double dx = search.distance(x);
+				EdgeList edges = out[x];
+				for(int j = 0; j < edges.size; j++) {
+					int y = edges.heads[j];
+					if(y == v || (inBatch && state[y] != REMAINING)) continue;
+					search.relax(x, y, dx + edges.weights[j], -1);
+				}
+			}
+		}
+
+		ContractionHierarchy<NodeType> freeze(int[] rank) {
+			int[] upOffsets = new int[n + 1];
+			int[] downOffsets = new int[n + 1];
+			for(int v = 0; v < n; v++) {
+				upOffsets[v + 1] = upOffsets[v] + up[v].size;
+				downOffsets[v + 1] = downOffsets[v] + down[v].size;
+			}
+			int[] upTargets = new int[upOffsets[n]];
+			double[] upWeights = new double[upOffsets[n]];
+			int[] upMiddle = new int[upOffsets[n]];
+			int[] downSources = new int[downOffsets[n]];
+			double[] downWeights = new double[downOffsets[n]];
+			int[] downMiddle = new int[downOffsets[n]];
+			for(int v = 0; v < n; v++) {
+				copySorted(up[v], upOffsets[v], upTargets, upWeights, upMiddle);
+				copySorted(down[v], downOffsets[v], downSources, downWeights, downMiddle);
+			}
+			return new ContractionHierarchy<>(graph, rank, upOffsets, upTargets, upWeights, upMiddle,
+					downOffsets, downSources, downWeights, downMiddle);
+		}
+
+		/** Copies edges into the CSR arrays starting at offset, sorted by head vertex. */
+		static void copySorted(EdgeList edges, int offset, int[] heads, double[] weights, int[] middle) {
+			long[] order = new long[edges.size];
+			for(int j = 0; j < edges.size; j++)
+				order[j] = ((long) edges.heads[j] << 32) | j;
+			Arrays.sort(order);
+			for(int j = 0; j < order.length; j++) {
+				int index = (int) order[j];
+				heads[offset + j] = edges.heads[index];
+				weights[offset + j] = edges.weights[index];
+				middle[offset + j] = edges.middle[index];
+			}
+		}
+	}
+}
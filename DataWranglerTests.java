@@ -1,10 +1,19 @@
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 import java.util.Scanner;
 
 import org.junit.jupiter.api.Test;
@@ -68,7 +77,7 @@ class DataWranglerTests {
 		}
 
 		tempLoader.loadVertices(scnr);
-		ArrayList<String> result = TrainDataLoader.getVertices();
+		ArrayList<String> result = tempLoader.getVertices();
 		String expected = "[Albany, Chicago, Milwaukee, Dallas, LA, Atlanta, Denver, Minneapolis]";
 		assertEquals(result.toString(), expected);
 
@@ -143,6 +152,193 @@ class DataWranglerTests {
 
 	}
 	
+	/**
+	 * This tests that the streaming parser reads standard DOT syntax: quoted ids, -> edges,
+	 * edge chains, extra attributes, attribute statements, subgraphs and comments
+	 */
+	@Test
+	public void DWTest6() throws IOException {
+		CSRGraph<String> graph = parse("/* nightly export */\n"
+				+ "digraph \"Rail Network\" {\n"
+				+ "  rankdir=LR; node [shape=box]\n"
+				+ "# generated\n"
+				+ "  \"St. Paul\" [label=\"Saint Paul\"]\n"
+				+ "  \"St. Paul\" -> Minneapolis [color=red, weight=2.5]; // river crossing\n"
+				+ "  Minneapolis->Duluth->\"Thunder \\\"Bay\\\"\" [weight=30]\n"
+				+ "  subgraph south { Chicago -- Milwaukee [weight=2] }\n"
+				+ "  Duluth -> Minneapolis\n"
+				+ "}\n");
+
+		assertEquals("St. Paul", graph.vertexData(0));
+		assertEquals(6, graph.getVertexCount());
+		assertEquals(5, graph.getEdgeCount());
+		assertEquals(2.5, graph.getWeight("St. Paul", "Minneapolis"), 0.0);
+		assertEquals(30.0, graph.getWeight("Duluth", "Thunder \"Bay\""), 0.0);
+		assertEquals(2.0, graph.getWeight("Chicago", "Milwaukee"), 0.0);
+		assertEquals(1.0, graph.getWeight("Duluth", "Minneapolis"), 0.0);
+		assertTrue(!graph.containsEdge("Milwaukee", "Chicago"));
+	}
+
+	/**
+	 * This tests that stations and weights split across the parser's read blocks are read
+	 * correctly, and that malformed input is reported with its line number
+	 */
+	@Test
+	public void DWTest7() throws IOException {
+		StringBuilder text = new StringBuilder("graph Big {\n");
+		for (int i = 0; i < 20000; i++)
+			text.append("\"Station number ").append(i).append("\" -- \"Station number ").append(i + 1)
+					.append("\" [weight=").append(i % 97).append(".25]\n");
+		text.append("}\n");
+		CSRGraph<String> graph = parse(text.toString());
+
+		assertEquals(20001, graph.getVertexCount());
+		assertEquals(20000, graph.getEdgeCount());
+		assertEquals(12345 % 97 + 0.25, graph.getWeight("Station number 12345", "Station number 12346"), 0.0);
+		assertEquals("Station number 19999", graph.vertexData(19999));
+
+		try {
+			parse("graph G {\n A -- B [weight=2]\n B -- [weight=3]\n}");
+			assertTrue(false);
+		} catch (IOException e) {
+			assertEquals("test:3: expected a station after the edge operator", e.getMessage());
+		}
+	}
+
+	/**
+	 * This tests that loading a file on several threads gives the same stations, in the same
+	 * order, and the same edges as loading it on one thread, also when a quoted id spans lines
+	 */
+	@Test
+	public void DWTest8() throws IOException {
+		Path file = Files.createTempFile("parallel", ".gv");
+		try {
+			StringBuilder text = new StringBuilder("digraph Big {\n  rankdir=LR\n");
+			Random random = new Random(8);
+			for (int i = 0; i < 120000; i++) {
+				text.append("S").append(random.nextInt(5000)).append(" -> S").append(random.nextInt(5000))
+						.append(" [weight=").append(random.nextInt(100)).append("]\n");
+				if (i % 20000 == 0)
+					text.append("subgraph g").append(i).append(" {\n\"Long\nName ").append(i).append("\" -> S1 }\n");
+			}
+			text.append("}\n");
+			Files.write(file, text.toString().getBytes(StandardCharsets.UTF_8));
+
+			StationTable expectedStations = new StationTable();
+			EdgeBuffer expectedEdges = new EdgeBuffer();
+			new DotParser(expectedStations, expectedEdges).parse(file);
+			for (int threads : new int[] {1, 2, 3, 8}) {
+				StationTable stations = new StationTable();
+				EdgeBuffer edges = new EdgeBuffer();
+				ParallelDotLoader.load(file, threads, stations, edges);
+				assertEquals(expectedStations.size(), stations.size());
+				for (int id = 0; id < stations.size(); id++)
+					assertEquals(expectedStations.name(id), stations.name(id));
+				assertEquals(expectedEdges.size(), edges.size());
+				for (int i = 0; i < edges.size(); i++) {
+					assertEquals(expectedEdges.source(i), edges.source(i));
+					assertEquals(expectedEdges.target(i), edges.target(i));
+					assertEquals(expectedEdges.weight(i), edges.weight(i), 0.0);
+				}
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	/**
+	 * This tests that converting TrainData.gv to a binary network file and mapping it back gives
+	 * the same graph, that the backend can load the binary file, and that a damaged file is rejected
+	 */
+	@Test
+	public void DWTest9() throws IOException {
+		Path file = Files.createTempFile("TrainData", ".rnet");
+		try {
+			CSRGraph<String> expected = new TrainDataLoader().loadGraph("TrainData.gv");
+			NetworkFile.write(expected, file);
+			assertTrue(NetworkFile.isNetworkFile(file));
+			assertTrue(!NetworkFile.isNetworkFile(Paths.get("TrainData.gv")));
+
+			CSRGraph<String> mapped = NetworkFile.map(file, true);
+			assertEquals(expected.getVertexCount(), mapped.getVertexCount());
+			assertEquals(expected.getEdgeCount(), mapped.getEdgeCount());
+			for (int v = 0; v < expected.getVertexCount(); v++) {
+				assertEquals(expected.vertexData(v), mapped.vertexData(v));
+				assertEquals(expected.firstEdge(v), mapped.firstEdge(v));
+				assertEquals(expected.endEdge(v), mapped.endEdge(v));
+			}
+			for (int e = 0; e < expected.getEdgeCount(); e++) {
+				assertEquals(expected.edgeTarget(e), mapped.edgeTarget(e));
+				assertEquals(expected.edgeWeight(e), mapped.edgeWeight(e), 0.0);
+			}
+			assertEquals(62.0, mapped.getPathCost("Milwaukee", "LA"), 0.0);
+			assertEquals(62.0, new TrainBackend(file).getShortestPathLength("Milwaukee", "LA"), 0.0);
+
+			byte[] bytes = Files.readAllBytes(file);
+			bytes[bytes.length - 1] ^= 1;
+			Files.write(file, bytes);
+			try {
+				NetworkFile.map(file, true);
+				assertTrue(false);
+			} catch (IOException e) {
+				assertTrue(e.getMessage().endsWith("does not match its checksum"));
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	/**
+	 * This tests that a synthetic network loads from its DOT file and its binary file as the same
+	 * graph, with every connection in both directions with the same weight, and that the same
+	 * seed writes the same file
+	 */
+	@Test
+	public void DWTest10() throws IOException {
+		Path dot = Files.createTempFile("synthetic", ".gv");
+		Path binary = Files.createTempFile("synthetic", ".rnet");
+		Path again = Files.createTempFile("synthetic", ".gv");
+		try {
+			SyntheticNetwork network = new SyntheticNetwork(5000, 21, 12, 15, 2, 1.2, 0.5, 1, 9);
+			network.writeDot(dot);
+			NetworkFile.write(network, binary);
+			new SyntheticNetwork(5000, 21, 12, 15, 2, 1.2, 0.5, 1, 9).writeDot(again);
+			assertTrue(Arrays.equals(Files.readAllBytes(dot), Files.readAllBytes(again)));
+
+			CSRGraph<String> loaded = new TrainDataLoader().loadGraph(dot.toString());
+			CSRGraph<String> mapped = NetworkFile.map(binary, true);
+			assertEquals(5000, loaded.getVertexCount());
+			assertEquals(network.edgeCount(), loaded.getEdgeCount());
+			assertEquals(network.edgeCount(), mapped.getEdgeCount());
+			for (int v = 0; v < loaded.getVertexCount(); v++) {
+				assertEquals(network.name(v), loaded.vertexData(v));
+				assertEquals(loaded.vertexData(v), mapped.vertexData(v));
+				assertEquals(loaded.firstEdge(v), mapped.firstEdge(v));
+				for (int e = loaded.firstEdge(v); e < loaded.endEdge(v); e++) {
+					int target = loaded.edgeTarget(e);
+					assertEquals(target, mapped.edgeTarget(e));
+					assertEquals(loaded.edgeWeight(e), mapped.edgeWeight(e), 0.0);
+					assertEquals(loaded.edgeWeight(e), loaded.edgeWeight(loaded.findEdge(target, v)), 0.0);
+				}
+			}
+			ShortestPathTree<String> tree = loaded.shortestPathTree("Hub0");
+			for (int v = 0; v < loaded.getVertexCount(); v++)
+				assertTrue(tree.distance(v) < Double.POSITIVE_INFINITY);
+		} finally {
+			Files.delete(dot);
+			Files.delete(binary);
+			Files.delete(again);
+		}
+	}
+
+	private static CSRGraph<String> parse(String text) throws IOException {
+		StationTable stations = new StationTable();
+		EdgeBuffer edges = new EdgeBuffer();
+		new DotParser(stations, edges).parse(
+				Channels.newChannel(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8))), "test");
+		return CSRGraphBuilder.fromParsed(stations, edges);
+	}
+
 	/**
 	 * This tests that Backend succuessfully loads a file from the DataWrangler 
 	 * and gets the correct list of stations
@@ -168,7 +364,7 @@ class DataWranglerTests {
 	@Test
 	public void IntegrationTest2() {
 		TrainBackend tempBackend = new TrainBackend("Milwaukee", "LA");
-		List<Node> actual = tempBackend.getShortestPath("Milwaukee", "LA");
+		List<String> actual = tempBackend.getShortestPath("Milwaukee", "LA");
         System.out.println(actual);
 		assertEquals("[Milwaukee, Chicago, Atlanta, Dallas, Denver, LA]", actual.toString());
 	}
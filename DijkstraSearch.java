@@ -0,0 +1,206 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reusable Dijkstra search over a CSRGraph. Distances and predecessors are kept in primitive
+ * arrays indexed by vertex id, and the frontier is an IndexedMinHeap with decrease-key, so a
+ * search allocates nothing per relaxation. The arrays belong to the search object and are
+ * reused from one query to the next: every entry carries the generation of the query that
+ * wrote it, so starting a new query is O(1) instead of refilling arrays sized to the graph.
+ *
+ * A search object is not thread safe. Use forThread() to get the one owned by the current
+ * thread.
+ */
+public final class DijkstraSearch {
+
+	private static final ThreadLocal<DijkstraSearch> SCRATCH = ThreadLocal.withInitial(() -> new DijkstraSearch(0));
+
+	private double[] dist; // tentative distance of each vertex, valid while reached[v] == generation
+	private int[] parent; // predecessor on the shortest path, -1 for the source
+	private int[] reached; // generation in which dist and parent were last written
+	private int[] settled; // generation in which the vertex was settled
+	private int[] wanted; // generation in which the vertex was made a target of the search
+	private int generation = 0;
+	private final IndexedMinHeap heap;
+	private int settledCount;
+	private long relaxedCount;
+
+	/**
+	 * Creates a search with scratch space for graphs with up to vertexCount vertices.
+	 */
+	public DijkstraSearch(int vertexCount) {
+		dist = new double[vertexCount];
+		parent = new int[vertexCount];
+		reached = new int[vertexCount];
+		settled = new int[vertexCount];
+		wanted = new int[vertexCount];
+		heap = new IndexedMinHeap(vertexCount);
+	}
+
+	/**
+	 * Returns the search owned by the calling thread, with room for at least vertexCount vertices.
+	 */
+	public static DijkstraSearch forThread(int vertexCount) {
+		DijkstraSearch search = SCRATCH.get();
+		search.ensureCapacity(vertexCount);
+		return search;
+	}
+
+	private void ensureCapacity(int vertexCount) {
+		if(vertexCount <= dist.length) return;
+		int capacity = Math.max(vertexCount, dist.length + (dist.length >> 1));
+		dist = new double[capacity];
+		parent = new int[capacity];
+		reached = Arrays.copyOf(reached, capacity);
+		settled = Arrays.copyOf(settled, capacity);
+		wanted = Arrays.copyOf(wanted, capacity);
+		heap.ensureCapacity(capacity);
+	}
+
+	private void nextGeneration() {
+		heap.clear();
+		settledCount = 0;
+		relaxedCount = 0;
+		if(++generation == 0) { // stamps wrapped around, so old stamps could look current
+			Arrays.fill(reached, 0);
+			Arrays.fill(settled, 0);
+			Arrays.fill(wanted, 0);
+			generation = 1;
+		}
+	}
+
+	/**
+	 * Runs Dijkstra's algorithm from source. The search stops as soon as target is settled, or
+	 * settles every reachable vertex when target is -1.
+	 *
+	 * @param graph the graph to search
+	 * @param source id of the start vertex
+	 * @param target id of the end vertex, or -1 to search the whole graph
+	 * @return true if target was reached (always true when target is -1)
+	 */
+	public boolean run(CSRGraph<?> graph, int source, int target) {
+		start(graph, source);
+		if(target >= 0)
+			wanted[target] = generation;
+		int missing = search(graph, target >= 0 ? 1 : -1);
+		RoutingMetrics.countSearch(settledCount, heap.getPushCount(), heap.getPopCount(), relaxedCount);
+		return missing <= 0;
+	}
+
+	/**
+	 * Runs Dijkstra's algorithm from source until every vertex in targets[from] to targets[to - 1]
+	 * is settled, so one search answers the routes from source to all of them. The search stops
+	 * early once the last target is settled; targets may repeat.
+	 *
+	 * @param graph the graph to search
+	 * @param source id of the start vertex
+	 * @param targets ids of the end vertices
+	 * @param from index of the first target in targets
+	 * @param to index after the last target in targets
+	 * @return the number of distinct targets that were reached
+	 */
+	public int run(CSRGraph<?> graph, int source, int[] targets, int from, int to) {
+		start(graph, source);
+		int distinct = 0;
+		for(int i = from; i < to; i++) {
+			if(wanted[targets[i]] != generation) {
+				wanted[targets[i]] = generation;
+				distinct++;
+			}
+		}
+		int missing = distinct == 0 ? 0 : search(graph, distinct);
+		RoutingMetrics.countSearch(settledCount, heap.getPushCount(), heap.getPopCount(), relaxedCount);
+		return distinct - missing;
+	}
+
+	private void start(CSRGraph<?> graph, int source) {
+		ensureCapacity(graph.getVertexCount());
+		nextGeneration();
+		reached[source] = generation;
+		dist[source] = 0.0D;
+		parent[source] = -1;
+		heap.pushOrDecrease(source, 0.0D);
+	}
+
+	/**
+	 * Settles vertices until the given number of wanted vertices are settled, or every reachable
+	 * vertex when it is -1.
+	 *
+	 * @return the number of wanted vertices that were not reached
+	 */
+	private int search(CSRGraph<?> graph, int missing) {
+		while(!heap.isEmpty()) {
+			int u = heap.pop();
+			settled[u] = generation;
+			settledCount++;
+			if(wanted[u] == generation && --missing == 0) return 0;
+			double du = dist[u];
+			relaxedCount += graph.endEdge(u) - graph.firstEdge(u);
+			for(int e = graph.firstEdge(u), end = graph.endEdge(u); e < end; e++) {
+				int v = graph.edgeTarget(e);
+				if(settled[v] == generation) continue;
+				double d = du + graph.edgeWeight(e);
+				if(reached[v] != generation || d < dist[v]) {
+					reached[v] = generation;
+					dist[v] = d;
+					parent[v] = u;
+					heap.pushOrDecrease(v, d);
+				}
+			}
+		}
+		return missing;
+	}
+
+	/**
+	 * Returns true if the last search found a path to vertex.
+	 */
+	public boolean isReached(int vertex) {
+		return reached[vertex] == generation;
+	}
+
+	/**
+	 * Returns true if the last search settled vertex, meaning its distance is final.
+	 */
+	public boolean isSettled(int vertex) {
+		return settled[vertex] == generation;
+	}
+
+	/**
+	 * Returns the distance to vertex found by the last search, or infinity if it was not reached.
+	 */
+	public double distance(int vertex) {
+		return isReached(vertex) ? dist[vertex] : Double.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * Returns the predecessor of vertex on its shortest path, or -1 for the source and for
+	 * vertices that were not reached.
+	 */
+	public int parent(int vertex) {
+		return isReached(vertex) ? parent[vertex] : -1;
+	}
+
+	/**
+	 * Returns the number of vertices settled by the last search.
+	 */
+	public int getSettledCount() {
+		return settledCount;
+	}
+
+	/**
+	 * Rebuilds the path to vertex from the predecessor array of the last search.
+	 *
+	 * @param graph the graph that was searched
+	 * @param vertex id of the last vertex on the path
+	 * @return the data items of the vertices on the path, from source to vertex
+	 */
+	public <NodeType> List<NodeType> pathTo(CSRGraph<NodeType> graph, int vertex) {
+		List<NodeType> path = new ArrayList<>();
+		for(int v = vertex; v >= 0; v = parent[v])
+			path.add(graph.vertexData(v));
+		Collections.reverse(path);
+		return path;
+	}
+}
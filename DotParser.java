@@ -0,0 +1,534 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Single pass streaming parser for rail networks stored in the DOT language. The file is read in
+ * fixed size blocks from a byte channel and tokenized without decoding it into Strings: station
+ * names are interned into a StationTable as they are read and edges go straight into an EdgeBuffer,
+ * so memory use only grows with the number of distinct stations and edges, not with the file size.
+ *
+ * The parser accepts the usual DOT syntax rather than depending on where things are on a line:
+ * quoted ids with escaped quotes, HTML ids, -- and -> edges, edge chains such as a -> b -> c,
+ * attribute lists, node, edge and graph attribute statements, subgraphs, ports, and //, block and
+ * # comments. An edge's weight is read from its weight attribute and is 1 if it has none. Both --
+ * and -> add a single edge from the left station to the right one, because our network files list
+ * every connection once per direction. Subgraphs only group statements; their contents are added
+ * to the network like any other statement.
+ */
+public class DotParser {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final double DEFAULT_WEIGHT = 1.0D;
+
+	// token kinds returned by next()
+	private static final int END = 0;
+	private static final int ID = 1;
+	private static final int EDGE_OP = 2;
+	private static final int OPEN_BRACKET = 3;
+	private static final int CLOSE_BRACKET = 4;
+	private static final int OPEN_BRACE = 5;
+	private static final int CLOSE_BRACE = 6;
+	private static final int EQUALS = 7;
+	private static final int SEPARATOR = 8; // ; or ,
+
+	private final StationTable stations;
+	private final EdgeBuffer edges;
+
+	private ReadableByteChannel channel;
+	private String sourceName;
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	private final ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+	private int position;
+	private int limit;
+	private long blockStart; // offset in the input of buffer[0]
+	private boolean endOfInput;
+	private long line;
+	private boolean lineStart;
+	private int pushedBack = -1;
+	private int depth;
+
+	private byte[] token = new byte[256]; // bytes of the last ID token, unescaped
+	private int tokenLength;
+	private boolean tokenQuoted;
+	private int[] chain = new int[8]; // station ids of the edge statement being read
+
+	/**
+	 * Creates a parser that adds the stations it reads to stations and the edges to edges.
+	 *
+	 * @param stations the table station names are interned into
+	 * @param edges the buffer edges are appended to
+	 */
+	public DotParser(StationTable stations, EdgeBuffer edges) {
+		this.stations = stations;
+		this.edges = edges;
+	}
+
+	/**
+	 * Parses a DOT file.
+	 *
+	 * @param file the file to read
+	 * @throws IOException if the file cannot be read or is not a valid DOT graph
+	 */
+	public void parse(Path file) throws IOException {
+		try(FileChannel fileChannel = FileChannel.open(file, StandardOpenOption.READ)) {
+			parse(fileChannel, file.toString());
+		}
+	}
+
+	/**
+	 * Parses a DOT graph read from channel. The channel is read to its end but not closed.
+	 *
+	 * @param channel the channel to read the graph from
+	 * @param sourceName the name of the input, used in error messages
+	 * @throws IOException if the channel cannot be read or does not contain a valid DOT graph
+	 */
+	public void parse(ReadableByteChannel channel, String sourceName) throws IOException {
+		start(channel, sourceName);
+		parseHeader();
+		depth = 1;
+		parseStatements();
+		if(depth > 0)
+			throw error("missing } at end of graph");
+		if(next() != END)
+			throw error("unexpected input after the end of the graph");
+	}
+
+	/**
+	 * Reads the graph header, up to and including the brace that opens the graph body. Used by
+	 * ParallelDotLoader to find where the statements start.
+	 *
+	 * @return the byte offset in the input just after the opening brace
+	 */
+	long parseHeader(ReadableByteChannel channel, String sourceName) throws IOException {
+		start(channel, sourceName);
+		parseHeader();
+		return blockStart + position;
+	}
+
+	/**
+	 * Reads the statements in a part of a graph body that starts and ends between two statements.
+	 * Braces are only counted, so subgraphs may open in one part and close in a later one. Used by
+	 * ParallelDotLoader to parse a file in parts.
+	 *
+	 * @return the number of braces opened minus the number closed in this part
+	 */
+	int parseBody(ReadableByteChannel channel, String sourceName) throws IOException {
+		start(channel, sourceName);
+		int unbalanced = Integer.MAX_VALUE / 2; // high enough that closing braces never end the loop
+		depth = unbalanced;
+		parseStatements();
+		return depth - unbalanced;
+	}
+
+	private void parseHeader() throws IOException {
+		int kind = next();
+		if(kind == ID && isKeyword("strict"))
+			kind = next();
+		if(kind != ID || !(isKeyword("graph") || isKeyword("digraph")))
+			throw error("expected graph or digraph");
+		kind = next();
+		if(kind == ID)
+			kind = next();
+		if(kind != OPEN_BRACE)
+			throw error("expected {");
+	}
+
+	private void start(ReadableByteChannel channel, String sourceName) {
+		this.channel = channel;
+		this.sourceName = sourceName;
+		position = 0;
+		limit = 0;
+		blockStart = 0;
+		endOfInput = false;
+		line = 1;
+		lineStart = true;
+		pushedBack = -1;
+		depth = 0;
+	}
+
+	/**
+	 * Reads statements until the brace that closes the graph or the end of the input.
+	 */
+	private void parseStatements() throws IOException {
+		while(depth > 0) {
+			int kind = next();
+			switch(kind) {
+			case END:
+				return;
+			case SEPARATOR:
+				break;
+			case OPEN_BRACE:
+				depth++;
+				break;
+			case CLOSE_BRACE:
+				depth--;
+				break;
+			case ID:
+				parseStatement();
+				break;
+			default:
+				throw error("expected a statement");
+			}
+		}
+	}
+
+	/**
+	 * Reads the rest of a statement that started with the ID token just read.
+	 */
+	private void parseStatement() throws IOException {
+		if(!tokenQuoted && (isKeyword("graph") || isKeyword("node") || isKeyword("edge"))) {
+			if(next() != OPEN_BRACKET)
+				throw error("expected [ after " + tokenText());
+			parseAttributes();
+			return;
+		}
+		if(!tokenQuoted && isKeyword("subgraph")) {
+			int kind = next();
+			if(kind == ID)
+				kind = next();
+			if(kind != OPEN_BRACE)
+				throw error("expected { after subgraph");
+			depth++;
+			return;
+		}
+		if(peekAfterSpace() == '=') { // graph attribute such as rankdir=LR
+			position++;
+			if(next() != ID)
+				throw error("expected a value after =");
+			return;
+		}
+
+		int count = 0;
+		chain[count++] = stationFromToken();
+		int kind = next();
+		while(kind == EDGE_OP) {
+			kind = next();
+			if(kind == OPEN_BRACE)
+				throw error("subgraphs as edge end points are not supported");
+			if(kind != ID)
+				throw error("expected a station after the edge operator");
+			if(count == chain.length)
+				chain = Arrays.copyOf(chain, count * 2);
+			chain[count++] = stationFromToken();
+			kind = next();
+		}
+		double weight = DEFAULT_WEIGHT;
+		if(kind == OPEN_BRACKET)
+			weight = parseAttributes();
+		else
+			pushedBack = kind;
+		for(int i = 1; i < count; i++)
+			edges.add(chain[i - 1], chain[i], weight);
+	}
+
+	/**
+	 * Interns the ID token just read as a station and skips its port, if any.
+	 */
+	private int stationFromToken() throws IOException {
+		int id = stations.intern(token, 0, tokenLength);
+		while(peekAfterSpace() == ':') {
+			position++;
+			if(next() != ID)
+				throw error("expected a port after :");
+		}
+		return id;
+	}
+
+	/**
+	 * Reads attribute lists after their opening bracket was read.
+	 *
+	 * @return the value of the weight attribute, or the default weight if there is none
+	 */
+	private double parseAttributes() throws IOException {
+		double weight = DEFAULT_WEIGHT;
+		while(true) {
+			int kind = next();
+			if(kind == SEPARATOR)
+				continue;
+			if(kind == CLOSE_BRACKET) {
+				if(peekAfterSpace() != '[')
+					return weight;
+				position++;
+				continue;
+			}
+			if(kind != ID)
+				throw error("expected an attribute or ]");
+			boolean isWeight = !tokenQuoted && isKeyword("weight");
+			if(next() != EQUALS)
+				throw error("expected = after attribute " + tokenText());
+			if(next() != ID)
+				throw error("expected an attribute value");
+			if(isWeight)
+				weight = parseWeight();
+		}
+	}
+
+	/**
+	 * Parses the ID token just read as a non-negative decimal number.
+	 */
+	private double parseWeight() throws IOException {
+		long whole = 0;
+		long fraction = 0;
+		long scale = 1;
+		int i = 0;
+		while(i < tokenLength && token[i] >= '0' && token[i] <= '9' && i < 18)
+			whole = whole * 10 + (token[i++] - '0');
+		if(i < tokenLength && token[i] == '.') {
+			i++;
+			while(i < tokenLength && token[i] >= '0' && token[i] <= '9' && scale < 1_000_000_000_000_000L) {
+				fraction = fraction * 10 + (token[i++] - '0');
+				scale *= 10;
+			}
+		}
+		if(i == tokenLength && tokenLength > 0 && !(tokenLength == 1 && token[0] == '.'))
+			return whole + (double) fraction / scale;
+		// signs, exponents and very long numbers are rare, let the library handle them
+		try {
+			double weight = Double.parseDouble(tokenText());
+			if(weight >= 0) return weight;
+		} catch(NumberFormatException e) {
+			// reported below
+		}
+		throw error("weight " + tokenText() + " is not a non-negative number");
+	}
+
+	/**
+	 * Reads the next token. ID tokens leave their unescaped bytes in token.
+	 */
+	private int next() throws IOException {
+		if(pushedBack >= 0) {
+			int kind = pushedBack;
+			pushedBack = -1;
+			return kind;
+		}
+		skipSpace();
+		int c = peek();
+		lineStart = false;
+		switch(c) {
+		case -1:
+			return END;
+		case '{':
+			position++;
+			return OPEN_BRACE;
+		case '}':
+			position++;
+			return CLOSE_BRACE;
+		case '[':
+			position++;
+			return OPEN_BRACKET;
+		case ']':
+			position++;
+			return CLOSE_BRACKET;
+		case '=':
+			position++;
+			return EQUALS;
+		case ';':
+		case ',':
+			position++;
+			return SEPARATOR;
+		case '"':
+			position++;
+			readQuoted();
+			return ID;
+		case '<':
+			position++;
+			readHtml();
+			return ID;
+		case '-':
+			position++;
+			c = peek();
+			if(c == '-' || c == '>') {
+				position++;
+				return EDGE_OP;
+			}
+			if(!(c >= '0' && c <= '9') && c != '.')
+				throw error("unexpected -");
+			tokenLength = 0;
+			tokenQuoted = false;
+			append((byte) '-');
+			readUnquoted();
+			return ID;
+		default:
+			if(!isIdByte(c))
+				throw error("unexpected character " + (char) c);
+			tokenLength = 0;
+			tokenQuoted = false;
+			readUnquoted();
+			return ID;
+		}
+	}
+
+	private void readUnquoted() throws IOException {
+		for(int c = peek(); c >= 0 && isIdByte(c); c = peek()) {
+			append((byte) c);
+			position++;
+		}
+	}
+
+	private void readQuoted() throws IOException {
+		tokenLength = 0;
+		tokenQuoted = true;
+		while(true) {
+			int c = read();
+			if(c < 0)
+				throw error("unterminated quoted id");
+			if(c == '"')
+				return;
+			if(c == '\\') {
+				int escaped = peek();
+				if(escaped == '"') {
+					position++;
+					c = '"';
+				} else if(escaped == '\n') { // line continuation
+					read();
+					continue;
+				} else if(escaped == '\r') {
+					position++;
+					if(peek() == '\n') read();
+					continue;
+				}
+			}
+			append((byte) c);
+		}
+	}
+
+	private void readHtml() throws IOException {
+		tokenLength = 0;
+		tokenQuoted = true;
+		int nesting = 1;
+		while(true) {
+			int c = read();
+			if(c < 0)
+				throw error("unterminated HTML id");
+			if(c == '<') nesting++;
+			if(c == '>' && --nesting == 0) return;
+			append((byte) c);
+		}
+	}
+
+	/**
+	 * Skips whitespace and comments.
+	 */
+	private void skipSpace() throws IOException {
+		while(true) {
+			int c = peek();
+			if(c == '\n') {
+				read();
+				lineStart = true;
+			} else if(c == ' ' || c == '\t' || c == '\r' || c == '\f') {
+				position++;
+			} else if(c == '#' && lineStart) {
+				skipLine();
+			} else if(c == '/') {
+				position++;
+				c = peek();
+				if(c == '/') {
+					skipLine();
+				} else if(c == '*') {
+					position++;
+					int previous = 0;
+					while((c = read()) >= 0 && !(previous == '*' && c == '/'))
+						previous = c;
+					if(c < 0)
+						throw error("unterminated comment");
+				} else {
+					throw error("unexpected /");
+				}
+			} else {
+				return;
+			}
+		}
+	}
+
+	private void skipLine() throws IOException {
+		for(int c = peek(); c >= 0 && c != '\n'; c = peek())
+			position++;
+	}
+
+	/**
+	 * Skips whitespace and comments and returns the next byte without consuming it.
+	 */
+	private int peekAfterSpace() throws IOException {
+		if(pushedBack >= 0)
+			return -1; // a whole token was already read ahead
+		skipSpace();
+		return peek();
+	}
+
+	/**
+	 * Returns the next byte without consuming it, or -1 at the end of the input.
+	 */
+	private int peek() throws IOException {
+		if(position == limit && !fill())
+			return -1;
+		return buffer[position] & 0xff;
+	}
+
+	/**
+	 * Consumes and returns the next byte, or -1 at the end of the input.
+	 */
+	private int read() throws IOException {
+		int c = peek();
+		if(c >= 0) {
+			position++;
+			if(c == '\n') line++;
+		}
+		return c;
+	}
+
+	private boolean fill() throws IOException {
+		if(endOfInput)
+			return false;
+		wrapped.clear();
+		int read;
+		do {
+			read = channel.read(wrapped);
+		} while(read == 0);
+		if(read < 0) {
+			endOfInput = true;
+			return false;
+		}
+		blockStart += limit;
+		position = 0;
+		limit = read;
+		return true;
+	}
+
+	private void append(byte b) {
+		if(tokenLength == token.length)
+			token = Arrays.copyOf(token, tokenLength * 2);
+		token[tokenLength++] = b;
+	}
+
+	private static boolean isIdByte(int c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+				|| c == '_' || c == '.' || c >= 0x80;
+	}
+
+	/**
+	 * Returns true if the ID token just read is the given keyword, ignoring case like DOT does.
+	 */
+	private boolean isKeyword(String keyword) {
+		if(tokenLength != keyword.length())
+			return false;
+		for(int i = 0; i < tokenLength; i++) {
+			if(Character.toLowerCase((char) token[i]) != keyword.charAt(i))
+				return false;
+		}
+		return true;
+	}
+
+	private String tokenText() {
+		return new String(token, 0, tokenLength, StandardCharsets.UTF_8);
+	}
+
+	private IOException error(String message) {
+		return new IOException(sourceName + ":" + line + ": " + message);
+	}
+}
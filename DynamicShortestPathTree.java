@@ -0,0 +1,173 @@
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Shortest path tree that is repaired in place when edge weights change, in the style of
+ * Ramalingam and Reps, instead of being computed again with a full search.
+ *
+ * A weight that went up only matters if its edge is in the tree. Then the subtree below it is
+ * the only part whose distances can get longer: those vertices are cut off, given the best
+ * distance through an incoming edge from the rest of the tree, and settled again with Dijkstra's
+ * algorithm. A weight that went down only matters if it gives its target a shorter distance,
+ * which is then propagated the same way. Everything else keeps its distance and parent, so
+ * the work is proportional to the part of the tree that changed.
+ *
+ * A tree is not safe to update from several threads at once.
+ */
+public class DynamicShortestPathTree<NodeType> extends ShortestPathTree<NodeType> {
+
+	private final IndexedMinHeap heap;
+	private final int[] stamp; // generation in which a vertex was last cut off or given a new distance
+	private final boolean[] cut; // true while a vertex is cut off from the tree, valid where stamp is current
+	private final double[] previous; // distance before the current update, valid where stamp is current
+	private final int[] touched; // the vertices stamped in the current update
+	private final int[] queue; // the vertices cut off in the current update
+	private int touchedCount;
+	private int generation = 0;
+
+	/**
+	 * Runs a one-to-all search from source.
+	 *
+	 * @param graph the graph to search
+	 * @param source id of the start vertex
+	 */
+	DynamicShortestPathTree(CSRGraph<NodeType> graph, int source) {
+		super(graph, source);
+		int n = graph.getVertexCount();
+		this.heap = new IndexedMinHeap(n);
+		this.stamp = new int[n];
+		this.cut = new boolean[n];
+		this.previous = new double[n];
+		this.touched = new int[n];
+		this.queue = new int[n];
+	}
+
+	/**
+	 * Returns the graph the distances of this tree are currently correct for.
+	 */
+	public CSRGraph<NodeType> getGraph() {
+		return graph;
+	}
+
+	/**
+	 * Applies new edge weights to this tree's graph and repairs the tree.
+	 *
+	 * @param updates the new weights; updates of edges that are not in the graph are skipped
+	 * @return the number of vertices whose distance changed
+	 */
+	public int update(Collection<? extends EdgeUpdate<NodeType, ? extends Number>> updates) {
+		return update(graph.withUpdatedWeights(updates), updates);
+	}
+
+	/**
+	 * Repairs the tree after the graph's weights were updated elsewhere, so that several trees
+	 * can share one updated graph.
+	 *
+	 * @param updated the result of calling withUpdatedWeights on this tree's graph with updates
+	 * @param updates the updates that were applied
+	 * @return the number of vertices whose distance changed
+	 * @throws IllegalArgumentException if updated does not have the same edges as this tree's graph
+	 */
+	public int update(CSRGraph<NodeType> updated, Collection<? extends EdgeUpdate<NodeType, ? extends Number>> updates) {
+		if(updated.getVertexCount() != graph.getVertexCount() || updated.getEdgeCount() != graph.getEdgeCount())
+			throw new IllegalArgumentException("The updated graph does not have the same edges as this tree's graph");
+		if(++generation == 0) { // stamps wrapped around, so old stamps could look current
+			Arrays.fill(stamp, 0);
+			generation = 1;
+		}
+		heap.clear();
+		touchedCount = 0;
+
+		// cut off the subtrees below tree edges that got longer
+		int tail = 0;
+		for(EdgeUpdate<NodeType, ? extends Number> update : updates) {
+			int s = graph.indexOf(update.getSource());
+			int t = graph.indexOf(update.getTarget());
+			int edge = s < 0 || t < 0 ? -1 : graph.findEdge(s, t);
+			if(edge < 0 || parent[t] != s || updated.edgeWeight(edge) <= graph.edgeWeight(edge) || isCut(t))
+				continue;
+			cutOff(t);
+			queue[tail++] = t;
+			for(int head = tail - 1; head < tail; head++) {
+				int u = queue[head];
+				for(int e = updated.firstEdge(u), end = updated.endEdge(u); e < end; e++) {
+					int child = updated.edgeTarget(e);
+					if(parent[child] == u && !isCut(child)) {
+						cutOff(child);
+						queue[tail++] = child;
+					}
+				}
+			}
+		}
+
+		// reattach every cut off vertex through its best incoming edge from the rest of the tree
+		if(tail > 0) {
+			CSRGraph<NodeType> reverse = updated.reverse();
+			for(int i = 0; i < tail; i++) {
+				int v = queue[i];
+				for(int e = reverse.firstEdge(v), end = reverse.endEdge(v); e < end; e++) {
+					int u = reverse.edgeTarget(e);
+					if(!isCut(u))
+						relax(u, v, reverse.edgeWeight(e));
+				}
+			}
+		}
+
+		// shortcuts from edges that got shorter
+		for(EdgeUpdate<NodeType, ? extends Number> update : updates) {
+			int s = graph.indexOf(update.getSource());
+			int t = graph.indexOf(update.getTarget());
+			int edge = s < 0 || t < 0 ? -1 : graph.findEdge(s, t);
+			if(edge >= 0 && updated.edgeWeight(edge) < graph.edgeWeight(edge))
+				relax(s, t, updated.edgeWeight(edge));
+		}
+
+		// settle the changed vertices and propagate their new distances
+		while(!heap.isEmpty()) {
+			int u = heap.pop();
+			for(int e = updated.firstEdge(u), end = updated.endEdge(u); e < end; e++)
+				relax(u, updated.edgeTarget(e), updated.edgeWeight(e));
+		}
+
+		int changed = 0;
+		for(int i = 0; i < touchedCount; i++)
+			if(dist[touched[i]] != previous[touched[i]])
+				changed++;
+		graph = updated;
+		return changed;
+	}
+
+	private boolean isCut(int vertex) {
+		return stamp[vertex] == generation && cut[vertex];
+	}
+
+	private void cutOff(int vertex) {
+		touch(vertex);
+		cut[vertex] = true;
+		dist[vertex] = Double.POSITIVE_INFINITY;
+		parent[vertex] = -1;
+	}
+
+	/**
+	 * Gives v a shorter distance through the edge from u if there is one.
+	 */
+	private void relax(int u, int v, double weight) {
+		double d = dist[u] + weight;
+		if(d < dist[v]) {
+			touch(v);
+			cut[v] = false;
+			dist[v] = d;
+			parent[v] = u;
+			heap.pushOrDecrease(v, d);
+		}
+	}
+
+	private void touch(int vertex) {
+		if(stamp[vertex] != generation) {
+			stamp[vertex] = generation;
+			touched[touchedCount++] = vertex;
+			previous[vertex] = dist[vertex];
+			cut[vertex] = false;
+		}
+	}
+}
@@ -0,0 +1,82 @@
+import java.util.Arrays;
+
+/**
+ * Growable primitive arrays of weighted directed edges between station ids, filled by DotParser.
+ * Keeping the edges as parallel int and double arrays avoids creating an object per edge while a
+ * large file is read.
+ */
+public class EdgeBuffer {
+
+	private int[] sources = new int[16];
+	private int[] targets = new int[16];
+	private double[] weights = new double[16];
+	private int size = 0;
+
+	/**
+	 * Appends an edge.
+	 *
+	 * @param source id of the station the edge starts at
+	 * @param target id of the station the edge ends at
+	 * @param weight the weight of the edge
+	 */
+	public void add(int source, int target, double weight) {
+		if(size == sources.length) {
+			sources = Arrays.copyOf(sources, size * 2);
+			targets = Arrays.copyOf(targets, size * 2);
+			weights = Arrays.copyOf(weights, size * 2);
+		}
+		sources[size] = source;
+		targets[size] = target;
+		weights[size] = weight;
+		size++;
+	}
+
+	/**
+	 * Appends every edge of other, translating its station ids through ids.
+	 *
+	 * @param other the buffer to copy edges from
+	 * @param ids the id in this buffer's table of each station id used by other
+	 */
+	public void addAll(EdgeBuffer other, int[] ids) {
+		if(size + other.size > sources.length) {
+			int capacity = Math.max(size + other.size, sources.length * 2);
+			sources = Arrays.copyOf(sources, capacity);
+			targets = Arrays.copyOf(targets, capacity);
+			weights = Arrays.copyOf(weights, capacity);
+		}
+		for(int i = 0; i < other.size; i++) {
+			sources[size + i] = ids[other.sources[i]];
+			targets[size + i] = ids[other.targets[i]];
+		}
+		System.arraycopy(other.weights, 0, weights, size, other.size);
+		size += other.size;
+	}
+
+	/**
+	 * Returns the number of edges in the buffer.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the source station id of edge i.
+	 */
+	public int source(int i) {
+		return sources[i];
+	}
+
+	/**
+	 * Returns the target station id of edge i.
+	 */
+	public int target(int i) {
+		return targets[i];
+	}
+
+	/**
+	 * Returns the weight of edge i.
+	 */
+	public double weight(int i) {
+		return weights[i];
+	}
+}
@@ -0,0 +1,56 @@
+/**
+ * A new weight for an existing directed edge, for example the travel time of a segment after a
+ * delay was reported. Batches of updates are applied with AE_Graph.updateWeights,
+ * CSRGraph.withUpdatedWeights and DynamicShortestPathTree.update.
+ */
+public final class EdgeUpdate<NodeType, EdgeType extends Number> {
+
+	private final NodeType source;
+	private final NodeType target;
+	private final EdgeType weight;
+
+	/**
+	 * Creates an update of the edge from source to target.
+	 *
+	 * @param source the data item contained in the source vertex of the edge
+	 * @param target the data item contained in the target vertex of the edge
+	 * @param weight the new weight of the edge
+	 * @throws NullPointerException if source, target or weight is null
+	 * @throws IllegalArgumentException if weight is negative
+	 */
+	public EdgeUpdate(NodeType source, NodeType target, EdgeType weight) {
+		if(source == null || target == null || weight == null)
+			throw new NullPointerException("Cannot update edge with null source, target or weight");
+		if(weight.doubleValue() < 0)
+			throw new IllegalArgumentException("Cannot update edge to a negative weight");
+		this.source = source;
+		this.target = target;
+		this.weight = weight;
+	}
+
+	/**
+	 * Returns the data item contained in the source vertex of the edge.
+	 */
+	public NodeType getSource() {
+		return source;
+	}
+
+	/**
+	 * Returns the data item contained in the target vertex of the edge.
+	 */
+	public NodeType getTarget() {
+		return target;
+	}
+
+	/**
+	 * Returns the new weight of the edge.
+	 */
+	public EdgeType getWeight() {
+		return weight;
+	}
+
+	@Override
+	public String toString() {
+		return source + " -> " + target + " [weight=" + weight + "]";
+	}
+}
@@ -1,4 +1,4 @@
-import java.util.NoSuchElementException;
+import java.util.List;
 import java.util.Scanner;
 
 /**
@@ -7,6 +7,9 @@ import java.util.Scanner;
  */
 public class Frontend {
 
+    private static final int MAX_SUGGESTIONS = 5;
+    private static final String METRICS_COMMAND = "metrics"; // typed instead of a station, prints the query metrics
+
     TrainBackend backend;
     Scanner scanner;
 
@@ -31,45 +34,44 @@ public class Frontend {
 
         // First, prompt user for what station they're currently at.
         do {
-            try {
-                System.out.println("What station are you currently located at?");
-                currStation = scanner.nextLine();
-
-                if (!isAnAvailableStation(currStation)) {
-                    throw new NoSuchElementException("Error, please enter an available station.");
-                }
+            System.out.println("What station are you currently located at?");
+            currStation = scanner.nextLine();
 
+            if (printMetricsIfAsked(currStation)) {
+                continue;
+            }
+            if (isAnAvailableStation(currStation)) {
                 break;
-            } catch (NoSuchElementException e) {
-                System.out.println(e.getMessage());
-                listStations();
             }
+
+            System.out.println("Error, please enter an available station.");
+            suggestStations(currStation);
         } while (true);
 
         String destinationStation;
 
         // Second, prompt user for what station they'd like to go to.
         do {
-            try {
-                System.out.println("Which station would you like to go to?");
-                destinationStation = scanner.nextLine();
-
-                if (!isAnAvailableStation(destinationStation)) {
-                    throw new NoSuchElementException("Error, please enter an available station.");
-                }
+            System.out.println("Which station would you like to go to?");
+            destinationStation = scanner.nextLine();
 
+            if (printMetricsIfAsked(destinationStation)) {
+                continue;
+            }
+            if (isAnAvailableStation(destinationStation)) {
                 break;
-            } catch (NoSuchElementException e) {
-                System.out.println(e.getMessage());
-                listStations();
             }
+
+            System.out.println("Error, please enter an available station.");
+            suggestStations(destinationStation);
         } while (true);
 
         // Finally, print out the shortest path they should take.
+        RouteResult<String> route = backend.route(currStation, destinationStation);
         System.out.println();
-        System.out.println(getPath(currStation, destinationStation) + "\n");
+        System.out.println(route.getStations() + "\n");
         System.out.print("Your trip following this route should take approximately ");
-        System.out.print(backend.getShortestPathLength(currStation, destinationStation));
+        System.out.print(route.getTotalCost());
         System.out.println(" hours to complete.");
     }
 
@@ -101,6 +103,40 @@ public class Frontend {
         }
         System.out.println();
     }
+
+    /**
+     * This method prints the backend's query metrics if the user typed the metrics command instead of a station.
+     * A station that happens to be called metrics is still chosen as a station.
+     * 
+     * @param input: The line the user typed.
+     * @return true if the metrics were printed
+     */
+    public boolean printMetricsIfAsked(String input) {
+        if (!input.trim().equalsIgnoreCase(METRICS_COMMAND) || isAnAvailableStation(input)) {
+            return false;
+        }
+        System.out.println(backend.getMetrics().dump());
+        return true;
+    }
+
+    /**
+     * This method prints the stations the user most likely meant after they typed one that isn't
+     * available: close spellings first, otherwise stations starting with what they typed.
+     * 
+     * @param input: The station name the user typed.
+     */
+    public void suggestStations(String input) {
+        List<String> suggestions = backend.suggestStations(input, MAX_SUGGESTIONS);
+        if (suggestions.isEmpty()) {
+            suggestions = backend.completeStation(input, MAX_SUGGESTIONS);
+        }
+
+        if (!suggestions.isEmpty()) {
+            System.out.println("Did you mean: " + String.join(", ", suggestions) + "?");
+        }
+        System.out.println();
+    }
+
     /**
      * This method sets the current station the user is located at.
      * 
@@ -147,14 +183,6 @@ public class Frontend {
      * @return True if the station is within the available stations; false otherwise. 
      */
     public boolean isAnAvailableStation(String station) {
-        String[] stations = backend.getStations();
-
-        for (int i = 0; i < stations.length; i++) {
-            if (station.equals(stations[i])) {
-                return true;
-            }
-        }
-
-        return false;
+        return backend.isStation(station);
     }
 }
@@ -10,12 +10,8 @@ public interface ITrainDataLoader {
 	
 	public void loadEdges(Scanner scnr);
 	
-	public static ArrayList<String> getVertices() {
-		return null;
-	}
+	public ArrayList<String> getVertices();
 	
-	public static List<Node> getEdges() {
-		return null;
-	}
+	public List<Node> getEdges();
 	
 }
@@ -0,0 +1,208 @@
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Indexed 4-ary min heap over the int ids 0..capacity-1, keyed by a double. Each id is in the
+ * heap at most once, and its position is tracked so that decreaseKey does not have to search
+ * for it. All storage is primitive arrays that are allocated once and reused; clear() only
+ * bumps a generation counter, so emptying the heap between searches is O(1) no matter how
+ * many ids were touched by the previous search.
+ */
+public class IndexedMinHeap {
+
+	private static final int ARITY = 4;
+
+	private int[] heap; // ids in heap order
+	private double[] keys; // key of each id, valid while the id is in the heap
+	private int[] position; // index of each id within heap, valid while stamp[id] == generation
+	private int[] stamp; // generation in which position[id] was last written
+	private int generation = 1;
+	private int size = 0;
+	private int pushCount = 0; // inserts and decreased keys since the last clear()
+	private int popCount = 0; // pops since the last clear()
+
+	/**
+	 * Creates an empty heap that can hold the ids 0..capacity-1.
+	 *
+	 * @param capacity the number of distinct ids the heap can hold
+	 */
+	public IndexedMinHeap(int capacity) {
+		heap = new int[capacity];
+		keys = new double[capacity];
+		position = new int[capacity];
+		stamp = new int[capacity];
+	}
+
+	/**
+	 * Returns the number of distinct ids this heap can hold.
+	 */
+	public int capacity() {
+		return heap.length;
+	}
+
+	/**
+	 * Grows the heap so it can hold at least the ids 0..capacity-1. Must only be called while
+	 * the heap is empty.
+	 */
+	public void ensureCapacity(int capacity) {
+		if(capacity <= heap.length) return;
+		heap = new int[capacity];
+		keys = new double[capacity];
+		position = Arrays.copyOf(position, capacity);
+		stamp = Arrays.copyOf(stamp, capacity);
+	}
+
+	/**
+	 * Removes every id from the heap in O(1).
+	 */
+	public void clear() {
+		size = 0;
+		pushCount = 0;
+		popCount = 0;
+		if(++generation == 0) { // stamps wrapped around, so old stamps could look current
+			Arrays.fill(stamp, 0);
+			generation = 1;
+		}
+	}
+
+	/**
+	 * Returns the number of ids inserted or lowered by pushOrDecrease since the last clear().
+	 */
+	public int getPushCount() {
+		return pushCount;
+	}
+
+	/**
+	 * Returns the number of ids removed by pop since the last clear().
+	 */
+	public int getPopCount() {
+		return popCount;
+	}
+
+	/**
+	 * Returns the number of ids in the heap.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns true if the heap does not contain any ids.
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Returns true if id is currently in the heap.
+	 */
+	public boolean contains(int id) {
+		return stamp[id] == generation && position[id] >= 0;
+	}
+
+	/**
+	 * Inserts id with the given key, or lowers its key if it is already in the heap with a
+	 * larger one. Ids that were removed since the last clear() are inserted again.
+	 *
+	 * @param id the id to insert or update
+	 * @param key the new key for id
+	 * @return true if id was inserted or its key was lowered, false if its key was already
+	 *     less than or equal to key
+	 */
+	public boolean pushOrDecrease(int id, double key) {
+		if(contains(id)) {
+			if(keys[id] <= key) return false;
+			keys[id] = key;
+			siftUp(position[id]);
+			pushCount++;
+			return true;
+		}
+		pushCount++;
+		stamp[id] = generation;
+		keys[id] = key;
+		heap[size] = id;
+		position[id] = size;
+		siftUp(size++);
+		return true;
+	}
+
+	/**
+	 * Returns the smallest key in the heap.
+	 *
+	 * @throws NoSuchElementException if the heap is empty
+	 */
+	public double minKey() {
+		if(size == 0) throw new NoSuchElementException("Heap is empty");
+		return keys[heap[0]];
+	}
+
+	/**
+	 * Returns the id with the smallest key without removing it.
+	 *
+	 * @throws NoSuchElementException if the heap is empty
+	 */
+	public int peek() {
+		if(size == 0) throw new NoSuchElementException("Heap is empty");
+		return heap[0];
+	}
+
+	/**
+	 * Removes and returns the id with the smallest key.
+	 *
+	 * @throws NoSuchElementException if the heap is empty
+	 */
+	public int pop() {
+		if(size == 0) throw new NoSuchElementException("Heap is empty");
+		popCount++;
+		int min = heap[0];
+		position[min] = -1;
+		int last = heap[--size];
+		if(size > 0) {
+			heap[0] = last;
+			position[last] = 0;
+			siftDown(0);
+		}
+		return min;
+	}
+
+	private void siftUp(int index) {
+		int id = heap[index];
+		double key = keys[id];
+		while(index > 0) {
+			int parentIndex = (index - 1) / ARITY;
+			int parent = heap[parentIndex];
+			if(keys[parent] <= key) break;
+			heap[index] = parent;
+			position[parent] = index;
+			index = parentIndex;
+		}
+		heap[index] = id;
+		position[id] = index;
+	}
+
+	private void siftDown(int index) {
+		int id = heap[index];
+		double key = keys[id];
+		while(true) {
+			int firstChild = index * ARITY + 1;
+			if(firstChild >= size) break;
+			int lastChild = Math.min(firstChild + ARITY, size);
+			int minIndex = firstChild;
+			double minKey = keys[heap[firstChild]];
+			for(int c = firstChild + 1; c < lastChild; c++) {
+				double k = keys[heap[c]];
+				if(k < minKey) {
+					minKey = k;
+					minIndex = c;
+				}
+			}
+			if(minKey >= key) break;
+			int child = heap[minIndex];
+			heap[index] = child;
+			position[child] = index;
+			index = minIndex;
+		}
+		heap[index] = id;
+		position[id] = index;
+	}
+}
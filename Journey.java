@@ -0,0 +1,136 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable result of a timetable query: the stations along the journey and the departure and
+ * arrival time of every leg. A leg is one connection, so a passenger staying on the same train
+ * through several stations travels several legs.
+ */
+public final class Journey {
+
+	private final List<String> stations;
+	private final int[] departures;
+	private final int[] arrivals;
+	private final int[] trips;
+	private final int requestedDeparture;
+	private final int scannedCount;
+
+	/**
+	 * Creates a journey.
+	 *
+	 * @param stations the stations visited, from start to end
+	 * @param departures the departure time of each leg, one fewer than there are stations
+	 * @param arrivals the arrival time of each leg
+	 * @param trips the timetable trip of each leg
+	 * @param requestedDeparture the earliest departure time the journey was searched for
+	 * @param scannedCount the number of connections the search looked at
+	 */
+	public Journey(List<String> stations, int[] departures, int[] arrivals, int[] trips, int requestedDeparture,
+			int scannedCount) {
+		if(departures.length != stations.size() - 1 || arrivals.length != departures.length
+				|| trips.length != departures.length)
+			throw new IllegalArgumentException("A journey needs one departure and arrival per leg");
+		this.stations = Collections.unmodifiableList(new ArrayList<>(stations));
+		this.departures = departures.clone();
+		this.arrivals = arrivals.clone();
+		this.trips = trips.clone();
+		this.requestedDeparture = requestedDeparture;
+		this.scannedCount = scannedCount;
+	}
+
+	/**
+	 * Returns the stations visited, from start to end.
+	 */
+	public List<String> getStations() {
+		return stations;
+	}
+
+	/**
+	 * Returns the number of legs.
+	 */
+	public int getLegCount() {
+		return departures.length;
+	}
+
+	/**
+	 * Returns the departure time of the given leg.
+	 */
+	public int getLegDeparture(int leg) {
+		return departures[leg];
+	}
+
+	/**
+	 * Returns the arrival time of the given leg.
+	 */
+	public int getLegArrival(int leg) {
+		return arrivals[leg];
+	}
+
+	/**
+	 * Returns the timetable trip of the given leg.
+	 */
+	public int getLegTrip(int leg) {
+		return trips[leg];
+	}
+
+	/**
+	 * Returns the number of times the passenger changes trains.
+	 */
+	public int getTransferCount() {
+		int transfers = 0;
+		for(int i = 1; i < trips.length; i++)
+			if(trips[i] != trips[i - 1])
+				transfers++;
+		return transfers;
+	}
+
+	/**
+	 * Returns the time the first train leaves, or the requested departure time if start and end
+	 * are the same station.
+	 */
+	public int getDepartureTime() {
+		return departures.length == 0 ? requestedDeparture : departures[0];
+	}
+
+	/**
+	 * Returns the time the journey arrives at the end station.
+	 */
+	public int getArrivalTime() {
+		return arrivals.length == 0 ? requestedDeparture : arrivals[arrivals.length - 1];
+	}
+
+	/**
+	 * Returns the number of connections the search looked at.
+	 */
+	public int getScannedCount() {
+		return scannedCount;
+	}
+
+	/**
+	 * Converts the journey to a route whose leg weights are the hours from one arrival to the
+	 * next, so they include the time spent waiting for each train.
+	 *
+	 * @param from the time the passenger is ready to leave; waiting from then on counts
+	 * @param computeNanos the time it took to find the journey
+	 */
+	public RouteResult<String> toRouteResult(int from, long computeNanos) {
+		double[] legs = new double[arrivals.length];
+		int previous = from;
+		for(int i = 0; i < arrivals.length; i++) {
+			legs[i] = (arrivals[i] - previous) / (double) Timetable.SECONDS_PER_HOUR;
+			previous = arrivals[i];
+		}
+		return new RouteResult<>(stations, legs, (getArrivalTime() - from) / (double) Timetable.SECONDS_PER_HOUR,
+				scannedCount, computeNanos);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder text = new StringBuilder(stations.get(0));
+		for(int i = 0; i < departures.length; i++)
+			text.append(' ').append(Timetable.formatTime(departures[i])).append(" -> ")
+					.append(stations.get(i + 1)).append(' ').append(Timetable.formatTime(arrivals[i]));
+		return text.toString();
+	}
+}
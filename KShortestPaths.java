@@ -0,0 +1,322 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.stream.IntStream;
+
+/**
+ * Yen's algorithm for the k shortest loopless paths between two vertices of a CSRGraph. Each
+ * accepted path is taken apart at every vertex from where it left its parent path (Lawler's
+ * refinement); a spur search from that vertex avoids the vertices before it and the edges other
+ * accepted paths with the same prefix took next, and the cheapest detour found becomes a
+ * candidate.
+ *
+ * Every spur search reuses one shortest path tree computed backwards from the end vertex. Its
+ * distances are exact lower bounds for the remaining cost, so a spur search is an A* search that
+ * heads straight for the end, and it stops at the first vertex whose tree path to the end avoids
+ * everything the search has to avoid: that tree path is the cheapest way on from there. The spur
+ * searches of one path are independent and run in parallel, each on its thread's scratch arrays.
+ *
+ * Paths are chains of PathNode that share their prefixes, so a candidate only allocates the
+ * vertices after its spur vertex and the candidate heap never copies whole paths.
+ */
+public final class KShortestPaths {
+
+	private static final ThreadLocal<KShortestPaths> SCRATCH = ThreadLocal.withInitial(KShortestPaths::new);
+
+	private double[] dist = new double[0]; // cost from the spur vertex, valid while reached[v] == generation
+	private int[] parent = new int[0];
+	private int[] reached = new int[0];
+	private int[] settled = new int[0];
+	private int[] blocked = new int[0]; // generation in which the vertex is on the root path
+	private int[] treeChecked = new int[0]; // generation in which treeValid was computed
+	private boolean[] treeValid = new boolean[0]; // the tree path from the vertex avoids the root path and removed edges
+	private int[] walk = new int[0];
+	private int generation = 0;
+	private final IndexedMinHeap heap = new IndexedMinHeap(0);
+	private int settledCount;
+
+	/**
+	 * One vertex of a path, linked to the path up to the vertex before it.
+	 */
+	private static final class PathNode {
+		final int vertex;
+		final PathNode previous;
+		final double weight; // weight of the edge from the previous vertex
+		final double cost; // cost of the path up to this vertex
+		final int length; // number of vertices on the path up to this vertex
+		final long hash;
+
+		PathNode(int vertex, PathNode previous, double weight) {
+			this.vertex = vertex;
+			this.previous = previous;
+			this.weight = weight;
+			this.cost = previous == null ? 0.0D : previous.cost + weight;
+			this.length = previous == null ? 1 : previous.length + 1;
+			this.hash = (previous == null ? 0 : previous.hash * 31) + vertex;
+		}
+	}
+
+	/**
+	 * A path found by a spur search, compared by cost and then by length.
+	 */
+	private static final class Candidate implements Comparable<Candidate> {
+		final PathNode last;
+		final int deviation; // index of the spur vertex the path left its parent path at
+		final int settled;
+
+		Candidate(PathNode last, int deviation, int settled) {
+			this.last = last;
+			this.deviation = deviation;
+			this.settled = settled;
+		}
+
+		@Override
+		public int compareTo(Candidate other) {
+			int cmp = Double.compare(last.cost, other.last.cost);
+			return cmp != 0 ? cmp : Integer.compare(last.length, other.last.length);
+		}
+
+		@Override
+		public int hashCode() {
+			return Long.hashCode(last.hash);
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if(!(other instanceof Candidate)) return false;
+			PathNode a = last;
+			PathNode b = ((Candidate) other).last;
+			if(a.hash != b.hash || a.length != b.length) return false;
+			for(; a != b; a = a.previous, b = b.previous) // shared prefixes end the walk early
+				if(a.vertex != b.vertex) return false;
+			return true;
+		}
+	}
+
+	private static KShortestPaths forThread(int vertexCount) {
+		KShortestPaths search = SCRATCH.get();
+		search.ensureCapacity(vertexCount);
+		return search;
+	}
+
+	private void ensureCapacity(int vertexCount) {
+		if(vertexCount <= dist.length) return;
+		dist = new double[vertexCount];
+		parent = new int[vertexCount];
+		reached = Arrays.copyOf(reached, vertexCount);
+		settled = Arrays.copyOf(settled, vertexCount);
+		blocked = Arrays.copyOf(blocked, vertexCount);
+		treeChecked = Arrays.copyOf(treeChecked, vertexCount);
+		treeValid = new boolean[vertexCount];
+		walk = new int[vertexCount];
+		heap.ensureCapacity(vertexCount);
+	}
+
+	private void nextGeneration() {
+		heap.clear();
+		settledCount = 0;
+		if(++generation == 0) { // stamps wrapped around, so old stamps could look current
+			Arrays.fill(reached, 0);
+			Arrays.fill(settled, 0);
+			Arrays.fill(blocked, 0);
+			Arrays.fill(treeChecked, 0);
+			generation = 1;
+		}
+	}
+
+	/**
+	 * Returns up to k loopless paths from start to end, cheapest first. Fewer are returned if
+	 * there are not k different loopless paths.
+	 *
+	 * @param graph the graph to search
+	 * @param start id of the first vertex of every path
+	 * @param end id of the last vertex of every path
+	 * @param k the number of paths to find
+	 * @return the paths as routes, cheapest first; the compute time of each path is the time
+	 *     from the start of the query until it was found
+	 * @throws IllegalArgumentException if k is not positive
+	 * @throws NoSuchElementException if there is no path from start to end
+	 */
+	public static <NodeType> List<RouteResult<NodeType>> find(CSRGraph<NodeType> graph, int start, int end, int k) {
+		if(k <= 0)
+			throw new IllegalArgumentException("Cannot find fewer than one path");
+		long began = System.nanoTime();
+		ShortestPathTree<NodeType> toEnd = new ShortestPathTree<>(graph.reverse(), end); // parent is the next vertex towards end
+		if(toEnd.distance(start) == Double.POSITIVE_INFINITY)
+			throw new NoSuchElementException("No shortest path found for the vertices.");
+
+		PathNode first = new PathNode(start, null, 0.0D);
+		for(int v = start; v != end; ) {
+			int next = toEnd.parent(v);
+			first = new PathNode(next, first, graph.edgeWeight(graph.findEdge(v, next)));
+			v = next;
+		}
+		int reachable = 0;
+		for(int v = 0; v < graph.getVertexCount(); v++)
+			if(toEnd.distance(v) < Double.POSITIVE_INFINITY) reachable++;
+
+		List<RouteResult<NodeType>> routes = new ArrayList<>();
+		List<PathNode[]> accepted = new ArrayList<>();
+		PriorityQueue<Candidate> candidates = new PriorityQueue<>();
+		HashSet<Candidate> seen = new HashSet<>();
+		Candidate current = new Candidate(first, 0, reachable);
+		seen.add(current);
+		while(true) {
+			PathNode[] path = nodes(current.last);
+			accepted.add(path);
+			routes.add(toRoute(graph, path, current.settled, System.nanoTime() - began));
+			if(routes.size() == k) break;
+
+			// edges taken next by accepted paths with the same prefix, for every spur vertex
+			int spurs = path.length - 1;
+			int[][] removed = new int[spurs][];
+			List<PathNode[]> sharing = new ArrayList<>(accepted);
+			for(int i = 0; i < spurs; i++) {
+				List<PathNode[]> stillSharing = new ArrayList<>();
+				int[] targets = new int[sharing.size()];
+				int count = 0;
+				for(PathNode[] other : sharing)
+					if(other.length > i + 1 && other[i].vertex == path[i].vertex) {
+						stillSharing.add(other);
+						targets[count++] = other[i + 1].vertex;
+					}
+				removed[i] = Arrays.copyOf(targets, count);
+				sharing = stillSharing;
+			}
+
+			int deviation = current.deviation;
+			Candidate[] found = IntStream.range(deviation, spurs).parallel()
+					.mapToObj(i -> forThread(graph.getVertexCount()).spur(graph, toEnd, path, i, removed[i], end))
+					.toArray(Candidate[]::new);
+			for(Candidate candidate : found)
+				if(candidate != null && seen.add(candidate))
+					candidates.add(candidate);
+			if(candidates.isEmpty()) break;
+			current = candidates.remove();
+		}
+		return routes;
+	}
+
+	/**
+	 * Finds the cheapest path that follows path up to index i and then leaves it, avoiding the
+	 * vertices before index i and the removed edges out of the spur vertex.
+	 *
+	 * @return the path as a candidate, or null if there is none
+	 */
+	private <NodeType> Candidate spur(CSRGraph<NodeType> graph, ShortestPathTree<NodeType> toEnd, PathNode[] path,
+			int i, int[] removed, int end) {
+		nextGeneration();
+		for(int j = 0; j < i; j++)
+			blocked[path[j].vertex] = generation;
+		int spur = path[i].vertex;
+		reached[spur] = generation;
+		dist[spur] = 0.0D;
+		parent[spur] = -1;
+		heap.pushOrDecrease(spur, toEnd.distance(spur));
+		while(!heap.isEmpty()) {
+			int u = heap.pop();
+			settled[u] = generation;
+			settledCount++;
+			if(followsTree(toEnd, u, spur, removed, end))
+				return new Candidate(extend(graph, toEnd, path[i], u, end), i, settledCount);
+			double du = dist[u];
+			for(int e = graph.firstEdge(u), last = graph.endEdge(u); e < last; e++) {
+				int v = graph.edgeTarget(e);
+				if(settled[v] == generation || blocked[v] == generation) continue;
+				if(u == spur && contains(removed, v)) continue;
+				double remaining = toEnd.distance(v);
+				if(remaining == Double.POSITIVE_INFINITY) continue; // cannot reach end at all
+				double d = du + graph.edgeWeight(e);
+				if(reached[v] != generation || d < dist[v]) {
+					reached[v] = generation;
+					dist[v] = d;
+					parent[v] = u;
+					heap.pushOrDecrease(v, d + remaining);
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns true if the tree path from vertex to end avoids the root path and the removed
+	 * edges. Every vertex walked over is remembered, so each vertex is walked once per search.
+	 */
+	private boolean followsTree(ShortestPathTree<?> toEnd, int vertex, int spur, int[] removed, int end) {
+		int count = 0;
+		boolean valid;
+		for(int w = vertex; ; ) {
+			if(treeChecked[w] == generation) {
+				valid = treeValid[w];
+				break;
+			}
+			if(w == end) {
+				valid = true;
+				break;
+			}
+			int next = toEnd.parent(w);
+			if(blocked[w] == generation || next < 0 || (w == spur && contains(removed, next))) {
+				valid = false;
+				break;
+			}
+			walk[count++] = w;
+			w = next;
+		}
+		while(count > 0) {
+			int w = walk[--count];
+			treeChecked[w] = generation;
+			treeValid[w] = valid;
+		}
+		return valid;
+	}
+
+	/**
+	 * Extends the root path ending at spurNode by the searched path from the spur vertex to
+	 * vertex and the tree path from vertex to end.
+	 */
+	private <NodeType> PathNode extend(CSRGraph<NodeType> graph, ShortestPathTree<NodeType> toEnd, PathNode spurNode,
+			int vertex, int end) {
+		int count = 0;
+		for(int v = vertex; parent[v] >= 0; v = parent[v])
+			walk[count++] = v;
+		PathNode node = spurNode;
+		for(int v = spurNode.vertex; count > 0; ) {
+			int next = walk[--count];
+			node = new PathNode(next, node, graph.edgeWeight(graph.findEdge(v, next)));
+			v = next;
+		}
+		for(int v = vertex; v != end; ) {
+			int next = toEnd.parent(v);
+			node = new PathNode(next, node, graph.edgeWeight(graph.findEdge(v, next)));
+			v = next;
+		}
+		return node;
+	}
+
+	private static boolean contains(int[] values, int value) {
+		for(int v : values)
+			if(v == value) return true;
+		return false;
+	}
+
+	private static PathNode[] nodes(PathNode last) {
+		PathNode[] path = new PathNode[last.length];
+		for(PathNode node = last; node != null; node = node.previous)
+			path[node.length - 1] = node;
+		return path;
+	}
+
+	private static <NodeType> RouteResult<NodeType> toRoute(CSRGraph<NodeType> graph, PathNode[] path, int settled,
+			long nanos) {
+		List<NodeType> stations = new ArrayList<>(path.length);
+		double[] legs = new double[path.length - 1];
+		for(int i = 0; i < path.length; i++) {
+			stations.add(graph.vertexData(path[i].vertex));
+			if(i > 0) legs[i - 1] = path[i].weight;
+		}
+		return new RouteResult<>(stations, legs, path[path.length - 1].cost, settled, nanos);
+	}
+}
@@ -0,0 +1,67 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/**
+ * This program measures how fast a DOT network file loads with ParallelDotLoader on 1 to N threads,
+ * in MB/s, and checks that every thread count reads the same number of stations and edges. Without
+ * a file argument it writes a synthetic network of about 200 MB to a temporary file first.
+ *
+ * Usage: java LoadBenchmark [dot file] [max threads]
+ */
+public class LoadBenchmark {
+
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) throws IOException {
+        Path file = args.length > 0 ? Paths.get(args[0]) : syntheticFile(250_000, 6_000_000);
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        double megabytes = Files.size(file) / 1e6;
+        System.out.printf("%s: %.1f MB%n", file, megabytes);
+        System.out.println("threads  stations     edges   best ms     MB/s");
+
+        for (int threads = 1; ; threads = Math.min(threads * 2, maxThreads)) {
+            long best = Long.MAX_VALUE;
+            StationTable stations = null;
+            EdgeBuffer edges = null;
+            for (int round = 0; round < ROUNDS; round++) {
+                stations = new StationTable();
+                edges = new EdgeBuffer();
+                long start = System.nanoTime();
+                ParallelDotLoader.load(file, threads, stations, edges);
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            System.out.printf("%7d  %8d  %8d  %8.0f  %7.1f%n", threads, stations.size(), edges.size(),
+                    best / 1e6, megabytes / (best / 1e9));
+            if (threads == maxThreads) {
+                break;
+            }
+        }
+        if (args.length == 0) {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Writes a network with random connections between numbered stations, one statement per line
+     */
+    private static Path syntheticFile(int stations, int connections) throws IOException {
+        Path file = Files.createTempFile("network", ".gv");
+        Random random = new Random(42);
+        try (BufferedWriter out = Files.newBufferedWriter(file)) {
+            out.write("digraph Network {\n");
+            for (int i = 0; i < stations; i++) {
+                out.write("\"Station " + i + "\"\n");
+            }
+            for (int i = 0; i < connections; i++) {
+                out.write("\"Station " + random.nextInt(stations) + "\" -> \"Station " + random.nextInt(stations)
+                        + "\" [weight=" + (1 + random.nextInt(120)) + "]\n");
+            }
+            out.write("}\n");
+        }
+        return file;
+    }
+}
@@ -0,0 +1,74 @@
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * CSRGraph whose offsets, targets and weights are read straight from a memory-mapped network
+ * file instead of heap arrays. Nothing is copied when the file is opened; the operating system
+ * pages the arrays in as searches touch them and can share them between processes. Only the
+ * station names and the name to id map live on the heap. Created by NetworkFile.map.
+ */
+public class MappedCSRGraph extends CSRGraph<String> {
+
+	private static final int[] NO_INTS = new int[0];
+	private static final double[] NO_DOUBLES = new double[0];
+
+	private final IntBuffer mappedOffsets;
+	private final IntBuffer mappedTargets;
+	private final DoubleBuffer mappedWeights;
+
+	/**
+	 * Creates a graph over mapped arrays in CSR form.
+	 *
+	 * @param stations name of each vertex, indexed by vertex id
+	 * @param offsets buffer of stations.length+1 entries with the first edge of each vertex
+	 * @param targets target vertex id of each edge, sorted by target within each vertex
+	 * @param weights weight of each edge
+	 */
+	MappedCSRGraph(String[] stations, IntBuffer offsets, IntBuffer targets, DoubleBuffer weights) {
+		super(stations, NO_INTS, NO_INTS, NO_DOUBLES);
+		this.mappedOffsets = offsets;
+		this.mappedTargets = targets;
+		this.mappedWeights = weights;
+	}
+
+	private MappedCSRGraph(MappedCSRGraph other, DoubleBuffer weights) {
+		super(other.vertexData, other.vertexIds, NO_INTS, NO_INTS, NO_DOUBLES);
+		this.mappedOffsets = other.mappedOffsets;
+		this.mappedTargets = other.mappedTargets;
+		this.mappedWeights = weights;
+	}
+
+	/**
+	 * Keeps reading the offsets and targets from the mapped file; only the updated weights live
+	 * on the heap.
+	 */
+	@Override
+	protected CSRGraph<String> withWeights(double[] weights) {
+		return new MappedCSRGraph(this, DoubleBuffer.wrap(weights));
+	}
+
+	@Override
+	public int firstEdge(int vertex) {
+		return mappedOffsets.get(vertex);
+	}
+
+	@Override
+	public int endEdge(int vertex) {
+		return mappedOffsets.get(vertex + 1);
+	}
+
+	@Override
+	public int edgeTarget(int edge) {
+		return mappedTargets.get(edge);
+	}
+
+	@Override
+	public double edgeWeight(int edge) {
+		return mappedWeights.get(edge);
+	}
+
+	@Override
+	public int getEdgeCount() {
+		return mappedTargets.limit();
+	}
+}
@@ -0,0 +1,309 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.IntStream;
+
+/**
+ * Minimum spanning forest of a CSRGraph: one minimum spanning tree for every connected part of
+ * the network, so a disconnected network still gets a result. Edges are treated as undirected,
+ * since a crew covering a segment covers it in both directions; when both directions of a
+ * segment are in the graph the cheaper one is used.
+ *
+ * Three algorithms compute the same total weight and differ only in how they get there. Prim
+ * grows one tree at a time over an IndexedMinHeap of the cheapest edge into every vertex.
+ * Kruskal sorts all edges once and joins parts with a union-find. Boruvka joins every part to
+ * its cheapest neighbour in rounds, scanning the edges of each round in parallel; it halves the
+ * number of parts per round and suits large graphs on several cores.
+ */
+public class MinimumSpanningForest<NodeType> {
+
+	/**
+	 * The algorithms a minimum spanning forest can be computed with.
+	 */
+	public enum Algorithm {
+		/** Prim's algorithm with an indexed heap, one tree after the other */
+		PRIM,
+		/** Kruskal's algorithm over the edges sorted by weight */
+		KRUSKAL,
+		/** Boruvka's algorithm with the edge scan of each round spread over the common ForkJoinPool */
+		BORUVKA
+	}
+
+	private final CSRGraph<NodeType> graph;
+	private final int[] sources; // source vertex id of each forest edge
+	private final int[] edges; // edge index in graph of each forest edge
+	private final int treeCount;
+	private final double totalWeight;
+
+	private MinimumSpanningForest(CSRGraph<NodeType> graph, int[] sources, int[] edges, int treeCount) {
+		this.graph = graph;
+		this.sources = sources;
+		this.edges = edges;
+		this.treeCount = treeCount;
+		double total = 0.0D;
+		for(int e : edges)
+			total += graph.edgeWeight(e);
+		this.totalWeight = total;
+	}
+
+	/**
+	 * Computes the minimum spanning forest of graph with the given algorithm.
+	 *
+	 * @param graph the graph to span
+	 * @param algorithm the algorithm to use
+	 * @return the minimum spanning forest, with one tree for every connected part of graph
+	 */
+	public static <NodeType> MinimumSpanningForest<NodeType> compute(CSRGraph<NodeType> graph, Algorithm algorithm) {
+		switch(algorithm) {
+			case KRUSKAL: return kruskal(graph);
+			case BORUVKA: return boruvka(graph);
+			default: return prim(graph, -1);
+		}
+	}
+
+	/**
+	 * Computes the minimum spanning tree of the part of graph that contains root with Prim's
+	 * algorithm, or the whole forest if root is -1.
+	 *
+	 * @param graph the graph to span
+	 * @param root id of the vertex to grow the tree from, or -1 for every part of graph
+	 * @return the minimum spanning tree of the part containing root, or the whole forest
+	 */
+	public static <NodeType> MinimumSpanningForest<NodeType> prim(CSRGraph<NodeType> graph, int root) {
+		int n = graph.getVertexCount();
+		CSRGraph<NodeType> reverse = graph.reverse();
+		IndexedMinHeap heap = new IndexedMinHeap(n);
+		boolean[] inTree = new boolean[n];
+		int[] via = new int[n]; // cheapest edge into the tree: e for an edge of graph, -e-2 for an edge of reverse
+		int[] from = new int[n]; // tree vertex at the other end of via
+		int[] sources = new int[Math.max(n - 1, 0)];
+		int[] edges = new int[sources.length];
+		int count = 0;
+		int trees = 0;
+		for(int r = root < 0 ? 0 : root, last = root < 0 ? n : root + 1; r < last; r++) {
+			if(inTree[r]) continue;
+			trees++;
+			heap.clear();
+			heap.pushOrDecrease(r, 0.0D);
+			via[r] = -1;
+			while(!heap.isEmpty()) {
+				int u = heap.pop();
+				inTree[u] = true;
+				int e = via[u];
+				if(e >= 0) { // graph edge from the tree into u
+					sources[count] = from[u];
+					edges[count++] = e;
+				} else if(e != -1) { // reverse edge from the tree into u, so the graph edge leaves u
+					sources[count] = u;
+					edges[count++] = graph.findEdge(u, from[u]);
+				}
+				for(int f = graph.firstEdge(u), end = graph.endEdge(u); f < end; f++) {
+					int v = graph.edgeTarget(f);
+					if(!inTree[v] && heap.pushOrDecrease(v, graph.edgeWeight(f))) {
+						via[v] = f;
+						from[v] = u;
+					}
+				}
+				for(int f = reverse.firstEdge(u), end = reverse.endEdge(u); f < end; f++) {
+					int v = reverse.edgeTarget(f);
+					if(!inTree[v] && heap.pushOrDecrease(v, reverse.edgeWeight(f))) {
+						via[v] = -f - 2;
+						from[v] = u;
+					}
+				}
+			}
+		}
+		return new MinimumSpanningForest<>(graph, Arrays.copyOf(sources, count), Arrays.copyOf(edges, count), trees);
+	}
+
+	/**
+	 * Computes the minimum spanning forest of graph with Kruskal's algorithm.
+	 *
+	 * @param graph the graph to span
+	 * @return the minimum spanning forest, with one tree for every connected part of graph
+	 */
+	public static <NodeType> MinimumSpanningForest<NodeType> kruskal(CSRGraph<NodeType> graph) {
+		int n = graph.getVertexCount();
+		int m = graph.getEdgeCount();
+		int[] edgeSources = edgeSources(graph);
+		// sort edges by the rank of their weight among all weights, packed into one long each
+		double[] sorted = new double[m];
+		for(int e = 0; e < m; e++)
+			sorted[e] = graph.edgeWeight(e);
+		Arrays.parallelSort(sorted);
+		long[] order = new long[m];
+		for(int e = 0; e < m; e++)
+			order[e] = ((long) Arrays.binarySearch(sorted, graph.edgeWeight(e)) << 32) | e;
+		Arrays.parallelSort(order);
+
+		int[] parent = unionFind(n);
+		int[] size = new int[n];
+		Arrays.fill(size, 1);
+		int[] sources = new int[Math.max(n - 1, 0)];
+		int[] edges = new int[sources.length];
+		int count = 0;
+		for(int i = 0; i < m && count < n - 1; i++) {
+			int e = (int) order[i];
+			if(union(parent, size, edgeSources[e], graph.edgeTarget(e))) {
+				sources[count] = edgeSources[e];
+				edges[count++] = e;
+			}
+		}
+		return new MinimumSpanningForest<>(graph, Arrays.copyOf(sources, count), Arrays.copyOf(edges, count), n - count);
+	}
+
+	/**
+	 * Computes the minimum spanning forest of graph with Boruvka's algorithm, scanning the
+	 * edges of every round in parallel.
+	 *
+	 * @param graph the graph to span
+	 * @return the minimum spanning forest, with one tree for every connected part of graph
+	 */
+	public static <NodeType> MinimumSpanningForest<NodeType> boruvka(CSRGraph<NodeType> graph) {
+		int n = graph.getVertexCount();
+		int[] edgeSources = edgeSources(graph);
+		int[] parent = unionFind(n);
+		int[] size = new int[n];
+		Arrays.fill(size, 1);
+		int[] component = parent.clone(); // root of every vertex at the start of the round
+		AtomicIntegerArray cheapest = new AtomicIntegerArray(n); // cheapest edge out of every component
+		int[] sources = new int[Math.max(n - 1, 0)];
+		int[] edges = new int[sources.length];
+		int count = 0;
+		while(count < n - 1) {
+			for(int c = 0; c < n; c++)
+				cheapest.set(c, -1);
+			IntStream.range(0, n).parallel().forEach(u -> {
+				int cu = component[u];
+				for(int e = graph.firstEdge(u), end = graph.endEdge(u); e < end; e++) {
+					int cv = component[graph.edgeTarget(e)];
+					if(cu != cv) {
+						offer(graph, cheapest, cu, e);
+						offer(graph, cheapest, cv, e);
+					}
+				}
+			});
+			int joined = 0;
+			for(int c = 0; c < n; c++) {
+				int e = cheapest.get(c);
+				// two components can pick the same edge, the union only adds it once
+				if(e >= 0 && union(parent, size, edgeSources[e], graph.edgeTarget(e))) {
+					sources[count] = edgeSources[e];
+					edges[count++] = e;
+					joined++;
+				}
+			}
+			if(joined == 0) break; // every remaining component is a connected part of graph
+			for(int v = 0; v < n; v++)
+				component[v] = find(parent, v);
+		}
+		return new MinimumSpanningForest<>(graph, Arrays.copyOf(sources, count), Arrays.copyOf(edges, count), n - count);
+	}
+
+	/**
+	 * Makes e the cheapest edge of component if it is lighter than the current one. Ties are
+	 * broken by edge index, so all components agree on one order and no cycle can form.
+	 */
+	private static void offer(CSRGraph<?> graph, AtomicIntegerArray cheapest, int component, int e) {
+		double weight = graph.edgeWeight(e);
+		while(true) {
+			int current = cheapest.get(component);
+			if(current >= 0) {
+				double currentWeight = graph.edgeWeight(current);
+				if(currentWeight < weight || (currentWeight == weight && current < e)) return;
+			}
+			if(cheapest.compareAndSet(component, current, e)) return;
+		}
+	}
+
+	private static int[] edgeSources(CSRGraph<?> graph) {
+		int[] edgeSources = new int[graph.getEdgeCount()];
+		for(int u = 0; u < graph.getVertexCount(); u++)
+			for(int e = graph.firstEdge(u), end = graph.endEdge(u); e < end; e++)
+				edgeSources[e] = u;
+		return edgeSources;
+	}
+
+	private static int[] unionFind(int n) {
+		int[] parent = new int[n];
+		for(int v = 0; v < n; v++)
+			parent[v] = v;
+		return parent;
+	}
+
+	private static int find(int[] parent, int v) {
+		while(parent[v] != v) {
+			parent[v] = parent[parent[v]]; // path halving
+			v = parent[v];
+		}
+		return v;
+	}
+
+	/**
+	 * Joins the sets of a and b, attaching the smaller set below the larger one.
+	 *
+	 * @return true if a and b were in different sets
+	 */
+	private static boolean union(int[] parent, int[] size, int a, int b) {
+		int ra = find(parent, a);
+		int rb = find(parent, b);
+		if(ra == rb) return false;
+		if(size[ra] < size[rb]) {
+			int swap = ra;
+			ra = rb;
+			rb = swap;
+		}
+		parent[rb] = ra;
+		size[ra] += size[rb];
+		return true;
+	}
+
+	/**
+	 * Returns the number of edges in the forest.
+	 */
+	public int getEdgeCount() {
+		return edges.length;
+	}
+
+	/**
+	 * Returns the data item in the source vertex of the i-th forest edge.
+	 */
+	public NodeType getSource(int i) {
+		return graph.vertexData(sources[i]);
+	}
+
+	/**
+	 * Returns the data item in the target vertex of the i-th forest edge.
+	 */
+	public NodeType getTarget(int i) {
+		return graph.vertexData(graph.edgeTarget(edges[i]));
+	}
+
+	/**
+	 * Returns the weight of the i-th forest edge.
+	 */
+	public double getWeight(int i) {
+		return graph.edgeWeight(edges[i]);
+	}
+
+	/**
+	 * Returns the sum of the weights of all forest edges.
+	 */
+	public double getTotalWeight() {
+		return totalWeight;
+	}
+
+	/**
+	 * Returns the number of trees in the forest, one for every connected part of the graph
+	 * that was spanned.
+	 */
+	public int getTreeCount() {
+		return treeCount;
+	}
+
+	/**
+	 * Returns true if the forest is a single tree, so it spans the whole graph.
+	 */
+	public boolean isSpanningTree() {
+		return treeCount <= 1;
+	}
+}
@@ -0,0 +1,318 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Versioned binary format for a rail network, and the converter from DOT files. The file holds
+ * a CSRGraph exactly as it is laid out in memory, so map() can hand the arrays to a
+ * MappedCSRGraph without parsing or copying them.
+ *
+ * Layout, all numbers little-endian:
+ *   header, 64 bytes: magic "RNET", format version, vertex count n, edge count m, length of the
+ *     name bytes (long), CRC32 of everything after the header (long), zero padding
+ *   name offsets: n+1 ints, name i is bytes [offset i, offset i+1) of the name bytes
+ *   name bytes: the UTF-8 station names back to back
+ *   offsets: n+1 ints, the first edge of each vertex
+ *   targets: m ints, sorted by target within each vertex
+ *   weights: m doubles
+ * Every section starts at a multiple of 8 bytes, padded with zeros.
+ *
+ * Usage: java NetworkFile input.gv output.rnet
+ */
+public final class NetworkFile {
+
+	private static final int MAGIC = 0x54454e52; // "RNET" read as a little-endian int
+	private static final int FORMAT_VERSION = 1;
+	private static final int HEADER_BYTES = 64;
+	private static final long MAX_SECTION_BYTES = Integer.MAX_VALUE; // a mapping is indexed by int
+
+	private NetworkFile() {
+	}
+
+	/**
+	 * Converts a DOT file to the binary format.
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length != 2) {
+			System.err.println("Usage: java NetworkFile input.gv output.rnet");
+			System.exit(2);
+		}
+		long start = System.nanoTime();
+		CSRGraph<String> graph = new TrainDataLoader().loadGraph(args[0]);
+		write(graph, Paths.get(args[1]));
+		System.out.printf("Wrote %d stations and %d edges to %s in %.0f ms%n", graph.getVertexCount(),
+				graph.getEdgeCount(), args[1], (System.nanoTime() - start) / 1e6);
+	}
+
+	/**
+	 * Returns true if file starts with the magic number of this format, so callers can tell it
+	 * apart from a DOT file.
+	 */
+	public static boolean isNetworkFile(Path file) throws IOException {
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer magic = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+			while(magic.hasRemaining() && channel.read(magic) >= 0) {
+			}
+			return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+		}
+	}
+
+	/**
+	 * A network that is written vertex by vertex, so networks that are generated while they are
+	 * written never have to be held in memory. Every method is called in vertex order and may be
+	 * called more than once per vertex; it has to give the same answer every time.
+	 */
+	public interface Source {
+
+		/**
+		 * Returns the number of vertices.
+		 */
+		int vertexCount();
+
+		/**
+		 * Returns the station name of vertex.
+		 */
+		String name(int vertex);
+
+		/**
+		 * Returns the number of edges leaving vertex.
+		 */
+		int degree(int vertex);
+
+		/**
+		 * Fills the first degree(vertex) entries of targets and weights with the edges leaving
+		 * vertex, sorted by target.
+		 */
+		void edges(int vertex, int[] targets, double[] weights);
+	}
+
+	/**
+	 * Writes graph to file in the binary format.
+	 *
+	 * @param graph the network to write
+	 * @param file the file to write, replaced if it exists
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void write(CSRGraph<String> graph, Path file) throws IOException {
+		write(new Source() {
+			@Override
+			public int vertexCount() {
+				return graph.getVertexCount();
+			}
+
+			@Override
+			public String name(int vertex) {
+				return graph.vertexData(vertex);
+			}
+
+			@Override
+			public int degree(int vertex) {
+				return graph.endEdge(vertex) - graph.firstEdge(vertex);
+			}
+
+			@Override
+			public void edges(int vertex, int[] targets, double[] weights) {
+				for(int e = graph.firstEdge(vertex), i = 0; e < graph.endEdge(vertex); e++, i++) {
+					targets[i] = graph.edgeTarget(e);
+					weights[i] = graph.edgeWeight(e);
+				}
+			}
+		}, file);
+	}
+
+	/**
+	 * Writes a network to file in the binary format, streaming it from source in one pass per
+	 * section. Only one vertex's edges are held in memory at a time.
+	 *
+	 * @param source the network to write
+	 * @param file the file to write, replaced if it exists
+	 * @throws IOException if the file cannot be written or the network is too large for the format
+	 */
+	public static void write(Source source, Path file) throws IOException {
+		int n = source.vertexCount();
+		long nameBytes = 0;
+		long m = 0;
+		int maxDegree = 0;
+		for(int v = 0; v < n; v++) {
+			nameBytes += source.name(v).getBytes(StandardCharsets.UTF_8).length;
+			int degree = source.degree(v);
+			m += degree;
+			maxDegree = Math.max(maxDegree, degree);
+		}
+		if(nameBytes > Integer.MAX_VALUE || 8L * m > MAX_SECTION_BYTES)
+			throw new IOException("Network is too large for the binary format");
+
+		CRC32 checksum = new CRC32();
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			channel.position(HEADER_BYTES);
+			SectionWriter out = new SectionWriter(channel, checksum);
+			int offset = 0;
+			out.putInt(0);
+			for(int v = 0; v < n; v++)
+				out.putInt(offset += source.name(v).getBytes(StandardCharsets.UTF_8).length);
+			out.align();
+			for(int v = 0; v < n; v++)
+				out.put(source.name(v).getBytes(StandardCharsets.UTF_8));
+			out.align();
+			int edge = 0;
+			out.putInt(0);
+			for(int v = 0; v < n; v++)
+				out.putInt(edge += source.degree(v));
+			out.align();
+			int[] targets = new int[maxDegree];
+			double[] weights = new double[maxDegree];
+			for(int v = 0; v < n; v++) {
+				source.edges(v, targets, weights);
+				for(int i = 0, degree = source.degree(v); i < degree; i++)
+					out.putInt(targets[i]);
+			}
+			out.align();
+			for(int v = 0; v < n; v++) {
+				source.edges(v, targets, weights);
+				for(int i = 0, degree = source.degree(v); i < degree; i++)
+					out.putDouble(weights[i]);
+			}
+			out.flush();
+
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(n).putInt((int) m).putLong(nameBytes).putLong(checksum.getValue());
+			header.clear();
+			while(header.hasRemaining())
+				channel.write(header, header.position());
+		}
+	}
+
+	/**
+	 * Maps a network file into memory and returns it as a graph. The edge arrays are used in
+	 * place; only the station names are decoded onto the heap.
+	 *
+	 * @param file the file to map
+	 * @param verifyChecksum true to read the whole file once and compare it against its checksum
+	 * @return the network stored in the file
+	 * @throws IOException if the file cannot be read, is not a network file, has an unknown format
+	 *     version or does not match its checksum
+	 */
+	public static MappedCSRGraph map(Path file, boolean verifyChecksum) throws IOException {
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if(size < HEADER_BYTES)
+				throw new IOException(file + " is not a network file");
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			if(header.getInt(0) != MAGIC)
+				throw new IOException(file + " is not a network file");
+			if(header.getInt(4) != FORMAT_VERSION)
+				throw new IOException(file + " has unsupported format version " + header.getInt(4));
+			int n = header.getInt(8);
+			int m = header.getInt(12);
+			long nameBytes = header.getLong(16);
+			long expectedChecksum = header.getLong(24);
+
+			long nameOffsetsAt = HEADER_BYTES;
+			long namesAt = align(nameOffsetsAt + 4L * (n + 1));
+			long offsetsAt = align(namesAt + nameBytes);
+			long targetsAt = align(offsetsAt + 4L * (n + 1));
+			long weightsAt = align(targetsAt + 4L * m);
+			if(n < 0 || m < 0 || nameBytes < 0 || weightsAt + 8L * m != size || 8L * m > MAX_SECTION_BYTES)
+				throw new IOException(file + " is truncated or has an inconsistent header");
+
+			if(verifyChecksum && checksum(channel, HEADER_BYTES, size) != expectedChecksum)
+				throw new IOException(file + " does not match its checksum");
+
+			IntBuffer nameOffsets = map(channel, nameOffsetsAt, 4L * (n + 1)).asIntBuffer();
+			ByteBuffer nameData = map(channel, namesAt, nameBytes);
+			String[] stations = new String[n];
+			byte[] scratch = new byte[64];
+			for(int v = 0; v < n; v++) {
+				int start = nameOffsets.get(v);
+				int length = nameOffsets.get(v + 1) - start;
+				if(length < 0 || start + (long) length > nameBytes)
+					throw new IOException(file + " has a corrupt station table");
+				if(scratch.length < length) scratch = new byte[Math.max(length, scratch.length * 2)];
+				nameData.get(start, scratch, 0, length);
+				stations[v] = new String(scratch, 0, length, StandardCharsets.UTF_8);
+			}
+			// a mapping stays valid after its channel is closed
+			return new MappedCSRGraph(stations, map(channel, offsetsAt, 4L * (n + 1)).asIntBuffer(),
+					map(channel, targetsAt, 4L * m).asIntBuffer(), map(channel, weightsAt, 8L * m).asDoubleBuffer());
+		}
+	}
+
+	private static ByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+		MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+		return buffer.order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	private static long checksum(FileChannel channel, long from, long to) throws IOException {
+		CRC32 checksum = new CRC32();
+		for(long position = from; position < to; position += MAX_SECTION_BYTES)
+			checksum.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAX_SECTION_BYTES, to - position)));
+		return checksum.getValue();
+	}
+
+	private static long align(long position) {
+		return (position + 7) & ~7L;
+	}
+
+	/**
+	 * Buffers little-endian values, writes them to the channel in large blocks, and adds every
+	 * byte written to the checksum.
+	 */
+	private static final class SectionWriter {
+		private final FileChannel channel;
+		private final CRC32 checksum;
+		private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+		private long written = HEADER_BYTES;
+
+		SectionWriter(FileChannel channel, CRC32 checksum) {
+			this.channel = channel;
+			this.checksum = checksum;
+		}
+
+		void putInt(int value) throws IOException {
+			if(buffer.remaining() < 4) flush();
+			buffer.putInt(value);
+		}
+
+		void putDouble(double value) throws IOException {
+			if(buffer.remaining() < 8) flush();
+			buffer.putDouble(value);
+		}
+
+		void put(byte[] bytes) throws IOException {
+			for(int i = 0; i < bytes.length; ) {
+				if(!buffer.hasRemaining()) flush();
+				int length = Math.min(bytes.length - i, buffer.remaining());
+				buffer.put(bytes, i, length);
+				i += length;
+			}
+		}
+
+		/**
+		 * Pads with zeros up to the next multiple of 8 bytes.
+		 */
+		void align() throws IOException {
+			long position = written + buffer.position();
+			for(long pad = NetworkFile.align(position) - position; pad > 0; pad--) {
+				if(!buffer.hasRemaining()) flush();
+				buffer.put((byte) 0);
+			}
+		}
+
+		void flush() throws IOException {
+			buffer.flip();
+			checksum.update(buffer.duplicate());
+			while(buffer.hasRemaining())
+				written += channel.write(buffer);
+			buffer.clear();
+		}
+	}
+}
@@ -0,0 +1,346 @@
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * This class holds an immutable snapshot of the rail network that the backend answers queries from.
+ * The graph is built once when the data is loaded and is never modified afterwards, so queries only
+ * have to run the search. Reloading the data builds a new snapshot instead of changing this one.
+ */
+public final class NetworkSnapshot {
+
+    private final CSRGraph<String> graph;
+    private final String[] stations;
+    private final ContractionHierarchy<String> hierarchy;
+    private final Timetable timetable;
+    private final boolean timetableDerived; // true if the timetable was derived from this snapshot's travel times
+    private final long version;
+    private volatile StationIndex stationIndex; // built on first use, shared by snapshots with the same stations
+
+    private NetworkSnapshot(CSRGraph<String> graph, String[] stations, ContractionHierarchy<String> hierarchy,
+            Timetable timetable, boolean timetableDerived, long version, StationIndex stationIndex) {
+        this.graph = graph;
+        this.stations = stations;
+        this.hierarchy = hierarchy;
+        this.timetable = timetable;
+        this.timetableDerived = timetableDerived;
+        this.version = version;
+        this.stationIndex = stationIndex;
+    }
+
+    /**
+     * Builds a snapshot from the stations and connections read by the data loader. The graph is
+     * built once into a frozen CSRGraph, so queries never pay for inserting stations or edges.
+     *
+     * @param vertices the station names read from the data file
+     * @param edges the connections read from the data file
+     * @param version the version number of the new snapshot
+     * @return a new snapshot containing the given network
+     */
+    public static NetworkSnapshot build(List<String> vertices, List<Node> edges, long version) {
+        return of(CSRGraphBuilder.fromNodes(vertices, edges), version);
+    }
+
+    /**
+     * Builds a snapshot around a graph that has already been frozen, for example one read by the data
+     * loader's streaming parser. Stations are listed in the graph's vertex order.
+     *
+     * @param graph the network
+     * @param version the version number of the new snapshot
+     * @return a new snapshot containing the given network
+     */
+    public static NetworkSnapshot build(CSRGraph<String> graph, long version) {
+        return of(graph, version);
+    }
+
+    /**
+     * Builds a snapshot from an editable graph, keeping the stations that are still in the graph in the
+     * order of the previous snapshot. If no station was added or removed, the new snapshot shares the
+     * previous one's station index.
+     *
+     * @param source the graph to copy
+     * @param previous the snapshot the graph was edited from
+     * @param version the version number of the new snapshot
+     * @return a new snapshot containing a frozen copy of the graph
+     */
+    public static NetworkSnapshot build(AE_Graph<String, ? extends Number> source, NetworkSnapshot previous,
+            long version) {
+        CSRGraphBuilder<String> builder = new CSRGraphBuilder<>();
+        for (String station : previous.stations) {
+            if (source.containsVertex(station)) {
+                builder.addVertex(station);
+            }
+        }
+        for (AE_Graph<String, ? extends Number>.Vertex vertex : source.vertices.values()) {
+            for (AE_Graph<String, ? extends Number>.Edge edge : vertex.edgesLeaving) {
+                builder.addEdge(vertex.data, edge.target.data, edge.weight.doubleValue());
+            }
+        }
+        NetworkSnapshot snapshot = of(builder.build(), version);
+        if (Arrays.equals(snapshot.stations, previous.stations)) {
+            snapshot.stationIndex = previous.stationIndex;
+        }
+        return snapshot;
+    }
+
+    private static NetworkSnapshot of(CSRGraph<String> graph, long version) {
+        String[] stations = new String[graph.getVertexCount()];
+        for (int i = 0; i < stations.length; i++) {
+            stations[i] = graph.vertexData(i);
+        }
+
+        return new NetworkSnapshot(graph, stations, null, null, false, version, null);
+    }
+
+    /**
+     * Creates an editable copy of this snapshot's graph
+     */
+    public AE_Graph<String, Double> toEditableGraph() {
+        AE_Graph<String, Double> copy = new AE_Graph<>();
+        for (String station : stations) {
+            copy.insertVertex(station);
+        }
+        for (int v = 0; v < stations.length; v++) {
+            for (int e = graph.firstEdge(v); e < graph.endEdge(v); e++) {
+                copy.insertEdge(stations[v], stations[graph.edgeTarget(e)], graph.edgeWeight(e));
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Returns a copy of the station names in the order they were loaded
+     */
+    public String[] getStations() {
+        return stations.clone();
+    }
+
+    /**
+     * Returns the index used to validate and complete station names, building it on first use. Two threads
+     * may both build it, but they build equal indexes and either one can be kept.
+     */
+    public StationIndex getStationIndex() {
+        StationIndex index = stationIndex;
+        if (index == null) {
+            index = new StationIndex(stations);
+            stationIndex = index;
+        }
+        return index;
+    }
+
+    /**
+     * Returns a copy of this snapshot that can also answer queries with the given contraction hierarchy
+     *
+     * @param hierarchy a contraction hierarchy built for this snapshot's graph
+     * @return a new snapshot sharing this snapshot's graph
+     */
+    public NetworkSnapshot withHierarchy(ContractionHierarchy<String> hierarchy) {
+        if (hierarchy.getGraph() != graph) {
+            throw new IllegalArgumentException("Contraction hierarchy was built for a different graph");
+        }
+        return new NetworkSnapshot(graph, stations, hierarchy, timetable, timetableDerived, version, stationIndex);
+    }
+
+    /**
+     * Returns a copy of this snapshot that can also answer queries with the given timetable
+     *
+     * @param timetable a timetable for this snapshot's stations
+     * @param derived true if the timetable was derived from this snapshot's travel times, so it no longer
+     *     holds once they change; false for a timetable read from a file, which does not depend on them
+     * @return a new snapshot sharing this snapshot's graph
+     */
+    public NetworkSnapshot withTimetable(Timetable timetable, boolean derived) {
+        return new NetworkSnapshot(graph, stations, hierarchy, timetable, derived, version, stationIndex);
+    }
+
+    /**
+     * Returns a copy of this snapshot with new travel times for some connections. The copy shares this
+     * snapshot's stations and only copies the edge weights. A contraction hierarchy, or a timetable derived
+     * from the travel times, was built for the old weights, so the copy does not have it; a timetable read
+     * from a file is kept.
+     *
+     * @param updates the new travel times; updates of connections that are not in the network are skipped
+     * @param version the version number of the new snapshot
+     * @return the updated snapshot, or this snapshot if no travel time changed
+     */
+    public NetworkSnapshot withUpdatedWeights(Collection<? extends EdgeUpdate<String, ? extends Number>> updates,
+            long version) {
+        CSRGraph<String> updated = graph.withUpdatedWeights(updates);
+        if (updated == graph) {
+            return this;
+        }
+        Timetable kept = timetableDerived ? null : timetable;
+        return new NetworkSnapshot(updated, stations, null, kept, false, version, stationIndex);
+    }
+
+    /**
+     * Returns the version number of this snapshot. Every reload or change of the network publishes a
+     * snapshot with a higher version.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the graph of this snapshot
+     */
+    public CSRGraph<String> getGraph() {
+        return graph;
+    }
+
+    /**
+     * Returns the contraction hierarchy of this snapshot, or null if none has been prepared
+     */
+    public ContractionHierarchy<String> getHierarchy() {
+        return hierarchy;
+    }
+
+    /**
+     * Returns the timetable of this snapshot, or null if none has been prepared
+     */
+    public Timetable getTimetable() {
+        return timetable;
+    }
+
+    /**
+     * Returns true if the timetable was derived from this snapshot's travel times rather than read from a file
+     */
+    public boolean isTimetableDerived() {
+        return timetableDerived;
+    }
+
+    /**
+     * Returns the shortest path between the origin and the destination together with its leg
+     * weights, total travel time and search statistics, from a single search. With the timetable this
+     * is the fastest journey of the whole timetable, counted from the departure of its first train.
+     *
+     * @param origin the origin station
+     * @param destination the final destination station
+     * @param mode the search algorithm to use
+     * @return the route from the origin to the destination
+     */
+    public RouteResult<String> route(String origin, String destination, RoutingMode mode) {
+        switch (mode) {
+            case CONTRACTION_HIERARCHY:
+                return requireHierarchy().route(origin, destination);
+            case BIDIRECTIONAL:
+                return BidirectionalDijkstra.route(graph, origin, destination);
+            case TIMETABLE:
+                return fastestJourney(origin, destination);
+            default:
+                return graph.route(origin, destination);
+        }
+    }
+
+    /**
+     * Returns the routes of a batch of queries in their order, with one search per origin, read and answered
+     * one window of queries at a time. A query without a route gets null.
+     *
+     * @param queries the origin-destination pairs to route
+     * @return the routes of the queries, in order
+     */
+    public BatchRouter<String> routeBatch(Iterable<? extends OriginDestination<String>> queries) {
+        return new BatchRouter<>(graph, queries.iterator(), BatchRouter.DEFAULT_WINDOW);
+    }
+
+    /**
+     * Returns up to k loopless routes between the origin and the destination, shortest first
+     *
+     * @param origin the origin station
+     * @param destination the final destination station
+     * @param k the number of routes to find
+     * @return the routes, shortest first
+     */
+    public List<RouteResult<String>> alternativeRoutes(String origin, String destination, int k) {
+        return graph.kShortestPaths(origin, destination, k);
+    }
+
+    /**
+     * Returns the timetabled journey from the origin that arrives at the destination as early as possible,
+     * leaving no earlier than the departure time. Its leg weights and total are in hours from the
+     * departure time, including the time spent waiting for trains.
+     *
+     * @param origin the origin station
+     * @param destination the final destination station
+     * @param departureTime the earliest time to leave, in seconds after the start of the timetable
+     * @return the journey as a route
+     */
+    public RouteResult<String> route(String origin, String destination, int departureTime) {
+        long began = System.nanoTime();
+        Journey journey = requireTimetable().earliestArrival(origin, destination, departureTime);
+        return journey.toRouteResult(departureTime, System.nanoTime() - began);
+    }
+
+    /**
+     * Returns every timetabled journey from the origin to the destination that is not beaten by one leaving
+     * later and arriving no later, earliest departure first
+     *
+     * @param origin the origin station
+     * @param destination the final destination station
+     * @return the Pareto optimal journeys over the whole timetable
+     */
+    public List<Journey> profile(String origin, String destination) {
+        return requireTimetable().profile(origin, destination);
+    }
+
+    /**
+     * Returns the timetabled journeys from the origin to the destination leaving no earlier than the departure
+     * time that trade arrival time against the number of transfers, fewest transfers first
+     *
+     * @param origin the origin station
+     * @param destination the final destination station
+     * @param departureTime the earliest time to leave, in seconds after the start of the timetable
+     * @return the Pareto optimal journeys, with at most Raptor.DEFAULT_MAX_TRANSFERS transfers
+     */
+    public List<Journey> paretoJourneys(String origin, String destination, int departureTime) {
+        return requireTimetable().paretoJourneys(origin, destination, departureTime, Raptor.DEFAULT_MAX_TRANSFERS);
+    }
+
+    /**
+     * Returns the timetabled journeys from the origin to the destination leaving in the departure window that
+     * are not beaten by one leaving later, arriving no later and changing trains no more often
+     *
+     * @param origin the origin station
+     * @param destination the final destination station
+     * @param from the earliest departure time, in seconds after the start of the timetable
+     * @param until the latest departure time
+     * @param parallel whether to split the window over several threads
+     * @return the Pareto optimal journeys, earliest departure first
+     */
+    public List<Journey> paretoJourneys(String origin, String destination, int from, int until, boolean parallel) {
+        return requireTimetable().paretoRange(origin, destination, from, until, Raptor.DEFAULT_MAX_TRANSFERS, parallel);
+    }
+
+    private RouteResult<String> fastestJourney(String origin, String destination) {
+        if (origin.equals(destination)) {
+            return route(origin, destination, 0); // no train to take
+        }
+        long began = System.nanoTime();
+        Journey fastest = null;
+        for (Journey journey : requireTimetable().profile(origin, destination)) {
+            if (fastest == null || journey.getArrivalTime() - journey.getDepartureTime()
+                    < fastest.getArrivalTime() - fastest.getDepartureTime()) {
+                fastest = journey;
+            }
+        }
+        if (fastest == null) {
+            throw new NoSuchElementException("No journey found between the stations in the timetable.");
+        }
+        return fastest.toRouteResult(fastest.getDepartureTime(), System.nanoTime() - began);
+    }
+
+    private Timetable requireTimetable() {
+        if (timetable == null) {
+            throw new IllegalStateException("No timetable has been prepared for this network");
+        }
+        return timetable;
+    }
+
+    private ContractionHierarchy<String> requireHierarchy() {
+        if (hierarchy == null) {
+            throw new IllegalStateException("No contraction hierarchy has been prepared for this network");
+        }
+        return hierarchy;
+    }
+}
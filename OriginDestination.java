@@ -0,0 +1,42 @@
+/**
+ * One query of a batch: the origin and destination stations of a trip, for example one row of
+ * an origin-destination demand table. Batches of them are answered with BatchRouter.
+ */
+public final class OriginDestination<NodeType> {
+
+	private final NodeType origin;
+	private final NodeType destination;
+
+	/**
+	 * Creates the query for a trip from origin to destination.
+	 *
+	 * @param origin the data item contained in the origin vertex
+	 * @param destination the data item contained in the destination vertex
+	 * @throws NullPointerException if origin or destination is null
+	 */
+	public OriginDestination(NodeType origin, NodeType destination) {
+		if(origin == null || destination == null)
+			throw new NullPointerException("Cannot route between null origin and destination");
+		this.origin = origin;
+		this.destination = destination;
+	}
+
+	/**
+	 * Returns the data item contained in the origin vertex.
+	 */
+	public NodeType getOrigin() {
+		return origin;
+	}
+
+	/**
+	 * Returns the data item contained in the destination vertex.
+	 */
+	public NodeType getDestination() {
+		return destination;
+	}
+
+	@Override
+	public String toString() {
+		return origin + " -> " + destination;
+	}
+}
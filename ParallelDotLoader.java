@@ -0,0 +1,197 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Loads a DOT file on several threads. The graph body is split into byte ranges that start and end
+ * at line breaks, and each range is parsed by its own DotParser into its own StationTable and
+ * EdgeBuffer. The parts are then merged in file order: stations get their ids in order of first
+ * appearance and edges keep their order, so the result is exactly what a single DotParser would
+ * produce, whatever the number of threads.
+ *
+ * This works for files that keep each statement on one line, like our exports. If a statement,
+ * quoted id or comment crosses a range boundary, the range before it ends in the middle of it and
+ * fails to parse; the file is then parsed again on one thread, which reports any real error.
+ */
+public final class ParallelDotLoader {
+
+	private static final long MIN_CHUNK_BYTES = 1 << 20;
+	private static final int CHUNKS_PER_THREAD = 4; // smaller parts even out uneven lines
+
+	private ParallelDotLoader() {
+	}
+
+	/**
+	 * Parses a DOT file into stations and edges using up to threads threads.
+	 *
+	 * @param file the file to read
+	 * @param threads the number of threads to parse on
+	 * @param stations the table station names are interned into
+	 * @param edges the buffer edges are appended to
+	 * @throws IOException if the file cannot be read or is not a valid DOT graph
+	 */
+	public static void load(Path file, int threads, StationTable stations, EdgeBuffer edges) throws IOException {
+		if(threads < 1)
+			throw new IllegalArgumentException("Cannot load with fewer than one thread");
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if(threads == 1 || size < 2 * MIN_CHUNK_BYTES) {
+				new DotParser(stations, edges).parse(channel, file.toString());
+				return;
+			}
+			long bodyStart = new DotParser(new StationTable(), new EdgeBuffer()).parseHeader(channel, file.toString());
+			long[] bounds = chunkBounds(channel, bodyStart, size, threads);
+			Chunk[] chunks = parseChunks(channel, file.toString(), bounds, threads);
+			if(chunks == null) {
+				channel.position(0);
+				new DotParser(stations, edges).parse(channel, file.toString());
+				return;
+			}
+			for(Chunk chunk : chunks)
+				edges.addAll(chunk.edges, stations.internAll(chunk.stations));
+		}
+	}
+
+	/**
+	 * Splits the bytes from bodyStart to size into ranges that start just after a line break.
+	 *
+	 * @return the start of every range followed by size
+	 */
+	private static long[] chunkBounds(FileChannel channel, long bodyStart, long size, int threads) throws IOException {
+		int count = (int) Math.max(1, Math.min((long) threads * CHUNKS_PER_THREAD, (size - bodyStart) / MIN_CHUNK_BYTES));
+		long[] bounds = new long[count + 1];
+		bounds[0] = bodyStart;
+		ByteBuffer probe = ByteBuffer.allocate(1 << 12);
+		for(int i = 1; i < count; i++) {
+			long position = Math.max(bounds[i - 1], bodyStart + (size - bodyStart) * i / count);
+			bounds[i] = size;
+			// advance to just after the next line break
+			while(position < size) {
+				probe.clear();
+				int read = channel.read(probe, position);
+				if(read <= 0) break;
+				int newline = -1;
+				for(int j = 0; j < read && newline < 0; j++)
+					if(probe.get(j) == '\n') newline = j;
+				if(newline >= 0) {
+					bounds[i] = position + newline + 1;
+					break;
+				}
+				position += read;
+			}
+		}
+		bounds[count] = size;
+		return bounds;
+	}
+
+	/**
+	 * Parses every range on a pool of threads.
+	 *
+	 * @return the parsed ranges in file order, or null if a range could not be parsed on its own
+	 */
+	private static Chunk[] parseChunks(FileChannel channel, String sourceName, long[] bounds, int threads)
+			throws IOException {
+		int count = bounds.length - 1;
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, count));
+		try {
+			List<Future<Chunk>> futures = new ArrayList<>();
+			for(int i = 0; i < count; i++) {
+				long start = bounds[i];
+				long end = bounds[i + 1];
+				futures.add(pool.submit(() -> Chunk.parse(channel, sourceName, start, end)));
+			}
+			Chunk[] chunks = new Chunk[count];
+			int braces = 0;
+			for(int i = 0; i < count; i++) {
+				chunks[i] = futures.get(i).get();
+				if(chunks[i] == null)
+					return null;
+				braces += chunks[i].braces;
+			}
+			// the parts together have to close exactly the brace opened by the header
+			return braces == -1 ? chunks : null;
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while loading " + sourceName, e);
+		} catch(ExecutionException e) {
+			if(e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new IOException("Failed to load " + sourceName, e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * The stations and edges of one byte range.
+	 */
+	private static final class Chunk {
+		final StationTable stations = new StationTable();
+		final EdgeBuffer edges = new EdgeBuffer();
+		int braces;
+
+		/**
+		 * @return the parsed range, or null if it does not parse on its own
+		 */
+		static Chunk parse(FileChannel channel, String sourceName, long start, long end) throws IOException {
+			Chunk chunk = new Chunk();
+			try {
+				chunk.braces = new DotParser(chunk.stations, chunk.edges)
+						.parseBody(new RangeChannel(channel, start, end), sourceName);
+			} catch(IOException e) {
+				if(!channel.isOpen()) throw e;
+				return null; // most likely a statement split across ranges
+			}
+			return chunk;
+		}
+	}
+
+	/**
+	 * Reads a byte range of a FileChannel with positional reads, so many threads can read
+	 * different ranges of the same channel at once.
+	 */
+	private static final class RangeChannel implements ReadableByteChannel {
+		private final FileChannel channel;
+		private long position;
+		private final long end;
+
+		RangeChannel(FileChannel channel, long start, long end) {
+			this.channel = channel;
+			this.position = start;
+			this.end = end;
+		}
+
+		@Override
+		public int read(ByteBuffer destination) throws IOException {
+			if(position >= end)
+				return -1;
+			int limit = destination.limit();
+			if(end - position < destination.remaining())
+				destination.limit(destination.position() + (int) (end - position));
+			int read = channel.read(destination, position);
+			destination.limit(limit);
+			if(read > 0)
+				position += read;
+			return read;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return channel.isOpen();
+		}
+
+		@Override
+		public void close() {
+			// the channel is shared with the other ranges and closed by load()
+		}
+	}
+}
@@ -0,0 +1,110 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * This program measures how route query throughput on one shared TrainBackend grows with the number of
+ * querying threads. The network is a square grid of stations, and a writer thread keeps publishing new
+ * snapshots while the readers run, so the numbers include the cost of copy-on-write updates.
+ *
+ * Usage: java QueryThroughputBenchmark [grid side] [queries per thread] [routing mode]
+ */
+public class QueryThroughputBenchmark {
+
+    public static void main(String[] args) throws InterruptedException {
+        int side = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int queriesPerThread = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        RoutingMode mode = args.length > 2 ? RoutingMode.valueOf(args[2]) : RoutingMode.BIDIRECTIONAL;
+
+        TrainBackend backend = new TrainBackend(gridNetwork(side));
+        backend.setRoutingMode(mode);
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.println(side * side + " stations, " + cores + " cores, " + mode);
+        System.out.println("threads  queries/s  speedup");
+
+        run(backend, side, 1, queriesPerThread / 4); // warm up
+        double single = 0;
+        for (int threads = 1; ; threads = Math.min(threads * 2, cores)) {
+            double throughput = run(backend, side, threads, queriesPerThread);
+            if (threads == 1) {
+                single = throughput;
+            }
+            System.out.printf("%7d  %9.0f  %7.2f%n", threads, throughput, throughput / single);
+            if (threads == cores) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Runs the given number of reader threads against the backend and returns the queries answered per second
+     */
+    private static double run(TrainBackend backend, int side, int threads, int queriesPerThread)
+            throws InterruptedException {
+        backend.getRouteCache().invalidateAll();
+        List<Thread> readers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Random random = new Random(t);
+            readers.add(new Thread(() -> {
+                for (int query = 0; query < queriesPerThread; query++) {
+                    backend.route(station(random.nextInt(side), random.nextInt(side)),
+                            station(random.nextInt(side), random.nextInt(side)));
+                }
+            }));
+        }
+        Thread writer = new Thread(() -> {
+            try {
+                while (true) {
+                    Thread.sleep(100);
+                    backend.insertEdge(station(0, 0), station(side - 1, side - 1), side * 4.0);
+                    Thread.sleep(100);
+                    backend.removeEdge(station(0, 0), station(side - 1, side - 1));
+                }
+            } catch (InterruptedException e) {
+                // the readers are done
+            }
+        });
+
+        long start = System.nanoTime();
+        writer.start();
+        for (Thread reader : readers) {
+            reader.start();
+        }
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        long elapsed = System.nanoTime() - start;
+        writer.interrupt();
+        writer.join();
+        return threads * (double) queriesPerThread * 1e9 / elapsed;
+    }
+
+    /**
+     * Builds a side by side grid with connections in both directions between neighbouring stations
+     */
+    private static NetworkSnapshot gridNetwork(int side) {
+        List<String> stations = new ArrayList<>();
+        List<Node> connections = new ArrayList<>();
+        Random random = new Random(42);
+        for (int row = 0; row < side; row++) {
+            for (int column = 0; column < side; column++) {
+                stations.add(station(row, column));
+                if (column + 1 < side) {
+                    int time = 1 + random.nextInt(9);
+                    connections.add(new Node(station(row, column), station(row, column + 1), time));
+                    connections.add(new Node(station(row, column + 1), station(row, column), time));
+                }
+                if (row + 1 < side) {
+                    int time = 1 + random.nextInt(9);
+                    connections.add(new Node(station(row, column), station(row + 1, column), time));
+                    connections.add(new Node(station(row + 1, column), station(row, column), time));
+                }
+            }
+        }
+        return NetworkSnapshot.build(stations, connections, 0);
+    }
+
+    private static String station(int row, int column) {
+        return row + "_" + column;
+    }
+}
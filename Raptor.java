@@ -0,0 +1,368 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Round-based public transit routing (RAPTOR) over the routes of a Timetable. Round k finds the
+ * earliest arrival at every station with at most k trips: it scans each route serving a station
+ * improved in round k - 1, boarding the earliest trip that can be caught and getting off
+ * wherever that arrives earlier than known. The destination's arrival after each round gives
+ * the Pareto set of journeys trading arrival time against the number of transfers, which
+ * ConnectionScan cannot give because it only keeps one label per station.
+ *
+ * Labels are kept per station and round in flat int arrays, and the stations improved in a
+ * round are marked in a bitset. A range query runs one search per departure time in a window,
+ * latest first, and keeps the labels from the later departures as upper bounds so an earlier
+ * departure only explores what it improves on; the window can be split over the common
+ * ForkJoinPool.
+ *
+ * Like ConnectionScan, a Raptor is not thread safe; use forThread() to get the one owned by the
+ * current thread.
+ */
+public final class Raptor {
+
+	/** Number of transfers searched for when the caller does not choose. */
+	public static final int DEFAULT_MAX_TRANSFERS = 15;
+
+	private static final int UNREACHED = Integer.MAX_VALUE;
+	private static final ThreadLocal<Raptor> SCRATCH = ThreadLocal.withInitial(Raptor::new);
+
+	private int rounds; // labels per station: round 0 for the start and one per trip taken
+	private int[] arrival = new int[0]; // arrival[station * rounds + k], valid while stationStamp is current
+	private int[] parentTrip = new int[0]; // trip ridden to the station, -1 for the start
+	private int[] parentBoard = new int[0]; // route positions the trip was boarded and left at
+	private int[] parentAlight = new int[0];
+	private int[] parentRound = new int[0]; // round the trip was ridden in; labels are copied to later rounds
+	private int[] stationStamp = new int[0];
+	private int generation = 0;
+	private int[] touched = new int[0]; // stations with labels in the current search
+	private int touchedCount = 0;
+	private long[] marked = new long[0]; // stations improved in the current round
+	private long[] boardable = new long[0]; // stations improved in the previous round, the only ones worth boarding at
+
+	private int[] routeStamp = new int[0];
+	private int[] routeFrom = new int[0]; // earliest marked position on each queued route
+	private int[] queue = new int[0];
+	private int routeGeneration = 0;
+	private int scanned;
+
+	/**
+	 * Returns the Raptor owned by the calling thread, with room for the given routes.
+	 */
+	public static Raptor forThread(RaptorRoutes routes) {
+		Raptor raptor = SCRATCH.get();
+		raptor.ensureCapacity(routes);
+		return raptor;
+	}
+
+	private void ensureCapacity(RaptorRoutes routes) {
+		int stations = routes.getStationCount();
+		if(stations > stationStamp.length) {
+			stationStamp = Arrays.copyOf(stationStamp, stations);
+			touched = new int[stations];
+			marked = new long[(stations + 63) >>> 6];
+			boardable = new long[marked.length];
+		}
+		if(routes.getRouteCount() > routeStamp.length) {
+			routeStamp = Arrays.copyOf(routeStamp, routes.getRouteCount());
+			routeFrom = new int[routes.getRouteCount()];
+			queue = new int[routes.getRouteCount()];
+		}
+	}
+
+	/**
+	 * Starts a search that keeps labels for up to maxTransfers transfers.
+	 */
+	private void begin(RaptorRoutes routes, int maxTransfers) {
+		if(maxTransfers < 0)
+			throw new IllegalArgumentException("Cannot search with a negative number of transfers");
+		rounds = maxTransfers + 2;
+		long labels = (long) routes.getStationCount() * rounds;
+		if(labels > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Too many transfers to search for on this timetable");
+		if(labels > arrival.length) {
+			arrival = new int[(int) labels];
+			parentTrip = new int[(int) labels];
+			parentBoard = new int[(int) labels];
+			parentAlight = new int[(int) labels];
+			parentRound = new int[(int) labels];
+		}
+		if(++generation == 0) { // stamps wrapped around, so old stamps could look current
+			Arrays.fill(stationStamp, 0);
+			generation = 1;
+		}
+		touchedCount = 0;
+	}
+
+	private int label(int station, int round) {
+		return stationStamp[station] == generation ? arrival[station * rounds + round] : UNREACHED;
+	}
+
+	private void touch(int station) {
+		if(stationStamp[station] == generation) return;
+		stationStamp[station] = generation;
+		Arrays.fill(arrival, station * rounds, station * rounds + rounds, UNREACHED);
+		touched[touchedCount++] = station;
+	}
+
+	/**
+	 * Returns the journeys from start to end leaving no earlier than departureTime that are Pareto
+	 * optimal in arrival time and number of transfers, fewest transfers first.
+	 *
+	 * @param timetable the timetable to search
+	 * @param start id of the station to leave from
+	 * @param end id of the station to arrive at
+	 * @param departureTime the earliest time to leave
+	 * @param maxTransfers the most transfers a journey may have
+	 * @return the Pareto optimal journeys; empty if end cannot be reached
+	 * @throws IllegalArgumentException if maxTransfers is negative
+	 */
+	public List<Journey> paretoJourneys(Timetable timetable, int start, int end, int departureTime, int maxTransfers) {
+		RaptorRoutes routes = timetable.getRaptorRoutes();
+		begin(routes, maxTransfers);
+		List<Journey> journeys = new ArrayList<>();
+		if(start == end) {
+			journeys.add(new Journey(List.of(timetable.station(start)), new int[0], new int[0], new int[0], departureTime, 0));
+			return journeys;
+		}
+		int[] before = new int[rounds];
+		Arrays.fill(before, UNREACHED);
+		search(routes, start, end, departureTime);
+		collect(timetable, routes, start, end, departureTime, before, journeys);
+		return journeys;
+	}
+
+	/**
+	 * Runs a search for every departure time, latest first, reusing the labels of the later
+	 * departures, and returns the journeys each one found that no later departure matched.
+	 *
+	 * @param departureTimes the departure times, latest first
+	 */
+	private List<Journey> range(Timetable timetable, int start, int end, int[] departureTimes, int maxTransfers) {
+		RaptorRoutes routes = timetable.getRaptorRoutes();
+		begin(routes, maxTransfers);
+		List<Journey> journeys = new ArrayList<>();
+		int[] before = new int[rounds];
+		for(int departureTime : departureTimes) {
+			for(int k = 0; k < rounds; k++)
+				before[k] = label(end, k);
+			search(routes, start, end, departureTime);
+			collect(timetable, routes, start, end, departureTime, before, journeys);
+		}
+		return journeys;
+	}
+
+	/**
+	 * Returns the journeys from start to end leaving between from and until, inclusive, that are
+	 * Pareto optimal in departure time, arrival time and number of transfers: no other journey
+	 * leaves later, arrives no later and changes trains no more often. Every departure time from
+	 * start in the window is searched; with parallel set, the window is split into slices that
+	 * are searched on the common ForkJoinPool.
+	 *
+	 * @param timetable the timetable to search
+	 * @param start id of the station to leave from
+	 * @param end id of the station to arrive at
+	 * @param from the earliest departure time
+	 * @param until the latest departure time
+	 * @param maxTransfers the most transfers a journey may have
+	 * @param parallel whether to search slices of the window in parallel
+	 * @return the Pareto optimal journeys, earliest departure first and fewest transfers first
+	 *     among journeys leaving at the same time
+	 * @throws IllegalArgumentException if maxTransfers is negative
+	 */
+	public static List<Journey> paretoRange(Timetable timetable, int start, int end, int from, int until,
+			int maxTransfers, boolean parallel) {
+		RaptorRoutes routes = timetable.getRaptorRoutes();
+		if(start == end)
+			return forThread(routes).paretoJourneys(timetable, start, end, until, maxTransfers);
+		int[] departures = routes.departuresFrom(start, from, until);
+		int slices = parallel ? Math.min(departures.length, 4 * Runtime.getRuntime().availableProcessors()) : 1;
+		List<Journey> journeys;
+		if(slices <= 1) {
+			journeys = forThread(routes).range(timetable, start, end, departures, maxTransfers);
+		} else {
+			journeys = IntStream.range(0, slices).parallel().mapToObj(slice -> {
+				int[] times = Arrays.copyOfRange(departures, (int) ((long) departures.length * slice / slices),
+						(int) ((long) departures.length * (slice + 1) / slices));
+				return forThread(routes).range(timetable, start, end, times, maxTransfers);
+			}).flatMap(List::stream).collect(Collectors.toList());
+		}
+		return paretoFilter(journeys, maxTransfers);
+	}
+
+	/**
+	 * Drops every journey that another one leaving no earlier, arriving no later and changing
+	 * trains no more often beats or duplicates.
+	 */
+	private static List<Journey> paretoFilter(List<Journey> journeys, int maxTransfers) {
+		journeys.sort(Comparator.comparingInt(Journey::getDepartureTime).reversed()
+				.thenComparingInt(Journey::getTransferCount).thenComparingInt(Journey::getArrivalTime));
+		int[] best = new int[maxTransfers + 1]; // earliest arrival kept so far with exactly that many transfers
+		Arrays.fill(best, UNREACHED);
+		List<Journey> kept = new ArrayList<>();
+		for(Journey journey : journeys) {
+			int transfers = journey.getTransferCount();
+			boolean dominated = false;
+			for(int x = 0; x <= transfers && !dominated; x++)
+				dominated = best[x] <= journey.getArrivalTime();
+			if(dominated) continue;
+			best[transfers] = journey.getArrivalTime();
+			kept.add(journey);
+		}
+		kept.sort(Comparator.comparingInt(Journey::getDepartureTime).thenComparingInt(Journey::getTransferCount));
+		return kept;
+	}
+
+	/**
+	 * Runs the rounds from start, leaving at departureTime, on top of the labels already set.
+	 */
+	private void search(RaptorRoutes routes, int start, int end, int departureTime) {
+		scanned = 0;
+		Arrays.fill(marked, 0L);
+		touch(start);
+		arrival[start * rounds] = departureTime;
+		parentTrip[start * rounds] = -1;
+		marked[start >>> 6] |= 1L << start;
+
+		for(int k = 1; k < rounds; k++) {
+			// a station reached with fewer trips is reached at least as early with more
+			for(int i = 0; i < touchedCount; i++) {
+				int index = touched[i] * rounds + k;
+				if(arrival[index - 1] < arrival[index]) {
+					arrival[index] = arrival[index - 1];
+					parentTrip[index] = parentTrip[index - 1];
+					parentBoard[index] = parentBoard[index - 1];
+					parentAlight[index] = parentAlight[index - 1];
+					parentRound[index] = parentRound[index - 1];
+				}
+			}
+
+			int queued = queueRoutes(routes);
+			if(queued == 0) break;
+			for(int q = 0; q < queued; q++)
+				scanRoute(routes, queue[q], k, end);
+		}
+	}
+
+	/**
+	 * Queues every route through a marked station from its earliest marked position, and moves
+	 * the marks over to the boardable stations.
+	 */
+	private int queueRoutes(RaptorRoutes routes) {
+		if(++routeGeneration == 0) {
+			Arrays.fill(routeStamp, 0);
+			routeGeneration = 1;
+		}
+		int queued = 0;
+		for(int word = 0; word < marked.length; word++) {
+			long bits = marked[word];
+			boardable[word] = bits;
+			if(bits == 0) continue;
+			marked[word] = 0;
+			for(; bits != 0; bits &= bits - 1) {
+				int station = word << 6 | Long.numberOfTrailingZeros(bits);
+				for(int entry = routes.firstStationRoute(station); entry < routes.endStationRoute(station); entry++) {
+					int r = routes.stationRoute(entry);
+					int position = routes.stationPosition(entry);
+					if(routeStamp[r] != routeGeneration) {
+						routeStamp[r] = routeGeneration;
+						routeFrom[r] = position;
+						queue[queued++] = r;
+					} else if(position < routeFrom[r]) {
+						routeFrom[r] = position;
+					}
+				}
+			}
+		}
+		return queued;
+	}
+
+	/**
+	 * Rides the route from its earliest marked position in round k, always on the earliest trip
+	 * that can be caught so far. Trips are only boarded at stations improved in round k - 1: the
+	 * label of any other station is the same as in an earlier round, which already rode every
+	 * trip it can catch.
+	 */
+	private void scanRoute(RaptorRoutes routes, int r, int k, int end) {
+		int stops = routes.stopCount(r);
+		int trip = -1;
+		int board = -1;
+		for(int i = routeFrom[r]; i < stops; i++) {
+			int station = routes.stop(r, i);
+			scanned++;
+			if(trip >= 0) {
+				int arrives = routes.arrivalTime(trip, i);
+				if(arrives < label(station, k) && arrives < label(end, k)) {
+					touch(station);
+					int index = station * rounds + k;
+					arrival[index] = arrives;
+					parentTrip[index] = trip;
+					parentBoard[index] = board;
+					parentAlight[index] = i;
+					parentRound[index] = k;
+					marked[station >>> 6] |= 1L << station;
+				}
+			}
+			if(i == stops - 1) break;
+			if((boardable[station >>> 6] & 1L << station) == 0) continue;
+			int ready = label(station, k - 1);
+			if(trip >= 0 && (trip == routes.firstTrip(r) || ready > routes.departureTime(trip - 1, i)))
+				continue; // the trip before this one has already left
+			int bound = trip >= 0 ? trip : routes.endTrip(r);
+			int earlier = routes.earliestTrip(r, i, ready, bound);
+			if(earlier < bound) {
+				trip = earlier;
+				board = i;
+			}
+		}
+	}
+
+	/**
+	 * Adds a journey for every round whose arrival at end improved on the labels in before and on
+	 * the round with one trip fewer.
+	 */
+	private void collect(Timetable timetable, RaptorRoutes routes, int start, int end, int departureTime,
+			int[] before, List<Journey> journeys) {
+		for(int k = 1; k < rounds; k++) {
+			int arrives = label(end, k);
+			if(arrives < before[k] && arrives < label(end, k - 1))
+				journeys.add(journey(timetable, routes, start, end, k, departureTime));
+		}
+	}
+
+	/**
+	 * Walks the labels back from end in round k, one ridden trip at a time.
+	 */
+	private Journey journey(Timetable timetable, RaptorRoutes routes, int start, int end, int k, int departureTime) {
+		List<int[]> legs = new ArrayList<>(); // arrival station, departure, arrival, trip; last leg first
+		for(int station = end, round = k; ; ) {
+			int index = station * rounds + round;
+			int trip = parentTrip[index];
+			if(trip < 0) break;
+			int r = routes.route(trip);
+			int board = parentBoard[index];
+			for(int i = parentAlight[index]; i > board; i--)
+				legs.add(new int[] { routes.stop(r, i), routes.departureTime(trip, i - 1), routes.arrivalTime(trip, i),
+						routes.sourceTrip(trip) });
+			station = routes.stop(r, board);
+			round = parentRound[index] - 1;
+		}
+		int n = legs.size();
+		List<String> stations = new ArrayList<>(n + 1);
+		int[] departures = new int[n];
+		int[] arrivals = new int[n];
+		int[] trips = new int[n];
+		stations.add(timetable.station(start));
+		for(int i = 0; i < n; i++) {
+			int[] leg = legs.get(n - 1 - i);
+			stations.add(timetable.station(leg[0]));
+			departures[i] = leg[1];
+			arrivals[i] = leg[2];
+			trips[i] = leg[3];
+		}
+		return new Journey(stations, departures, arrivals, trips, departureTime, scanned);
+	}
+}
@@ -0,0 +1,371 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * The trips of a Timetable grouped into routes for Raptor. A route is a sequence of stations
+ * together with every trip that serves exactly that sequence, ordered so that no trip overtakes
+ * another one: the first trip is the earliest at every station of the route. That lets a
+ * Raptor round find the earliest trip to board at a station with a binary search.
+ *
+ * A trip of the timetable whose connections do not follow on from each other, because the
+ * next connection leaves from a different station or before the previous one arrives, is split
+ * into separate route trips. Stop times are kept in a flat int array trip after trip, so riding
+ * a trip reads consecutive entries. The departures are copied once more station after station
+ * within each route, so the departures of all trips from one station of a route are next to
+ * each other for the binary search that boards them.
+ */
+public final class RaptorRoutes {
+
+	private final int stationCount;
+	private final int[] routeStopOffset; // routeStops index of the first station of each route, plus an end entry
+	private final int[] routeStops;
+	private final int[] routeTripOffset; // index of the first trip of each route, plus an end entry
+	private final int[] tripTimeOffset; // stopTimes index of each trip's first arrival
+	private final int[] routeBoardingOffset; // boardingTimes index of each route's first departure
+	private final int[] tripRoute;
+	private final int[] tripSource; // timetable trip each route trip was taken from
+	private final int[] stopTimes; // arrival and departure at each station of each trip, trip after trip
+	private final int[] boardingTimes; // departures of each route, station after station and trip after trip
+	private final int[] stationRouteOffset; // stationRoutes index of each station's first entry, plus an end entry
+	private final int[] stationRoutes; // routes serving each station
+	private final int[] stationPositions; // position of the station on that route
+
+	private RaptorRoutes(int stationCount, int[] routeStopOffset, int[] routeStops, int[] routeTripOffset,
+			int[] tripTimeOffset, int[] routeBoardingOffset, int[] tripRoute, int[] tripSource, int[] stopTimes,
+			int[] boardingTimes) {
+		this.stationCount = stationCount;
+		this.routeStopOffset = routeStopOffset;
+		this.routeStops = routeStops;
+		this.routeTripOffset = routeTripOffset;
+		this.tripTimeOffset = tripTimeOffset;
+		this.routeBoardingOffset = routeBoardingOffset;
+		this.tripRoute = tripRoute;
+		this.tripSource = tripSource;
+		this.stopTimes = stopTimes;
+		this.boardingTimes = boardingTimes;
+
+		// index the routes by station, counting first and filling in afterwards
+		stationRouteOffset = new int[stationCount + 1];
+		for(int stop : routeStops)
+			stationRouteOffset[stop + 1]++;
+		for(int s = 0; s < stationCount; s++)
+			stationRouteOffset[s + 1] += stationRouteOffset[s];
+		stationRoutes = new int[routeStops.length];
+		stationPositions = new int[routeStops.length];
+		int[] next = Arrays.copyOf(stationRouteOffset, stationCount);
+		for(int r = 0; r < getRouteCount(); r++)
+			for(int i = routeStopOffset[r]; i < routeStopOffset[r + 1]; i++) {
+				int slot = next[routeStops[i]]++;
+				stationRoutes[slot] = r;
+				stationPositions[slot] = i - routeStopOffset[r];
+			}
+	}
+
+	/**
+	 * Groups the trips of a timetable into routes.
+	 *
+	 * @param timetable the timetable
+	 * @return the routes of the timetable
+	 */
+	public static RaptorRoutes of(Timetable timetable) {
+		// bucket the connections by trip; within a trip they stay in departure order
+		int connections = timetable.getConnectionCount();
+		int[] tripStart = new int[timetable.getTripCount() + 1];
+		for(int c = 0; c < connections; c++)
+			tripStart[timetable.trip(c) + 1]++;
+		for(int t = 0; t < timetable.getTripCount(); t++)
+			tripStart[t + 1] += tripStart[t];
+		int[] byTrip = new int[connections];
+		int[] next = Arrays.copyOf(tripStart, timetable.getTripCount());
+		for(int c = 0; c < connections; c++)
+			byTrip[next[timetable.trip(c)]++] = c;
+
+		// cut every trip into chains of connections that follow on from each other
+		HashMap<StopSequence, List<int[]>> chainsBySequence = new HashMap<>();
+		List<StopSequence> sequences = new ArrayList<>();
+		for(int t = 0; t < timetable.getTripCount(); t++) {
+			int first = tripStart[t];
+			for(int i = tripStart[t]; i < tripStart[t + 1]; i++) {
+				boolean last = i + 1 == tripStart[t + 1];
+				if(!last && timetable.arrivalStop(byTrip[i]) == timetable.departureStop(byTrip[i + 1])
+						&& timetable.arrivalTime(byTrip[i]) <= timetable.departureTime(byTrip[i + 1]))
+					continue;
+				int[] chain = Arrays.copyOfRange(byTrip, first, i + 1);
+				int[] stops = new int[chain.length + 1];
+				stops[0] = timetable.departureStop(chain[0]);
+				for(int j = 0; j < chain.length; j++)
+					stops[j + 1] = timetable.arrivalStop(chain[j]);
+				StopSequence sequence = new StopSequence(stops);
+				List<int[]> chains = chainsBySequence.get(sequence);
+				if(chains == null) {
+					chains = new ArrayList<>();
+					chainsBySequence.put(sequence, chains);
+					sequences.add(sequence);
+				}
+				chains.add(chain);
+				first = i + 1;
+			}
+		}
+
+		IntBuffer routeStopOffset = new IntBuffer();
+		IntBuffer routeStops = new IntBuffer();
+		IntBuffer routeTripOffset = new IntBuffer();
+		IntBuffer tripTimeOffset = new IntBuffer();
+		IntBuffer routeBoardingOffset = new IntBuffer();
+		IntBuffer tripRoute = new IntBuffer();
+		IntBuffer tripSource = new IntBuffer();
+		IntBuffer stopTimes = new IntBuffer();
+		IntBuffer boardingTimes = new IntBuffer();
+		for(StopSequence sequence : sequences) {
+			List<int[]> chains = chainsBySequence.get(sequence);
+			chains.sort((a, b) -> Integer.compare(timetable.departureTime(a[0]), timetable.departureTime(b[0])));
+
+			// first fit into routes of this sequence whose last trip is not overtaken
+			List<List<int[]>> routes = new ArrayList<>();
+			for(int[] chain : chains) {
+				List<int[]> fit = null;
+				for(List<int[]> route : routes)
+					if(follows(timetable, route.get(route.size() - 1), chain)) {
+						fit = route;
+						break;
+					}
+				if(fit == null) {
+					fit = new ArrayList<>();
+					routes.add(fit);
+				}
+				fit.add(chain);
+			}
+
+			for(List<int[]> route : routes) {
+				int r = routeTripOffset.size();
+				routeStopOffset.add(routeStops.size());
+				routeTripOffset.add(tripRoute.size());
+				routeBoardingOffset.add(boardingTimes.size());
+				for(int stop : sequence.stops)
+					routeStops.add(stop);
+				for(int[] chain : route) {
+					tripRoute.add(r);
+					tripSource.add(timetable.trip(chain[0]));
+					tripTimeOffset.add(stopTimes.size());
+					for(int j = 0; j <= chain.length; j++) {
+						stopTimes.add(j == 0 ? timetable.departureTime(chain[0]) : timetable.arrivalTime(chain[j - 1]));
+						stopTimes.add(j == chain.length ? timetable.arrivalTime(chain[j - 1]) : timetable.departureTime(chain[j]));
+					}
+				}
+				for(int j = 0; j < sequence.stops.length; j++)
+					for(int[] chain : route)
+						boardingTimes.add(j == chain.length ? timetable.arrivalTime(chain[j - 1]) : timetable.departureTime(chain[j]));
+			}
+		}
+		routeStopOffset.add(routeStops.size());
+		routeTripOffset.add(tripRoute.size());
+		return new RaptorRoutes(timetable.getStationCount(), routeStopOffset.toArray(), routeStops.toArray(),
+				routeTripOffset.toArray(), tripTimeOffset.toArray(), routeBoardingOffset.toArray(), tripRoute.toArray(),
+				tripSource.toArray(), stopTimes.toArray(), boardingTimes.toArray());
+	}
+
+	/**
+	 * Returns true if the chain is no earlier than the previous one at every station.
+	 */
+	private static boolean follows(Timetable timetable, int[] previous, int[] chain) {
+		for(int j = 0; j < chain.length; j++)
+			if(timetable.departureTime(chain[j]) < timetable.departureTime(previous[j])
+					|| timetable.arrivalTime(chain[j]) < timetable.arrivalTime(previous[j]))
+				return false;
+		return true;
+	}
+
+	/**
+	 * Returns the number of stations.
+	 */
+	public int getStationCount() {
+		return stationCount;
+	}
+
+	/**
+	 * Returns the number of routes.
+	 */
+	public int getRouteCount() {
+		return routeTripOffset.length - 1;
+	}
+
+	/**
+	 * Returns the number of route trips.
+	 */
+	public int getTripCount() {
+		return tripRoute.length;
+	}
+
+	/**
+	 * Returns the number of stations on the route.
+	 */
+	public int stopCount(int route) {
+		return routeStopOffset[route + 1] - routeStopOffset[route];
+	}
+
+	/**
+	 * Returns the station at the given position of the route.
+	 */
+	public int stop(int route, int position) {
+		return routeStops[routeStopOffset[route] + position];
+	}
+
+	/**
+	 * Returns the first trip of the route, which is the earliest at every station.
+	 */
+	public int firstTrip(int route) {
+		return routeTripOffset[route];
+	}
+
+	/**
+	 * Returns the trip after the last trip of the route.
+	 */
+	public int endTrip(int route) {
+		return routeTripOffset[route + 1];
+	}
+
+	/**
+	 * Returns the route the trip belongs to.
+	 */
+	public int route(int trip) {
+		return tripRoute[trip];
+	}
+
+	/**
+	 * Returns the timetable trip the route trip was taken from.
+	 */
+	public int sourceTrip(int trip) {
+		return tripSource[trip];
+	}
+
+	/**
+	 * Returns the time the trip arrives at the given position of its route.
+	 */
+	public int arrivalTime(int trip, int position) {
+		return stopTimes[tripTimeOffset[trip] + 2 * position];
+	}
+
+	/**
+	 * Returns the time the trip leaves the given position of its route.
+	 */
+	public int departureTime(int trip, int position) {
+		return stopTimes[tripTimeOffset[trip] + 2 * position + 1];
+	}
+
+	/**
+	 * Returns the earliest trip of the route leaving the given position at or after time, searching
+	 * the trips before end only, or end if there is none.
+	 */
+	public int earliestTrip(int route, int position, int time, int end) {
+		int first = routeTripOffset[route];
+		int base = routeBoardingOffset[route] + position * (routeTripOffset[route + 1] - first) - first;
+		int low = first;
+		int high = end;
+		while(low < high) {
+			int mid = (low + high) >>> 1;
+			if(boardingTimes[base + mid] < time) low = mid + 1;
+			else high = mid;
+		}
+		return low;
+	}
+
+	/**
+	 * Returns the index of the station's first entry in the station route index.
+	 */
+	public int firstStationRoute(int station) {
+		return stationRouteOffset[station];
+	}
+
+	/**
+	 * Returns the index after the station's last entry in the station route index.
+	 */
+	public int endStationRoute(int station) {
+		return stationRouteOffset[station + 1];
+	}
+
+	/**
+	 * Returns the route of an entry in the station route index.
+	 */
+	public int stationRoute(int entry) {
+		return stationRoutes[entry];
+	}
+
+	/**
+	 * Returns the position of the station on the route of an entry in the station route index.
+	 */
+	public int stationPosition(int entry) {
+		return stationPositions[entry];
+	}
+
+	/**
+	 * Returns the distinct times trains leave the station between from and until, inclusive,
+	 * latest first.
+	 */
+	public int[] departuresFrom(int station, int from, int until) {
+		IntBuffer times = new IntBuffer();
+		for(int entry = stationRouteOffset[station]; entry < stationRouteOffset[station + 1]; entry++) {
+			int r = stationRoutes[entry];
+			int position = stationPositions[entry];
+			if(position == stopCount(r) - 1) continue;
+			for(int t = routeTripOffset[r]; t < routeTripOffset[r + 1]; t++) {
+				int time = departureTime(t, position);
+				if(time >= from && time <= until)
+					times.add(time);
+			}
+		}
+		int[] sorted = times.toArray();
+		Arrays.sort(sorted);
+		IntBuffer latestFirst = new IntBuffer();
+		for(int i = sorted.length - 1; i >= 0; i--)
+			if(i == sorted.length - 1 || sorted[i] != sorted[i + 1])
+				latestFirst.add(sorted[i]);
+		return latestFirst.toArray();
+	}
+
+	/**
+	 * Station sequence of a route, usable as a hash key.
+	 */
+	private static final class StopSequence {
+		private final int[] stops;
+		private final int hash;
+
+		StopSequence(int[] stops) {
+			this.stops = stops;
+			this.hash = Arrays.hashCode(stops);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof StopSequence && Arrays.equals(stops, ((StopSequence) other).stops);
+		}
+	}
+
+	/**
+	 * Growable int array.
+	 */
+	private static final class IntBuffer {
+		private int[] values = new int[16];
+		private int size = 0;
+
+		void add(int value) {
+			if(size == values.length)
+				values = Arrays.copyOf(values, size * 2);
+			values[size++] = value;
+		}
+
+		int size() {
+			return size;
+		}
+
+		int[] toArray() {
+			return Arrays.copyOf(values, size);
+		}
+	}
+}
@@ -0,0 +1,225 @@
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * This class is a bounded cache of route query results keyed by (origin, destination, routing mode). Entries
+ * are evicted roughly least recently used first once the cache is full, expire after a fixed time to live, and
+ * are tagged with the version of the network they were computed on, so a result computed before the network
+ * changed is never returned afterwards.
+ *
+ * Lookups never lock: the entries live in a ConcurrentHashMap, and a hit only sets the entry's referenced bit,
+ * and only if it is not set yet, so many threads asking for the same popular pair do not even write to shared
+ * memory. Eviction uses the CLOCK algorithm and runs in put, which is only called after a search: a hand walks
+ * over the entries, clears the referenced bit of entries that were used since it last passed and evicts the
+ * first one that was not. Hits, misses and evictions are counted with LongAdders.
+ */
+public class RouteCache<V> {
+
+    private final ConcurrentHashMap<Key, Entry<V>> entries = new ConcurrentHashMap<>();
+    private final int maxEntries;
+    private final long timeToLiveNanos;
+    private final Object evictionLock = new Object();
+    private Iterator<Map.Entry<Key, Entry<V>>> hand; // the CLOCK hand, guarded by evictionLock
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Creates an empty cache
+     *
+     * @param maxEntries the largest number of results kept at once
+     * @param timeToLiveMillis how long a result is kept after it was computed, or 0 to keep it until evicted
+     */
+    public RouteCache(int maxEntries, long timeToLiveMillis) {
+        if (maxEntries < 0 || timeToLiveMillis < 0) {
+            throw new IllegalArgumentException("Cache size and time to live cannot be negative");
+        }
+        this.maxEntries = maxEntries;
+        this.timeToLiveNanos = timeToLiveMillis * 1_000_000L;
+    }
+
+    /**
+     * Returns the cached result for the station pair and routing mode, or null if there is none for this
+     * network version
+     *
+     * @param origin the origin station
+     * @param destination the final destination station
+     * @param mode the routing mode the caller answers the query with
+     * @param version the version of the network the caller is querying
+     */
+    public V get(String origin, String destination, RoutingMode mode, long version) {
+        Key key = new Key(origin, destination, mode);
+        Entry<V> entry = entries.get(key);
+        if (entry != null && (entry.version != version || isExpired(entry))) {
+            entries.remove(key, entry);
+            entry = null;
+        }
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        if (!entry.referenced) {
+            entry.referenced = true;
+        }
+        hits.increment();
+        return entry.value;
+    }
+
+    /**
+     * Stores the result for the station pair and routing mode, computed on the given network version
+     *
+     * @param origin the origin station
+     * @param destination the final destination station
+     * @param mode the routing mode the result was computed with
+     * @param version the version of the network the result was computed on
+     * @param value the result to cache
+     */
+    public void put(String origin, String destination, RoutingMode mode, long version, V value) {
+        if (maxEntries == 0) {
+            return;
+        }
+        Key key = new Key(origin, destination, mode);
+        entries.put(key, new Entry<>(value, version, System.nanoTime(), false));
+        if (entries.size() > maxEntries) {
+            synchronized (evictionLock) {
+                while (entries.size() > maxEntries && evictOne(key)) {
+                    // evicted one, check the size again
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves the CLOCK hand on to the first entry that was not used since the hand last passed it and removes
+     * it. Expired entries are removed on the way without counting as evictions. The entry that was just added
+     * is passed over, so it gets a chance to be used.
+     *
+     * @return false if there was no entry to remove
+     */
+    private boolean evictOne(Key added) {
+        int laps = 0; // after two laps every referenced bit has been cleared
+        while (true) {
+            if (hand == null || !hand.hasNext()) {
+                hand = entries.entrySet().iterator();
+                if (++laps > 2 || !hand.hasNext()) {
+                    return false;
+                }
+            }
+            Map.Entry<Key, Entry<V>> candidate = hand.next();
+            Entry<V> entry = candidate.getValue();
+            if (candidate.getKey().equals(added)) {
+                continue;
+            } else if (isExpired(entry)) {
+                entries.remove(candidate.getKey(), entry);
+            } else if (entry.referenced) {
+                entry.referenced = false;
+                continue;
+            } else if (entries.remove(candidate.getKey(), entry)) {
+                evictions.increment();
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Removes every cached result. Called whenever the network changes.
+     */
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    /**
+     * Moves the results that are still correct on a new network version over to it and removes the rest.
+     * Results keep their referenced bit and their time to live.
+     *
+     * @param fromVersion the version the results were computed on
+     * @param toVersion the version of the new network
+     * @param stillValid returns true for a result that is also correct on the new network
+     */
+    public void revalidate(long fromVersion, long toVersion, Predicate<V> stillValid) {
+        for (Map.Entry<Key, Entry<V>> entry : entries.entrySet()) {
+            Entry<V> cached = entry.getValue();
+            if (cached.version == fromVersion && !isExpired(cached) && stillValid.test(cached.value)) {
+                entries.replace(entry.getKey(), cached,
+                        new Entry<>(cached.value, toVersion, cached.createdNanos, cached.referenced));
+            } else {
+                entries.remove(entry.getKey(), cached);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of cached results
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the number of lookups that found a result
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of lookups that did not find a usable result
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the number of results evicted because the cache was full
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    private boolean isExpired(Entry<V> entry) {
+        return timeToLiveNanos > 0 && System.nanoTime() - entry.createdNanos > timeToLiveNanos;
+    }
+
+    private static final class Entry<V> {
+        final V value;
+        final long version;
+        final long createdNanos;
+        volatile boolean referenced; // set by hits, cleared by the CLOCK hand
+
+        Entry(V value, long version, long createdNanos, boolean referenced) {
+            this.value = value;
+            this.version = version;
+            this.createdNanos = createdNanos;
+            this.referenced = referenced;
+        }
+    }
+
+    private static final class Key {
+        final String origin;
+        final String destination;
+        final RoutingMode mode;
+
+        Key(String origin, String destination, RoutingMode mode) {
+            this.origin = origin;
+            this.destination = destination;
+            this.mode = mode;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return origin.equals(key.origin) && destination.equals(key.destination) && mode == key.mode;
+        }
+
+        @Override
+        public int hashCode() {
+            return (origin.hashCode() * 31 + destination.hashCode()) * 31 + mode.ordinal();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This program load tests a RouteServer on localhost. It starts the server on a free port over a synthetic rail
+ * network from SyntheticNetwork, then runs client threads that each send /route requests between random stations
+ * one after the other for a fixed time. It reports the requests answered per second, their latency percentiles
+ * as seen by the clients and how many were answered, had no route or were rejected with 429. With more clients
+ * than the server accepts at once the rejections show the backpressure at work. At the end it sends one /batch
+ * request and prints the server's /metrics report.
+ *
+ * Usage: java RouteLoadTest [stations] [clients] [seconds] [max active] [max queued]
+ */
+public class RouteLoadTest {
+
+    private static final int BATCH_QUERIES = 10_000;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int stations = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        double seconds = args.length > 2 ? Double.parseDouble(args[2]) : 10.0;
+        int cores = Runtime.getRuntime().availableProcessors();
+        int maxActive = args.length > 3 ? Integer.parseInt(args[3]) : cores;
+        int maxQueued = args.length > 4 ? Integer.parseInt(args[4]) : 16;
+
+        SyntheticNetwork network = new SyntheticNetwork(stations, 42);
+        Path file = Files.createTempFile("loadtest", ".rnet");
+        RouteServer server;
+        try {
+            NetworkFile.write(network, file);
+            server = new RouteServer(new TrainBackend(file), 0, maxActive, maxQueued);
+        } finally {
+            Files.delete(file);
+        }
+        server.start();
+        String base = "http://localhost:" + server.getPort();
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10)).build();
+        System.out.println(stations + " stations, " + clients + " clients, " + cores + " cores, server accepts "
+                + maxActive + " active and " + maxQueued + " waiting requests");
+
+        try {
+            LatencyHistogram latency = new LatencyHistogram();
+            LongAdder ok = new LongAdder();
+            LongAdder notFound = new LongAdder();
+            LongAdder rejected = new LongAdder();
+            LongAdder failed = new LongAdder();
+            long deadline = System.nanoTime() + (long) (seconds * 1e9);
+            List<Thread> threads = new ArrayList<>();
+            for (int c = 0; c < clients; c++) {
+                Random random = new Random(c);
+                threads.add(new Thread(() -> {
+                    while (System.nanoTime() < deadline) {
+                        String from = network.name(random.nextInt(stations));
+                        String to = network.name(random.nextInt(stations));
+                        HttpRequest request = HttpRequest.newBuilder(URI.create(base + "/route?from=" + encode(from)
+                                + "&to=" + encode(to))).build();
+                        long began = System.nanoTime();
+                        try {
+                            int status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                            if (status == 200) {
+                                latency.record(System.nanoTime() - began);
+                                ok.increment();
+                            } else if (status == 404) {
+                                notFound.increment();
+                            } else if (status == 429) {
+                                rejected.increment();
+                            } else {
+                                failed.increment();
+                            }
+                        } catch (IOException e) {
+                            failed.increment();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                }));
+            }
+            long start = System.nanoTime();
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            double elapsed = (System.nanoTime() - start) / 1e9;
+            System.out.printf("answered %d (%.0f/s), no route %d, rejected %d, failed %d%n", ok.sum(),
+                    ok.sum() / elapsed, notFound.sum(), rejected.sum(), failed.sum());
+            System.out.printf("latency ms    p50 %.2f  p90 %.2f  p99 %.2f  max %.2f%n", latency.getPercentile(50) / 1e6,
+                    latency.getPercentile(90) / 1e6, latency.getPercentile(99) / 1e6, latency.getMax() / 1e6);
+
+            StringBuilder batch = new StringBuilder();
+            Random random = new Random(7);
+            for (int i = 0; i < BATCH_QUERIES; i++) {
+                // few origins with many destinations each, as in a demand table
+                batch.append(network.name(random.nextInt(Math.min(100, stations)))).append('\t')
+                        .append(network.name(random.nextInt(stations))).append('\n');
+            }
+            long began = System.nanoTime();
+            HttpResponse<String> routes = client.send(HttpRequest.newBuilder(URI.create(base + "/batch"))
+                    .POST(HttpRequest.BodyPublishers.ofString(batch.toString())).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            System.out.printf("batch         %d queries, status %d, %d routes in %.1f ms%n", BATCH_QUERIES,
+                    routes.statusCode(), routes.body().lines().count(), (System.nanoTime() - began) / 1e6);
+
+            System.out.print(client.send(HttpRequest.newBuilder(URI.create(base + "/metrics")).build(),
+                    HttpResponse.BodyHandlers.ofString()).body());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static String encode(String station) {
+        return URLEncoder.encode(station, StandardCharsets.UTF_8);
+    }
+}
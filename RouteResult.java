@@ -0,0 +1,98 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable answer to a route query: the stations along the shortest path, the weight of each leg
+ * between consecutive stations, the total cost, and how much work the search did to find it. One
+ * search fills in all of these, so callers that need both the path and its cost only search once.
+ */
+public final class RouteResult<NodeType> {
+
+	private final List<NodeType> stations;
+	private final double[] legWeights;
+	private final double totalCost;
+	private final int settledCount;
+	private final long computeNanos;
+
+	/**
+	 * Creates a result. The station list and leg weights are copied.
+	 *
+	 * @param stations the stations on the path, from origin to destination
+	 * @param legWeights the weight of each edge on the path, one fewer than there are stations
+	 * @param totalCost the summed weight of the path
+	 * @param settledCount the number of vertices the search settled
+	 * @param computeNanos the time the search took, in nanoseconds
+	 * @throws IllegalArgumentException if the number of legs does not match the number of stations
+	 */
+	public RouteResult(List<NodeType> stations, double[] legWeights, double totalCost, int settledCount, long computeNanos) {
+		if(stations.isEmpty() || legWeights.length != stations.size() - 1)
+			throw new IllegalArgumentException("A route with " + stations.size() + " stations must have " + (stations.size() - 1) + " legs");
+		this.stations = Collections.unmodifiableList(new ArrayList<>(stations));
+		this.legWeights = legWeights.clone();
+		this.totalCost = totalCost;
+		this.settledCount = settledCount;
+		this.computeNanos = computeNanos;
+	}
+
+	/**
+	 * Creates a result for a path found in a CSRGraph, looking up the weight of each leg in the graph.
+	 *
+	 * @param graph the graph the path was found in
+	 * @param stations the stations on the path, from origin to destination
+	 * @param totalCost the summed weight of the path
+	 * @param settledCount the number of vertices the search settled
+	 * @param computeNanos the time the search took, in nanoseconds
+	 */
+	public static <NodeType> RouteResult<NodeType> of(CSRGraph<NodeType> graph, List<NodeType> stations, double totalCost,
+			int settledCount, long computeNanos) {
+		double[] legs = new double[stations.size() - 1];
+		int previous = graph.indexOf(stations.get(0));
+		for(int i = 0; i < legs.length; i++) {
+			int next = graph.indexOf(stations.get(i + 1));
+			legs[i] = graph.edgeWeight(graph.findEdge(previous, next));
+			previous = next;
+		}
+		return new RouteResult<>(stations, legs, totalCost, settledCount, computeNanos);
+	}
+
+	/**
+	 * Returns the stations on the path, from origin to destination. The list cannot be modified.
+	 */
+	public List<NodeType> getStations() {
+		return stations;
+	}
+
+	/**
+	 * Returns a copy of the weight of each leg; leg i leads from station i to station i+1.
+	 */
+	public double[] getLegWeights() {
+		return legWeights.clone();
+	}
+
+	/**
+	 * Returns the summed weight of all legs.
+	 */
+	public double getTotalCost() {
+		return totalCost;
+	}
+
+	/**
+	 * Returns the number of vertices the search settled to find this route.
+	 */
+	public int getSettledCount() {
+		return settledCount;
+	}
+
+	/**
+	 * Returns the time the search took, in nanoseconds.
+	 */
+	public long getComputeNanos() {
+		return computeNanos;
+	}
+
+	@Override
+	public String toString() {
+		return stations + " (" + totalCost + ")";
+	}
+}
@@ -0,0 +1,413 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class serves route queries over HTTP with the JDK's built-in server, so many users can query one shared
+ * TrainBackend at the same time. It listens on the loopback address and answers:
+ *
+ *   GET  /route?from=A&to=B      the shortest route as a JSON object, 404 if a station is unknown or unreachable
+ *   GET  /stations               every station as a JSON array, or ?prefix=Ch&limit=10 for completions
+ *   POST /batch                  one query per line of the body, "origin TAB destination"; the routes are
+ *                                streamed back as one JSON object per line in the order of the queries
+ *   GET  /metrics                the RoutingMetrics report and the number of rejected requests as plain text
+ *
+ * Every request runs on its own virtual thread on Java 21 and later, and on a bounded pool of platform threads
+ * before that. Queries read the backend's immutable snapshot, so they never wait for each other. At most
+ * maxActive requests are worked on at once and at most maxQueued more wait for their turn; a request beyond
+ * that is rejected at once with 429 Too Many Requests and a Retry-After header, so an overloaded server keeps
+ * answering the requests it accepted on time instead of letting every request slow down.
+ */
+public class RouteServer {
+
+    /** The port the server listens on unless another one is given. */
+    public static final int DEFAULT_PORT = 8080;
+
+    private static final String JSON = "application/json; charset=utf-8";
+    private static final String TEXT = "text/plain; charset=utf-8";
+
+    private final TrainBackend backend;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Semaphore admitted; // requests being worked on or waiting for their turn
+    private final ThreadLocal<Boolean> rejecting = ThreadLocal.withInitial(() -> false); // set on the dispatcher
+    private final Semaphore active; // requests being worked on
+    private final int maxActive;
+    private final int maxQueued;
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * This interface is one endpoint of the server. It writes the whole response, or throws
+     * IllegalArgumentException for a bad request and NoSuchElementException for an unknown station or route.
+     */
+    private interface Endpoint {
+        void handle(HttpExchange exchange) throws IOException;
+    }
+
+    /**
+     * This constructor creates a server for the backend with as many active requests as there are cores and up
+     * to 64 waiting requests per core. It does not accept connections before start() is called.
+     *
+     * @param backend the backend to answer queries with
+     * @param port the port to listen on, or 0 for any free port
+     * @throws IOException if the port cannot be bound
+     */
+    public RouteServer(TrainBackend backend, int port) throws IOException {
+        this(backend, port, Runtime.getRuntime().availableProcessors(),
+                64 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * This constructor creates a server for the backend. It does not accept connections before start() is called.
+     *
+     * @param backend the backend to answer queries with
+     * @param port the port to listen on, or 0 for any free port
+     * @param maxActive the largest number of requests worked on at the same time
+     * @param maxQueued the largest number of accepted requests waiting for their turn
+     * @throws IllegalArgumentException if maxActive is not positive or maxQueued is negative
+     * @throws IOException if the port cannot be bound
+     */
+    public RouteServer(TrainBackend backend, int port, int maxActive, int maxQueued) throws IOException {
+        if (maxActive <= 0 || maxQueued < 0) {
+            throw new IllegalArgumentException("Need at least one active request and no negative queue length");
+        }
+        this.backend = backend;
+        this.maxActive = maxActive;
+        this.maxQueued = maxQueued;
+        this.admitted = new Semaphore(maxActive + maxQueued);
+        this.active = new Semaphore(maxActive);
+        this.executor = newExecutor(maxActive + maxQueued);
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.server.setExecutor(this::admit);
+        this.server.createContext("/route", exchange -> handle(exchange, "GET", this::route));
+        this.server.createContext("/stations", exchange -> handle(exchange, "GET", this::stations));
+        this.server.createContext("/batch", exchange -> handle(exchange, "POST", this::batch));
+        this.server.createContext("/metrics", exchange -> handle(exchange, "GET", this::metrics));
+        this.server.createContext("/", exchange -> handle(exchange, null, null));
+    }
+
+    /**
+     * This method returns an executor with a virtual thread per request when the JVM has them, which it looks
+     * up by reflection so the server still compiles and runs on Java 17. Without them every admitted request
+     * gets one of a fixed pool of platform threads, one for every request that can be admitted at once. A
+     * request whose thread is still finishing the previous request waits in the pool's queue for it; admission
+     * keeps that queue from holding more than the admitted requests.
+     */
+    private static ExecutorService newExecutor(int threads) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+        }
+    }
+
+    /**
+     * This method is the server's executor. It runs on the server's dispatcher thread for every request and
+     * hands the request to the request threads if there is room for it. A request without room is run right
+     * here and only gets a 429, so the dispatcher never works on a request it accepted.
+     */
+    private void admit(Runnable request) {
+        if (admitted.tryAcquire()) {
+            try {
+                executor.execute(() -> {
+                    try {
+                        request.run();
+                    } finally {
+                        admitted.release();
+                    }
+                });
+                return;
+            } catch (RejectedExecutionException e) {
+                admitted.release(); // the server is being stopped
+            }
+        }
+        rejecting.set(true);
+        try {
+            request.run();
+        } finally {
+            rejecting.set(false);
+        }
+    }
+
+    /**
+     * This method starts accepting connections.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * This method stops accepting connections, waits up to the given time for the requests being answered and
+     * then stops the request threads.
+     *
+     * @param delaySeconds the longest time to wait for running requests
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdownNow();
+    }
+
+    /**
+     * This method returns the port the server listens on, which is the chosen one when it was created with 0.
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * This method returns the number of requests rejected with 429 because the server was full.
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * This method rejects the request if admit() found no room for it, or else waits for an active slot and
+     * runs the endpoint, turning the exceptions of a bad request into the matching status code. Requests for
+     * unknown paths have no method or endpoint.
+     */
+    private void handle(HttpExchange exchange, String method, Endpoint endpoint) throws IOException {
+        try {
+            if (rejecting.get()) {
+                rejected.increment();
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                send(exchange, 429, TEXT, "Too many requests, try again later\n");
+                return;
+            }
+            try {
+                String path = exchange.getRequestURI().getPath();
+                if (endpoint == null || !path.equals(exchange.getHttpContext().getPath())) {
+                    send(exchange, 404, TEXT, "Unknown path " + path + "\n");
+                } else if (!method.equals(exchange.getRequestMethod())) {
+                    exchange.getResponseHeaders().set("Allow", method);
+                    send(exchange, 405, TEXT, "Use " + method + " for " + exchange.getHttpContext().getPath() + "\n");
+                } else {
+                    active.acquire();
+                    try {
+                        endpoint.handle(exchange);
+                    } finally {
+                        active.release();
+                    }
+                }
+            } catch (IllegalArgumentException e) {
+                sendError(exchange, 400, e.getMessage());
+            } catch (NoSuchElementException e) {
+                sendError(exchange, 404, e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                sendError(exchange, 503, "The server is shutting down");
+            } catch (RuntimeException e) {
+                sendError(exchange, 500, e.toString());
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * GET /route?from=A&to=B answers one query like TrainBackend.route, including its route cache
+     */
+    private void route(HttpExchange exchange) throws IOException {
+        Map<String, String> parameters = parameters(exchange.getRequestURI());
+        String from = require(parameters, "from");
+        String to = require(parameters, "to");
+        send(exchange, 200, JSON, toJson(from, to, backend.route(from, to)) + "\n");
+    }
+
+    /**
+     * GET /stations lists every station, or with prefix (and optionally limit) the completions of the prefix
+     */
+    private void stations(HttpExchange exchange) throws IOException {
+        Map<String, String> parameters = parameters(exchange.getRequestURI());
+        List<String> stations;
+        if (parameters.containsKey("prefix")) {
+            int limit = parseInt(parameters.getOrDefault("limit", "10"), "limit");
+            stations = backend.completeStation(parameters.get("prefix"), limit);
+        } else {
+            stations = List.of(backend.getStations());
+        }
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < stations.size(); i++) {
+            json.append(i == 0 ? "" : ",").append(quote(stations.get(i)));
+        }
+        send(exchange, 200, JSON, json.append("]\n").toString());
+    }
+
+    /**
+     * POST /batch answers the queries of the body with TrainBackend.routeBatch and streams the routes back while
+     * the body is still being read, so neither the queries nor the routes of a large batch are held at once.
+     * A malformed line found after the first routes were sent ends the response with a line holding only an
+     * error, so the client knows the queries after it were not answered.
+     */
+    private void batch(HttpExchange exchange) throws IOException {
+        BufferedReader body = new BufferedReader(
+                new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8));
+        Iterable<OriginDestination<String>> queries = () -> body.lines()
+                .filter(line -> !line.isBlank())
+                .map(RouteServer::parseQuery)
+                .iterator();
+        BatchRouter<String> routes = backend.routeBatch(queries);
+        boolean empty = !routes.hasNext(); // reads the first window, so a malformed first line is still a 400
+        exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson; charset=utf-8");
+        exchange.sendResponseHeaders(200, 0); // chunked
+        try (Writer out = new BufferedWriter(
+                new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8))) {
+            if (empty) {
+                return;
+            }
+            try {
+                while (routes.hasNext()) {
+                    RouteResult<String> route = routes.next();
+                    OriginDestination<String> query = routes.lastQuery();
+                    out.write(toJson(query.getOrigin(), query.getDestination(), route));
+                    out.write('\n');
+                }
+            } catch (RuntimeException e) {
+                String message = e instanceof IllegalArgumentException ? e.getMessage() : e.toString();
+                out.write("{\"error\":" + quote(message) + "}\n");
+            }
+        }
+    }
+
+    /**
+     * GET /metrics reports the backend's query metrics and the requests this server is working on, has waiting
+     * and turned away; the metrics request itself counts as active
+     */
+    private void metrics(HttpExchange exchange) throws IOException {
+        int working = maxActive - active.availablePermits();
+        int waiting = Math.max(maxActive + maxQueued - admitted.availablePermits() - working, 0);
+        String report = backend.getMetrics().dump() + String.format(
+                "server        active %d, waiting %d, rejected %d%n", working, waiting, getRejectedCount());
+        send(exchange, 200, TEXT, report);
+    }
+
+    /**
+     * Parses one line of a batch body, the origin and the destination separated by a tab
+     */
+    private static OriginDestination<String> parseQuery(String line) {
+        int tab = line.indexOf('\t');
+        if (tab < 0) {
+            throw new IllegalArgumentException("Batch lines must be origin TAB destination: " + line);
+        }
+        return new OriginDestination<>(line.substring(0, tab).trim(), line.substring(tab + 1).trim());
+    }
+
+    /**
+     * Decodes the query string of uri into its parameters; a repeated parameter keeps its last value
+     */
+    private static Map<String, String> parameters(URI uri) {
+        Map<String, String> parameters = new HashMap<>();
+        String query = uri.getRawQuery();
+        if (query == null) {
+            return parameters;
+        }
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = equals < 0 ? pair : pair.substring(0, equals);
+            String value = equals < 0 ? "" : pair.substring(equals + 1);
+            parameters.put(URLDecoder.decode(name, StandardCharsets.UTF_8),
+                    URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return parameters;
+    }
+
+    private static String require(Map<String, String> parameters, String name) {
+        String value = parameters.get(name);
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException("Missing parameter " + name);
+        }
+        return value;
+    }
+
+    private static int parseInt(String value, String name) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Parameter " + name + " must be a number");
+        }
+    }
+
+    /**
+     * Formats a route as a JSON object, or an object with an error when there is no route
+     */
+    private static String toJson(String from, String to, RouteResult<String> route) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"from\":").append(quote(from)).append(",\"to\":").append(quote(to));
+        if (route == null) {
+            return json.append(",\"error\":\"no route\"}").toString();
+        }
+        json.append(",\"stations\":[");
+        List<String> stations = route.getStations();
+        for (int i = 0; i < stations.size(); i++) {
+            json.append(i == 0 ? "" : ",").append(quote(stations.get(i)));
+        }
+        json.append("],\"legs\":[");
+        double[] legs = route.getLegWeights();
+        for (int i = 0; i < legs.length; i++) {
+            json.append(i == 0 ? "" : ",").append(legs[i]);
+        }
+        json.append("],\"totalCost\":").append(route.getTotalCost());
+        json.append(",\"settled\":").append(route.getSettledCount());
+        json.append(",\"computeMicros\":").append(route.getComputeNanos() / 1000);
+        return json.append('}').toString();
+    }
+
+    /**
+     * Returns text as a JSON string literal
+     */
+    private static String quote(String text) {
+        StringBuilder quoted = new StringBuilder(text.length() + 2).append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Sends an error status, unless the response was already started, as a streamed batch may be
+     */
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        if (exchange.getResponseCode() == -1) {
+            send(exchange, status, TEXT, message + "\n");
+        }
+    }
+}
@@ -0,0 +1,281 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Metrics of the routing queries answered in this process: a latency histogram, how many queries were answered
+ * from the route cache, how much work the searches did (settled vertices, heap pushes and pops, relaxed edges),
+ * and how long loading, building and preprocessing the network took. They are published as a JMX MBean under
+ * OBJECT_NAME and as a plain text report by dump().
+ *
+ * Recording never locks. Counters are LongAdders, and the searches count their work in plain fields of the
+ * calling thread (countSearch) that a query adds to the shared counters once, when it finishes.
+ */
+public final class RoutingMetrics implements RoutingMetricsMBean {
+
+    /** The name the metrics are registered under in the platform MBean server. */
+    public static final String OBJECT_NAME = "TrainRouteFinder:type=RoutingMetrics";
+
+    private static final RoutingMetrics GLOBAL = new RoutingMetrics();
+    private static final ThreadLocal<long[]> SEARCH_WORK = ThreadLocal.withInitial(() -> new long[4]);
+    private static final int SETTLED = 0;
+    private static final int PUSHES = 1;
+    private static final int POPS = 2;
+    private static final int RELAXED = 3;
+    private static boolean registered = false; // guarded by RoutingMetrics.class
+
+    /**
+     * The timed phases of getting a network ready for queries.
+     */
+    public enum Phase {
+        /** Reading the network file into a graph */
+        LOAD,
+        /** Building a snapshot from a graph, after a load or a change */
+        BUILD,
+        /** Building or loading a contraction hierarchy or timetable for a routing mode */
+        PREPROCESS
+    }
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder fallbacks = new LongAdder();
+    private final LongAdder settled = new LongAdder();
+    private final LongAdder pushes = new LongAdder();
+    private final LongAdder pops = new LongAdder();
+    private final LongAdder relaxed = new LongAdder();
+    private final LongAdder[] phaseCount = new LongAdder[Phase.values().length];
+    private final LongAdder[] phaseNanos = new LongAdder[Phase.values().length];
+    private final AtomicLongArray lastPhaseNanos = new AtomicLongArray(Phase.values().length);
+
+    private RoutingMetrics() {
+        for (int i = 0; i < phaseCount.length; i++) {
+            phaseCount[i] = new LongAdder();
+            phaseNanos[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Returns the metrics shared by every backend in this process.
+     */
+    public static RoutingMetrics global() {
+        return GLOBAL;
+    }
+
+    /**
+     * Registers the shared metrics in the platform MBean server under OBJECT_NAME, once per process. A server that
+     * refuses the registration only costs the JMX view; dump() keeps working.
+     */
+    public static synchronized void registerMBean() {
+        if (registered) {
+            return;
+        }
+        registered = true;
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(GLOBAL, name);
+            }
+        } catch (JMException | SecurityException e) {
+            // metrics are still recorded and reported by dump()
+        }
+    }
+
+    /**
+     * Adds the work of one search to the calling thread's count for its current query. Searches call this when
+     * they finish; it only writes fields of the calling thread.
+     *
+     * @param settledVertices the number of vertices the search settled
+     * @param heapPushes the number of inserts and decreased keys in the search's priority queue
+     * @param heapPops the number of entries removed from the search's priority queue
+     * @param relaxedEdges the number of edges the search relaxed
+     */
+    public static void countSearch(long settledVertices, long heapPushes, long heapPops, long relaxedEdges) {
+        long[] work = SEARCH_WORK.get();
+        work[SETTLED] += settledVertices;
+        work[PUSHES] += heapPushes;
+        work[POPS] += heapPops;
+        work[RELAXED] += relaxedEdges;
+    }
+
+    /**
+     * Starts a query on the calling thread, dropping search work counted outside of any query.
+     */
+    public static void startQuery() {
+        long[] work = SEARCH_WORK.get();
+        work[SETTLED] = 0;
+        work[PUSHES] = 0;
+        work[POPS] = 0;
+        work[RELAXED] = 0;
+    }
+
+    /**
+     * Records a query that the calling thread started with startQuery, together with the search work counted
+     * since then.
+     *
+     * @param nanos how long the query took
+     * @param cacheHit true if the query was answered from the route cache
+     * @param answered false if the query failed, for example because there is no route
+     */
+    public void recordQuery(long nanos, boolean cacheHit, boolean answered) {
+        latency.record(nanos);
+        queries.increment();
+        (cacheHit ? cacheHits : cacheMisses).increment();
+        if (!answered) {
+            failures.increment();
+        }
+        long[] work = SEARCH_WORK.get();
+        settled.add(work[SETTLED]);
+        pushes.add(work[PUSHES]);
+        pops.add(work[POPS]);
+        relaxed.add(work[RELAXED]);
+        startQuery();
+    }
+
+    /**
+     * Records a query that was answered with another search than the selected routing mode, because the
+     * preprocessed data that mode needs was not ready.
+     */
+    public void recordFallback() {
+        fallbacks.increment();
+    }
+
+    /**
+     * Records how long one run of a phase took.
+     *
+     * @param phase the phase that ran
+     * @param nanos how long it took
+     */
+    public void recordPhase(Phase phase, long nanos) {
+        phaseCount[phase.ordinal()].increment();
+        phaseNanos[phase.ordinal()].add(nanos);
+        lastPhaseNanos.set(phase.ordinal(), nanos);
+    }
+
+    /**
+     * Returns the histogram of query latencies in nanoseconds.
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    @Override
+    public long getQueryCount() {
+        return queries.sum();
+    }
+
+    @Override
+    public long getCacheHitCount() {
+        return cacheHits.sum();
+    }
+
+    @Override
+    public long getCacheMissCount() {
+        return cacheMisses.sum();
+    }
+
+    @Override
+    public long getFailedQueryCount() {
+        return failures.sum();
+    }
+
+    @Override
+    public long getFallbackQueryCount() {
+        return fallbacks.sum();
+    }
+
+    @Override
+    public double getMeanLatencyMicros() {
+        return latency.getMean() / 1e3;
+    }
+
+    @Override
+    public double getLatencyP50Micros() {
+        return latency.getPercentile(50) / 1e3;
+    }
+
+    @Override
+    public double getLatencyP90Micros() {
+        return latency.getPercentile(90) / 1e3;
+    }
+
+    @Override
+    public double getLatencyP99Micros() {
+        return latency.getPercentile(99) / 1e3;
+    }
+
+    @Override
+    public double getLatencyP999Micros() {
+        return latency.getPercentile(99.9) / 1e3;
+    }
+
+    @Override
+    public double getMaxLatencyMicros() {
+        return latency.getMax() / 1e3;
+    }
+
+    @Override
+    public long getSettledVertexCount() {
+        return settled.sum();
+    }
+
+    @Override
+    public long getHeapPushCount() {
+        return pushes.sum();
+    }
+
+    @Override
+    public long getHeapPopCount() {
+        return pops.sum();
+    }
+
+    @Override
+    public long getRelaxedEdgeCount() {
+        return relaxed.sum();
+    }
+
+    @Override
+    public double getLastLoadMillis() {
+        return lastPhaseNanos.get(Phase.LOAD.ordinal()) / 1e6;
+    }
+
+    @Override
+    public double getLastBuildMillis() {
+        return lastPhaseNanos.get(Phase.BUILD.ordinal()) / 1e6;
+    }
+
+    @Override
+    public double getLastPreprocessMillis() {
+        return lastPhaseNanos.get(Phase.PREPROCESS.ordinal()) / 1e6;
+    }
+
+    /**
+     * Returns every metric as plain text, one group per line, for logs and the command line.
+     */
+    @Override
+    public String dump() {
+        StringBuilder report = new StringBuilder();
+        long searched = Math.max(getCacheMissCount(), 1);
+        report.append(String.format("queries       %d (cache hits %d, misses %d, failed %d, fallback %d)%n",
+                getQueryCount(), getCacheHitCount(), getCacheMissCount(), getFailedQueryCount(),
+                getFallbackQueryCount()));
+        report.append(String.format("latency us    mean %.1f  p50 %.1f  p90 %.1f  p99 %.1f  p99.9 %.1f  max %.1f%n",
+                getMeanLatencyMicros(), getLatencyP50Micros(), getLatencyP90Micros(), getLatencyP99Micros(),
+                getLatencyP999Micros(), getMaxLatencyMicros()));
+        report.append(String.format("per search    settled %.1f  heap pushes %.1f  heap pops %.1f  relaxed edges %.1f%n",
+                getSettledVertexCount() / (double) searched, getHeapPushCount() / (double) searched,
+                getHeapPopCount() / (double) searched, getRelaxedEdgeCount() / (double) searched));
+        for (Phase phase : Phase.values()) {
+            long runs = phaseCount[phase.ordinal()].sum();
+            report.append(String.format("%-13s %d runs, last %.1f ms, total %.1f ms%n", phase.name().toLowerCase(),
+                    runs, lastPhaseNanos.get(phase.ordinal()) / 1e6, phaseNanos[phase.ordinal()].sum() / 1e6));
+        }
+        return report.toString();
+    }
+}
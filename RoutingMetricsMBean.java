@@ -0,0 +1,47 @@
+/**
+ * The JMX view of RoutingMetrics. Latencies are in microseconds and phase times in milliseconds, and the
+ * search counters are totals over every query that ran a search.
+ */
+public interface RoutingMetricsMBean {
+
+    long getQueryCount();
+
+    long getCacheHitCount();
+
+    long getCacheMissCount();
+
+    long getFailedQueryCount();
+
+    long getFallbackQueryCount();
+
+    double getMeanLatencyMicros();
+
+    double getLatencyP50Micros();
+
+    double getLatencyP90Micros();
+
+    double getLatencyP99Micros();
+
+    double getLatencyP999Micros();
+
+    double getMaxLatencyMicros();
+
+    long getSettledVertexCount();
+
+    long getHeapPushCount();
+
+    long getHeapPopCount();
+
+    long getRelaxedEdgeCount();
+
+    double getLastLoadMillis();
+
+    double getLastBuildMillis();
+
+    double getLastPreprocessMillis();
+
+    /**
+     * Returns all metrics as the plain text report of RoutingMetrics.dump().
+     */
+    String dump();
+}
@@ -0,0 +1,13 @@
+/**
+ * The search algorithms the backend can answer route queries with.
+ */
+public enum RoutingMode {
+    /** Dijkstra's algorithm on the CSR graph, no preprocessing needed */
+    DIJKSTRA,
+    /** Dijkstra's algorithm run from both ends at once, meeting in the middle */
+    BIDIRECTIONAL,
+    /** Bidirectional upward search on a contraction hierarchy, built or loaded when selected */
+    CONTRACTION_HIERARCHY,
+    /** Connection Scan over a timetable, loaded or derived from the network when selected */
+    TIMETABLE
+}
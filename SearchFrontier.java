@@ -0,0 +1,136 @@
+import java.util.Arrays;
+
+/**
+ * One direction of a Dijkstra style search over int vertex ids: tentative distances, the
+ * predecessor and the edge used to reach each vertex, and an IndexedMinHeap of unsettled vertices.
+ * Like DijkstraSearch the arrays are reused between searches and stamped with a generation, so
+ * reset() is O(1). Bidirectional searches use one frontier per direction.
+ */
+public final class SearchFrontier {
+
+	private double[] dist = new double[0];
+	private int[] parent = new int[0];
+	private int[] parentEdge = new int[0];
+	private int[] reached = new int[0]; // generation in which the entries of a vertex were last written
+	private int generation = 0;
+	private int source;
+	private int settledCount;
+	private int relaxedCount;
+	private final IndexedMinHeap heap = new IndexedMinHeap(0);
+
+	/**
+	 * Clears the frontier and starts a new search from source in a graph with n vertices.
+	 */
+	public void reset(int n, int source) {
+		if(dist.length < n) {
+			dist = new double[n];
+			parent = new int[n];
+			parentEdge = new int[n];
+			reached = new int[n];
+			heap.ensureCapacity(n);
+			generation = 0;
+		}
+		heap.clear();
+		if(++generation == 0) { // stamps wrapped around, so old stamps could look current
+			Arrays.fill(reached, 0);
+			generation = 1;
+		}
+		this.source = source;
+		settledCount = 0;
+		relaxedCount = 0;
+		reached[source] = generation;
+		dist[source] = 0.0D;
+		parent[source] = -1;
+		parentEdge[source] = -1;
+		heap.pushOrDecrease(source, 0.0D);
+	}
+
+	/**
+	 * Returns the vertex this search started from.
+	 */
+	public int source() {
+		return source;
+	}
+
+	/**
+	 * Returns true if there are no unsettled vertices left in the frontier.
+	 */
+	public boolean isEmpty() {
+		return heap.isEmpty();
+	}
+
+	/**
+	 * Returns the distance of the closest unsettled vertex.
+	 */
+	public double minKey() {
+		return heap.minKey();
+	}
+
+	/**
+	 * Removes and returns the closest unsettled vertex, which is settled from then on.
+	 */
+	public int pop() {
+		settledCount++;
+		return heap.pop();
+	}
+
+	/**
+	 * Returns the number of vertices settled since the last reset.
+	 */
+	public int getSettledCount() {
+		return settledCount;
+	}
+
+	/**
+	 * Adds the vertices settled, heap operations and edges relaxed since the last reset to the
+	 * calling thread's query metrics.
+	 */
+	public void countWork() {
+		RoutingMetrics.countSearch(settledCount, heap.getPushCount(), heap.getPopCount(), relaxedCount);
+	}
+
+	/**
+	 * Returns true if this search has found some path to v.
+	 */
+	public boolean isReached(int v) {
+		return reached[v] == generation;
+	}
+
+	/**
+	 * Returns the tentative distance of v, or infinity if it has not been reached.
+	 */
+	public double distance(int v) {
+		return isReached(v) ? dist[v] : Double.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * Returns the vertex v was reached from, or -1 for the source and unreached vertices.
+	 */
+	public int parent(int v) {
+		return isReached(v) ? parent[v] : -1;
+	}
+
+	/**
+	 * Returns the index of the edge v was reached over, or -1 for the source and unreached vertices.
+	 */
+	public int parentEdge(int v) {
+		return isReached(v) ? parentEdge[v] : -1;
+	}
+
+	/**
+	 * Records that v can be reached from u with distance d over the given edge, if that is
+	 * shorter than what is known for v so far.
+	 *
+	 * @return true if the distance of v was improved
+	 */
+	public boolean relax(int u, int v, double d, int edge) {
+		relaxedCount++;
+		if(isReached(v) && dist[v] <= d) return false;
+		reached[v] = generation;
+		dist[v] = d;
+		parent[v] = u;
+		parentEdge[v] = edge;
+		heap.pushOrDecrease(v, d);
+		return true;
+	}
+}
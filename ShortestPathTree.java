@@ -0,0 +1,96 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Result of a one-to-all Dijkstra search on a CSRGraph: the distance from the source to every
+ * vertex and the predecessor of every vertex on its shortest path. One tree answers the path
+ * and cost to every destination without running another search.
+ */
+public class ShortestPathTree<NodeType> {
+
+	protected CSRGraph<NodeType> graph; // replaced by DynamicShortestPathTree when weights change
+	protected final int source;
+	protected final double[] dist; // distance from source, infinity if unreachable
+	protected final int[] parent; // predecessor on the shortest path, -1 for the source and unreachable vertices
+
+	/**
+	 * Runs a one-to-all search from source and copies its result out of the search scratch space.
+	 *
+	 * @param graph the graph to search
+	 * @param source id of the start vertex
+	 */
+	ShortestPathTree(CSRGraph<NodeType> graph, int source) {
+		int n = graph.getVertexCount();
+		DijkstraSearch search = DijkstraSearch.forThread(n);
+		search.run(graph, source, -1);
+		this.graph = graph;
+		this.source = source;
+		this.dist = new double[n];
+		this.parent = new int[n];
+		for(int v = 0; v < n; v++) {
+			dist[v] = search.distance(v);
+			parent[v] = search.parent(v);
+		}
+	}
+
+	/**
+	 * Returns the data item in the source vertex of this tree.
+	 */
+	public NodeType getSource() {
+		return graph.vertexData(source);
+	}
+
+	/**
+	 * Returns the distance from the source to the vertex with the given id, or infinity if it
+	 * cannot be reached.
+	 */
+	public double distance(int vertex) {
+		return dist[vertex];
+	}
+
+	/**
+	 * Returns the predecessor of the vertex with the given id, or -1 for the source and for
+	 * vertices that cannot be reached.
+	 */
+	public int parent(int vertex) {
+		return parent[vertex];
+	}
+
+	/**
+	 * Returns the cost of the shortest path from the source to end.
+	 *
+	 * @param end the data item in the end vertex for the path
+	 * @return the cost of the shortest path from the source to end
+	 * @throws NoSuchElementException if end is not in the graph or cannot be reached
+	 */
+	public double getPathCost(NodeType end) {
+		int endId = reachable(end);
+		return dist[endId];
+	}
+
+	/**
+	 * Returns the shortest path from the source to end.
+	 *
+	 * @param end the data item in the end vertex for the path
+	 * @return list of data items in vertices on the shortest path, including source and end
+	 * @throws NoSuchElementException if end is not in the graph or cannot be reached
+	 */
+	public List<NodeType> shortestPath(NodeType end) {
+		List<NodeType> path = new ArrayList<>();
+		for(int v = reachable(end); v >= 0; v = parent[v])
+			path.add(graph.vertexData(v));
+		Collections.reverse(path);
+		return path;
+	}
+
+	private int reachable(NodeType end) {
+		int endId = graph.indexOf(end);
+		if(endId < 0)
+			throw new NoSuchElementException("The graph does not contain the end vertex");
+		if(dist[endId] == Double.POSITIVE_INFINITY)
+			throw new NoSuchElementException("No shortest path found for the vertices.");
+		return endId;
+	}
+}
@@ -0,0 +1,255 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * This class indexes the station names of a network for validating and completing user input. It
+ * answers three questions without scanning the station list:
+ *
+ * exact lookup through a hash set,
+ * case-insensitive prefix search through binary search in the lower-cased names, kept sorted,
+ * and typo suggestions through symmetric deletes: every name is indexed under itself and under each
+ * way of deleting one character from it, and an input is looked up the same way. Two strings that
+ * share such a variant are at most one insertion and one deletion apart, which covers a missing,
+ * extra, wrong or swapped character. Candidates are then ranked by their true edit distance.
+ *
+ * The index is immutable, so one instance can be shared by every thread querying a snapshot.
+ */
+public final class StationIndex {
+
+    private static final int MAX_DISTANCE = 2;
+
+    private final HashSet<String> names;
+    private final String[] sortedKeys; // lower-cased names in sorted order
+    private final String[] sortedNames; // the original name of each entry of sortedKeys
+
+    // symmetric delete index: the variant hashes of every name, sorted, with the name's position
+    // in sortedNames packed into the low bits, and an open addressing table from each distinct hash
+    // to its first entry
+    private final long[] variants;
+    private final int idBits;
+    private final long[] tableKeys;
+    private final int[] tableStarts;
+
+    /**
+     * Builds the index for the given station names
+     *
+     * @param stations the station names of the network
+     */
+    public StationIndex(String[] stations) {
+        this.names = new HashSet<>(Arrays.asList(stations));
+
+        Integer[] order = new Integer[stations.length];
+        String[] keys = new String[stations.length];
+        for (int i = 0; i < stations.length; i++) {
+            order[i] = i;
+            keys[i] = key(stations[i]);
+        }
+        Arrays.sort(order, (a, b) -> {
+            int cmp = keys[a].compareTo(keys[b]);
+            return cmp != 0 ? cmp : stations[a].compareTo(stations[b]);
+        });
+        this.sortedKeys = new String[stations.length];
+        this.sortedNames = new String[stations.length];
+        for (int i = 0; i < stations.length; i++) {
+            sortedKeys[i] = keys[order[i]];
+            sortedNames[i] = stations[order[i]];
+        }
+
+        this.idBits = Math.max(1, 32 - Integer.numberOfLeadingZeros(stations.length));
+        long[] packed = new long[0];
+        int count = 0;
+        for (int id = 0; id < sortedKeys.length; id++) {
+            String key = sortedKeys[id];
+            if (count + key.length() + 1 > packed.length) {
+                packed = Arrays.copyOf(packed, Math.max(packed.length * 2, count + key.length() + 1));
+            }
+            packed[count++] = pack(variantHash(key, -1), id);
+            for (int skip = 0; skip < key.length(); skip++) {
+                if (skip > 0 && key.charAt(skip) == key.charAt(skip - 1)) {
+                    continue; // deleting either of two equal neighbours gives the same variant
+                }
+                packed[count++] = pack(variantHash(key, skip), id);
+            }
+        }
+        this.variants = Arrays.copyOf(packed, count);
+        Arrays.sort(variants);
+
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (i == 0 || hashOf(variants[i]) != hashOf(variants[i - 1])) {
+                distinct++;
+            }
+        }
+        int capacity = Integer.highestOneBit(Math.max(2, distinct) * 2) * 2;
+        this.tableKeys = new long[capacity];
+        this.tableStarts = new int[capacity];
+        Arrays.fill(tableStarts, -1);
+        for (int i = 0; i < count; i++) {
+            long hash = hashOf(variants[i]);
+            if (i == 0 || hash != hashOf(variants[i - 1])) {
+                int slot = slot(hash);
+                while (tableStarts[slot] >= 0) {
+                    slot = (slot + 1) & (capacity - 1);
+                }
+                tableKeys[slot] = hash;
+                tableStarts[slot] = i;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of stations in the index
+     */
+    public int size() {
+        return sortedNames.length;
+    }
+
+    /**
+     * Returns true if a station has exactly this name
+     */
+    public boolean contains(String name) {
+        return name != null && names.contains(name);
+    }
+
+    /**
+     * Returns the stations whose names start with prefix, ignoring case, in alphabetical order
+     *
+     * @param prefix the start of a station name
+     * @param limit the largest number of stations to return
+     */
+    public List<String> withPrefix(String prefix, int limit) {
+        String key = key(prefix);
+        List<String> result = new ArrayList<>();
+        int low = 0;
+        int high = sortedKeys.length;
+        while (low < high) { // first key not less than the prefix
+            int mid = (low + high) >>> 1;
+            if (sortedKeys[mid].compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        for (int i = low; i < sortedKeys.length && result.size() < limit && sortedKeys[i].startsWith(key); i++) {
+            result.add(sortedNames[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the stations whose names are closest to input, for suggesting what the user meant. A name
+     * that only differs in case comes first, then names one typo away, then names with one character
+     * missing in one place and one extra in another.
+     *
+     * @param input what the user typed
+     * @param limit the largest number of stations to return
+     */
+    public List<String> suggest(String input, int limit) {
+        String key = key(input);
+        int[] candidates = new int[16];
+        int count = 0;
+        for (int skip = -1; skip < key.length(); skip++) {
+            if (skip > 0 && key.charAt(skip) == key.charAt(skip - 1)) {
+                continue;
+            }
+            long hash = variantHash(key, skip) >>> idBits;
+            for (int slot = slot(hash); tableStarts[slot] >= 0; slot = (slot + 1) & (tableKeys.length - 1)) {
+                if (tableKeys[slot] != hash) {
+                    continue;
+                }
+                for (int i = tableStarts[slot]; i < variants.length && hashOf(variants[i]) == hash; i++) {
+                    if (count == candidates.length) {
+                        candidates = Arrays.copyOf(candidates, count * 2);
+                    }
+                    candidates[count++] = (int) (variants[i] & ((1L << idBits) - 1));
+                }
+                break;
+            }
+        }
+
+        // rank by distance, then alphabetically; ids are positions in sorted order
+        long[] ranked = new long[count];
+        int kept = 0;
+        Arrays.sort(candidates, 0, count);
+        for (int i = 0; i < count; i++) {
+            if (i > 0 && candidates[i] == candidates[i - 1]) {
+                continue;
+            }
+            int distance = distance(key, sortedKeys[candidates[i]]);
+            if (distance <= MAX_DISTANCE) {
+                ranked[kept++] = ((long) distance << 32) | candidates[i];
+            }
+        }
+        Arrays.sort(ranked, 0, kept);
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < kept && result.size() < limit; i++) {
+            result.add(sortedNames[(int) ranked[i]]);
+        }
+        return result;
+    }
+
+    /**
+     * Optimal string alignment distance: insertions, deletions, substitutions and swaps of two
+     * neighbouring characters each count as one edit
+     */
+    private static int distance(String a, String b) {
+        if (Math.abs(a.length() - b.length()) > MAX_DISTANCE) {
+            return MAX_DISTANCE + 1;
+        }
+        int[] before = new int[b.length() + 1];
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                int best = Math.min(Math.min(previous[j] + 1, current[j - 1] + 1), previous[j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    best = Math.min(best, before[j - 2] + 1);
+                }
+                current[j] = best;
+            }
+            int[] recycled = before;
+            before = previous;
+            previous = current;
+            current = recycled;
+        }
+        return previous[b.length()];
+    }
+
+    private static String key(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Hash of key with the character at skip left out, or of all of key if skip is -1
+     */
+    private static long variantHash(String key, int skip) {
+        long hash = 1125899906842597L;
+        for (int i = 0; i < key.length(); i++) {
+            if (i != skip) {
+                hash = 31 * hash + key.charAt(i);
+            }
+        }
+        hash = (hash ^ (hash >>> 33)) * 0xff51afd7ed558ccdL;
+        return hash ^ (hash >>> 33);
+    }
+
+    private long pack(long hash, int id) {
+        return (hash >>> idBits) << idBits | id;
+    }
+
+    private long hashOf(long packed) {
+        return packed >>> idBits;
+    }
+
+    private int slot(long hash) {
+        return (int) (hash ^ (hash >>> 32)) & (tableKeys.length - 1);
+    }
+}
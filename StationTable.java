@@ -0,0 +1,127 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Interns station names read as raw bytes into dense int ids, in order of first appearance. The
+ * bytes of a name are hashed and compared in place, so a String is only created once per station,
+ * when its name is first asked for; every occurrence of the name in the input only costs a hash lookup.
+ */
+public class StationTable {
+
+	private byte[] pool = new byte[1 << 12]; // bytes of every interned name, back to back
+	private int poolSize = 0;
+	private int[] offsets = new int[16]; // start of each name in pool, indexed by id
+	private int[] lengths = new int[16];
+	private int[] hashes = new int[16];
+	private String[] names = new String[16];
+	private int size = 0;
+	// open addressing table holding the hash of a name in the high half and its id + 1 in the low
+	// half, so most mismatches are rejected without touching the per-id arrays; 0 is an empty slot
+	private long[] slots = new long[32];
+
+	/**
+	 * Returns the id of the station whose name is the given UTF-8 bytes, adding it if it is new.
+	 *
+	 * @param bytes array holding the name
+	 * @param offset start of the name in bytes
+	 * @param length number of bytes in the name
+	 * @return the id of the station
+	 */
+	public int intern(byte[] bytes, int offset, int length) {
+		int hash = hash(bytes, offset, length);
+		int mask = slots.length - 1;
+		for(int slot = hash & mask; ; slot = (slot + 1) & mask) {
+			long entry = slots[slot];
+			if(entry == 0) {
+				int id = add(bytes, offset, length, hash);
+				slots[slot] = ((long) hash << 32) | (id + 1);
+				if(size * 2 > slots.length) rehash();
+				return id;
+			}
+			int id = (int) entry - 1;
+			if((int) (entry >>> 32) == hash && lengths[id] == length
+					&& Arrays.equals(pool, offsets[id], offsets[id] + length, bytes, offset, offset + length))
+				return id;
+		}
+	}
+
+	/**
+	 * Returns the id of the station with the given name, adding it if it is new.
+	 */
+	public int intern(String name) {
+		byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+		return intern(bytes, 0, bytes.length);
+	}
+
+	/**
+	 * Interns every station of other into this table, in other's id order.
+	 *
+	 * @param other the table to copy stations from
+	 * @return for each id in other, the id of the same station in this table
+	 */
+	public int[] internAll(StationTable other) {
+		int[] ids = new int[other.size];
+		for(int id = 0; id < other.size; id++)
+			ids[id] = intern(other.pool, other.offsets[id], other.lengths[id]);
+		return ids;
+	}
+
+	/**
+	 * Returns the name of the station with the given id.
+	 */
+	public String name(int id) {
+		if(id >= size)
+			throw new IndexOutOfBoundsException("No station with id " + id);
+		String name = names[id];
+		if(name == null) { // decoded on first use, tables that are only merged never need it
+			name = new String(pool, offsets[id], lengths[id], StandardCharsets.UTF_8);
+			names[id] = name;
+		}
+		return name;
+	}
+
+	/**
+	 * Returns the number of stations interned so far.
+	 */
+	public int size() {
+		return size;
+	}
+
+	private int add(byte[] bytes, int offset, int length, int hash) {
+		if(size == names.length) {
+			offsets = Arrays.copyOf(offsets, size * 2);
+			lengths = Arrays.copyOf(lengths, size * 2);
+			hashes = Arrays.copyOf(hashes, size * 2);
+			names = Arrays.copyOf(names, size * 2);
+		}
+		if(poolSize + length > pool.length)
+			pool = Arrays.copyOf(pool, Math.max(pool.length * 2, poolSize + length));
+		System.arraycopy(bytes, offset, pool, poolSize, length);
+		offsets[size] = poolSize;
+		lengths[size] = length;
+		hashes[size] = hash;
+		poolSize += length;
+		return size++;
+	}
+
+	private void rehash() {
+		slots = new long[slots.length * 2];
+		int mask = slots.length - 1;
+		for(int id = 0; id < size; id++) {
+			int slot = hashes[id] & mask;
+			while(slots[slot] != 0)
+				slot = (slot + 1) & mask;
+			slots[slot] = ((long) hashes[id] << 32) | (id + 1);
+		}
+	}
+
+	private static int hash(byte[] bytes, int offset, int length) {
+		int hash = 0;
+		for(int i = offset; i < offset + length; i++)
+			hash = 31 * hash + bytes[i];
+		// names like S1, S2, S3 hash to neighbouring values, which would form long runs of
+		// occupied slots under linear probing, so spread the bits before the table masks them
+		hash *= 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+}
@@ -0,0 +1,371 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Generator for large synthetic rail networks, written as DOT files in the format TrainDataLoader
+ * reads or as binary network files. The network has a few hub cities joined by an intercity
+ * backbone, and regional lines of consecutive stations that start at a hub; some of them are
+ * through lines that end at another hub. Every connection is listed in both directions with the
+ * same travel time, as "a -- b" followed by "b -- a".
+ *
+ * Only the line and hub tables are held in memory, one entry per line rather than per edge.
+ * The edges of a station are derived from them on demand and edge weights are a hash of the
+ * seed and the two stations, so a network of hundreds of millions of edges is streamed to the
+ * file vertex by vertex and the same seed always gives the same file.
+ *
+ * The degree distribution is set by two knobs: hubs are picked for new lines with a Zipf
+ * distribution of exponent hubSkew, so a higher skew gives a few very large hubs, and every
+ * station is linked to the stations up to reach stops away on its line, as express services
+ * that skip stops would be.
+ *
+ * Usage: java SyntheticNetwork output.gv|output.rnet stations [seed] [option=value ...]
+ *   options: hubs, lineLength, reach, hubSkew, throughLines, minWeight, maxWeight
+ */
+public final class SyntheticNetwork implements NetworkFile.Source {
+
+	private static final int INTERCITY_FACTOR = 4; // hub to hub connections are this many times longer
+
+	private final long seed;
+	private final int stationCount;
+	private final int hubCount;
+	private final int reach;
+	private final int minWeight;
+	private final int maxWeight;
+	private final int[] lineStart; // first station of each line, plus one trailing entry
+	private final int[] lineStartHub; // hub each line starts at
+	private final int[] lineEndHub; // hub each through line ends at, -1 for lines that end in the country
+	private final int[] hubOffsets; // first neighbour of each hub in hubNeighbours, plus one trailing entry
+	private final int[] hubNeighbours; // other hubs and line ends next to each hub, sorted per hub
+	private final long edgeCount;
+
+	/**
+	 * Creates a network with about sqrt(stations)/2 hubs, lines of about 20 stations, only
+	 * local services, and travel times between 2 and 30 per stop.
+	 *
+	 * @param stations the number of stations, hubs included
+	 * @param seed the seed every choice is derived from
+	 */
+	public SyntheticNetwork(int stations, long seed) {
+		this(stations, seed, Math.max(1, Math.min(stations - 1, (int) Math.sqrt(stations) / 2)), 20, 1, 1.0, 0.3, 2, 30);
+	}
+
+	/**
+	 * Creates a network with the given shape.
+	 *
+	 * @param stations the number of stations, hubs included
+	 * @param seed the seed every choice is derived from
+	 * @param hubs the number of hub cities
+	 * @param lineLength the average number of stations on a regional line
+	 * @param reach the number of stops express links on a line skip, 1 for only local links
+	 * @param hubSkew the exponent of the Zipf distribution lines pick their hubs with
+	 * @param throughLines the share of lines that end at a second hub
+	 * @param minWeight the smallest travel time between neighbouring stops
+	 * @param maxWeight the largest travel time between neighbouring stops
+	 * @throws IllegalArgumentException if a parameter is out of range
+	 */
+	public SyntheticNetwork(int stations, long seed, int hubs, int lineLength, int reach, double hubSkew,
+			double throughLines, int minWeight, int maxWeight) {
+		if(stations < 2 || hubs < 1 || hubs >= stations)
+			throw new IllegalArgumentException("A network needs at least one hub and one other station");
+		if(lineLength < 1 || reach < 1 || hubSkew < 0 || throughLines < 0 || throughLines > 1)
+			throw new IllegalArgumentException("Line length, reach, hub skew or through line share out of range");
+		if(minWeight < 0 || maxWeight < minWeight)
+			throw new IllegalArgumentException("Travel times must satisfy 0 <= minWeight <= maxWeight");
+		this.seed = seed;
+		this.stationCount = stations;
+		this.hubCount = hubs;
+		this.reach = reach;
+		this.minWeight = minWeight;
+		this.maxWeight = maxWeight;
+
+		Random random = new Random(seed);
+		double[] popularity = new double[hubs]; // cumulative Zipf weights of the hubs
+		for(int h = 0; h < hubs; h++)
+			popularity[h] = (h > 0 ? popularity[h - 1] : 0.0) + 1.0 / Math.pow(h + 1, hubSkew);
+
+		// regional lines: consecutive station ids, each starting at a hub
+		int[] starts = new int[16];
+		int[] startHubs = new int[16];
+		int[] endHubs = new int[16];
+		int lines = 0;
+		for(int station = hubs; station < stations; lines++) {
+			int length = Math.min(Math.max(1, lineLength / 2 + random.nextInt(lineLength + 1)), stations - station);
+			if(lines == starts.length) {
+				starts = Arrays.copyOf(starts, lines * 2);
+				startHubs = Arrays.copyOf(startHubs, lines * 2);
+				endHubs = Arrays.copyOf(endHubs, lines * 2);
+			}
+			starts[lines] = station;
+			startHubs[lines] = pick(popularity, hubs, random);
+			endHubs[lines] = hubs > 1 && random.nextDouble() < throughLines
+					? pickOther(popularity, hubs, startHubs[lines], random) : -1;
+			station += length;
+		}
+		this.lineStart = Arrays.copyOf(starts, lines + 1);
+		this.lineStart[lines] = stations;
+		this.lineStartHub = Arrays.copyOf(startHubs, lines);
+		this.lineEndHub = Arrays.copyOf(endHubs, lines);
+
+		// intercity backbone: every hub links to one or two earlier hubs, preferring popular ones
+		int[] backbone = new int[4 * hubs];
+		int links = 0;
+		for(int h = 1; h < hubs; h++) {
+			int first = pick(popularity, h, random);
+			backbone[links++] = h;
+			backbone[links++] = first;
+			if(h >= 2) {
+				int second = pickOther(popularity, h, first, random);
+				backbone[links++] = h;
+				backbone[links++] = second;
+			}
+		}
+
+		// adjacency of the hubs, counted first and then filled
+		int[] offsets = new int[hubs + 1];
+		for(int i = 0; i < links; i++)
+			offsets[backbone[i] + 1]++;
+		for(int l = 0; l < lines; l++) {
+			offsets[startHubs[l] + 1]++;
+			if(lineEndHub[l] >= 0) offsets[lineEndHub[l] + 1]++;
+		}
+		for(int h = 0; h < hubs; h++)
+			offsets[h + 1] += offsets[h];
+		int[] next = Arrays.copyOf(offsets, hubs);
+		int[] neighbours = new int[offsets[hubs]];
+		for(int i = 0; i < links; i += 2) {
+			neighbours[next[backbone[i]]++] = backbone[i + 1];
+			neighbours[next[backbone[i + 1]]++] = backbone[i];
+		}
+		for(int l = 0; l < lines; l++) {
+			neighbours[next[startHubs[l]]++] = lineStart[l];
+			if(lineEndHub[l] >= 0) neighbours[next[lineEndHub[l]]++] = lineStart[l + 1] - 1;
+		}
+		for(int h = 0; h < hubs; h++)
+			Arrays.sort(neighbours, offsets[h], offsets[h + 1]);
+		this.hubOffsets = offsets;
+		this.hubNeighbours = neighbours;
+
+		// edges out of hubs, plus the edges from line ends back to their hubs
+		long edges = neighbours.length + (neighbours.length - links);
+		for(int l = 0; l < lines; l++) {
+			long length = lineStart[l + 1] - lineStart[l];
+			for(int d = 1; d <= reach && d < length; d++)
+				edges += 2 * (length - d);
+		}
+		this.edgeCount = edges;
+	}
+
+	/**
+	 * Picks one of the first limit hubs with probability proportional to its popularity.
+	 */
+	private static int pick(double[] popularity, int limit, Random random) {
+		double u = random.nextDouble() * popularity[limit - 1];
+		int low = 0;
+		int high = limit - 1;
+		while(low < high) { // first hub whose cumulative popularity exceeds u
+			int mid = (low + high) >>> 1;
+			if(popularity[mid] > u) high = mid;
+			else low = mid + 1;
+		}
+		return low;
+	}
+
+	/**
+	 * Picks one of the first limit hubs other than not, limit has to be at least 2.
+	 */
+	private static int pickOther(double[] popularity, int limit, int not, Random random) {
+		for(int attempt = 0; attempt < 16; attempt++) {
+			int hub = pick(popularity, limit, random);
+			if(hub != not) return hub;
+		}
+		return not == 0 ? 1 : 0; // a heavily skewed distribution keeps returning the top hub
+	}
+
+	/**
+	 * Returns the number of stations, hubs included.
+	 */
+	@Override
+	public int vertexCount() {
+		return stationCount;
+	}
+
+	/**
+	 * Returns the number of directed edges, two for every connection.
+	 */
+	public long edgeCount() {
+		return edgeCount;
+	}
+
+	/**
+	 * Returns the number of regional lines.
+	 */
+	public int lineCount() {
+		return lineEndHub.length;
+	}
+
+	/**
+	 * Returns the name of a station: Hub followed by its id for hubs, Station followed by its id
+	 * for all other stations.
+	 */
+	@Override
+	public String name(int vertex) {
+		return (vertex < hubCount ? "Hub" : "Station") + vertex;
+	}
+
+	@Override
+	public int degree(int vertex) {
+		if(vertex < hubCount) return hubOffsets[vertex + 1] - hubOffsets[vertex];
+		int line = line(vertex);
+		int first = lineStart[line];
+		int last = lineStart[line + 1] - 1;
+		int degree = Math.min(reach, vertex - first) + Math.min(reach, last - vertex);
+		if(vertex == first) degree++;
+		if(vertex == last && lineEndHub[line] >= 0) degree++;
+		return degree;
+	}
+
+	@Override
+	public void edges(int vertex, int[] targets, double[] weights) {
+		int count = 0;
+		if(vertex < hubCount) {
+			for(int i = hubOffsets[vertex]; i < hubOffsets[vertex + 1]; i++)
+				targets[count++] = hubNeighbours[i];
+		} else {
+			int line = line(vertex);
+			int first = lineStart[line];
+			int last = lineStart[line + 1] - 1;
+			// hub ids are below every station id, so they come first
+			int startHub = vertex == first ? lineStartHub[line] : -1;
+			int endHub = vertex == last ? lineEndHub[line] : -1;
+			if(startHub >= 0 && endHub >= 0) {
+				targets[count++] = Math.min(startHub, endHub);
+				targets[count++] = Math.max(startHub, endHub);
+			} else if(startHub >= 0) {
+				targets[count++] = startHub;
+			} else if(endHub >= 0) {
+				targets[count++] = endHub;
+			}
+			for(int v = Math.max(first, vertex - reach); v <= Math.min(last, vertex + reach); v++)
+				if(v != vertex) targets[count++] = v;
+		}
+		for(int i = 0; i < count; i++)
+			weights[i] = weight(vertex, targets[i]);
+	}
+
+	/**
+	 * Returns the line of a station that is not a hub.
+	 */
+	private int line(int vertex) {
+		int index = Arrays.binarySearch(lineStart, vertex);
+		return index >= 0 ? index : -index - 2;
+	}
+
+	/**
+	 * Returns the travel time between two neighbouring stations, the same in both directions.
+	 */
+	private double weight(int a, int b) {
+		int low = Math.min(a, b);
+		int high = Math.max(a, b);
+		long hash = mix(seed ^ mix(((long) low << 32) | high));
+		int base = minWeight + (int) Long.remainderUnsigned(hash, maxWeight - minWeight + 1);
+		if(high < hubCount) return base * INTERCITY_FACTOR;
+		if(low < hubCount) return base;
+		return base * (double) (high - low); // an express link takes as long as the stops it skips
+	}
+
+	/**
+	 * The finalizer of SplitMix64, a cheap hash that spreads every input bit over the output.
+	 */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Writes the network as a DOT file: every station on its own line, then every connection
+	 * in both directions.
+	 *
+	 * @param file the file to write, replaced if it exists
+	 * @throws IOException if the file cannot be written
+	 */
+	public void writeDot(Path file) throws IOException {
+		int maxDegree = 0;
+		for(int v = 0; v < stationCount; v++)
+			maxDegree = Math.max(maxDegree, degree(v));
+		int[] targets = new int[maxDegree];
+		double[] weights = new double[maxDegree];
+		try(BufferedWriter out = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file),
+				StandardCharsets.UTF_8), 1 << 16)) {
+			out.write("Graph Synthetic {\n\n");
+			for(int v = 0; v < stationCount; v++) {
+				out.write(name(v));
+				out.write('\n');
+			}
+			out.write('\n');
+			for(int v = 0; v < stationCount; v++) {
+				edges(v, targets, weights);
+				String from = name(v);
+				for(int i = 0, degree = degree(v); i < degree; i++) {
+					if(targets[i] < v) continue; // written with the other end
+					String to = name(targets[i]);
+					String weight = " [weight=" + (long) weights[i] + "]\n";
+					out.write(from + " -- " + to + weight);
+					out.write(to + " -- " + from + weight);
+				}
+			}
+			out.write("\n}\n");
+		}
+	}
+
+	/**
+	 * Generates a network and writes it as a binary network file if the output name ends with
+	 * .rnet, and as a DOT file otherwise.
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length < 2) {
+			System.err.println("Usage: java SyntheticNetwork output.gv|output.rnet stations [seed] [option=value ...]");
+			System.err.println("  options: hubs, lineLength, reach, hubSkew, throughLines, minWeight, maxWeight");
+			System.exit(2);
+		}
+		long start = System.nanoTime();
+		Path file = Paths.get(args[0]);
+		int stations = Integer.parseInt(args[1]);
+		long seed = args.length > 2 ? Long.parseLong(args[2]) : 42;
+		int hubs = Math.max(1, Math.min(stations - 1, (int) Math.sqrt(stations) / 2));
+		int lineLength = 20;
+		int reach = 1;
+		double hubSkew = 1.0;
+		double throughLines = 0.3;
+		int minWeight = 2;
+		int maxWeight = 30;
+		for(int i = 3; i < args.length; i++) {
+			String[] option = args[i].split("=", 2);
+			if(option.length != 2)
+				throw new IllegalArgumentException("Expected option=value but got " + args[i]);
+			switch(option[0]) {
+				case "hubs": hubs = Integer.parseInt(option[1]); break;
+				case "lineLength": lineLength = Integer.parseInt(option[1]); break;
+				case "reach": reach = Integer.parseInt(option[1]); break;
+				case "hubSkew": hubSkew = Double.parseDouble(option[1]); break;
+				case "throughLines": throughLines = Double.parseDouble(option[1]); break;
+				case "minWeight": minWeight = Integer.parseInt(option[1]); break;
+				case "maxWeight": maxWeight = Integer.parseInt(option[1]); break;
+				default: throw new IllegalArgumentException("Unknown option " + option[0]);
+			}
+		}
+		SyntheticNetwork network = new SyntheticNetwork(stations, seed, hubs, lineLength, reach, hubSkew,
+				throughLines, minWeight, maxWeight);
+		if(file.toString().endsWith(".rnet")) NetworkFile.write(network, file);
+		else network.writeDot(file);
+		System.out.printf("Wrote %d stations, %d lines and %d edges to %s in %.0f ms%n", stations,
+				network.lineCount(), network.edgeCount(), file, (System.nanoTime() - start) / 1e6);
+	}
+}
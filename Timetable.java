@@ -0,0 +1,326 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Frozen timetable for time-dependent routing. Every connection is one train leaving a station
+ * at a departure time and arriving at the next station at an arrival time. The connections are
+ * stored in parallel primitive arrays sorted by departure time, so the Connection Scan Algorithm
+ * in ConnectionScan answers a query by walking those arrays once, front to back. Raptor answers
+ * queries that trade arrival time against the number of transfers on the same timetable.
+ *
+ * Times are whole seconds after the start of the service and may run past midnight into later
+ * days. A passenger can change trains at a station whenever the next train leaves no earlier
+ * than they arrived, and can stay on board between connections of the same trip.
+ *
+ * Use TimetableBuilder to create one, or fromNetwork to derive one from a graph of travel times.
+ */
+public final class Timetable {
+
+	/**
+	 * Seconds in one hour, the unit of the weights in the network files.
+	 */
+	public static final int SECONDS_PER_HOUR = 3600;
+
+	private final String[] stations;
+	private final HashMap<String, Integer> stationIds;
+	private final int[] departureStop; // station each connection leaves, in departure order
+	private final int[] arrivalStop; // station each connection arrives at
+	private final int[] departureTime;
+	private final int[] arrivalTime;
+	private final int[] trip; // trip each connection belongs to
+	private final int tripCount;
+	private volatile RaptorRoutes raptorRoutes; // grouped on first use
+
+	Timetable(String[] stations, int[] departureStop, int[] arrivalStop, int[] departureTime, int[] arrivalTime,
+			int[] trip, int tripCount) {
+		this.stations = stations;
+		this.stationIds = new HashMap<>(stations.length * 2);
+		for(int i = 0; i < stations.length; i++)
+			stationIds.put(stations[i], i);
+		this.departureStop = departureStop;
+		this.arrivalStop = arrivalStop;
+		this.departureTime = departureTime;
+		this.arrivalTime = arrivalTime;
+		this.trip = trip;
+		this.tripCount = tripCount;
+	}
+
+	/**
+	 * Derives a timetable from a network of travel times: every connection of the graph is run
+	 * as a train of its own every headway seconds, the first leaving at firstDeparture and the
+	 * last no later than lastDeparture. Edge weights are read as hours.
+	 *
+	 * @param graph the network
+	 * @param firstDeparture the departure time of the first train on every connection
+	 * @param lastDeparture the latest departure time of a train on any connection
+	 * @param headway the number of seconds between two trains on a connection
+	 * @return the timetable
+	 * @throws IllegalArgumentException if the headway is not positive
+	 */
+	public static Timetable fromNetwork(CSRGraph<String> graph, int firstDeparture, int lastDeparture, int headway) {
+		if(headway <= 0)
+			throw new IllegalArgumentException("Headway must be positive");
+		TimetableBuilder builder = new TimetableBuilder();
+		for(int v = 0; v < graph.getVertexCount(); v++)
+			builder.addStation(graph.vertexData(v));
+		for(int departure = firstDeparture; departure >= 0 && departure <= lastDeparture; departure += headway)
+			for(int v = 0; v < graph.getVertexCount(); v++)
+				for(int e = graph.firstEdge(v); e < graph.endEdge(v); e++) {
+					int duration = (int) Math.round(graph.edgeWeight(e) * SECONDS_PER_HOUR);
+					builder.addConnection(graph.vertexData(v), graph.vertexData(graph.edgeTarget(e)), departure,
+							departure + duration, null);
+				}
+		return builder.build();
+	}
+
+	/**
+	 * Reads a timetable from a text file with one connection per line:
+	 * {@code from,to,departure,arrival[,trip]}. Times are written as H:MM or H:MM:SS, where the hours
+	 * may go past 24 for trains after midnight, or as whole seconds. Blank lines and lines
+	 * starting with # are skipped. Connections without a trip are trains of their own.
+	 *
+	 * @param file the timetable file
+	 * @return the timetable
+	 * @throws IOException if the file cannot be read or a line is not a valid connection
+	 */
+	public static Timetable load(Path file) throws IOException {
+		TimetableBuilder builder = new TimetableBuilder();
+		try(BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			int lineNumber = 0;
+			for(String line = in.readLine(); line != null; line = in.readLine()) {
+				lineNumber++;
+				line = line.trim();
+				if(line.isEmpty() || line.startsWith("#")) continue;
+				String[] fields = line.split(",", -1);
+				if(fields.length < 4 || fields.length > 5)
+					throw new IOException(file + ":" + lineNumber + ": expected from,to,departure,arrival[,trip]");
+				try {
+					builder.addConnection(fields[0].trim(), fields[1].trim(), parseTime(fields[2]), parseTime(fields[3]),
+							fields.length == 5 && !fields[4].trim().isEmpty() ? fields[4].trim() : null);
+				} catch(IllegalArgumentException e) {
+					throw new IOException(file + ":" + lineNumber + ": " + e.getMessage());
+				}
+			}
+		}
+		return builder.build();
+	}
+
+	private static int parseTime(String text) {
+		String[] parts = text.trim().split(":");
+		try {
+			if(parts.length == 1)
+				return Integer.parseInt(parts[0]);
+			if(parts.length <= 3) {
+				int seconds = Integer.parseInt(parts[0]) * SECONDS_PER_HOUR + Integer.parseInt(parts[1]) * 60;
+				return parts.length == 3 ? seconds + Integer.parseInt(parts[2]) : seconds;
+			}
+		} catch(NumberFormatException e) {
+			// reported below
+		}
+		throw new IllegalArgumentException("invalid time '" + text.trim() + "'");
+	}
+
+	/**
+	 * Formats a time as H:MM, or H:MM:SS if it is not a whole minute.
+	 */
+	public static String formatTime(int time) {
+		int hours = time / SECONDS_PER_HOUR;
+		int minutes = time / 60 % 60;
+		int seconds = time % 60;
+		return seconds == 0 ? String.format("%d:%02d", hours, minutes) : String.format("%d:%02d:%02d", hours, minutes, seconds);
+	}
+
+	/**
+	 * Returns the number of stations.
+	 */
+	public int getStationCount() {
+		return stations.length;
+	}
+
+	/**
+	 * Returns the number of connections.
+	 */
+	public int getConnectionCount() {
+		return trip.length;
+	}
+
+	/**
+	 * Returns the number of trips.
+	 */
+	public int getTripCount() {
+		return tripCount;
+	}
+
+	/**
+	 * Returns the name of the station with the given id.
+	 */
+	public String station(int id) {
+		return stations[id];
+	}
+
+	/**
+	 * Returns the id of the station with the given name, or -1 if there is no such station.
+	 *
+	 * @throws NullPointerException if name is null
+	 */
+	public int indexOf(String name) {
+		if(name == null) throw new NullPointerException("Cannot look up null station");
+		Integer id = stationIds.get(name);
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * Returns the station the connection leaves. Connections are numbered in departure order.
+	 */
+	public int departureStop(int connection) {
+		return departureStop[connection];
+	}
+
+	/**
+	 * Returns the station the connection arrives at.
+	 */
+	public int arrivalStop(int connection) {
+		return arrivalStop[connection];
+	}
+
+	/**
+	 * Returns the departure time of the connection.
+	 */
+	public int departureTime(int connection) {
+		return departureTime[connection];
+	}
+
+	/**
+	 * Returns the arrival time of the connection.
+	 */
+	public int arrivalTime(int connection) {
+		return arrivalTime[connection];
+	}
+
+	/**
+	 * Returns the trip the connection belongs to.
+	 */
+	public int trip(int connection) {
+		return trip[connection];
+	}
+
+	/**
+	 * Returns the first connection leaving at or after time, or the connection count if there is none.
+	 */
+	public int firstDepartureAfter(int time) {
+		int low = 0;
+		int high = departureTime.length;
+		while(low < high) {
+			int mid = (low + high) >>> 1;
+			if(departureTime[mid] < time) low = mid + 1;
+			else high = mid;
+		}
+		return low;
+	}
+
+	/**
+	 * Returns the journey from start that arrives at end as early as possible, leaving no earlier
+	 * than departureTime.
+	 *
+	 * @param start the name of the station to leave from
+	 * @param end the name of the station to arrive at
+	 * @param departureTime the earliest time to leave
+	 * @return the journey with the earliest arrival
+	 * @throws NoSuchElementException if either station is not in the timetable or end cannot be
+	 *     reached after departureTime
+	 */
+	public Journey earliestArrival(String start, String end, int departureTime) {
+		return ConnectionScan.forThread(this).earliestArrival(this, startId(start), endId(end), departureTime);
+	}
+
+	/**
+	 * Returns every journey from start to end that is not beaten by another one leaving later and
+	 * arriving no later, in order of departure. Together they answer the earliest arrival for any
+	 * departure time over the whole timetable.
+	 *
+	 * @param start the name of the station to leave from
+	 * @param end the name of the station to arrive at
+	 * @return the Pareto optimal journeys, earliest departure first; empty if end cannot be reached
+	 * @throws NoSuchElementException if either station is not in the timetable
+	 */
+	public List<Journey> profile(String start, String end) {
+		int startId = startId(start);
+		int endId = endId(end);
+		ConnectionScan scan = ConnectionScan.forThread(this);
+		int[] departures = scan.profile(this, startId, endId);
+		List<Journey> journeys = new ArrayList<>(departures.length);
+		for(int departure : departures)
+			journeys.add(scan.earliestArrival(this, startId, endId, departure));
+		return journeys;
+	}
+
+	/**
+	 * Returns the journeys from start to end leaving no earlier than departureTime that are Pareto
+	 * optimal in arrival time and number of transfers, fewest transfers first. The first one changes
+	 * trains least often and the last one arrives earliest.
+	 *
+	 * @param start the name of the station to leave from
+	 * @param end the name of the station to arrive at
+	 * @param departureTime the earliest time to leave
+	 * @param maxTransfers the most transfers a journey may have
+	 * @return the Pareto optimal journeys; empty if end cannot be reached
+	 * @throws NoSuchElementException if either station is not in the timetable
+	 */
+	public List<Journey> paretoJourneys(String start, String end, int departureTime, int maxTransfers) {
+		return Raptor.forThread(getRaptorRoutes()).paretoJourneys(this, startId(start), endId(end), departureTime, maxTransfers);
+	}
+
+	/**
+	 * Returns the journeys from start to end leaving between from and until that no other journey
+	 * beats by leaving later, arriving no later and changing trains no more often.
+	 *
+	 * @param start the name of the station to leave from
+	 * @param end the name of the station to arrive at
+	 * @param from the earliest departure time
+	 * @param until the latest departure time
+	 * @param maxTransfers the most transfers a journey may have
+	 * @param parallel whether to split the window over several threads
+	 * @return the Pareto optimal journeys, earliest departure first
+	 * @throws NoSuchElementException if either station is not in the timetable
+	 */
+	public List<Journey> paretoRange(String start, String end, int from, int until, int maxTransfers, boolean parallel) {
+		return Raptor.paretoRange(this, startId(start), endId(end), from, until, maxTransfers, parallel);
+	}
+
+	/**
+	 * Returns the trips of this timetable grouped into routes, grouping them on first use.
+	 */
+	public RaptorRoutes getRaptorRoutes() {
+		RaptorRoutes routes = raptorRoutes;
+		if(routes == null) {
+			routes = RaptorRoutes.of(this);
+			raptorRoutes = routes;
+		}
+		return routes;
+	}
+
+	private int startId(String start) {
+		if(start == null)
+			throw new NullPointerException("Cannot find journey for null start");
+		int id = indexOf(start);
+		if(id < 0)
+			throw new NoSuchElementException("The timetable does not contain the start station");
+		return id;
+	}
+
+	private int endId(String end) {
+		if(end == null)
+			throw new NullPointerException("Cannot find journey for null end");
+		int id = indexOf(end);
+		if(id < 0)
+			throw new NoSuchElementException("The timetable does not contain the end station");
+		return id;
+	}
+}
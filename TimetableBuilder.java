@@ -0,0 +1,111 @@
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Collects stations and timetabled connections into growable primitive buffers and then freezes
+ * them into a Timetable with the connections sorted by departure time.
+ */
+public class TimetableBuilder {
+
+	private final HashMap<String, Integer> stationIds = new HashMap<>();
+	private String[] stations = new String[16];
+	private int stationCount = 0;
+
+	private final HashMap<String, Integer> tripIds = new HashMap<>();
+	private int tripCount = 0;
+
+	private int[] departureStops = new int[16];
+	private int[] arrivalStops = new int[16];
+	private int[] departureTimes = new int[16];
+	private int[] arrivalTimes = new int[16];
+	private int[] trips = new int[16];
+	private int connectionCount = 0;
+
+	/**
+	 * Adds a station to the timetable being built.
+	 *
+	 * @param name the name of the station
+	 * @return the id of the station, which is the existing id if it was added before
+	 * @throws NullPointerException if name is null
+	 */
+	public int addStation(String name) {
+		if(name == null) throw new NullPointerException("Cannot add null station");
+		Integer id = stationIds.get(name);
+		if(id != null) return id;
+		if(stationCount == stations.length)
+			stations = Arrays.copyOf(stations, stationCount * 2);
+		stations[stationCount] = name;
+		stationIds.put(name, stationCount);
+		return stationCount++;
+	}
+
+	/**
+	 * Adds a connection: one train leaving a station and arriving at the next one without
+	 * stopping in between. Connections with the same trip are the same train, so a passenger
+	 * can stay on board from one to the next however short the stop is.
+	 *
+	 * @param from the station the train leaves
+	 * @param to the station the train arrives at next
+	 * @param departure the departure time in seconds after the start of the service
+	 * @param arrival the arrival time in seconds after the start of the service
+	 * @param trip the train the connection belongs to, or null if it is a train of its own
+	 * @throws IllegalArgumentException if the departure is negative or after the arrival
+	 */
+	public void addConnection(String from, String to, int departure, int arrival, String trip) {
+		if(departure < 0 || arrival < departure)
+			throw new IllegalArgumentException("Cannot add connection arriving before it departs");
+		int tripId;
+		if(trip == null) {
+			tripId = tripCount++;
+		} else {
+			Integer id = tripIds.get(trip);
+			if(id == null) {
+				id = tripCount++;
+				tripIds.put(trip, id);
+			}
+			tripId = id;
+		}
+		int fromId = addStation(from);
+		int toId = addStation(to);
+		if(connectionCount == trips.length) {
+			int capacity = connectionCount * 2;
+			departureStops = Arrays.copyOf(departureStops, capacity);
+			arrivalStops = Arrays.copyOf(arrivalStops, capacity);
+			departureTimes = Arrays.copyOf(departureTimes, capacity);
+			arrivalTimes = Arrays.copyOf(arrivalTimes, capacity);
+			trips = Arrays.copyOf(trips, capacity);
+		}
+		departureStops[connectionCount] = fromId;
+		arrivalStops[connectionCount] = toId;
+		departureTimes[connectionCount] = departure;
+		arrivalTimes[connectionCount] = arrival;
+		trips[connectionCount] = tripId;
+		connectionCount++;
+	}
+
+	/**
+	 * Sorts the connections by departure time and freezes them into a timetable. Connections
+	 * leaving at the same time keep the order they were added in.
+	 */
+	public Timetable build() {
+		long[] order = new long[connectionCount];
+		for(int c = 0; c < connectionCount; c++)
+			order[c] = (long) departureTimes[c] << 32 | c;
+		Arrays.sort(order);
+		int[] departureStop = new int[connectionCount];
+		int[] arrivalStop = new int[connectionCount];
+		int[] departureTime = new int[connectionCount];
+		int[] arrivalTime = new int[connectionCount];
+		int[] trip = new int[connectionCount];
+		for(int i = 0; i < connectionCount; i++) {
+			int c = (int) order[i];
+			departureStop[i] = departureStops[c];
+			arrivalStop[i] = arrivalStops[c];
+			departureTime[i] = departureTimes[c];
+			arrivalTime[i] = arrivalTimes[c];
+			trip[i] = trips[c];
+		}
+		return new Timetable(Arrays.copyOf(stations, stationCount), departureStop, arrivalStop, departureTime,
+				arrivalTime, trip, tripCount);
+	}
+}
@@ -1,21 +1,52 @@
-import java.io.FileNotFoundException;
-import java.util.*;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Set;
+import java.util.function.BiConsumer;
 
 /**
  * This class is the backend class for the Train Route Finder Application. It uses the Dijkstra's algorithm
  * developed by the Algorithm Engineer to find the shortest path between the origin and destination station
  * It will be getting inputs from the frontend and will be used by the frontend
  *
+ * The backend is safe to share between threads. Queries take the stations as arguments and run on an
+ * immutable NetworkSnapshot read from a volatile field, so they never lock the network. Changes are made
+ * to a private editable copy under the backend's lock and published as a new snapshot in one write.
+ *
  * @author Samanyu Kaushik
  */
 public class TrainBackend {
 
-    private String origin;
-    private String destination;
-    private AE_Graph AE;
-    private TrainDataLoader dataLoader = new TrainDataLoader();
+    /**
+     * The system property naming the network file the constructors without a file load. It may be a dot file
+     * or a binary network file written by NetworkFile.
+     */
+    public static final String NETWORK_FILE_PROPERTY = "train.network";
+    private static final String DEFAULT_NETWORK_FILE = "TrainData.gv";
+    private static final int ROUTE_CACHE_SIZE = 10_000;
+    private static final long ROUTE_CACHE_TTL_MILLIS = 10 * 60 * 1000;
+    private static final int DERIVED_TIMETABLE_HOURS = 72; // hourly trains on every connection for three days
+
+    private volatile String origin; // the frontend's current selection, never read by queries
+    private volatile String destination;
+    private String dataFile;
+    private CSRGraph<String> loadedGraph; // the graph exactly as read from dataFile, guarded by this
+    private volatile NetworkSnapshot network;
+    private volatile RoutingMode routingMode = RoutingMode.DIJKSTRA;
+    private AE_Graph<String, Double> editableGraph; // created on the first change, guarded by this
+    private long nextVersion = 0; // guarded by this
+    private boolean rebuildingHierarchy = false; // a hierarchy is being built in the background, guarded by this
+    private final RouteCache<RouteResult<String>> routeCache = new RouteCache<>(ROUTE_CACHE_SIZE, ROUTE_CACHE_TTL_MILLIS);
+    private final RoutingMetrics metrics = RoutingMetrics.global();
+
+    static {
+        RoutingMetrics.registerMBean();
+    }
 
     /**
      * This acts as the constructor for the TrainBackend class given the parameters
@@ -25,29 +56,424 @@ public class TrainBackend {
      */
 
     public TrainBackend() {
-        this.origin = null;
-        this.destination = null;
+        this(null, null);
+    }
+    public TrainBackend(String origin, String destination) {
+        this.origin = origin;
+        this.destination = destination;
+        reload(System.getProperty(NETWORK_FILE_PROPERTY, DEFAULT_NETWORK_FILE));
+    }
 
+    /**
+     * This constructor creates a backend that loads the network from the given file
+     *
+     * @param networkFile a dot file or a binary network file written by NetworkFile
+     */
+    public TrainBackend(Path networkFile) {
+        reload(networkFile.toString());
+    }
+
+    /**
+     * This constructor creates a backend that answers queries from an already built network, for example
+     * one generated in memory rather than loaded from a dot file. Such a backend has no data file to reload.
+     *
+     * @param network the network to answer queries from
+     */
+    public TrainBackend(NetworkSnapshot network) {
+        synchronized (this) {
+            this.nextVersion = network.getVersion() + 1;
+            publish(network);
+        }
+    }
+
+    /**
+     * This method reloads the station data from the file the backend was created with and replaces the
+     * current network snapshot. Queries that are already running keep using the snapshot they started with.
+     */
+    public void reload() {
+        String dataFile;
+        synchronized (this) {
+            dataFile = this.dataFile;
+        }
+        if (dataFile == null) {
+            throw new IllegalStateException("This backend was not loaded from a data file");
+        }
+        reload(dataFile);
+    }
+
+    /**
+     * This method loads the station data from the given file and builds the graph for it once. The new
+     * network snapshot replaces the current one only after it has been fully built.
+     *
+     * @param dataFile the dot file or binary network file containing the stations and connections
+     */
+    public void reload(String dataFile) {
+        long began = System.nanoTime();
+        CSRGraph<String> graph;
         try {
-            dataLoader.loadData("/Users/kolbyboesel/eclipse-workspace/CS400Graph/src/TrainData.gv"); //TODO
-        } catch (FileNotFoundException e) {
+            Path file = Paths.get(dataFile);
+            if (Files.exists(file) && NetworkFile.isNetworkFile(file)) {
+                graph = NetworkFile.map(file, true); // used in place, nothing to parse
+            } else {
+                graph = new TrainDataLoader().loadGraph(dataFile);
+            }
+        } catch (IOException e) {
             throw new RuntimeException(e);
         }
+        metrics.recordPhase(RoutingMetrics.Phase.LOAD, System.nanoTime() - began);
 
-        AE = new AE_Graph();
+        synchronized (this) {
+            began = System.nanoTime();
+            NetworkSnapshot snapshot = NetworkSnapshot.build(graph, nextVersion++);
+            metrics.recordPhase(RoutingMetrics.Phase.BUILD, System.nanoTime() - began);
+            this.dataFile = dataFile;
+            this.loadedGraph = graph;
+            this.editableGraph = null;
+            publish(snapshot);
+        }
     }
-    public TrainBackend(String origin, String destination) {
-        this.origin = origin;
-        this.destination = destination;
+
+    /**
+     * This method adds a connection between two existing stations, or changes its travel time if it exists
+     *
+     * @param source the station the connection starts at
+     * @param target the station the connection ends at
+     * @param weight the travel time of the connection
+     * @return true if the network changed
+     */
+    public synchronized boolean insertEdge(String source, String target, double weight) {
+        return changed(editableGraph().insertEdge(source, target, weight));
+    }
+
+    /**
+     * This method removes the connection between two stations
+     *
+     * @param source the station the connection starts at
+     * @param target the station the connection ends at
+     * @return true if the network changed
+     */
+    public synchronized boolean removeEdge(String source, String target) {
+        return changed(editableGraph().removeEdge(source, target));
+    }
+
+    /**
+     * This method removes a station and all of its connections
+     *
+     * @param station the station to remove
+     * @return true if the network changed
+     */
+    public synchronized boolean removeVertex(String station) {
+        return changed(editableGraph().removeVertex(station));
+    }
+
+    /**
+     * This method removes many stations and all of their connections at once, for example every station on a
+     * closed line, and publishes the result as one new snapshot
+     *
+     * @param stations the stations to remove
+     * @return true if the network changed
+     */
+    public synchronized boolean removeVertices(Set<String> stations) {
+        return changed(editableGraph().removeVertices(stations) > 0);
+    }
+
+    /**
+     * This method changes the travel times of existing connections, for example to apply a batch of delays.
+     * It does not rebuild the network: the new snapshot shares everything but the travel times with the
+     * current one. If no travel time went down, cached routes that do not use a changed connection are still
+     * the shortest and are kept.
+     *
+     * A contraction hierarchy prepared for the old travel times is not rebuilt here either, so a batch of
+     * delays never waits for preprocessing. In the CONTRACTION_HIERARCHY mode a hierarchy for the updated travel
+     * times is built on a background thread and swapped in once it is ready; until then route queries use
+     * bidirectional search, which getActiveRoutingMode reports and the metrics count as fallback queries. A
+     * timetable read from
+     * a file does not depend on the travel times and is kept; in the TIMETABLE mode a timetable derived from
+     * the network is derived again from the updated travel times, so timetable queries keep working.
+     *
+     * @param updates the new travel times; updates of connections that are not in the network are skipped
+     * @return true if the network changed
+     */
+    public synchronized boolean updateWeights(Collection<EdgeUpdate<String, Double>> updates) {
+        NetworkSnapshot previous = this.network;
+        NetworkSnapshot updated = previous.withUpdatedWeights(updates, nextVersion);
+        if (updated == previous) {
+            return false;
+        }
+        nextVersion++;
+        if (editableGraph != null) {
+            editableGraph.updateWeights(updates);
+        }
+        this.network = this.routingMode == RoutingMode.TIMETABLE ? prepare(updated, RoutingMode.TIMETABLE) : updated;
+        if (this.routingMode == RoutingMode.CONTRACTION_HIERARCHY) {
+            rebuildHierarchyLater();
+        }
+
+        CSRGraph<String> before = previous.getGraph();
+        CSRGraph<String> after = updated.getGraph();
+        for (EdgeUpdate<String, Double> update : updates) {
+            int source = after.indexOf(update.getSource());
+            int target = after.indexOf(update.getTarget());
+            int edge = source < 0 || target < 0 ? -1 : after.findEdge(source, target);
+            if (edge >= 0 && after.edgeWeight(edge) < before.edgeWeight(edge)) {
+                routeCache.invalidateAll(); // a shorter connection can make any cached route second best
+                return true;
+            }
+        }
+        routeCache.revalidate(previous.getVersion(), updated.getVersion(), route -> isUnchanged(route, after));
+        return true;
+    }
+
+    /**
+     * Starts a background thread that builds a contraction hierarchy for the current snapshot, unless one is
+     * already running. Called with the backend's lock held.
+     */
+    private void rebuildHierarchyLater() {
+        if (rebuildingHierarchy) {
+            return; // the running rebuild picks up the newest snapshot when it is done
+        }
+        rebuildingHierarchy = true;
+        Thread builder = new Thread(this::rebuildHierarchy, "contraction-hierarchy-rebuild");
+        builder.setDaemon(true);
+        builder.start();
+    }
+
+    /**
+     * Builds a contraction hierarchy for the current snapshot without holding the backend's lock, and publishes
+     * it if the snapshot is still current. If another change was published in the meantime, it builds again for
+     * that one, until the CONTRACTION_HIERARCHY mode is no longer selected or the current snapshot has a
+     * hierarchy. The hierarchy is not saved, since the file next to the data file only holds the hierarchy of
+     * the network as loaded.
+     */
+    private void rebuildHierarchy() {
         try {
-            dataLoader.loadData("/Users/kolbyboesel/eclipse-workspace/CS400Graph/src/TrainData.gv"); //TODO
-        } catch (FileNotFoundException e) {
-            throw new RuntimeException(e);
+            while (true) {
+                NetworkSnapshot snapshot;
+                synchronized (this) {
+                    snapshot = this.network;
+                    if (this.routingMode != RoutingMode.CONTRACTION_HIERARCHY || snapshot.getHierarchy() != null) {
+                        return;
+                    }
+                }
+                long began = System.nanoTime();
+                NetworkSnapshot prepared = snapshot.withHierarchy(ContractionHierarchy.build(snapshot.getGraph()));
+                metrics.recordPhase(RoutingMetrics.Phase.PREPROCESS, System.nanoTime() - began);
+                synchronized (this) {
+                    if (this.network == snapshot) {
+                        this.network = prepared; // same graph and version, so cached routes stay valid
+                    }
+                }
+            }
+        } finally {
+            synchronized (this) {
+                rebuildingHierarchy = false;
+            }
+        }
+    }
+
+    /**
+     * This method reads a delay feed and applies it in one batch with updateWeights. The feed is a dot file
+     * listing the connections whose travel time changed with their new weight, for example
+     * {@code digraph delays { Chicago -> Denver [weight=25] }}.
+     *
+     * @param feed the delay feed to apply
+     * @return true if the network changed
+     * @throws IOException if the feed cannot be read or is not a valid dot graph
+     */
+    public boolean replayDelays(Path feed) throws IOException {
+        StationTable stations = new StationTable();
+        EdgeBuffer edges = new EdgeBuffer();
+        new DotParser(stations, edges).parse(feed);
+        List<EdgeUpdate<String, Double>> updates = new ArrayList<>(edges.size());
+        for (int i = 0; i < edges.size(); i++) {
+            updates.add(new EdgeUpdate<>(stations.name(edges.source(i)), stations.name(edges.target(i)),
+                    edges.weight(i)));
+        }
+        return updateWeights(updates);
+    }
+
+    /**
+     * Returns true if every leg of the route still has the travel time it was computed with
+     */
+    private static boolean isUnchanged(RouteResult<String> route, CSRGraph<String> graph) {
+        List<String> stations = route.getStations();
+        double[] legWeights = route.getLegWeights();
+        for (int i = 0; i < legWeights.length; i++) {
+            int edge = graph.findEdge(graph.indexOf(stations.get(i)), graph.indexOf(stations.get(i + 1)));
+            if (edge < 0 || graph.edgeWeight(edge) != legWeights[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the editable copy of the network that changes are applied to, creating it on first use
+     */
+    private AE_Graph<String, Double> editableGraph() {
+        if (editableGraph == null) {
+            editableGraph = network.toEditableGraph();
         }
+        return editableGraph;
+    }
+
+    /**
+     * Publishes a new snapshot of the editable graph if a change was made
+     */
+    private boolean changed(boolean changed) {
+        if (changed) {
+            long began = System.nanoTime();
+            NetworkSnapshot snapshot = NetworkSnapshot.build(editableGraph, network, nextVersion++);
+            metrics.recordPhase(RoutingMetrics.Phase.BUILD, System.nanoTime() - began);
+            publish(snapshot);
+        }
+        return changed;
+    }
+
+    /**
+     * Replaces the current snapshot, dropping every cached result computed on the old one
+     */
+    private void publish(NetworkSnapshot snapshot) {
+        this.network = prepare(snapshot, this.routingMode);
+        routeCache.invalidateAll();
+    }
+
+    /**
+     * This method returns the cache that getShortestPath and getShortestPathLength answer repeated queries from
+     */
+    public RouteCache<?> getRouteCache() {
+        return this.routeCache;
+    }
 
-        AE = new AE_Graph();
+    /**
+     * This method selects the search algorithm used by getShortestPath and getShortestPathLength. Selecting
+     * CONTRACTION_HIERARCHY loads the hierarchy saved next to the data file, or builds and saves it if there
+     * is none yet. Selecting TIMETABLE loads the timetable file next to the data file (the data file name
+     * followed by .timetable, in the format read by Timetable.load), or derives hourly trains on every
+     * connection from the network if there is none.
+     *
+     * @param routingMode the search algorithm to use for new queries
+     * @throws UncheckedIOException if TIMETABLE is selected and the timetable file cannot be read or is not a
+     *     valid timetable; the routing mode is left unchanged
+     */
+    public synchronized void setRoutingMode(RoutingMode routingMode) {
+        this.network = prepare(this.network, routingMode);
+        this.routingMode = routingMode;
+    }
+
+    /**
+     * This method gets the search algorithm used for new queries
+     */
+    public RoutingMode getRoutingMode() {
+        return this.routingMode;
     }
 
+    /**
+     * This method gets the search algorithm new route queries are actually answered with. It is the selected
+     * routing mode, except while the contraction hierarchy for delayed travel times is still being built, when
+     * it is BIDIRECTIONAL.
+     */
+    public RoutingMode getActiveRoutingMode() {
+        return activeMode(this.network, this.routingMode);
+    }
+
+    /**
+     * Returns the mode a query on the snapshot is answered with when the given mode is selected: the selected
+     * mode if the snapshot has the preprocessed data it needs, or a search on the graph that gives the same
+     * answers if it does not
+     */
+    private static RoutingMode activeMode(NetworkSnapshot snapshot, RoutingMode selected) {
+        if (selected == RoutingMode.CONTRACTION_HIERARCHY && snapshot.getHierarchy() == null) {
+            return RoutingMode.BIDIRECTIONAL; // the weights were updated and the hierarchy is being rebuilt
+        } else if (selected == RoutingMode.TIMETABLE && snapshot.getTimetable() == null) {
+            return RoutingMode.DIJKSTRA; // the mode was switched after the snapshot was read
+        }
+        return selected;
+    }
+
+    /**
+     * Adds whatever preprocessed data the routing mode needs to the snapshot, if it is not there yet, and records
+     * how long that took. Called with the backend's lock held.
+     */
+    private NetworkSnapshot prepare(NetworkSnapshot snapshot, RoutingMode routingMode) {
+        long began = System.nanoTime();
+        NetworkSnapshot prepared = preprocess(snapshot, routingMode, this.dataFile,
+                snapshot.getGraph() == this.loadedGraph);
+        if (prepared != snapshot) {
+            RoutingMetrics.global().recordPhase(RoutingMetrics.Phase.PREPROCESS, System.nanoTime() - began);
+        }
+        return prepared;
+    }
+
+    /**
+     * Returns the snapshot with the preprocessed data the routing mode needs, or the snapshot itself if it has it.
+     * The hierarchy file next to the data file only ever holds the hierarchy of the network as loaded, so a
+     * network that was changed since gets a hierarchy of its own that is not saved.
+     */
+    private static NetworkSnapshot preprocess(NetworkSnapshot snapshot, RoutingMode routingMode, String dataFile,
+            boolean asLoaded) {
+        if (routingMode == RoutingMode.TIMETABLE && snapshot.getTimetable() == null) {
+            Timetable saved = savedTimetable(dataFile);
+            if (saved != null) {
+                return snapshot.withTimetable(saved, false);
+            }
+            return snapshot.withTimetable(Timetable.fromNetwork(snapshot.getGraph(), 0,
+                    (DERIVED_TIMETABLE_HOURS - 1) * Timetable.SECONDS_PER_HOUR, Timetable.SECONDS_PER_HOUR), true);
+        }
+        if (routingMode != RoutingMode.CONTRACTION_HIERARCHY || snapshot.getHierarchy() != null) {
+            return snapshot;
+        }
+
+        if (dataFile == null || !asLoaded) {
+            return snapshot.withHierarchy(ContractionHierarchy.build(snapshot.getGraph()));
+        }
+
+        Path hierarchyFile = Paths.get(dataFile + ".ch");
+        ContractionHierarchy<String> hierarchy = null;
+        if (Files.exists(hierarchyFile)) {
+            try {
+                hierarchy = ContractionHierarchy.load(hierarchyFile, snapshot.getGraph());
+            } catch (IOException e) {
+                hierarchy = null; // stale or unreadable, build it again below
+            }
+        }
+        if (hierarchy == null) {
+            hierarchy = ContractionHierarchy.build(snapshot.getGraph());
+            try {
+                hierarchy.save(hierarchyFile);
+            } catch (IOException e) {
+                // the hierarchy still works, it just has to be built again after a restart
+            }
+        }
+        return snapshot.withHierarchy(hierarchy);
+    }
+
+    /**
+     * Loads the timetable saved next to the data file, or returns null if there is none
+     *
+     * @throws UncheckedIOException if the timetable file cannot be read or is not a valid timetable
+     */
+    private static Timetable savedTimetable(String dataFile) {
+        if (dataFile == null) {
+            return null;
+        }
+        Path timetableFile = Paths.get(dataFile + ".timetable");
+        if (!Files.exists(timetableFile)) {
+            return null;
+        }
+        try {
+            return Timetable.load(timetableFile);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * This method returns the network snapshot that queries are currently answered from
+     */
+    public NetworkSnapshot getNetwork() {
+        return this.network;
+    }
     
     /**
      * This method sets the origin of the backend object. This will be used by the frontend to get user input
@@ -86,58 +512,215 @@ public class TrainBackend {
      * the list of stations available to choose from
      */
     public String[] getStations() {
-        /* 
-        ArrayList<Node> stations = new ArrayList<Node>();
-        stations = (ArrayList<Node>) dataLoader.getEdges();
-
-        Set<String> paths = new HashSet<String>();
-
-        for (int i = 0; i < stations.size(); i++) {
-            paths.add(stations.get(i).getStartLocation());
-            paths.add(stations.get(i).getEndLocation());
-        }
-
-        return (String[]) paths.toArray();
-        */
+        return network.getStations();
+    }
 
-        ArrayList<String> stations = dataLoader.getVertices();
-        String[] stationStringArray = new String[stations.size()];
+    /**
+     * This method checks whether a station with exactly this name exists, without copying the station list
+     *
+     * @param station the name to check
+     * @return true if the network has a station with this name
+     */
+    public boolean isStation(String station) {
+        return network.getStationIndex().contains(station);
+    }
 
-        for (int i = 0; i < stationStringArray.length; i++) {
-            stationStringArray[i] = stations.get(i);
-        }
+    /**
+     * This method returns the stations whose names start with the given text, ignoring case, for completing
+     * what the user is typing
+     *
+     * @param prefix the start of a station name
+     * @param limit the largest number of stations to return
+     * @return the matching stations in alphabetical order
+     */
+    public List<String> completeStation(String prefix, int limit) {
+        return network.getStationIndex().withPrefix(prefix, limit);
+    }
 
-        return stationStringArray;
+    /**
+     * This method returns the stations the user most likely meant when they typed a name that is not a station,
+     * allowing for a missing, extra, wrong or swapped character and ignoring case
+     *
+     * @param input the name the user typed
+     * @param limit the largest number of stations to return
+     * @return the closest stations, best match first
+     */
+    public List<String> suggestStations(String input, int limit) {
+        return network.getStationIndex().suggest(input, limit);
     }
 
     /**
-     * This method returns a List of nodes that contains the shortest path from the origin station to the
+     * This method returns a List of stations that contains the shortest path from the origin station to the
      * destination. It uses the dijkstra's algorithm implemented by the algorithm engineer to achieve the task
      *
      * @param currStation the origin station
      * @param destinationStation final destination station
      * @return shortestPath that is the shortest path between the given edges
      */
-    public List<Node> getShortestPath(String currStation, String destinationStation) {
-        ArrayList<String> vertices = dataLoader.getVertices();
-        ArrayList<Node> edges = dataLoader.getEdges();
+    public List<String> getShortestPath(String currStation, String destinationStation) {
+        return route(currStation, destinationStation).getStations();
+    }
+
+    public double getShortestPathLength(String currStation, String destinationStation) {
+        return route(currStation, destinationStation).getTotalCost();
+    }
 
-        // Insert vertices.
-        for (int i = 0; i < vertices.size(); i++) {
-            AE.insertVertex(vertices.get(i));
+    /**
+     * This method returns the shortest route from the origin station to the destination: the stations on it,
+     * the travel time of each leg, the total travel time and how much work the search did. Both the path and
+     * its length come from one search, and repeated queries are answered from the route cache. In the
+     * TIMETABLE routing mode it is the fastest journey in the timetable, which is not cached.
+     *
+     * @param currStation the origin station
+     * @param destinationStation final destination station
+     * @return the shortest route between the given stations
+     */
+    public RouteResult<String> route(String currStation, String destinationStation) {
+        long began = System.nanoTime();
+        RoutingMetrics.startQuery();
+        boolean cacheHit = false;
+        boolean answered = false;
+        try {
+            NetworkSnapshot snapshot = this.network;
+            RoutingMode selected = this.routingMode;
+            RoutingMode mode = activeMode(snapshot, selected);
+            if (mode != selected) {
+                metrics.recordFallback();
+            }
+            RouteResult<String> route;
+            if (mode == RoutingMode.TIMETABLE) {
+                route = snapshot.route(currStation, destinationStation, mode); // timetable answers differ, not cached
+            } else {
+                route = routeCache.get(currStation, destinationStation, mode, snapshot.getVersion());
+                cacheHit = route != null;
+                if (route == null) {
+                    route = snapshot.route(currStation, destinationStation, mode);
+                    routeCache.put(currStation, destinationStation, mode, snapshot.getVersion(), route);
+                }
+            }
+            answered = true;
+            return route;
+        } finally {
+            metrics.recordQuery(System.nanoTime() - began, cacheHit, answered);
         }
+    }
 
-        // Insert edges.
-        for (int i = 0; i < edges.size(); i++) {
-            AE.insertEdge(edges.get(i).getStartLocation().trim(), edges.get(i).getEndLocation().trim(),
-                    edges.get(i).getTime());
+    /**
+     * This method answers a batch of origin-destination queries, such as a demand table sent by another system,
+     * and returns their shortest routes in the order of the queries. Queries are grouped by origin, so all
+     * destinations of one origin are answered by a single search that stops once the last of them is reached,
+     * and the groups are searched in parallel. Queries are read and answered a window at a time as the routes
+     * are taken from the iterator, so a batch of millions of queries never has to be held in memory.
+     *
+     * Every query is answered with Dijkstra's algorithm on the snapshot the batch started on, whatever the
+     * routing mode, and the route cache is neither read nor filled. A query with an unknown station or without
+     * a route gets null. Every query is recorded in the metrics once its group is answered.
+     *
+     * @param queries the origin-destination pairs to route
+     * @return the routes of the queries in order, null for a query without a route
+     */
+    public BatchRouter<String> routeBatch(Iterable<? extends OriginDestination<String>> queries) {
+        return this.network.routeBatch(queries);
+    }
+
+    /**
+     * This method answers a batch of origin-destination queries like routeBatch(queries) and hands every query
+     * with its route, or null if it has none, to the consumer in the order of the queries, on the calling thread.
+     *
+     * @param queries the origin-destination pairs to route
+     * @param consumer receives every query with its route
+     */
+    public void routeBatch(Iterable<? extends OriginDestination<String>> queries,
+            BiConsumer<? super OriginDestination<String>, ? super RouteResult<String>> consumer) {
+        BatchRouter<String> routes = routeBatch(queries);
+        while (routes.hasNext()) {
+            RouteResult<String> route = routes.next();
+            consumer.accept(routes.lastQuery(), route);
         }
+    }
 
-        List<Node> shortestPath = AE.shortestPath(this.origin, this.destination);
-        return shortestPath;
+    /**
+     * This method returns the latency, cache and search work metrics of the route queries answered in this
+     * process. They are also registered as a JMX MBean under RoutingMetrics.OBJECT_NAME.
+     */
+    public RoutingMetrics getMetrics() {
+        return this.metrics;
     }
 
-    public double getShortestPathLength(String currStation, String destinationStation) {
-        return AE.getPathCost(currStation, destinationStation);
+    /**
+     * This method returns up to k different routes from the origin station to the destination that never
+     * visit a station twice, shortest first. The first one is the shortest route, and each following one is
+     * the shortest route that differs from all routes before it, so they are the alternatives to plan with
+     * when a line is disrupted.
+     *
+     * @param currStation the origin station
+     * @param destinationStation final destination station
+     * @param k the number of routes to find
+     * @return the routes, shortest first; fewer than k if there are no more
+     */
+    public List<RouteResult<String>> alternativeRoutes(String currStation, String destinationStation, int k) {
+        return this.network.alternativeRoutes(currStation, destinationStation, k);
+    }
+
+    /**
+     * This method returns the timetabled journey from the origin station that arrives at the destination as
+     * early as possible, leaving no earlier than the given time. The travel times are counted from the
+     * departure time, so they include waiting for the first train. It needs the TIMETABLE routing mode.
+     *
+     * @param currStation the origin station
+     * @param destinationStation final destination station
+     * @param departureTime the earliest time to leave, in seconds after the start of the timetable
+     * @return the journey with the earliest arrival, as a route
+     * @throws IllegalStateException if the TIMETABLE routing mode has not been selected
+     */
+    public RouteResult<String> route(String currStation, String destinationStation, int departureTime) {
+        return this.network.route(currStation, destinationStation, departureTime);
+    }
+
+    /**
+     * This method returns every timetabled journey from the origin station to the destination that is not
+     * beaten by one leaving later and arriving no later, earliest departure first. It needs the TIMETABLE
+     * routing mode.
+     *
+     * @param currStation the origin station
+     * @param destinationStation final destination station
+     * @return the Pareto optimal journeys over the whole timetable
+     * @throws IllegalStateException if the TIMETABLE routing mode has not been selected
+     */
+    public List<Journey> profile(String currStation, String destinationStation) {
+        return this.network.profile(currStation, destinationStation);
+    }
+
+    /**
+     * This method returns the timetabled journeys from the origin station to the destination leaving no earlier
+     * than the given time that trade arrival time against changing trains: the first one changes least often
+     * and each following one arrives earlier with more changes. It needs the TIMETABLE routing mode.
+     *
+     * @param currStation the origin station
+     * @param destinationStation final destination station
+     * @param departureTime the earliest time to leave, in seconds after the start of the timetable
+     * @return the Pareto optimal journeys, fewest transfers first
+     * @throws IllegalStateException if the TIMETABLE routing mode has not been selected
+     */
+    public List<Journey> paretoJourneys(String currStation, String destinationStation, int departureTime) {
+        return this.network.paretoJourneys(currStation, destinationStation, departureTime);
+    }
+
+    /**
+     * This method returns the timetabled journeys from the origin station to the destination leaving in the
+     * given window that are not beaten by one leaving later, arriving no later and changing trains no more
+     * often. It needs the TIMETABLE routing mode.
+     *
+     * @param currStation the origin station
+     * @param destinationStation final destination station
+     * @param from the earliest departure time, in seconds after the start of the timetable
+     * @param until the latest departure time
+     * @param parallel whether to search parts of the window on several threads
+     * @return the Pareto optimal journeys, earliest departure first
+     * @throws IllegalStateException if the TIMETABLE routing mode has not been selected
+     */
+    public List<Journey> paretoJourneys(String currStation, String destinationStation, int from, int until,
+            boolean parallel) {
+        return this.network.paretoJourneys(currStation, destinationStation, from, until, parallel);
     }
 }
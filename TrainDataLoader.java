@@ -1,13 +1,15 @@
-import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
 import java.util.Scanner;
 import java.util.ArrayList;
 import java.util.List;
 
 public class TrainDataLoader implements ITrainDataLoader {
-	static ArrayList<Node> nodes;
-	static ArrayList<String> vertices;
-	File dotFile;
+	private final ArrayList<Node> nodes;
+	private final ArrayList<String> vertices;
 
 	public TrainDataLoader() {
 		nodes = new ArrayList<>();
@@ -15,29 +17,65 @@ public class TrainDataLoader implements ITrainDataLoader {
 	}
 
 	/**
-	 * The main method that initializes the file, and calls loadVertices and
-	 * loadEdges
+	 * The main method that reads the dot file in a single pass and fills the lists of
+	 * vertices and edges. Every station is listed once, in the order it first appears
+	 * in the file. Node stores whole travel times, so weights are rounded.
 	 * 
-	 * @param filename The name of the dot file
+	 * @param dotFile The name of the dot file
 	 * @throws FileNotFoundException If the file name isn't found
+	 * @throws UncheckedIOException If the file cannot be read or is not a valid dot graph
 	 */
-	@SuppressWarnings("resource")
 	public void loadData(String dotFile) throws FileNotFoundException {
-		Scanner vertexScanner;
-		Scanner edgeScanner;
+		StationTable stations = new StationTable();
+		EdgeBuffer edges = new EdgeBuffer();
+		parse(dotFile, Runtime.getRuntime().availableProcessors(), stations, edges);
+
+		for (int id = 0; id < stations.size(); id++)
+			vertices.add(stations.name(id));
+		for (int i = 0; i < edges.size(); i++)
+			nodes.add(new Node(stations.name(edges.source(i)), stations.name(edges.target(i)),
+					(int) Math.round(edges.weight(i))));
+	}
+
+	/**
+	 * Reads the dot file straight into a frozen graph, without creating a Node for every
+	 * edge, parsing large files on every core. This is how the backend loads the network.
+	 * 
+	 * @param dotFile The name of the dot file
+	 * @return the network described by the file
+	 * @throws FileNotFoundException If the file name isn't found
+	 * @throws UncheckedIOException If the file cannot be read or is not a valid dot graph
+	 */
+	public CSRGraph<String> loadGraph(String dotFile) throws FileNotFoundException {
+		return loadGraph(dotFile, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Reads the dot file straight into a frozen graph, parsing parts of large files on
+	 * several threads. The graph is the same whatever the number of threads.
+	 * 
+	 * @param dotFile The name of the dot file
+	 * @param threads The number of threads to parse on
+	 * @return the network described by the file
+	 * @throws FileNotFoundException If the file name isn't found
+	 * @throws UncheckedIOException If the file cannot be read or is not a valid dot graph
+	 */
+	public CSRGraph<String> loadGraph(String dotFile, int threads) throws FileNotFoundException {
+		StationTable stations = new StationTable();
+		EdgeBuffer edges = new EdgeBuffer();
+		parse(dotFile, threads, stations, edges);
+		return CSRGraphBuilder.fromParsed(stations, edges);
+	}
 
+	private static void parse(String dotFile, int threads, StationTable stations, EdgeBuffer edges)
+			throws FileNotFoundException {
 		try {
-			File newFile = new File(dotFile);
-			vertexScanner = new Scanner(newFile);
-			edgeScanner = new Scanner(newFile);
-		} catch (FileNotFoundException E) {
+			ParallelDotLoader.load(Paths.get(dotFile), threads, stations, edges);
+		} catch (NoSuchFileException E) {
 			throw new FileNotFoundException("Error: File not found");
+		} catch (IOException E) {
+			throw new UncheckedIOException(E);
 		}
-
-		loadVertices(vertexScanner);
-
-		loadEdges(edgeScanner);
-
 	}
 
 	/**
@@ -89,7 +127,7 @@ public class TrainDataLoader implements ITrainDataLoader {
 	 * 
 	 * @return nodes The list of nodes containing edges
 	 */
-	public static ArrayList<Node> getEdges() {
+	public ArrayList<Node> getEdges() {
 		return nodes;
 	}
 
@@ -99,7 +137,7 @@ public class TrainDataLoader implements ITrainDataLoader {
 	 * 
 	 * @return vertices The ArrayList containing strings with vertices
 	 */
-	public static ArrayList<String> getVertices() {
+	public ArrayList<String> getVertices() {
 		return vertices;
 	}
 
@@ -0,0 +1,197 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.IntStream;
+
+/**
+ * Station-to-station travel time matrix for a CSRGraph. Row i holds the shortest path cost from
+ * vertex i to every vertex, so the matrix takes one one-to-all search per source; the sources
+ * are spread over the common ForkJoinPool, and each worker thread reuses its own DijkstraSearch.
+ *
+ * Costs are stored as floats in a single row-major float[], with Float.POSITIVE_INFINITY for
+ * pairs that are not connected. If asked for, the predecessor of every target on its shortest
+ * path is kept in an int[] of the same layout, so paths can be read back without searching
+ * again. Matrices too large for the heap can be streamed to a memory-mapped file with writeTo()
+ * instead.
+ */
+public class TravelTimeMatrix {
+
+	/** Largest vertex count whose matrix still fits into a single float[]. */
+	public static final int MAX_IN_MEMORY_VERTICES = 46340;
+
+	private static final int FILE_MAGIC = 0x54544d31; // "TTM1"
+	private static final int HEADER_BYTES = 8; // magic, vertex count
+	private static final long MAX_MAPPED_BLOCK_BYTES = 1L << 28; // 256MB of rows mapped at a time
+
+	private final int size;
+	private final float[] values;
+	private final int[] predecessors; // null unless computed with predecessors
+
+	private TravelTimeMatrix(int size, float[] values, int[] predecessors) {
+		this.size = size;
+		this.values = values;
+		this.predecessors = predecessors;
+	}
+
+	/**
+	 * Computes the full travel time matrix of graph in parallel.
+	 *
+	 * @param graph the graph to compute the matrix for
+	 * @return the travel time matrix, indexed by vertex id
+	 * @throws IllegalArgumentException if the matrix has more than MAX_IN_MEMORY_VERTICES rows
+	 */
+	public static TravelTimeMatrix compute(CSRGraph<?> graph) {
+		return compute(graph, false);
+	}
+
+	/**
+	 * Computes the full travel time matrix of graph in parallel, and if withPredecessors is set
+	 * also the predecessor of every target on its shortest path. Predecessors double the memory
+	 * the matrix takes.
+	 *
+	 * @param graph the graph to compute the matrix for
+	 * @param withPredecessors whether to keep the predecessor matrix
+	 * @return the travel time matrix, indexed by vertex id
+	 * @throws IllegalArgumentException if the matrix has more than MAX_IN_MEMORY_VERTICES rows
+	 */
+	public static TravelTimeMatrix compute(CSRGraph<?> graph, boolean withPredecessors) {
+		int n = graph.getVertexCount();
+		if(n > MAX_IN_MEMORY_VERTICES)
+			throw new IllegalArgumentException("Matrix for " + n + " vertices does not fit in memory, use writeTo instead");
+		float[] values = new float[n * n];
+		int[] predecessors = withPredecessors ? new int[n * n] : null;
+		IntStream.range(0, n).parallel().forEach(source -> {
+			DijkstraSearch search = DijkstraSearch.forThread(n);
+			search.run(graph, source, -1);
+			int row = source * n;
+			for(int target = 0; target < n; target++) {
+				values[row + target] = (float) search.distance(target);
+				if(predecessors != null)
+					predecessors[row + target] = search.parent(target);
+			}
+		});
+		return new TravelTimeMatrix(n, values, predecessors);
+	}
+
+	/**
+	 * Computes the full travel time matrix of graph in parallel and streams it into file, which
+	 * is memory-mapped a block of rows at a time so the matrix never has to fit in the heap. The
+	 * file holds an 8 byte header (magic number and vertex count) followed by the rows as little
+	 * endian floats.
+	 *
+	 * @param graph the graph to compute the matrix for
+	 * @param file the file to write, replaced if it exists
+	 * @throws UncheckedIOException if the file cannot be written
+	 */
+	public static void writeTo(CSRGraph<?> graph, Path file) {
+		int n = graph.getVertexCount();
+		long rowBytes = 4L * n;
+		int rowsPerBlock = (int) Math.max(1, Math.min(n, MAX_MAPPED_BLOCK_BYTES / Math.max(1, rowBytes)));
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(FILE_MAGIC).putInt(n).flip();
+			channel.write(header, 0);
+			for(int first = 0; first < n; first += rowsPerBlock) {
+				int rows = Math.min(rowsPerBlock, n - first);
+				MappedByteBuffer block = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_BYTES + first * rowBytes, rows * rowBytes);
+				FloatBuffer floats = block.order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+				int blockStart = first;
+				// rows are disjoint ranges of the buffer, so workers can write them concurrently
+				IntStream.range(first, first + rows).parallel().forEach(source -> {
+					DijkstraSearch search = DijkstraSearch.forThread(n);
+					search.run(graph, source, -1);
+					int row = (source - blockStart) * n;
+					for(int target = 0; target < n; target++)
+						floats.put(row + target, (float) search.distance(target));
+				});
+				block.force();
+			}
+		} catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Reads one row of a matrix file written by writeTo.
+	 *
+	 * @param file the matrix file
+	 * @param source the vertex id of the row to read
+	 * @return the travel times from source to every vertex
+	 * @throws UncheckedIOException if the file cannot be read or is not a matrix file
+	 */
+	public static float[] readRow(Path file, int source) {
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			channel.read(header, 0);
+			header.flip();
+			if(header.remaining() < HEADER_BYTES || header.getInt() != FILE_MAGIC)
+				throw new IOException("Not a travel time matrix file: " + file);
+			int n = header.getInt();
+			if(source < 0 || source >= n)
+				throw new IndexOutOfBoundsException("Row " + source + " is not in a matrix of size " + n);
+			ByteBuffer row = ByteBuffer.allocate(4 * n).order(ByteOrder.LITTLE_ENDIAN);
+			long position = HEADER_BYTES + 4L * n * source;
+			while(row.hasRemaining() && channel.read(row, position + row.position()) > 0);
+			row.flip();
+			float[] values = new float[n];
+			row.asFloatBuffer().get(values);
+			return values;
+		} catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Returns the number of rows (and columns) of the matrix.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the travel time from source to target, or infinity if target cannot be reached.
+	 *
+	 * @param source vertex id of the start vertex
+	 * @param target vertex id of the end vertex
+	 */
+	public float get(int source, int target) {
+		return values[source * size + target];
+	}
+
+	/**
+	 * Returns whether the matrix was computed with predecessors.
+	 */
+	public boolean hasPredecessors() {
+		return predecessors != null;
+	}
+
+	/**
+	 * Returns the predecessor of target on its shortest path from source, or -1 if target is
+	 * source or cannot be reached.
+	 *
+	 * @param source vertex id of the start vertex
+	 * @param target vertex id of the end vertex
+	 * @throws IllegalStateException if the matrix was computed without predecessors
+	 */
+	public int predecessor(int source, int target) {
+		if(predecessors == null)
+			throw new IllegalStateException("Travel time matrix was computed without predecessors");
+		return predecessors[source * size + target];
+	}
+
+	/**
+	 * Returns a copy of the travel times from source to every vertex.
+	 */
+	public float[] row(int source) {
+		float[] row = new float[size];
+		System.arraycopy(values, source * size, row, 0, size);
+		return row;
+	}
+}
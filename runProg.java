@@ -1,5 +1,16 @@
 public class runProg {
-    public static void main(String[] args) {
+    /**
+     * Runs the console frontend, or with the argument "serve" and an optional port the HTTP route server.
+     */
+    public static void main(String[] args) throws java.io.IOException {
+        if (args.length > 0 && args[0].equals("serve")) {
+            int port = args.length > 1 ? Integer.parseInt(args[1]) : RouteServer.DEFAULT_PORT;
+            RouteServer server = new RouteServer(new TrainBackend(), port);
+            server.start();
+            System.out.println("Serving routes on http://localhost:" + server.getPort()
+                    + "/route?from=&to=, /stations, /batch and /metrics");
+            return;
+        }
         Frontend frontend = new Frontend();
         frontend.runCommandLoop();
     }